@@ -34,6 +34,7 @@ for %%f in ("%baseDir%target\fim-*.jar") do (
 @rem In case it's the source jar that is found, remove the '-sources'
 set JAR_FILE=%JAR_FILE:-sources=%
 
-java %JAVA_OPTIONS% -jar "%baseDir%target\%JAR_FILE%" %1 %2 %3 %4 %5 %6 %7 %8 %9 %10
+@rem The client forwards the command to the Fim server when one is running
+java %JAVA_OPTIONS% -cp "%baseDir%target\%JAR_FILE%" org.fim.FimClient %1 %2 %3 %4 %5 %6 %7 %8 %9 %10
 
 @rem -------------------------------------------------------------------------------------------------------------------
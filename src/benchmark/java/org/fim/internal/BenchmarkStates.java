@@ -0,0 +1,140 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal;
+
+import org.fim.model.FileHash;
+import org.fim.model.FileState;
+import org.fim.model.FileTime;
+import org.fim.model.State;
+import org.fim.util.Ascii85Util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.fim.model.Constants._1_MB;
+import static org.fim.model.Constants._4_KB;
+
+/**
+ * States shared by the State benchmarks. The same seed gives the same States from one run to the other.
+ */
+final class BenchmarkStates {
+    private static final long SEED = 0x46494d;
+    private static final Comparator<FileState> fileNameComparator = new FileState.FileNameComparator();
+    private static final int FILES_PER_DIRECTORY = 500;
+    private static final int DIRECTORIES_PER_LEVEL = 100;
+
+    /**
+     * How the current State differs from the last one.
+     */
+    enum ChangeMix {
+        noChange,
+        contentModified,
+        massRename,
+        massDuplicate
+    }
+
+    private BenchmarkStates() {
+        // Only static methods
+    }
+
+    /**
+     * Builds a State that looks like a real one: files spread into two levels of directories,
+     * file lengths from a few bytes to some hundreds of MB, and the block hashes that are shared with the full hash for small files.
+     */
+    static State createState(int fileCount) {
+        Random random = new Random(SEED);
+        State state = new State();
+        List<FileState> fileStates = state.getFileStates();
+        long now = System.currentTimeMillis();
+        for (int index = 0; index < fileCount; index++) {
+            int directory = index / FILES_PER_DIRECTORY;
+            String fileName = String.format("dir%03d/sub%03d/file%08d.dat", directory / DIRECTORIES_PER_LEVEL, directory % DIRECTORIES_PER_LEVEL, index);
+            long fileLength = (long) Math.pow(2, random.nextDouble() * 28);
+            FileTime fileTime = new FileTime(now - random.nextInt(Integer.MAX_VALUE), now - random.nextInt(Integer.MAX_VALUE));
+            fileStates.add(new FileState(fileName, fileLength, fileTime, randomFileHash(random, fileLength), new ArrayList<>()));
+        }
+        Collections.sort(fileStates, fileNameComparator);
+        state.updateFileCount();
+        state.updateFilesContentLength();
+        return state;
+    }
+
+    /**
+     * Builds a copy of the State with the requested changes. The FileStates are copied as StateComparator modifies them.
+     */
+    static State createChangedState(State lastState, ChangeMix changeMix) {
+        Random random = new Random(SEED + 1);
+        State state = new State();
+        List<FileState> fileStates = state.getFileStates();
+        for (FileState fileState : lastState.getFileStates()) {
+            String fileName = fileState.getFileName();
+            FileHash fileHash = new FileHash(fileState.getFileHash());
+            switch (changeMix) {
+                case contentModified:
+                    // 1% of the files
+                    if (random.nextInt(100) == 0) {
+                        fileHash = randomFileHash(random, fileState.getFileLength());
+                    }
+                    break;
+
+                case massRename:
+                    // Half of the files
+                    if (random.nextBoolean()) {
+                        fileName = "renamed/" + fileName;
+                    }
+                    break;
+
+                case massDuplicate:
+                    // Half of the files
+                    if (random.nextBoolean()) {
+                        fileStates.add(copy(fileState, "copy/" + fileName, fileHash));
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+            fileStates.add(copy(fileState, fileName, fileHash));
+        }
+        Collections.sort(fileStates, fileNameComparator);
+        state.updateFileCount();
+        state.updateFilesContentLength();
+        return state;
+    }
+
+    private static FileState copy(FileState fileState, String fileName, FileHash fileHash) {
+        return new FileState(fileName, fileState.getFileLength(), new FileTime(fileState.getFileTime()), new FileHash(fileHash), new ArrayList<>());
+    }
+
+    private static FileHash randomFileHash(Random random, long fileLength) {
+        String fullHash = randomHash(random);
+        String mediumBlockHash = fileLength <= _1_MB ? fullHash : randomHash(random);
+        String smallBlockHash = fileLength <= _4_KB ? fullHash : randomHash(random);
+        return new FileHash(smallBlockHash, mediumBlockHash, fullHash);
+    }
+
+    private static String randomHash(Random random) {
+        byte[] digest = new byte[64];
+        random.nextBytes(digest);
+        return Ascii85Util.encode(digest);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal;
+
+import org.fim.internal.BenchmarkStates.ChangeMix;
+import org.fim.model.CompareResult;
+import org.fim.model.Context;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare two States that differ by a change mix.
+ * None of the change mixes delete files, so the States can be compared again and again without being rebuilt.
+ * The 10M entries States need a big heap, use -p fileCount=100000,1000000 on a small machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class StateComparatorBenchmark {
+    @Param({"100000", "1000000", "10000000"})
+    private int fileCount;
+
+    @Param({"noChange", "contentModified", "massRename", "massDuplicate"})
+    private ChangeMix changeMix;
+
+    private Context context;
+    private org.fim.model.State lastState;
+    private org.fim.model.State currentState;
+
+    @Setup
+    public void setUp() {
+        context = new Context();
+        lastState = BenchmarkStates.createState(fileCount);
+        currentState = BenchmarkStates.createChangedState(lastState, changeMix);
+    }
+
+    @Benchmark
+    public CompareResult compare() {
+        return new StateComparator(context, lastState, currentState).compare();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal;
+
+import org.fim.model.CorruptedStateException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Save, load and hash a State like StateManager does.
+ * Saving and loading call System.gc(), that is part of the measured time as it is for Fim.
+ * The 10M entries States need a big heap, use -p fileCount=100000,1000000 on a small machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class StatePersistenceBenchmark {
+    @Param({"100000", "1000000", "10000000"})
+    private int fileCount;
+
+    private org.fim.model.State state;
+    private Path savedStateFile;
+    private Path stateFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        state = BenchmarkStates.createState(fileCount);
+        savedStateFile = Files.createTempFile("fim-benchmark-", StateManager.STATE_EXTENSION);
+        stateFile = Files.createTempFile("fim-benchmark-", StateManager.STATE_EXTENSION);
+        state.saveToGZipFile(savedStateFile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(savedStateFile);
+        Files.deleteIfExists(stateFile);
+    }
+
+    @Benchmark
+    public void saveToGZipFile() throws IOException {
+        state.saveToGZipFile(stateFile);
+    }
+
+    /**
+     * Loads the full State, including the integrity check.
+     */
+    @Benchmark
+    public org.fim.model.State loadFromGZipFile() throws IOException, CorruptedStateException {
+        return org.fim.model.State.loadFromGZipFile(savedStateFile, true);
+    }
+
+    @Benchmark
+    public String hashState() {
+        return state.hashState();
+    }
+}
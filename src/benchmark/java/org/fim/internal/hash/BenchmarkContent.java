@@ -0,0 +1,64 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.hash;
+
+import org.fim.model.Range;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Content shared by the hashing benchmarks. The same seed gives the same content from one run to the other.
+ */
+final class BenchmarkContent {
+    private static final long SEED = 0x46494d;
+
+    private BenchmarkContent() {
+        // Only static methods
+    }
+
+    static ByteBuffer randomContent(int size) {
+        byte[] bytes = new byte[size];
+        new Random(SEED).nextBytes(bytes);
+        ByteBuffer content = ByteBuffer.allocateDirect(size);
+        content.put(bytes);
+        content.flip();
+        return content;
+    }
+
+    /**
+     * Give the content to the hasher range by range, like FileHasher does with a mapped file.
+     */
+    static void hashContent(Hasher hasher, ByteBuffer content) {
+        long fileSize = content.limit();
+        long filePosition = 0;
+        while (filePosition < fileSize) {
+            Range range = hasher.getNextRange(filePosition);
+            if (range == null) {
+                break;
+            }
+
+            ByteBuffer buffer = content.duplicate();
+            buffer.limit((int) range.getTo());
+            buffer.position((int) range.getFrom());
+            hasher.update(range.getFrom(), buffer.slice());
+            filePosition = range.getTo();
+        }
+    }
+}
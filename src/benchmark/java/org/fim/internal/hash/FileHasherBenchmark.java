@@ -0,0 +1,110 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.hash;
+
+import org.apache.commons.io.FileUtils;
+import org.fim.model.Context;
+import org.fim.model.FileHash;
+import org.fim.model.HashMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hash a file on disk through each read path of FileHasher.
+ * The file stays in the page cache between two invocations, except with direct I/O on Java 10 and above.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileHasherBenchmark {
+    @Param({"1024", "16384", "65536", "1048576", "41943040"})
+    private int fileSize;
+
+    @Param({"readAtOnce", "mapped", "directIo"})
+    private String readPath;
+
+    @Param({"hashAll"})
+    private HashMode hashMode;
+
+    private Path rootDir;
+    private Path file;
+    private FileHasher fileHasher;
+
+    @Setup
+    public void setUp() throws IOException, NoSuchAlgorithmException {
+        rootDir = Files.createTempDirectory("fim-benchmark");
+        file = rootDir.resolve("file");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteBuffer content = BenchmarkContent.randomContent(fileSize);
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        }
+
+        Context context = new Context();
+        context.setHashMode(hashMode);
+        context.setVerbose(false);
+        switch (readPath) {
+            case "readAtOnce":
+                context.setSmallFileThreshold(fileSize);
+                break;
+            case "mapped":
+                context.setSmallFileThreshold(0);
+                break;
+            case "directIo":
+                context.setDirectIo(true);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown read path " + readPath);
+        }
+        fileHasher = new FileHasher(context, new HashProgress(context), null, rootDir.toString());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(rootDir.toFile());
+    }
+
+    @Benchmark
+    public FileHash hashFile() throws IOException {
+        return fileHasher.hashFile(file, fileSize);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.hash;
+
+import org.fim.model.Context;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hash an in-memory file with each hasher alone, to see what each hash level costs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HasherBenchmark {
+    @Param({"1024", "4096", "65536", "1048576", "10485760", "41943040"})
+    private int fileSize;
+
+    private ByteBuffer content;
+    private SmallBlockHasher smallBlockHasher;
+    private MediumBlockHasher mediumBlockHasher;
+    private FullHasher fullHasher;
+
+    @Setup
+    public void setUp() throws NoSuchAlgorithmException {
+        content = BenchmarkContent.randomContent(fileSize);
+
+        Context context = new Context();
+        smallBlockHasher = new SmallBlockHasher(context);
+        mediumBlockHasher = new MediumBlockHasher(context);
+        fullHasher = new FullHasher(context);
+    }
+
+    @Benchmark
+    public String smallBlockHasher() {
+        return hash(smallBlockHasher);
+    }
+
+    @Benchmark
+    public String mediumBlockHasher() {
+        return hash(mediumBlockHasher);
+    }
+
+    @Benchmark
+    public String fullHasher() {
+        return hash(fullHasher);
+    }
+
+    private String hash(Hasher hasher) {
+        hasher.reset(fileSize);
+        BenchmarkContent.hashContent(hasher, content);
+        return hasher.getHash();
+    }
+}
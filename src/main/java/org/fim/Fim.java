@@ -27,19 +27,25 @@ import org.apache.commons.cli.Option.Builder;
 import org.apache.commons.cli.Options;
 import org.fim.command.AbstractCommand;
 import org.fim.command.CommitCommand;
+import org.fim.command.CompareStatesCommand;
 import org.fim.command.DetectCorruptionCommand;
 import org.fim.command.DiffCommand;
 import org.fim.command.DisplayIgnoredFilesCommand;
 import org.fim.command.FindDuplicatesCommand;
+import org.fim.command.FindSharedChunksCommand;
 import org.fim.command.HelpCommand;
+import org.fim.command.HistoryCommand;
 import org.fim.command.InitCommand;
+import org.fim.command.JournalCommand;
 import org.fim.command.LogCommand;
 import org.fim.command.PurgeStatesCommand;
 import org.fim.command.RemoveDuplicatesCommand;
 import org.fim.command.ResetFileAttributesCommand;
 import org.fim.command.RollbackCommand;
+import org.fim.command.ServerCommand;
 import org.fim.command.StatusCommand;
 import org.fim.command.VersionCommand;
+import org.fim.command.WatchCommand;
 import org.fim.command.exception.BadFimUsageException;
 import org.fim.command.exception.DontWantToContinueException;
 import org.fim.command.exception.RepositoryException;
@@ -51,17 +57,20 @@ import org.fim.model.FilePattern;
 import org.fim.model.Ignored;
 import org.fim.model.OutputType;
 import org.fim.model.SortMethod;
+import org.fim.util.FileUtil;
 import org.fim.util.Logger;
+import org.fim.util.PerformanceRecorder;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
 
+import static org.fim.model.Constants._10_MB;
 import static org.fim.model.HashMode.dontHash;
 import static org.fim.model.HashMode.hashAll;
 import static org.fim.model.HashMode.hashMediumBlock;
@@ -92,15 +101,21 @@ public class Fim {
             new InitCommand(),
             new CommitCommand(),
             new StatusCommand(),
+            new WatchCommand(),
+            new JournalCommand(),
             new DiffCommand(),
             new ResetFileAttributesCommand(),
             new DetectCorruptionCommand(),
             new FindDuplicatesCommand(),
             new RemoveDuplicatesCommand(),
+            new FindSharedChunksCommand(),
             new LogCommand(),
+            new HistoryCommand(),
+            new CompareStatesCommand(),
             new DisplayIgnoredFilesCommand(),
             new RollbackCommand(),
             new PurgeStatesCommand(),
+            new ServerCommand(this),
             new HelpCommand(this),
             new VersionCommand());
     }
@@ -148,10 +163,31 @@ public class Fim {
             "- human: display duplicates in human readable messages (default)\n" +
             "- csv: display duplicates in CSV format\n" +
             "- json: display duplicates in JSON format").hasArg().build());
+        opts.addOption(buildOption(null, "largest-first", "Hash the largest files first, while the small ones fill the gaps.\n" +
+            "Avoid a big file found late to be hashed alone at the end of the scan").build());
+        opts.addOption(buildOption(null, "direct-io", "Read the files without mapping them, and bypass the page cache when the JVM supports it (Java 10+).\n" +
+            "Avoid evicting the page cache of the other applications running on the host").build());
+        opts.addOption(buildOption(null, "throttle-bytes", "Maximum number of bytes read per second while hashing.\n" +
+            "Accepts the K, M and G suffixes. For example: --throttle-bytes 50M").hasArg().build());
+        opts.addOption(buildOption(null, "block-checksums", "Store a checksum of each 1 MB block of the files beside the State.\n" +
+            "Once stored, they are kept up to date by the next commits and 'detect-corruption' reports the corrupted byte ranges").build());
+        opts.addOption(buildOption(null, "full-scan", "Scan the whole repository instead of only the paths recorded into the change journal.\n" +
+            "The notifications are received asynchronously, so a change made just before may not be recorded yet").build());
+        opts.addOption(buildOption(null, "throttle-files", "Maximum number of files scanned per second").hasArg().build());
+        opts.addOption(buildOption(null, "stats-json", "Write a JSON report with the wall and CPU time, files and bytes of each phase of the command,\n" +
+            "the statistics of each hash thread and the peak heap usage").hasArg().build());
+        opts.addOption(buildOption(null, "small-file-threshold", "Files up to this size are read at once into a buffer instead of being mapped.\n" +
+            "Accepts the K and M suffixes, up to 10M. 0 disables it. Default: 64K").hasArg().build());
+        opts.addOption(buildOption(null, "path", "File whose history is displayed by the 'history' command").hasArg().build());
+        opts.addOption(buildOption(null, "hash", "Content hash whose history is displayed by the 'history' command").hasArg().build());
+        opts.addOption(buildOption(null, "from", "Number of the first State compared by the 'compare-states' command").hasArg().build());
+        opts.addOption(buildOption(null, "to", "Number of the second State compared by the 'compare-states' command. Default: the last State").hasArg().build());
         return opts;
     }
 
     protected void run(String[] args, Context context) throws Exception {
+        context.setPerformanceRecorder(new PerformanceRecorder());
+
         String[] filteredArgs = filterEmptyArgs(args);
         if (filteredArgs.length < 1) {
             youMustSpecifyACommandToRun(null);
@@ -187,18 +223,71 @@ public class Fim {
             context.setPurgeStates(commandLine.hasOption('p'));
             context.setAlwaysYes(commandLine.hasOption('y'));
             context.setDisplayStackTrace(commandLine.hasOption('e'));
+            context.setLargestFilesFirst(commandLine.hasOption("largest-first"));
+            context.setDirectIo(commandLine.hasOption("direct-io"));
+            context.setBlockChecksums(commandLine.hasOption("block-checksums"));
+            context.setFullScan(commandLine.hasOption("full-scan"));
+
+            if (commandLine.hasOption("throttle-bytes")) {
+                String throttleBytes = commandLine.getOptionValue("throttle-bytes");
+                try {
+                    long bytesPerSecond = FileUtil.parseByteCount(throttleBytes);
+                    if (bytesPerSecond <= 0) {
+                        Logger.error(String.format("Invalid byte count '%s'. It must be greater than 0", throttleBytes));
+                        throw new BadFimUsageException();
+                    }
+                    context.setThrottleBytesPerSecond(bytesPerSecond);
+                } catch (NumberFormatException ex) {
+                    Logger.error(String.format("Invalid byte count '%s'", throttleBytes));
+                    throw new BadFimUsageException();
+                }
+            }
+
+            if (commandLine.hasOption("throttle-files")) {
+                String throttleFiles = commandLine.getOptionValue("throttle-files");
+                try {
+                    int filesPerSecond = Integer.parseInt(throttleFiles);
+                    if (filesPerSecond <= 0) {
+                        Logger.error(String.format("Invalid file count '%s'. It must be greater than 0", throttleFiles));
+                        throw new BadFimUsageException();
+                    }
+                    context.setThrottleFilesPerSecond(filesPerSecond);
+                } catch (NumberFormatException ex) {
+                    Logger.error(String.format("Invalid file count '%s'", throttleFiles));
+                    throw new BadFimUsageException();
+                }
+            }
+
+            if (commandLine.hasOption("stats-json")) {
+                context.setStatsJsonFile(context.getWorkingDirectory().resolve(commandLine.getOptionValue("stats-json")).toAbsolutePath());
+            }
+
+            if (commandLine.hasOption("small-file-threshold")) {
+                String smallFileThreshold = commandLine.getOptionValue("small-file-threshold");
+                try {
+                    long threshold = FileUtil.parseByteCount(smallFileThreshold);
+                    if (threshold < 0 || threshold > _10_MB) {
+                        Logger.error(String.format("Invalid small file threshold '%s'. It cannot be bigger than 10M", smallFileThreshold));
+                        throw new BadFimUsageException();
+                    }
+                    context.setSmallFileThreshold((int) threshold);
+                } catch (NumberFormatException ex) {
+                    Logger.error(String.format("Invalid byte count '%s'", smallFileThreshold));
+                    throw new BadFimUsageException();
+                }
+            }
 
             if (commandLine.hasOption('M')) {
                 String masterFimRepositoryDir = commandLine.getOptionValue('M');
-                if (!Files.exists(Paths.get(masterFimRepositoryDir))) {
+                if (!Files.exists(context.getWorkingDirectory().resolve(masterFimRepositoryDir))) {
                     Logger.error(String.format("Master Fim repository directory '%s' does not exist", masterFimRepositoryDir));
                     throw new BadFimUsageException();
                 }
-                context.setMasterFimRepositoryDir(masterFimRepositoryDir);
+                context.setMasterFimRepositoryDir(context.getWorkingDirectory().resolve(masterFimRepositoryDir).toString());
             }
 
             if (commandLine.hasOption('d')) {
-                context.setCurrentDirectory(Paths.get(commandLine.getOptionValue('d')));
+                context.setCurrentDirectory(context.getWorkingDirectory().resolve(commandLine.getOptionValue('d')));
             }
 
             if (commandLine.hasOption('t')) {
@@ -266,6 +355,22 @@ public class Fim {
                 context.setExcludePatterns(excludePatterns);
             }
 
+            if (commandLine.hasOption("path")) {
+                context.setHistoryPath(commandLine.getOptionValue("path"));
+            }
+
+            if (commandLine.hasOption("hash")) {
+                context.setHistoryHash(commandLine.getOptionValue("hash"));
+            }
+
+            if (commandLine.hasOption("from")) {
+                context.setCompareFromState(parseStateNumber(commandLine.getOptionValue("from")));
+            }
+
+            if (commandLine.hasOption("to")) {
+                context.setCompareToState(parseStateNumber(commandLine.getOptionValue("to")));
+            }
+
             if (commandLine.hasOption("output-type")) {
                 String outputType = commandLine.getOptionValue("output-type");
                 try {
@@ -327,7 +432,37 @@ public class Fim {
             }
         }
 
-        command.execute(context.clone());
+        try {
+            command.execute(context.clone());
+        } finally {
+            writePerformanceReport(context, command);
+        }
+    }
+
+    private void writePerformanceReport(Context context, Command command) {
+        Path statsJsonFile = context.getStatsJsonFile();
+        if (statsJsonFile == null) {
+            return;
+        }
+
+        try {
+            context.getPerformanceRecorder().writeReport(statsJsonFile, command.getCmdName());
+        } catch (IOException ex) {
+            Logger.error(String.format("Unable to write the performance report into '%s'", statsJsonFile), ex, context.isDisplayStackTrace());
+        }
+    }
+
+    private int parseStateNumber(String stateNumber) throws BadFimUsageException {
+        try {
+            int number = Integer.parseInt(stateNumber);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException ex) {
+            // Reported below
+        }
+        Logger.error(String.format("Invalid State number '%s'", stateNumber));
+        throw new BadFimUsageException();
     }
 
     private void parseIgnored(Context context, String ignoredKinds) {
@@ -0,0 +1,177 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Thin client that forwards the command to the Fim server when one is running, and runs it in this process otherwise.
+ * A forwarded command neither builds the command line options nor loads the States, so it returns as soon as the server answers.
+ */
+public class FimClient {
+    // These commands read the standard input until its end, or never stop. They would hold the server
+    private static final Set<String> LOCAL_COMMANDS = new HashSet<>(Arrays.asList("watch", "w", "journal", "jnl", "server"));
+
+    public static void main(String[] args) throws Exception {
+        Integer exitCode = forward(FimServer.getDefaultServerFile(), args);
+        if (exitCode == null) {
+            Fim.main(args);
+        } else {
+            System.exit(exitCode);
+        }
+    }
+
+    /**
+     * @return the exit code of the command run by the server, or null if the command must be run locally
+     */
+    static Integer forward(Path serverFile, String[] args) {
+        List<String> filteredArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.length() > 0) {
+                filteredArgs.add(arg);
+            }
+        }
+        if (!filteredArgs.isEmpty() && LOCAL_COMMANDS.contains(filteredArgs.get(0))) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        Socket socket = FimServer.connect(serverFile, properties);
+        if (socket == null) {
+            return null;
+        }
+
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if (!handshake(socket, properties, out, in)) {
+                return null;
+            }
+
+            out.writeUTF(System.getProperty("user.dir"));
+            out.writeInt(filteredArgs.size());
+            for (String arg : filteredArgs) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+
+            startInputForwarder(out);
+            return readOutput(in);
+        } catch (IOException ex) {
+            System.err.println("Connection to the Fim server lost: " + ex.getMessage());
+            return 1;
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Nothing is run yet, so the command can still be run locally when the server does not accept it.
+     *
+     * @return true if the server accepted the token
+     */
+    private static boolean handshake(Socket socket, Properties properties, DataOutputStream out, DataInputStream in) {
+        try {
+            out.writeUTF(properties.getProperty(FimServer.TOKEN_PROPERTY, ""));
+            out.flush();
+
+            socket.setSoTimeout(FimServer.HANDSHAKE_TIMEOUT_MILLIS);
+            if (in.readByte() == FimServer.ACCEPTED) {
+                // The command can run as long as needed
+                socket.setSoTimeout(0);
+                return true;
+            }
+            System.err.println("The Fim server rejected the token of its server file, that was probably replaced by another server. " +
+                "Running the command without the server");
+        } catch (IOException ex) {
+            System.err.println("The Fim server does not answer (" + ex.getMessage() + "). Running the command without the server");
+        }
+        return false;
+    }
+
+    private static int readOutput(DataInputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (true) {
+            byte type = in.readByte();
+            if (type == FimServer.EXIT) {
+                System.out.flush();
+                return in.readInt();
+            }
+
+            int remaining = in.readInt();
+            while (remaining > 0) {
+                int count = in.read(buffer, 0, Math.min(buffer.length, remaining));
+                if (count < 0) {
+                    throw new IOException("Unexpected end of the output");
+                }
+                System.out.write(buffer, 0, count);
+                remaining -= count;
+            }
+            System.out.flush();
+        }
+    }
+
+    /**
+     * The command may ask questions, so the standard input is sent to the server while the command runs.
+     */
+    private static void startInputForwarder(DataOutputStream out) {
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            try {
+                int count;
+                while ((count = System.in.read(buffer)) >= 0) {
+                    synchronized (out) {
+                        out.writeByte(FimServer.INPUT);
+                        out.writeInt(count);
+                        out.write(buffer, 0, count);
+                        out.flush();
+                    }
+                }
+                synchronized (out) {
+                    out.writeByte(FimServer.INPUT_END);
+                    out.flush();
+                }
+            } catch (IOException ex) {
+                // The command is finished
+            }
+        }, "fim-client-input");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // Nothing to do
+        }
+    }
+}
@@ -0,0 +1,546 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim;
+
+import org.fim.command.exception.BadFimUsageException;
+import org.fim.command.exception.DontWantToContinueException;
+import org.fim.command.exception.RepositoryException;
+import org.fim.internal.RepositoryWatcher;
+import org.fim.internal.StateCache;
+import org.fim.model.Context;
+import org.fim.util.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.fim.model.HashMode.dontHash;
+
+/**
+ * Resident process that runs the Fim commands sent by FimClient, so that the JVM, the parsed States and the repository watchers stay warm.
+ * It listens on a loopback port written with a secret token into the server file, that only the current user can read.
+ * A client sends the token first, and the server answers whether it is accepted before the client sends the command.
+ * Each client is served by its own thread, but the commands are run one at a time, as they share the standard input of the process.
+ * What is logged is sent to the client whose command runs in the current thread, or in a thread it started.
+ * <p>
+ * The repositories where a command ran are watched, and the touched paths are recorded into their change journal.
+ * Once a State is committed, status and commit hash only the touched files.
+ * The watchers are started and refreshed in the background, each one under its own lock, so that they do not delay the commands.
+ */
+public class FimServer implements Closeable {
+    public static final String SERVER_FILE = ".fim-server";
+
+    static final String PORT_PROPERTY = "port";
+    static final String TOKEN_PROPERTY = "token";
+    static final byte OUTPUT = 'O';
+    static final byte EXIT = 'X';
+    static final byte INPUT = 'I';
+    static final byte INPUT_END = 'E';
+    static final byte ACCEPTED = 'A';
+    static final byte REJECTED = 'R';
+    static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final int MAX_CACHED_STATES = 16;
+    private static final long REFRESH_INTERVAL_MILLIS = 1000;
+
+    private final Fim fim;
+    private final Path serverFile;
+    private final boolean watchRepositories;
+    private final StateCache stateCache;
+    private final Map<Path, RepositoryWatcher> watchers;
+    private final Set<Path> watchedRootDirs;
+    private final Object commandLock;
+    private final ExecutorService clientExecutor;
+    private final ExecutorService watcherExecutor;
+    private final CommandOutput commandOutput;
+    private PrintStream serverOut;
+    private ServerSocket serverSocket;
+    private String token;
+    private volatile boolean closed;
+
+    public FimServer(Fim fim, Path serverFile, boolean watchRepositories) {
+        this.fim = fim;
+        this.serverFile = serverFile;
+        this.watchRepositories = watchRepositories;
+        this.stateCache = new StateCache(MAX_CACHED_STATES);
+        this.watchers = new ConcurrentHashMap<>();
+        this.watchedRootDirs = ConcurrentHashMap.newKeySet();
+        this.commandLock = new Object();
+        this.clientExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fim-server-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watcherExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fim-server-watcher-start");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.commandOutput = new CommandOutput();
+        this.closed = false;
+    }
+
+    /**
+     * @return the server file in the home directory of the current user
+     */
+    public static Path getDefaultServerFile() {
+        return Paths.get(System.getProperty("user.home"), SERVER_FILE);
+    }
+
+    /**
+     * @return true if a server answers on the port written into the server file
+     */
+    public static boolean isRunning(Path serverFile) {
+        Socket socket = connect(serverFile, new Properties());
+        if (socket == null) {
+            return false;
+        }
+        closeQuietly(socket);
+        return true;
+    }
+
+    /**
+     * @return a socket connected to the server, or null if no server is running. The properties of the server file are loaded into properties
+     */
+    static Socket connect(Path serverFile, Properties properties) {
+        if (!Files.exists(serverFile)) {
+            return null;
+        }
+
+        Socket socket = new Socket();
+        try (InputStream in = Files.newInputStream(serverFile)) {
+            properties.load(in);
+            int port = Integer.parseInt(properties.getProperty(PORT_PROPERTY));
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MILLIS);
+            return socket;
+        } catch (IOException | RuntimeException ex) {
+            closeQuietly(socket);
+            return null;
+        }
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        StringBuilder builder = new StringBuilder();
+        for (byte b : secret) {
+            builder.append(String.format("%02x", b));
+        }
+        token = builder.toString();
+
+        writeServerFile();
+
+        serverOut = Logger.out;
+        Logger.out = new PrintStream(commandOutput, false);
+
+        Thread refreshThread = new Thread(this::refreshWatchers, "fim-server-watchers");
+        refreshThread.setDaemon(true);
+        refreshThread.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accept the clients until the server is closed. Each client is served by its own thread,
+     * so that a client that does not send anything does not block the others.
+     */
+    public void run() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException ex) {
+                if (!closed) {
+                    Logger.error("Error accepting a client", ex, false);
+                }
+                continue;
+            }
+
+            try {
+                clientExecutor.execute(() -> {
+                    try (Socket client = socket) {
+                        serveClient(client);
+                    } catch (EOFException ex) {
+                        // The client closed the connection, for example isRunning()
+                    } catch (IOException ex) {
+                        Logger.error("Error serving a client", ex, false);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                // The server is closed
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Files.deleteIfExists(serverFile);
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        clientExecutor.shutdown();
+        watcherExecutor.shutdownNow();
+        for (RepositoryWatcher watcher : watchers.values()) {
+            watcher.close();
+        }
+        watchers.clear();
+        if (serverOut != null) {
+            Logger.out = serverOut;
+        }
+    }
+
+    private void writeServerFile() throws IOException {
+        Files.deleteIfExists(serverFile);
+        Files.createFile(serverFile);
+        try {
+            Files.setPosixFilePermissions(serverFile, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException ex) {
+            // Not a POSIX file system. The file is protected by the permissions of the home directory
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty(PORT_PROPERTY, Integer.toString(getPort()));
+        properties.setProperty(TOKEN_PROPERTY, token);
+        try (OutputStream out = Files.newOutputStream(serverFile)) {
+            properties.store(out, "Fim server");
+        }
+    }
+
+    private void serveClient(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        // A client that does not send its command in time is dropped
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+        byte[] clientToken = in.readUTF().getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(clientToken, token.getBytes(StandardCharsets.UTF_8))) {
+            out.writeByte(REJECTED);
+            out.flush();
+            return;
+        }
+        out.writeByte(ACCEPTED);
+        out.flush();
+
+        Path workingDirectory = Paths.get(in.readUTF());
+        int argCount = in.readInt();
+        String[] args = new String[argCount];
+        for (int index = 0; index < argCount; index++) {
+            args[index] = in.readUTF();
+        }
+
+        // The command can wait for the answer of the user as long as needed
+        socket.setSoTimeout(0);
+
+        PrintStream output = new PrintStream(new ClientOutputStream(out), false);
+        int exitCode = runCommand(workingDirectory, args, new ClientInputStream(in), output);
+        output.flush();
+        out.writeByte(EXIT);
+        out.writeInt(exitCode);
+        out.flush();
+
+        // Closing a socket whose input was not read resets the connection, which can drop the exit code before the client reads it.
+        // The input that the command did not read is skipped until the client closes the connection
+        socket.shutdownOutput();
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+        byte[] buffer = new byte[8192];
+        try {
+            while (in.read(buffer) >= 0) {
+                // Skipped
+            }
+        } catch (SocketTimeoutException ex) {
+            // The client did not close the connection
+        }
+    }
+
+    /**
+     * @return the exit code of the command, like the one of Fim.main()
+     */
+    private int runCommand(Path workingDirectory, String[] args, InputStream input, PrintStream output) {
+        Context context = new Context();
+        context.setWorkingDirectory(workingDirectory);
+        context.setCurrentDirectory(workingDirectory);
+        context.setStateCache(stateCache);
+        try {
+            synchronized (commandLock) {
+                InputStream previousIn = System.in;
+                int previousLevel = Logger.level;
+                commandOutput.set(output);
+                System.setIn(input);
+                try {
+                    fim.run(args, context);
+                    return 0;
+                } catch (DontWantToContinueException ex) {
+                    return 0;
+                } catch (BadFimUsageException ex) {
+                    return -1;
+                } catch (RepositoryException ex) {
+                    return -2;
+                } catch (Exception ex) {
+                    ex.printStackTrace(output);
+                    return 1;
+                } finally {
+                    output.flush();
+                    commandOutput.remove();
+                    Logger.level = previousLevel;
+                    System.setIn(previousIn);
+                }
+            }
+        } finally {
+            watchRepository(context);
+        }
+    }
+
+    /**
+     * Start watching the repository in the background. The initial scan of a big repository can last, and it must not delay
+     * the answer to the client nor the next commands.
+     */
+    private void watchRepository(Context context) {
+        Path rootDir = context.getRepositoryRootDir();
+        if (!watchRepositories || closed || !Files.isDirectory(context.getRepositoryStatesDir()) || !watchedRootDirs.add(rootDir)) {
+            return;
+        }
+
+        try {
+            watcherExecutor.execute(() -> startWatcher(rootDir));
+        } catch (RejectedExecutionException ex) {
+            // The server is closed
+            watchedRootDirs.remove(rootDir);
+        }
+    }
+
+    private void startWatcher(Path rootDir) {
+        // The thread may have been created by a client thread, whose output it inherited
+        commandOutput.remove();
+
+        // The watcher only records the touched paths, so the files do not need to be hashed
+        Context watcherContext = new Context();
+        watcherContext.setWorkingDirectory(rootDir);
+        watcherContext.setCurrentDirectory(rootDir);
+        watcherContext.setRepositoryRootDir(rootDir);
+        watcherContext.setHashMode(dontHash);
+        watcherContext.setThreadCount(1);
+        watcherContext.setDynamicScaling(false);
+        watcherContext.setVerbose(false);
+        RepositoryWatcher watcher = null;
+        try {
+            watcher = new RepositoryWatcher(watcherContext);
+            watcher.start();
+            watchers.put(rootDir, watcher);
+            Logger.info(String.format("Watching the repository %s", rootDir));
+        } catch (Exception ex) {
+            Logger.error(String.format("Unable to watch the repository %s", rootDir), ex, false);
+            closeQuietly(watcher);
+            watchedRootDirs.remove(rootDir);
+            return;
+        }
+
+        if (closed) {
+            // Closed during the initial scan
+            closeQuietly(watcher);
+            watchers.remove(rootDir);
+        }
+    }
+
+    private void refreshWatchers() {
+        while (!closed) {
+            try {
+                Thread.sleep(REFRESH_INTERVAL_MILLIS);
+                // Each watcher is refreshed under its own lock, so the commands are not blocked meanwhile
+                for (Map.Entry<Path, RepositoryWatcher> entry : watchers.entrySet()) {
+                    if (!Files.isDirectory(entry.getKey().resolve(Context.DOT_FIM_DIR))) {
+                        // The repository was removed
+                        entry.getValue().close();
+                        watchers.remove(entry.getKey(), entry.getValue());
+                        watchedRootDirs.remove(entry.getKey());
+                    } else if (entry.getValue().isSettled()) {
+                        entry.getValue().refresh();
+                    }
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } catch (Exception ex) {
+                Logger.error("Error refreshing the watched repositories", ex, false);
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ex) {
+            // Nothing to do
+        }
+    }
+
+    /**
+     * Sends what is logged to the output of the command that runs in the current thread, or in the thread that started it.
+     * The watchers run in threads of the server, so they log into the output of the server.
+     */
+    private class CommandOutput extends OutputStream {
+        private final InheritableThreadLocal<OutputStream> threadOutput = new InheritableThreadLocal<>();
+
+        void set(OutputStream output) {
+            threadOutput.set(output);
+        }
+
+        void remove() {
+            threadOutput.remove();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            getOutput().write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            getOutput().write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            getOutput().flush();
+        }
+
+        private OutputStream getOutput() {
+            OutputStream output = threadOutput.get();
+            return output == null ? serverOut : output;
+        }
+    }
+
+    /**
+     * Sends what the command prints to the client.
+     */
+    private static class ClientOutputStream extends OutputStream {
+        private final DataOutputStream out;
+
+        ClientOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.writeByte(OUTPUT);
+            out.writeInt(length);
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads the standard input that the client sends while the command runs.
+     */
+    private static class ClientInputStream extends InputStream {
+        private final DataInputStream in;
+        private int remaining;
+        private boolean ended;
+
+        ClientInputStream(DataInputStream in) {
+            this.in = in;
+            this.remaining = 0;
+            this.ended = false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] bytes = new byte[1];
+            int count = read(bytes, 0, 1);
+            return count <= 0 ? -1 : bytes[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+
+            while (remaining == 0) {
+                if (ended) {
+                    return -1;
+                }
+
+                byte type = in.readByte();
+                if (type == INPUT) {
+                    remaining = in.readInt();
+                } else {
+                    ended = true;
+                }
+            }
+
+            int count = in.read(bytes, offset, Math.min(length, remaining));
+            if (count < 0) {
+                ended = true;
+                remaining = 0;
+                return -1;
+            }
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return Math.min(remaining, in.available());
+        }
+    }
+}
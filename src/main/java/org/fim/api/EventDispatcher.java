@@ -0,0 +1,94 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.api;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Runs the events one at a time and in order, either on an Executor or in the calling thread.
+ * Once an event fails, the next ones are dropped, and the failure is given to the last task.
+ */
+class EventDispatcher {
+    private final Executor executor;
+    private final Queue<Runnable> tasks;
+    private boolean draining;
+    private volatile Throwable failure;
+
+    EventDispatcher(Executor executor) {
+        this.executor = executor;
+        this.tasks = new ArrayDeque<>();
+        this.draining = false;
+        this.failure = null;
+    }
+
+    void dispatch(Runnable event) {
+        submit(() -> {
+            if (failure != null) {
+                return;
+            }
+            try {
+                event.run();
+            } catch (RuntimeException | Error ex) {
+                failure = ex;
+            }
+        });
+    }
+
+    /**
+     * @param lastTask runs after all the events, with the failure of an event or null
+     */
+    void finish(Consumer<Throwable> lastTask) {
+        submit(() -> lastTask.accept(failure));
+    }
+
+    private void submit(Runnable task) {
+        if (executor == null) {
+            synchronized (tasks) {
+                task.run();
+            }
+            return;
+        }
+
+        synchronized (tasks) {
+            tasks.add(task);
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        executor.execute(this::drain);
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable task;
+            synchronized (tasks) {
+                task = tasks.poll();
+                if (task == null) {
+                    draining = false;
+                    return;
+                }
+            }
+            task.run();
+        }
+    }
+}
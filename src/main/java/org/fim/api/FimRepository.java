@@ -0,0 +1,233 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.api;
+
+import org.fim.internal.SettingsManager;
+import org.fim.internal.StateComparator;
+import org.fim.internal.StateGenerator;
+import org.fim.internal.StateManager;
+import org.fim.internal.StoredStateComparator;
+import org.fim.model.CompareResult;
+import org.fim.model.Context;
+import org.fim.model.Difference;
+import org.fim.model.FileState;
+import org.fim.model.HashMode;
+import org.fim.model.HistoryEntry;
+import org.fim.model.State;
+import org.fim.util.HashModeUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.fim.model.HashMode.dontHash;
+import static org.fim.model.HashMode.hashAll;
+
+/**
+ * Entry point to use Fim from another Java application, without going through the command line.
+ * A FimRepository is thread-safe, and several operations can run at the same time.
+ * <p>
+ * Fim still logs its progress through org.fim.util.Logger. Lower Logger.level to silence it.
+ */
+public class FimRepository {
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "fim-api-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path rootDir;
+
+    private FimRepository(Path rootDir) {
+        this.rootDir = rootDir;
+    }
+
+    /**
+     * @param rootDir the directory that contains the .fim directory
+     * @throws IllegalArgumentException if rootDir is not a Fim repository
+     */
+    public static FimRepository open(Path rootDir) {
+        Path normalizedRootDir = rootDir.toAbsolutePath().normalize();
+        if (!Files.isDirectory(normalizedRootDir.resolve(Context.DOT_FIM_DIR).resolve("states"))) {
+            throw new IllegalArgumentException(String.format("Directory %s is not a Fim repository", rootDir));
+        }
+        return new FimRepository(normalizedRootDir);
+    }
+
+    public Path getRootDir() {
+        return rootDir;
+    }
+
+    public CompletableFuture<CompareResult> status(StatusOptions options) {
+        return status(options, new StatusListener() {
+        });
+    }
+
+    /**
+     * Compare the current files with the last committed State, like 'fim status'.
+     * The listener receives the hashed files and the differences while the status runs. The future completes after the last call to the listener,
+     * or exceptionally if the status or the listener fails.
+     *
+     * @throws IllegalArgumentException if the sub-directory of the options is not inside the repository
+     */
+    public CompletableFuture<CompareResult> status(StatusOptions options, StatusListener listener) {
+        Context context = createContext(options);
+        EventDispatcher dispatcher = new EventDispatcher(options.getListenerExecutor());
+        CompletableFuture<CompareResult> future = new CompletableFuture<>();
+        Executor executor = options.getExecutor() != null ? options.getExecutor() : DEFAULT_EXECUTOR;
+        executor.execute(() -> {
+            try {
+                CompareResult result = runStatus(context, listener, dispatcher, options.getListenerExecutor() != null);
+                dispatcher.finish(failure -> {
+                    if (failure == null) {
+                        future.complete(result);
+                    } else {
+                        future.completeExceptionally(failure);
+                    }
+                });
+            } catch (Exception | Error ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Read only the history index, that is kept up to date by the commits, without loading the States.
+     *
+     * @param fileName the name of the file relative to the repository root, using '/' as separator
+     * @return the modifications of this file recorded by the States, including its renames and copies, oldest first
+     */
+    public List<HistoryEntry> history(String fileName) throws IOException {
+        return new StateManager(createContext()).loadHistoryIndex().findByFileName(fileName);
+    }
+
+    /**
+     * @param hash a small block, medium block or full hash, either as stored in the States or in hexadecimal
+     * @return the modifications that led to a file having this content, oldest first
+     */
+    public List<HistoryEntry> historyOfHash(String hash) throws IOException {
+        return new StateManager(createContext()).loadHistoryIndex().findByHash(hash);
+    }
+
+    /**
+     * Compare two committed States, like 'fim compare-states'. Only the State files are read, not the files of the repository.
+     * The future completes exceptionally with an IllegalStateException if a State does not exist or is corrupted.
+     *
+     * @return the differences found in the State toStateNumber, compared to the State fromStateNumber
+     */
+    public CompletableFuture<CompareResult> compareStates(int fromStateNumber, int toStateNumber) {
+        Context context = createContext();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return new StoredStateComparator(context, fromStateNumber, toStateNumber).compare();
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, DEFAULT_EXECUTOR);
+    }
+
+    private Context createContext() {
+        Context context = new Context();
+        context.setRepositoryRootDir(rootDir);
+        context.setWorkingDirectory(rootDir);
+        context.setCurrentDirectory(rootDir);
+        context.setVerbose(false);
+        context.setAlwaysYes(true);
+        return context;
+    }
+
+    private Context createContext(StatusOptions options) {
+        Context context = createContext();
+        if (options.getSubDirectory() != null) {
+            Path subDirectory = rootDir.resolve(options.getSubDirectory()).normalize();
+            if (!subDirectory.startsWith(rootDir)) {
+                throw new IllegalArgumentException(String.format("Directory %s is not inside the repository", options.getSubDirectory()));
+            }
+            context.setCurrentDirectory(subDirectory);
+            context.setInvokedFromSubDirectory(!subDirectory.equals(rootDir));
+        }
+        context.setIgnored(options.getIgnored());
+        context.setFullScan(options.isFullScan());
+        context.setThreadCount(options.getThreadCount());
+        context.setThreadCountSpecified(options.getThreadCount() > 0);
+        context.setDynamicScaling(options.getThreadCount() <= 0);
+
+        // Same rules as the commands
+        HashMode globalHashMode = new SettingsManager(context).getGlobalHashMode();
+        context.setHashMode(options.getHashMode());
+        if (globalHashMode != hashAll && !HashModeUtil.isCompatible(globalHashMode, options.getHashMode())) {
+            context.setHashMode(globalHashMode);
+        }
+        if (context.getHashMode() == dontHash) {
+            context.setThreadCount(1);
+            context.setDynamicScaling(false);
+        }
+        return context;
+    }
+
+    private CompareResult runStatus(Context context, StatusListener listener, EventDispatcher dispatcher, boolean asynchronousListener) throws Exception {
+        StateManager stateManager = new StateManager(context);
+        int lastStateNumber = stateManager.getLastStateNumber();
+        State lastState = stateManager.loadLastState();
+        if (context.isInvokedFromSubDirectory()) {
+            lastState = lastState.filterDirectory(context.getRepositoryRootDir(), context.getCurrentDirectory(), true);
+        }
+
+        Map<String, FileState> lastFileStates = new HashMap<>();
+        for (FileState fileState : lastState.getFileStates()) {
+            lastFileStates.put(fileState.getFileName(), fileState);
+        }
+
+        StateGenerator stateGenerator = new StateGenerator(context);
+        stateGenerator.setFileStateListener(fileState -> {
+            FileState lastFileState = lastFileStates.get(fileState.getFileName());
+            if (asynchronousListener) {
+                // The comparison modifies the FileStates while the listener may still be called with them
+                FileState fileStateCopy = fileState.clone();
+                FileState lastFileStateCopy = lastFileState == null ? null : lastFileState.clone();
+                dispatcher.dispatch(() -> listener.fileHashed(fileStateCopy, lastFileStateCopy));
+            } else {
+                dispatcher.dispatch(() -> listener.fileHashed(fileState, lastFileState));
+            }
+        });
+        State currentState = stateGenerator.generateStateFromJournal("", context.getRepositoryRootDir(), context.getCurrentDirectory(),
+            lastState, lastStateNumber);
+
+        CompareResult result = new StateComparator(context, lastState, currentState).compare();
+        for (List<Difference> differences : asList(result.getAdded(), result.getCopied(), result.getDuplicated(), result.getDateModified(),
+            result.getContentModified(), result.getAttributesModified(), result.getRenamed(), result.getDeleted(), result.getCorrupted())) {
+            for (Difference difference : differences) {
+                dispatcher.dispatch(() -> listener.differenceFound(difference));
+            }
+        }
+        return result;
+    }
+}
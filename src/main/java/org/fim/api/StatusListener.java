@@ -0,0 +1,43 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.api;
+
+import org.fim.model.Difference;
+import org.fim.model.FileState;
+
+/**
+ * Receives the results of a status while it runs. The calls are never concurrent, and are made in the order the results are produced.
+ * The given objects must not be modified.
+ */
+public interface StatusListener {
+    /**
+     * Called as soon as a file is hashed, before the scan is finished. When the change journal is used, only the touched files are hashed.
+     *
+     * @param lastFileState the FileState with the same name into the last State, or null if there is none
+     */
+    default void fileHashed(FileState fileState, FileState lastFileState) {
+    }
+
+    /**
+     * Called for each difference with the last State once the scan is finished, before the status completes.
+     * The kind of difference is given by difference.getFileState().getModification().
+     */
+    default void differenceFound(Difference difference) {
+    }
+}
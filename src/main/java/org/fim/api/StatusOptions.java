@@ -0,0 +1,125 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.api;
+
+import org.fim.model.HashMode;
+import org.fim.model.Ignored;
+
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+
+import static org.fim.model.HashMode.hashAll;
+
+/**
+ * Options of FimRepository.status(). By default, the whole repository is hashed with the hash mode of the repository.
+ */
+public class StatusOptions {
+    private HashMode hashMode;
+    private Ignored ignored;
+    private int threadCount;
+    private Path subDirectory;
+    private Executor executor;
+    private Executor listenerExecutor;
+    private boolean fullScan;
+
+    public StatusOptions() {
+        setHashMode(hashAll);
+        setIgnored(new Ignored());
+        setThreadCount(-1);
+        setSubDirectory(null);
+        setExecutor(null);
+        setListenerExecutor(null);
+        setFullScan(false);
+    }
+
+    public HashMode getHashMode() {
+        return hashMode;
+    }
+
+    /**
+     * The hash mode of the repository is used instead if it is not compatible
+     */
+    public void setHashMode(HashMode hashMode) {
+        this.hashMode = hashMode;
+    }
+
+    public Ignored getIgnored() {
+        return ignored;
+    }
+
+    public void setIgnored(Ignored ignored) {
+        this.ignored = ignored;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param threadCount number of hash threads, or -1 to adapt it to the disk throughput
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public Path getSubDirectory() {
+        return subDirectory;
+    }
+
+    /**
+     * @param subDirectory directory of the repository to check, like running 'fim status' from it, or null for the whole repository
+     */
+    public void setSubDirectory(Path subDirectory) {
+        this.subDirectory = subDirectory;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @param executor runs the status, or null to use a thread of Fim. The files are still hashed by the hash threads of Fim
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public Executor getListenerExecutor() {
+        return listenerExecutor;
+    }
+
+    /**
+     * @param listenerExecutor calls the StatusListener, or null to call it from the threads that produce the results
+     */
+    public void setListenerExecutor(Executor listenerExecutor) {
+        this.listenerExecutor = listenerExecutor;
+    }
+
+    public boolean isFullScan() {
+        return fullScan;
+    }
+
+    /**
+     * @param fullScan true to scan the whole repository, even if the change journal is complete.
+     *                 The journal may not contain yet a change that was made right before the status
+     */
+    public void setFullScan(boolean fullScan) {
+        this.fullScan = fullScan;
+    }
+}
@@ -20,11 +20,13 @@ package org.fim.command;
 
 import org.fim.command.exception.BadFimUsageException;
 import org.fim.command.exception.DontWantToContinueException;
+import org.fim.internal.ChangeJournal;
 import org.fim.internal.SettingsManager;
 import org.fim.internal.StateComparator;
 import org.fim.internal.StateGenerator;
 import org.fim.internal.StateManager;
 import org.fim.internal.StateReGenerator;
+import org.fim.model.BlockChecksums;
 import org.fim.model.CompareResult;
 import org.fim.model.Context;
 import org.fim.model.Difference;
@@ -35,6 +37,7 @@ import org.fim.model.ModificationCounts;
 import org.fim.model.State;
 import org.fim.util.Logger;
 
+import java.nio.file.Files;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
@@ -92,12 +95,21 @@ public class CommitCommand extends AbstractCommand {
         }
 
         manager = new StateManager(context);
-        State currentState = new StateGenerator(context).generateState(context.getComment(), context.getRepositoryRootDir(), context.getCurrentDirectory());
+        int lastStateNumber = manager.getLastStateNumber();
+        if (Files.exists(manager.getBlockChecksumsFile(lastStateNumber))) {
+            // Keep the block checksums up to date
+            context.setBlockChecksums(true);
+        }
+
+        // The paths touched while committing must stay into the journal
+        ChangeJournal journal = new ChangeJournal(context);
+        long journalPosition = journal.getPosition();
+
         State lastState = manager.loadLastState();
         State lastStateToCompare = lastState;
 
         if (context.isInvokedFromSubDirectory()) {
-            if (!lastState.getModelVersion().equals(currentState.getModelVersion())) {
+            if (!lastState.getModelVersion().equals(State.CURRENT_MODEL_VERSION)) {
                 Logger.error("Not able to incrementally commit into the last State that use a different model version.");
                 throw new BadFimUsageException();
             }
@@ -105,15 +117,37 @@ public class CommitCommand extends AbstractCommand {
             lastStateToCompare = lastState.filterDirectory(context.getRepositoryRootDir(), context.getCurrentDirectory(), true);
         }
 
+        StateGenerator stateGenerator = new StateGenerator(context);
+        State currentState = stateGenerator.generateStateFromJournal(context.getComment(), context.getRepositoryRootDir(), context.getCurrentDirectory(),
+            lastStateToCompare, lastStateNumber);
+        BlockChecksums blockChecksums = stateGenerator.getBlockChecksums();
+
         CompareResult result = new StateComparator(context, lastStateToCompare, currentState).compare();
         if (result.somethingModified()) {
-            commitModifications(context, currentState, lastState, result);
+            commitModifications(context, currentState, lastState, result, blockChecksums);
+
+            // A commit from a sub-directory does not contain the changes made elsewhere, so the journal stays on the previous State
+            if (journal.exists() && !context.isInvokedFromSubDirectory()) {
+                journal.recordCommit(manager.getLastStateNumber(), journalPosition);
+            }
+        } else {
+            if (blockChecksums != null && !Files.exists(manager.getBlockChecksumsFile(lastStateNumber))) {
+                // Block checksums requested for the first time on an unchanged repository
+                manager.saveBlockChecksums(lastStateNumber, lastState, blockChecksums);
+            }
+
+            // The files are the ones of the last State, provided that the comparison could see all the differences
+            if (journal.exists() && !context.isInvokedFromSubDirectory() && !context.getIgnored().somethingIgnored() &&
+                context.getHashMode() == lastState.getHashMode()) {
+                journal.recordCommit(lastStateNumber, journalPosition);
+            }
         }
         result.displayChanges("Nothing committed");
         return result;
     }
 
-    private void commitModifications(Context context, State originalCurrentState, State originalLastState, CompareResult result) throws Exception {
+    private void commitModifications(Context context, State originalCurrentState, State originalLastState, CompareResult result,
+                                     BlockChecksums blockChecksums) throws Exception {
         State currentState = originalCurrentState;
         State lastState = originalLastState;
 
@@ -132,7 +166,11 @@ public class CommitCommand extends AbstractCommand {
                 currentState.setHashMode(globalHashMode);
                 currentState.getCommitDetails().setHashModeUsedToGetTheStatus(initialHashMode);
                 lastState = manager.loadLastState();
-                retrieveMissingHash(context, currentState, lastState);
+                BlockChecksums reHashedBlockChecksums = retrieveMissingHash(context, currentState, lastState);
+                if (blockChecksums != null && reHashedBlockChecksums != null) {
+                    // The modified files are hashed again completely, the other ones keep the checksums of the last State
+                    blockChecksums.putAll(reHashedBlockChecksums);
+                }
             }
 
             if (context.isInvokedFromSubDirectory()) {
@@ -140,7 +178,7 @@ public class CommitCommand extends AbstractCommand {
                 setFromSubDirectory(context, currentState);
             }
 
-            manager.createNewState(currentState);
+            manager.createNewState(currentState, blockChecksums);
 
             if (context.isPurgeStates()) {
                 PurgeStatesCommand purgeStatesCommand = new PurgeStatesCommand();
@@ -158,7 +196,10 @@ public class CommitCommand extends AbstractCommand {
         currentState.getCommitDetails().setFromSubDirectory(fromSubDirectory);
     }
 
-    private void retrieveMissingHash(Context context, State currentState, State lastState) throws NoSuchAlgorithmException {
+    /**
+     * @return the block checksums of the files hashed again, or null if they are not enabled
+     */
+    private BlockChecksums retrieveMissingHash(Context context, State currentState, State lastState) throws NoSuchAlgorithmException {
         Map<String, FileState> lastFileStateMap = buildFileNamesMap(lastState.getFileStates());
 
         List<FileState> toReHash = new ArrayList<>();
@@ -179,6 +220,7 @@ public class CommitCommand extends AbstractCommand {
 
         StateReGenerator stateReGenerator = new StateReGenerator(context);
         stateReGenerator.reHashFiles(toReHash);
+        return stateReGenerator.getBlockChecksums();
     }
 
     private State createConsolidatedState(Context context, State lastState, State currentState) {
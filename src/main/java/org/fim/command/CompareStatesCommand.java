@@ -0,0 +1,86 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.command;
+
+import org.fim.command.exception.BadFimUsageException;
+import org.fim.internal.StateManager;
+import org.fim.internal.StoredStateComparator;
+import org.fim.model.CompareResult;
+import org.fim.model.Context;
+import org.fim.util.Logger;
+
+import java.nio.file.Files;
+
+import static org.fim.util.FormatUtil.formatDate;
+
+public class CompareStatesCommand extends AbstractCommand {
+    @Override
+    public String getCmdName() {
+        return "compare-states";
+    }
+
+    @Override
+    public String getShortCmdName() {
+        return "cst";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Compare the State given with '--from' with the State given with '--to', or with the last one.\n" +
+            "                                Only the State files are read, not the files of the repository";
+    }
+
+    @Override
+    public FimReposConstraint getFimReposConstraint() {
+        return FimReposConstraint.MUST_EXIST;
+    }
+
+    @Override
+    public Object execute(Context context) throws Exception {
+        if (context.getCompareFromState() == -1) {
+            Logger.error("You must specify the first State to compare with '--from'");
+            throw new BadFimUsageException();
+        }
+
+        StateManager stateManager = new StateManager(context);
+        int lastStateNumber = stateManager.getLastStateNumber();
+        if (lastStateNumber == -1) {
+            Logger.error("No State found");
+            return null;
+        }
+
+        int fromStateNumber = context.getCompareFromState();
+        int toStateNumber = context.getCompareToState() == -1 ? lastStateNumber : context.getCompareToState();
+        for (int stateNumber : new int[]{fromStateNumber, toStateNumber}) {
+            if (!Files.exists(stateManager.getStateFile(stateNumber))) {
+                Logger.error(String.format("State #%d does not exist", stateNumber));
+                throw new BadFimUsageException();
+            }
+        }
+
+        StoredStateComparator comparator = new StoredStateComparator(context, fromStateNumber, toStateNumber);
+        CompareResult result = comparator.compare();
+
+        Logger.out.printf("Comparing State #%d from %s with State #%d from %s%n", fromStateNumber, formatDate(comparator.getFromState().getTimestamp()),
+            toStateNumber, formatDate(comparator.getToState().getTimestamp()));
+        Logger.newLine();
+        result.displayChanges("Nothing modified");
+        return result;
+    }
+}
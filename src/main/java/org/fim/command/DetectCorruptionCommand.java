@@ -22,12 +22,31 @@ import org.fim.command.exception.BadFimUsageException;
 import org.fim.internal.StateComparator;
 import org.fim.internal.StateGenerator;
 import org.fim.internal.StateManager;
+import org.fim.internal.hash.BlockChecksumVerifier;
+import org.fim.model.BlockChecksums;
 import org.fim.model.CompareResult;
 import org.fim.model.Context;
+import org.fim.model.Difference;
+import org.fim.model.FileBlockChecksums;
+import org.fim.model.FileState;
+import org.fim.model.FileTime;
 import org.fim.model.State;
 import org.fim.util.Logger;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.atteo.evo.inflector.English.plural;
 import static org.fim.model.HashMode.hashAll;
+import static org.fim.model.Modification.deleted;
+import static org.fim.util.FileUtil.byteCountToDisplaySize;
 
 public class DetectCorruptionCommand extends AbstractCommand {
     @Override
@@ -55,15 +74,92 @@ public class DetectCorruptionCommand extends AbstractCommand {
 
         checkHashMode(context, Option.ALLOW_COMPATIBLE);
 
-        State currentState = new StateGenerator(context).generateState("", context.getRepositoryRootDir(), context.getCurrentDirectory());
-        State lastState = new StateManager(context).loadLastState();
+        StateManager stateManager = new StateManager(context);
+        State lastState = stateManager.loadLastState();
 
         if (context.isInvokedFromSubDirectory()) {
             lastState = lastState.filterDirectory(context.getRepositoryRootDir(), context.getCurrentDirectory(), true);
         }
 
+        StateGenerator stateGenerator = new StateGenerator(context);
+        State currentState;
+        BlockChecksums lastBlockChecksums = stateManager.loadBlockChecksums(stateManager.getLastStateNumber());
+        if (lastBlockChecksums != null) {
+            context.setBlockChecksums(true);
+        }
+        if (lastBlockChecksums != null && lastState.getHashMode() == hashAll && State.CURRENT_MODEL_VERSION.equals(lastState.getModelVersion())) {
+            currentState = generateStateUsingBlockChecksums(context, stateGenerator, lastState, lastBlockChecksums);
+        } else {
+            currentState = stateGenerator.generateState("", context.getRepositoryRootDir(), context.getCurrentDirectory());
+        }
+
         CompareResult result = new StateComparator(context, lastState, currentState).searchForHardwareCorruption().compare();
         result.displayChanges("Nothing corrupted");
+
+        if (lastBlockChecksums != null) {
+            displayCorruptedRanges(result.getCorrupted(), lastBlockChecksums, stateGenerator.getBlockChecksums());
+        }
         return result;
     }
+
+    /**
+     * Check block by block the files that can be corrupted, that is the ones with the same dates as in the last State.
+     * Only the files that do not match their block checksums, or that have none, are hashed again.
+     * The others keep their FileState from the last State.
+     */
+    private State generateStateUsingBlockChecksums(Context context, StateGenerator stateGenerator, State lastState,
+                                                   BlockChecksums lastBlockChecksums) throws NoSuchAlgorithmException {
+        Path rootDir = context.getRepositoryRootDir();
+        BlockChecksumVerifier verifier = new BlockChecksumVerifier();
+        List<Path> filesToHash = new ArrayList<>();
+        int verifiedCount = 0;
+        for (FileState fileState : lastState.getFileStates()) {
+            if (fileState.getModification() == deleted) {
+                continue;
+            }
+
+            Path file = rootDir.resolve(fileState.getFileName());
+            FileBlockChecksums checksums = lastBlockChecksums.get(fileState);
+            if (checksums == null) {
+                filesToHash.add(file);
+                continue;
+            }
+
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!new FileTime(attributes).equals(fileState.getFileTime())) {
+                    // A content modified with its dates is not a corruption
+                    continue;
+                }
+
+                verifiedCount++;
+                if (verifier.findFirstMismatchingBlock(file, checksums) >= 0) {
+                    filesToHash.add(file);
+                }
+            } catch (NoSuchFileException ex) {
+                // Deleted since the last State
+            } catch (IOException ex) {
+                filesToHash.add(file);
+            }
+        }
+
+        Logger.info(String.format("Checked %d %s against their block checksums, %s read", verifiedCount, plural("file", verifiedCount),
+            byteCountToDisplaySize(verifier.getBytesRead())));
+        return stateGenerator.generateState("", rootDir, context.getCurrentDirectory(), lastState, filesToHash);
+    }
+
+    private void displayCorruptedRanges(List<Difference> corrupted, BlockChecksums lastBlockChecksums, BlockChecksums currentBlockChecksums) {
+        for (Difference difference : corrupted) {
+            FileBlockChecksums lastChecksums = lastBlockChecksums.get(difference.getPreviousFileState());
+            FileBlockChecksums currentChecksums = currentBlockChecksums.get(difference.getFileState());
+            if (lastChecksums == null || currentChecksums == null) {
+                continue;
+            }
+
+            String ranges = lastChecksums.getMismatchingRanges(currentChecksums).stream()
+                .map(range -> String.format("%d-%d", range.getFrom(), range.getTo()))
+                .collect(Collectors.joining(", "));
+            Logger.out.printf("Corrupted byte ranges of %s: %s%n", difference.getFileState().getFileName(), ranges);
+        }
+    }
 }
@@ -0,0 +1,67 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.command;
+
+import org.fim.command.exception.BadFimUsageException;
+import org.fim.internal.SharedChunksFinder;
+import org.fim.internal.StateGenerator;
+import org.fim.model.Context;
+import org.fim.model.SharedChunksResult;
+import org.fim.util.Logger;
+
+import static org.fim.model.HashMode.hashAll;
+
+public class FindSharedChunksCommand extends AbstractCommand {
+    @Override
+    public String getCmdName() {
+        return "find-shared-chunks";
+    }
+
+    @Override
+    public String getShortCmdName() {
+        return "fsc";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Estimate the content shared between files and directories, even when they are not exact duplicates.\n" +
+            "                                Files are split into content-defined chunks that are compared";
+    }
+
+    @Override
+    public Object execute(Context context) throws Exception {
+        if (context.getHashMode() != hashAll) {
+            Logger.error("Finding shared chunks require to hash all the file content.");
+            throw new BadFimUsageException();
+        }
+
+        checkHashMode(context, Option.ALLOW_COMPATIBLE);
+
+        Logger.info("Searching for shared chunks");
+        Logger.newLine();
+
+        context.setContentDefinedChunking(true);
+        StateGenerator stateGenerator = new StateGenerator(context);
+        stateGenerator.generateState("", context.getRepositoryRootDir(), context.getCurrentDirectory());
+
+        SharedChunksResult result = new SharedChunksFinder(context).findSharedChunks(stateGenerator.getChunkIndex());
+        result.displaySharedChunks();
+        return result;
+    }
+}
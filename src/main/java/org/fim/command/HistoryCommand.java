@@ -0,0 +1,140 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.command;
+
+import org.fim.command.exception.BadFimUsageException;
+import org.fim.internal.StateManager;
+import org.fim.model.Context;
+import org.fim.model.HistoryEntry;
+import org.fim.model.HistoryIndex;
+import org.fim.util.FileUtil;
+import org.fim.util.Logger;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.fim.util.FormatUtil.formatDate;
+
+public class HistoryCommand extends AbstractCommand {
+    @Override
+    public String getCmdName() {
+        return "history";
+    }
+
+    @Override
+    public String getShortCmdName() {
+        return "hist";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Display the States that modified the file given with '--path', or that recorded the content given with '--hash'.\n" +
+            "                                Uses the history index, without loading the States";
+    }
+
+    @Override
+    public FimReposConstraint getFimReposConstraint() {
+        return FimReposConstraint.MUST_EXIST;
+    }
+
+    @Override
+    public Object execute(Context context) throws Exception {
+        if ((context.getHistoryPath() == null) == (context.getHistoryHash() == null)) {
+            Logger.error("You must specify either '--path' or '--hash'");
+            throw new BadFimUsageException();
+        }
+
+        StateManager stateManager = new StateManager(context);
+        if (stateManager.getLastStateNumber() == -1) {
+            Logger.error("No State found");
+            return null;
+        }
+
+        HistoryIndex historyIndex = stateManager.loadHistoryIndex();
+        List<HistoryEntry> entries;
+        String searched;
+        if (context.getHistoryPath() != null) {
+            searched = getFileName(context, context.getHistoryPath());
+            entries = historyIndex.findByFileName(searched);
+        } else {
+            searched = context.getHistoryHash();
+            entries = historyIndex.findByHash(searched);
+        }
+
+        if (entries.isEmpty()) {
+            Logger.info(String.format("No modification of '%s' found", searched));
+            return entries;
+        }
+
+        for (HistoryEntry entry : entries) {
+            Logger.out.printf("- State #%d: %s  %-17s %s%n", entry.getStateNumber(), formatDate(entry.getTimestamp()),
+                getModificationLabel(entry), formatFileNames(entry));
+        }
+        return entries;
+    }
+
+    private String getFileName(Context context, String historyPath) throws BadFimUsageException {
+        Path file = context.getWorkingDirectory().resolve(historyPath).toAbsolutePath().normalize();
+        Path rootDir = context.getRepositoryRootDir();
+        if (!file.startsWith(rootDir) || file.equals(rootDir)) {
+            Logger.error(String.format("The file '%s' is not inside the Fim repository", historyPath));
+            throw new BadFimUsageException();
+        }
+        return FileUtil.getRelativeFileName(FileUtil.getNormalizedFileName(rootDir), FileUtil.getNormalizedFileName(file));
+    }
+
+    private String getModificationLabel(HistoryEntry entry) {
+        switch (entry.getModification()) {
+            case added:
+                return "Added:";
+            case copied:
+                return "Copied:";
+            case duplicated:
+                return "Duplicated:";
+            case dateModified:
+                return "Date modified:";
+            case contentModified:
+                return "Content modified:";
+            case attributesModified:
+                return "Attrs. modified:";
+            case renamed:
+                return "Renamed:";
+            case deleted:
+                return "Deleted:";
+            case corrupted:
+                return "Corrupted?:";
+            default:
+                return entry.getModification() + ":";
+        }
+    }
+
+    private String formatFileNames(HistoryEntry entry) {
+        if (entry.getPreviousFileName() == null) {
+            return entry.getFileName();
+        }
+        switch (entry.getModification()) {
+            case renamed:
+                return entry.getPreviousFileName() + " -> " + entry.getFileName();
+            case duplicated:
+                return entry.getFileName() + " = " + entry.getPreviousFileName();
+            default:
+                return entry.getFileName() + " \t(was " + entry.getPreviousFileName() + ")";
+        }
+    }
+}
@@ -69,14 +69,15 @@ public class InitCommand extends AbstractCommand {
         if (comment.length() == 0) {
             comment = "Initial State";
         }
-        State currentState = new StateGenerator(context).generateState(comment, context.getCurrentDirectory(), context.getCurrentDirectory());
+        StateGenerator stateGenerator = new StateGenerator(context);
+        State currentState = stateGenerator.generateState(comment, context.getCurrentDirectory(), context.getCurrentDirectory());
 
         CompareResult result = new StateComparator(context, null, currentState).compare();
         currentState.setModificationCounts(result.getModificationCounts());
 
         createRepository(context);
 
-        new StateManager(context).createNewState(currentState);
+        new StateManager(context).createNewState(currentState, stateGenerator.getBlockChecksums());
 
         result.displayChanges();
         Logger.out.println("Repository initialized");
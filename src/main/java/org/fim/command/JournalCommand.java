@@ -0,0 +1,82 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.command;
+
+import org.fim.command.exception.BadFimUsageException;
+import org.fim.internal.ChangeJournal;
+import org.fim.model.Context;
+import org.fim.util.Logger;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class JournalCommand extends AbstractCommand {
+    @Override
+    public String getCmdName() {
+        return "journal";
+    }
+
+    @Override
+    public String getShortCmdName() {
+        return "jnl";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Record into the change journal the paths read from the standard input, one per line.\n" +
+            "                                Must be fed with all the changes of the repository, for example by inotifywait or fswatch.\n" +
+            "                                Status and commit then hash only the touched paths";
+    }
+
+    @Override
+    public Object execute(Context context) throws Exception {
+        if (context.isInvokedFromSubDirectory()) {
+            Logger.error("The change journal must contain the changes of the whole repository. Run it from the repository root");
+            throw new BadFimUsageException();
+        }
+
+        ChangeJournal journal = new ChangeJournal(context);
+        journal.startSession();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Record the lines that are already available at once
+                List<Path> touchedPaths = new ArrayList<>();
+                addTouchedPath(context, touchedPaths, line);
+                while (reader.ready() && (line = reader.readLine()) != null) {
+                    addTouchedPath(context, touchedPaths, line);
+                }
+                journal.recordTouched(touchedPaths);
+            }
+        } finally {
+            journal.stopSession();
+        }
+        return null;
+    }
+
+    private void addTouchedPath(Context context, List<Path> touchedPaths, String line) {
+        if (!line.isEmpty()) {
+            touchedPaths.add(context.getCurrentDirectory().resolve(line).toAbsolutePath().normalize());
+        }
+    }
+}
@@ -22,7 +22,7 @@ import org.fim.internal.StateManager;
 import org.fim.model.Context;
 import org.fim.model.LogEntry;
 import org.fim.model.LogResult;
-import org.fim.model.State;
+import org.fim.model.StateSummary;
 import org.fim.util.Logger;
 
 import java.nio.file.Files;
@@ -58,8 +58,8 @@ public class LogCommand extends AbstractCommand {
         for (int stateNumber = 1; stateNumber <= lastStateNumber; stateNumber++) {
             Path statFile = stateManager.getStateFile(stateNumber);
             if (Files.exists(statFile)) {
-                State state = stateManager.loadState(stateNumber, false);
-                LogEntry logEntry = new LogEntry(context, state, stateNumber);
+                StateSummary summary = stateManager.loadStateSummary(stateNumber);
+                LogEntry logEntry = new LogEntry(context, summary, stateNumber);
 
                 logEntry.displayEntryHeader();
                 Logger.newLine();
@@ -76,8 +76,10 @@ public class PurgeStatesCommand extends AbstractCommand {
             Logger.out.printf("You are going to delete the %d previous State %s, keeping only the last one%n",
                 statesPurgedCount, plural("file", statesPurgedCount));
             if (confirmAction(context, "remove them")) {
-                for (Path stateToDelete : statesToPurge) {
-                    Files.delete(stateToDelete);
+                for (int stateNumber = 1; stateNumber <= statesToPurge.size(); stateNumber++) {
+                    Files.delete(statesToPurge.get(stateNumber - 1));
+                    Files.deleteIfExists(stateManager.getBlockChecksumsFile(stateNumber));
+                    Files.deleteIfExists(stateManager.getStateSummaryFile(stateNumber));
                 }
             }
         }
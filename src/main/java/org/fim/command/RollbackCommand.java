@@ -21,7 +21,7 @@ package org.fim.command;
 import org.fim.internal.StateManager;
 import org.fim.model.Context;
 import org.fim.model.LogEntry;
-import org.fim.model.State;
+import org.fim.model.StateSummary;
 import org.fim.util.Logger;
 
 import java.io.IOException;
@@ -67,6 +67,8 @@ public class RollbackCommand extends AbstractCommand {
 
             if (confirmAction(context, "remove it")) {
                 Files.delete(stateFile);
+                Files.deleteIfExists(stateManager.getBlockChecksumsFile(lastStateNumber));
+                Files.deleteIfExists(stateManager.getStateSummaryFile(lastStateNumber));
 
                 stateManager.saveLastStateNumber(lastStateNumber - 1);
             }
@@ -75,8 +77,8 @@ public class RollbackCommand extends AbstractCommand {
     }
 
     private void displayStateSummary(Context context, StateManager stateManager, int stateNumber) throws IOException {
-        State state = stateManager.loadState(stateNumber, false);
-        LogEntry logEntry = new LogEntry(context, state, stateNumber);
+        StateSummary summary = stateManager.loadStateSummary(stateNumber);
+        LogEntry logEntry = new LogEntry(context, summary, stateNumber);
 
         Logger.newLine();
         logEntry.displayEntryHeader();
@@ -0,0 +1,80 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.command;
+
+import org.fim.Fim;
+import org.fim.FimServer;
+import org.fim.command.exception.BadFimUsageException;
+import org.fim.model.Context;
+import org.fim.util.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class ServerCommand extends AbstractCommand {
+    private final Fim fim;
+
+    public ServerCommand(Fim fim) {
+        this.fim = fim;
+    }
+
+    @Override
+    public String getCmdName() {
+        return "server";
+    }
+
+    @Override
+    public String getShortCmdName() {
+        return "";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Start a resident Fim server that runs the commands of the 'fim' script until it is stopped.\n" +
+            "                                The loaded States are kept in memory and the used repositories are watched";
+    }
+
+    @Override
+    public FimReposConstraint getFimReposConstraint() {
+        return FimReposConstraint.DONT_CARE;
+    }
+
+    @Override
+    public Object execute(Context context) throws Exception {
+        Path serverFile = FimServer.getDefaultServerFile();
+        if (FimServer.isRunning(serverFile)) {
+            Logger.error(String.format("A Fim server is already running. Stop it or remove the '%s' file", serverFile));
+            throw new BadFimUsageException();
+        }
+
+        FimServer server = new FimServer(fim, serverFile, true);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException ex) {
+                Logger.error("Error stopping the Fim server", ex, context.isDisplayStackTrace());
+            }
+        }, "fim-server-shutdown"));
+
+        Logger.info(String.format("Fim server listening on port %d. Stop it with Ctrl+C", server.getPort()));
+        server.run();
+        return null;
+    }
+}
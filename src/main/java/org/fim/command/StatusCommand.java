@@ -46,13 +46,17 @@ public class StatusCommand extends AbstractCommand {
     public Object execute(Context context) throws Exception {
         checkHashMode(context, Option.ALLOW_COMPATIBLE);
 
-        State currentState = new StateGenerator(context).generateState("", context.getRepositoryRootDir(), context.getCurrentDirectory());
-        State lastState = new StateManager(context).loadLastState();
+        StateManager stateManager = new StateManager(context);
+        int lastStateNumber = stateManager.getLastStateNumber();
+        State lastState = stateManager.loadLastState();
 
         if (context.isInvokedFromSubDirectory()) {
             lastState = lastState.filterDirectory(context.getRepositoryRootDir(), context.getCurrentDirectory(), true);
         }
 
+        State currentState = new StateGenerator(context).generateStateFromJournal("", context.getRepositoryRootDir(), context.getCurrentDirectory(),
+            lastState, lastStateNumber);
+
         CompareResult result = new StateComparator(context, lastState, currentState).compare();
         result.displayChanges("Nothing modified");
         return result;
@@ -0,0 +1,106 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.command;
+
+import org.fim.internal.RepositoryWatcher;
+import org.fim.model.CompareResult;
+import org.fim.model.Context;
+import org.fim.util.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import static org.atteo.evo.inflector.English.plural;
+
+public class WatchCommand extends AbstractCommand {
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private volatile boolean stopRequested;
+
+    @Override
+    public String getCmdName() {
+        return "watch";
+    }
+
+    @Override
+    public String getShortCmdName() {
+        return "w";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Watch the current directory and display the changes as soon as they happen.\n" +
+            "                                Only the touched files are hashed again";
+    }
+
+    @Override
+    public Object execute(Context context) throws Exception {
+        checkHashMode(context, Option.ALLOW_COMPATIBLE);
+
+        stopRequested = false;
+        try (RepositoryWatcher watcher = new RepositoryWatcher(context)) {
+            watcher.start();
+            int directoryCount = watcher.getWatchedDirectoryCount();
+            Logger.info(String.format("Watching %d %s. Type 'status' to display the changes, 'quit' to stop", directoryCount, plural("directory", directoryCount)));
+            displayChanges(watcher);
+
+            startCommandReader(watcher);
+            while (!stopRequested) {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+                if (watcher.isSettled() && watcher.refresh()) {
+                    displayChanges(watcher);
+                }
+            }
+        }
+        return null;
+    }
+
+    private synchronized void displayChanges(RepositoryWatcher watcher) throws Exception {
+        CompareResult result = watcher.status();
+        result.displayChanges("Nothing modified");
+    }
+
+    /**
+     * Read the commands typed while watching. When the standard input is closed, Fim keeps watching until it is stopped.
+     */
+    private void startCommandReader(RepositoryWatcher watcher) {
+        Thread thread = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in))) {
+                String line;
+                while (!stopRequested && (line = reader.readLine()) != null) {
+                    String command = line.trim();
+                    if ("status".equals(command) || "st".equals(command)) {
+                        displayChanges(watcher);
+                    } else if ("quit".equals(command) || "q".equals(command) || "exit".equals(command)) {
+                        stopRequested = true;
+                    } else if (!command.isEmpty()) {
+                        Logger.warning(String.format("Unknown command '%s'. Type 'status' or 'quit'", command));
+                    }
+                }
+            } catch (IOException ex) {
+                Logger.error("Unable to read the commands", ex, false);
+            } catch (Exception ex) {
+                Logger.error("Exception while displaying the changes", ex, false);
+            }
+        }, "fim-watch-commands");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal;
+
+import org.fim.command.exception.RepositoryException;
+import org.fim.model.Context;
+import org.fim.util.FileUtil;
+import org.fim.util.Logger;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only journal of the paths touched since the last committed State, stored into .fim/journal.
+ * It is written by the processes that watch the repository, and read by status and commit to scan only the touched paths.
+ * <p>
+ * Each line is one of:
+ * <ul>
+ * <li>start &lt;session&gt;: a writer starts recording the changes</li>
+ * <li>stop &lt;session&gt;: a writer stops recording the changes</li>
+ * <li>base &lt;stateNumber&gt;: the following paths are the ones touched since this State</li>
+ * <li>touched &lt;path&gt;: a path relative to the repository root that was created, modified or deleted</li>
+ * <li>gap: some changes were not recorded</li>
+ * </ul>
+ * The journal is complete for a State if one writer was recording when its base line was written, and is still recording.
+ * Each writer holds a lock on its own session file while recording, so a writer that was killed is detected.
+ */
+public class ChangeJournal {
+    public static final String JOURNAL_FILE = "journal";
+
+    private static final String LOCK_FILE = "journal.lock";
+    private static final String START = "start";
+    private static final String STOP = "stop";
+    private static final String BASE = "base";
+    private static final String TOUCHED = "touched";
+    private static final String GAP = "gap";
+
+    // FileLocks are held by the whole JVM, so the threads of the same JVM are serialized before locking the file
+    private static final Object JVM_LOCK = new Object();
+
+    // Closing any channel on a file releases all the locks this JVM holds on it, so the sessions of this JVM are never probed
+    private static final Set<String> JVM_SESSIONS = ConcurrentHashMap.newKeySet();
+
+    private final Context context;
+    private final Path journalFile;
+    private final Path lockFile;
+    private final String normalizedRootDir;
+
+    private String session;
+    private FileChannel sessionChannel;
+    private FileLock sessionLock;
+
+    public ChangeJournal(Context context) {
+        this.context = context;
+        this.journalFile = context.getRepositoryDotFimDir().resolve(JOURNAL_FILE);
+        this.lockFile = context.getRepositoryDotFimDir().resolve(LOCK_FILE);
+        this.normalizedRootDir = FileUtil.getNormalizedFileName(context.getRepositoryRootDir());
+    }
+
+    public boolean exists() {
+        return Files.exists(journalFile);
+    }
+
+    /**
+     * @return the current size of the journal. Lines appended after it are kept when a commit compacts the journal
+     */
+    public long getPosition() {
+        try {
+            return Files.size(journalFile);
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Start recording the changes. The changes that happened before are unknown, so the journal is complete only from the next commit,
+     * or from the next call to recordBase().
+     */
+    public void startSession() {
+        session = UUID.randomUUID().toString();
+        try {
+            sessionChannel = FileChannel.open(getSessionFile(session), CREATE, WRITE);
+            sessionLock = sessionChannel.lock();
+        } catch (IOException ex) {
+            throw new RepositoryException("Error starting to record the changes", ex);
+        }
+        JVM_SESSIONS.add(session);
+        append(Collections.singletonList(START + " " + session));
+    }
+
+    public void stopSession() {
+        if (session == null) {
+            return;
+        }
+
+        append(Collections.singletonList(STOP + " " + session));
+        JVM_SESSIONS.remove(session);
+        try {
+            sessionLock.release();
+            sessionChannel.close();
+            Files.deleteIfExists(getSessionFile(session));
+        } catch (IOException ex) {
+            Logger.error("Error stopping to record the changes", ex, context.isDisplayStackTrace());
+        }
+        session = null;
+    }
+
+    /**
+     * Record that the current files are the ones of the State stateNumber, plus the touched paths.
+     */
+    public void recordBase(int stateNumber, Collection<Path> touchedPaths) {
+        List<String> lines = new ArrayList<>();
+        lines.add(BASE + " " + stateNumber);
+        lines.addAll(toTouchedLines(touchedPaths));
+        append(lines);
+    }
+
+    public void recordTouched(Collection<Path> touchedPaths) {
+        List<String> lines = toTouchedLines(touchedPaths);
+        if (!lines.isEmpty()) {
+            append(lines);
+        }
+    }
+
+    public void recordGap() {
+        append(Collections.singletonList(GAP));
+    }
+
+    /**
+     * Restart the journal from the State that was just committed. The sessions that are still recording are kept,
+     * and so are the lines appended after position, as the commit may have scanned the files before they were touched.
+     */
+    public void recordCommit(int stateNumber, long position) {
+        synchronized (JVM_LOCK) {
+            try (FileChannel lockChannel = FileChannel.open(lockFile, CREATE, WRITE)) {
+                // Released when the channel is closed
+                lockChannel.lock();
+                List<String> lines = readLines();
+                long lineStart = 0;
+                Set<String> activeSessions = new LinkedHashSet<>();
+                List<String> keptLines = new ArrayList<>();
+                for (String line : lines) {
+                    if (lineStart < position) {
+                        if (line.startsWith(START + " ")) {
+                            activeSessions.add(line.substring(START.length() + 1));
+                        } else if (line.startsWith(STOP + " ")) {
+                            activeSessions.remove(line.substring(STOP.length() + 1));
+                        }
+                    } else if (!line.startsWith(BASE + " ")) {
+                        keptLines.add(line);
+                    }
+                    lineStart += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                }
+
+                List<String> newLines = new ArrayList<>();
+                for (String activeSession : activeSessions) {
+                    if (isSessionAlive(activeSession)) {
+                        newLines.add(START + " " + activeSession);
+                    } else {
+                        // Killed while recording
+                        Files.deleteIfExists(getSessionFile(activeSession));
+                    }
+                }
+                newLines.add(BASE + " " + stateNumber);
+                newLines.addAll(keptLines);
+
+                Path newJournalFile = journalFile.resolveSibling(JOURNAL_FILE + ".tmp");
+                Files.write(newJournalFile, newLines, StandardCharsets.UTF_8);
+                Files.move(newJournalFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                Logger.error("Error updating the change journal", ex, context.isDisplayStackTrace());
+            }
+        }
+    }
+
+    /**
+     * @return the touched paths since the State stateNumber, or null if the journal is not complete for this State
+     */
+    public Set<Path> readTouchedPaths(int stateNumber) {
+        List<String> lines;
+        synchronized (JVM_LOCK) {
+            try (FileChannel lockChannel = FileChannel.open(lockFile, CREATE, WRITE)) {
+                // Released when the channel is closed
+                lockChannel.lock();
+                lines = readLines();
+            } catch (IOException ex) {
+                Logger.warning("Unable to read the change journal: " + ex.getMessage());
+                return null;
+            }
+        }
+
+        Set<String> activeSessions = new LinkedHashSet<>();
+        Set<String> coveringSessions = null;
+        Set<Path> touchedPaths = new LinkedHashSet<>();
+        for (String line : lines) {
+            if (line.startsWith(START + " ")) {
+                activeSessions.add(line.substring(START.length() + 1));
+            } else if (line.startsWith(STOP + " ")) {
+                String stoppedSession = line.substring(STOP.length() + 1);
+                activeSessions.remove(stoppedSession);
+                if (coveringSessions != null) {
+                    coveringSessions.remove(stoppedSession);
+                }
+            } else if (line.startsWith(BASE + " ")) {
+                if (Integer.toString(stateNumber).equals(line.substring(BASE.length() + 1))) {
+                    coveringSessions = new LinkedHashSet<>(activeSessions);
+                    touchedPaths.clear();
+                } else {
+                    coveringSessions = null;
+                }
+            } else if (line.equals(GAP)) {
+                coveringSessions = null;
+            } else if (line.startsWith(TOUCHED + " ") && coveringSessions != null) {
+                touchedPaths.add(context.getRepositoryRootDir().resolve(line.substring(TOUCHED.length() + 1)));
+            }
+        }
+
+        if (coveringSessions == null) {
+            return null;
+        }
+
+        for (String coveringSession : coveringSessions) {
+            if (isSessionAlive(coveringSession)) {
+                return touchedPaths;
+            }
+        }
+        return null;
+    }
+
+    private List<String> toTouchedLines(Collection<Path> touchedPaths) {
+        List<String> lines = new ArrayList<>();
+        for (Path touchedPath : touchedPaths) {
+            String normalizedPath = FileUtil.getNormalizedFileName(touchedPath);
+            if (!normalizedPath.startsWith(normalizedRootDir + "/")) {
+                continue;
+            }
+
+            String relativePath = FileUtil.getRelativeFileName(normalizedRootDir, normalizedPath);
+            if (relativePath.equals(Context.DOT_FIM_DIR) || relativePath.startsWith(Context.DOT_FIM_DIR + "/")) {
+                // Fim writes into .fim, so recording it would never end
+                continue;
+            }
+
+            if (relativePath.indexOf('\n') >= 0 || relativePath.indexOf('\r') >= 0) {
+                // Cannot be stored on one line
+                lines.add(GAP);
+            } else {
+                lines.add(TOUCHED + " " + relativePath);
+            }
+        }
+        return lines;
+    }
+
+    private void append(List<String> lines) {
+        synchronized (JVM_LOCK) {
+            try (FileChannel lockChannel = FileChannel.open(lockFile, CREATE, WRITE)) {
+                // Released when the channel is closed
+                lockChannel.lock();
+                Files.write(journalFile, lines, StandardCharsets.UTF_8, CREATE, APPEND);
+            } catch (IOException ex) {
+                Logger.error("Error writing the change journal", ex, context.isDisplayStackTrace());
+            }
+        }
+    }
+
+    private List<String> readLines() throws IOException {
+        try {
+            return Files.readAllLines(journalFile, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException ex) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * A session is alive while its writer holds the lock on the session file. The lock is released by the OS if the writer is killed.
+     * The sessions of this JVM are known without probing their lock.
+     */
+    private boolean isSessionAlive(String session) {
+        if (JVM_SESSIONS.contains(session)) {
+            return true;
+        }
+
+        Path sessionFile = getSessionFile(session);
+        if (!Files.exists(sessionFile)) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(sessionFile, WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private Path getSessionFile(String session) {
+        return context.getRepositoryDotFimDir().resolve(JOURNAL_FILE + "-" + session + ".lock");
+    }
+}
@@ -22,7 +22,7 @@ import org.fim.model.Constants;
 import org.fim.model.Context;
 import org.fim.model.DuplicateResult;
 import org.fim.model.FileHash;
-import org.fim.model.FilePattern;
+import org.fim.model.FilePatternMatcher;
 import org.fim.model.FileState;
 import org.fim.model.State;
 
@@ -37,9 +37,13 @@ public class DuplicateFinder {
     private static final Comparator<FileState> hashComparator = new FileState.HashComparator();
 
     private final Context context;
+    private final FilePatternMatcher includeMatcher;
+    private final FilePatternMatcher excludeMatcher;
 
     public DuplicateFinder(Context context) {
         this.context = context;
+        this.includeMatcher = FilePatternMatcher.compile(context.getIncludePatterns());
+        this.excludeMatcher = FilePatternMatcher.compile(context.getExcludePatterns());
     }
 
     public DuplicateResult findDuplicates(State state) {
@@ -61,8 +65,8 @@ public class DuplicateFinder {
                 continue;
             }
             String fileName = file.getFileName().toString();
-            if (!FilePattern.matchPatterns(fileName, context.getIncludePatterns(), true) ||
-                FilePattern.matchPatterns(fileName, context.getExcludePatterns(), false)) {
+            if (!FilePatternMatcher.matchPatterns(fileName, includeMatcher, true) ||
+                FilePatternMatcher.matchPatterns(fileName, excludeMatcher, false)) {
                 continue;
             }
 
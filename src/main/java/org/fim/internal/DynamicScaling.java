@@ -19,103 +19,306 @@
 package org.fim.internal;
 
 import org.fim.internal.hash.FileHasher;
+import org.fim.internal.hash.Throttler;
+import org.fim.internal.jfr.FlightRecorderEvents;
 import org.fim.model.Context;
 import org.fim.util.Logger;
 
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.fim.util.FileUtil.byteCountToDisplaySize;
 
+/**
+ * Hill-climbing controller of the number of active FileHashers.
+ * <p>
+ * The throughput is measured over fixed windows. The controller moves the scale level one step at a time in the
+ * current direction while the throughput improves, goes back to the best level when it degrades, and holds this level
+ * for a while before probing again. An additional thread that does not bring more throughput is removed, so that a
+ * seeking hard drive ends up with fewer threads than an SSD.
+ * <p>
+ * When the average size of the hashed files changes a lot (from small files to large files for example),
+ * the previous measures are not relevant anymore and the probing starts again from the current level.
+ * <p>
+ * When the {@link Throttler} makes the threads wait, the budget is the limit. The controller then removes threads
+ * until the budget is not fully consumed anymore, instead of probing for more.
+ * <p>
+ * The level reached is remembered for the file store of the scanned directory and used as the starting level of the next scan.
+ */
 public class DynamicScaling implements Runnable {
+    static final long WINDOW_DURATION = 1_000L;
+    static final long CHECK_INTERVAL = 200L;
+    static final double IMPROVEMENT_THRESHOLD = 0.10;
+    static final double PHASE_CHANGE_RATIO = 4.0;
+    static final int PHASE_CHANGE_WINDOW_COUNT = 2;
+    static final int HOLD_WINDOW_COUNT = 10;
+
+    private static final Map<String, Integer> scaleLevelByFileStore = new ConcurrentHashMap<>();
+
     private final StateGenerator stateGenerator;
     private final Context context;
+    private final String fileStoreKey;
+    private final int maxScaleLevel;
 
     private AtomicBoolean stopRequested;
-    private long lastGoodThroughput;
-    private long currentThroughput;
-    private int resourceLimitReached;
     private int scaleLevel;
-    private int maxScaleLevel;
+    private int direction;
+    private boolean levelJustChanged;
+    private long lastThroughput;
+    private int holdWindows;
+
+    private long referenceThroughput;
+    private int bestScaleLevel;
+    private long bestThroughput;
+    private long phaseAverageFileSize;
+    private int phaseChangeWindows;
 
-    public DynamicScaling(StateGenerator stateGenerator) {
+    private long lastBytesHashed;
+    private long lastFilesHashed;
+    private long lastWaitedMicros;
+
+    public DynamicScaling(StateGenerator stateGenerator, Path rootDir) {
+        this(stateGenerator, getFileStoreKey(rootDir), Runtime.getRuntime().availableProcessors());
+    }
+
+    DynamicScaling(StateGenerator stateGenerator, String fileStoreKey, int maxScaleLevel) {
         this.stateGenerator = stateGenerator;
         this.context = stateGenerator.getContext();
+        this.fileStoreKey = fileStoreKey;
+        this.maxScaleLevel = maxScaleLevel;
         this.stopRequested = new AtomicBoolean(false);
-        this.lastGoodThroughput = 0;
-        this.currentThroughput = 0;
-        this.resourceLimitReached = 0;
-        this.scaleLevel = 1;
-        this.maxScaleLevel = Runtime.getRuntime().availableProcessors();
+
+        Integer knownScaleLevel = fileStoreKey == null ? null : scaleLevelByFileStore.get(fileStoreKey);
+        this.scaleLevel = knownScaleLevel == null ? 1 : Math.min(knownScaleLevel, maxScaleLevel);
+        startProbing(1);
+    }
+
+    /**
+     * @return the number of FileHashers to start with
+     */
+    public int getScaleLevel() {
+        return scaleLevel;
     }
 
     @Override
     public void run() {
         try {
-            Thread.sleep(200L);
-
-            while (true) {
-                if (stopRequested.get() || scaleLevel >= maxScaleLevel || resourceLimitReached > 20) {
+            Logger.rawDebug("\n - Dynamic scaling started on '" + fileStoreKey + "'. scaleLevel = " + scaleLevel);
+            while (!stopRequested.get()) {
+                long start = System.currentTimeMillis();
+                if (!waitForNextWindow()) {
                     break;
                 }
-
-                checkThroughput();
-
-                waitBeforeCheckingThroughput();
+                measureWindow(System.currentTimeMillis() - start);
             }
         } catch (Exception ex) {
             Logger.error("Got exception", ex, context.isDisplayStackTrace());
         } finally {
+            if (fileStoreKey != null) {
+                scaleLevelByFileStore.put(fileStoreKey, scaleLevel);
+            }
             Logger.rawDebug("\n - Dynamic scaling finished. scaleLevel = " + scaleLevel);
         }
     }
 
-    private void scaleUp() throws NoSuchAlgorithmException {
-        stateGenerator.startFileHasher();
-        scaleLevel = context.getThreadCount();
-        Logger.rawDebug("\n - Scaling Up. scaleLevel = " + scaleLevel);
+    void measureWindow(long duration) throws NoSuchAlgorithmException {
+        long bytesHashed = 0;
+        long filesHashed = 0;
+        List<FileHasher> fileHashers = stateGenerator.getFileHashers();
+        synchronized (stateGenerator) {
+            for (FileHasher fileHasher : fileHashers) {
+                bytesHashed += fileHasher.getTotalBytesHashed();
+                filesHashed += fileHasher.getFilesHashed();
+            }
+        }
+
+        Throttler throttler = stateGenerator.getThrottler();
+        long waitedMicros = throttler == null ? 0 : throttler.getWaitedMicros();
+
+        long bytesDelta = bytesHashed - lastBytesHashed;
+        long filesDelta = filesHashed - lastFilesHashed;
+        long waitedDelta = waitedMicros - lastWaitedMicros;
+        lastBytesHashed = bytesHashed;
+        lastFilesHashed = filesHashed;
+        lastWaitedMicros = waitedMicros;
+
+        if (levelJustChanged) {
+            // This window is still mixing the previous level and the new one
+            levelJustChanged = false;
+            return;
+        }
+
+        long throughput = bytesDelta * 1_000 / Math.max(duration, 1);
+        lastThroughput = throughput;
+        Logger.rawDebug("\n - Current throughput = " + byteCountToDisplaySize(throughput) + "/s, " + filesDelta + " files, scaleLevel = " + scaleLevel);
+
+        if (waitedDelta > 0) {
+            // The budget limits the throughput, not the device. Fewer threads are enough to consume it
+            Logger.rawDebug("\n - Throttled during " + waitedDelta / 1_000 + " ms");
+            if (scaleLevel > 1) {
+                setScaleLevel(scaleLevel - 1, "throttled");
+            }
+            startProbing(1);
+            hold();
+            return;
+        }
+
+        if (filesDelta > 0 && isPhaseChanged(bytesDelta / filesDelta)) {
+            Logger.rawDebug("\n - Phase change detected. Average file size = " + byteCountToDisplaySize(phaseAverageFileSize));
+            startProbing(1);
+        }
+
+        adjustScaleLevel(throughput);
     }
 
-    private void checkThroughput() throws NoSuchAlgorithmException {
-        currentThroughput = getTotalInstantThroughput();
-        if (lastGoodThroughput == 0) {
-            lastGoodThroughput = currentThroughput;
+    private boolean isPhaseChanged(long averageFileSize) {
+        long previous = phaseAverageFileSize;
+        if (previous == 0 || averageFileSize == 0) {
+            phaseAverageFileSize = Math.max(previous, averageFileSize);
+            return false;
         }
-        Logger.rawDebug("\n - Current throughput = " + byteCountToDisplaySize(currentThroughput) + ", scaleLevel = " + scaleLevel);
 
-        long difference = currentThroughput - lastGoodThroughput;
-        Logger.rawDebug("\n - Throughput difference = " + byteCountToDisplaySize(difference));
-        difference = difference / 1_024 / 1_024;
+        double ratio = (double) averageFileSize / previous;
+        if (ratio < PHASE_CHANGE_RATIO && ratio > 1 / PHASE_CHANGE_RATIO) {
+            phaseChangeWindows = 0;
+            return false;
+        }
+
+        // A single window can be skewed by a few files that are much bigger than the others
+        phaseChangeWindows++;
+        if (phaseChangeWindows < PHASE_CHANGE_WINDOW_COUNT) {
+            return false;
+        }
+        phaseChangeWindows = 0;
+        phaseAverageFileSize = averageFileSize;
+        return true;
+    }
 
-        if (difference > 10) {
-            if (scaleLevel < maxScaleLevel) {
-                scaleUp();
-                resourceLimitReached = 0;
+    private void adjustScaleLevel(long throughput) throws NoSuchAlgorithmException {
+        if (holdWindows > 0) {
+            holdWindows--;
+            if (holdWindows == 0 || throughput < bestThroughput * (1 - 2 * IMPROVEMENT_THRESHOLD)) {
+                // Alternate the probing direction, so that a level that became too high can be lowered
+                startProbing(-direction);
+            } else {
+                return;
             }
-            lastGoodThroughput = currentThroughput;
+        }
+
+        if (throughput > bestThroughput) {
+            bestThroughput = throughput;
+            bestScaleLevel = scaleLevel;
+        }
+
+        if (referenceThroughput == 0) {
+            referenceThroughput = throughput;
+            step(direction, "probing");
+            return;
+        }
+
+        if (throughput > referenceThroughput * (1 + IMPROVEMENT_THRESHOLD)) {
+            // Going in the right direction
+            referenceThroughput = throughput;
+            step(direction, "throughput improved");
+        } else if (throughput < referenceThroughput * (1 - IMPROVEMENT_THRESHOLD)) {
+            // Too many threads are competing for the device, or not enough are used to keep it busy
+            setScaleLevel(bestScaleLevel, "throughput degraded");
+            hold();
+        } else if (direction > 0) {
+            // The last added thread brings nothing, remove it
+            step(-1, "no gain with the last thread");
+            hold();
         } else {
-            resourceLimitReached++;
+            // Same throughput with fewer threads, keep removing them
+            referenceThroughput = throughput;
+            step(-1, "same throughput with fewer threads");
         }
     }
 
-    private void waitBeforeCheckingThroughput() throws InterruptedException {
-        for (int i = 0; i < scaleLevel * 5; i++) {
-            if (stopRequested.get()) {
+    private void startProbing(int newDirection) {
+        direction = newDirection;
+        if (scaleLevel + direction < 1 || scaleLevel + direction > maxScaleLevel) {
+            direction = -direction;
+        }
+        holdWindows = 0;
+        referenceThroughput = 0;
+        bestThroughput = 0;
+        bestScaleLevel = scaleLevel;
+    }
+
+    private void hold() {
+        holdWindows = HOLD_WINDOW_COUNT;
+    }
+
+    private void step(int stepDirection, String reason) throws NoSuchAlgorithmException {
+        direction = stepDirection;
+        int newScaleLevel = scaleLevel + stepDirection;
+        if (newScaleLevel < 1 || newScaleLevel > maxScaleLevel) {
+            // Nothing more to probe in this direction
+            hold();
+            return;
+        }
+        setScaleLevel(newScaleLevel, reason);
+    }
+
+    private void setScaleLevel(int newScaleLevel, String reason) throws NoSuchAlgorithmException {
+        int previousScaleLevel = scaleLevel;
+        changeScaleLevel(newScaleLevel);
+        if (scaleLevel != previousScaleLevel) {
+            FlightRecorderEvents.dynamicScalingDecision(fileStoreKey, previousScaleLevel, scaleLevel, lastThroughput, reason);
+        }
+    }
+
+    private void changeScaleLevel(int newScaleLevel) throws NoSuchAlgorithmException {
+        while (scaleLevel < newScaleLevel) {
+            if (stateGenerator.startFileHasher() == null) {
                 return;
             }
-            Thread.sleep(200L);
+            scaleLevel++;
+            levelJustChanged = true;
+            Logger.rawDebug("\n - Scaling Up. scaleLevel = " + scaleLevel);
+        }
+        while (scaleLevel > newScaleLevel) {
+            if (!stateGenerator.stopFileHasher()) {
+                return;
+            }
+            scaleLevel--;
+            levelJustChanged = true;
+            Logger.rawDebug("\n - Scaling Down. scaleLevel = " + scaleLevel);
         }
     }
 
-    private long getTotalInstantThroughput() {
-        long totalInstantThroughput = 0;
-        for (FileHasher fileHasher : stateGenerator.getFileHashers()) {
-            totalInstantThroughput += fileHasher.getInstantThroughput();
+    private boolean waitForNextWindow() throws InterruptedException {
+        for (long waited = 0; waited < WINDOW_DURATION; waited += CHECK_INTERVAL) {
+            if (stopRequested.get()) {
+                return false;
+            }
+            Thread.sleep(CHECK_INTERVAL);
+        }
+        return true;
+    }
+
+    private static String getFileStoreKey(Path rootDir) {
+        try {
+            FileStore fileStore = Files.getFileStore(rootDir);
+            return fileStore.name() + " (" + fileStore.type() + ")";
+        } catch (IOException ex) {
+            return null;
         }
-        return totalInstantThroughput;
     }
 
     public void requestStop() {
         stopRequested.set(true);
     }
+
+    static void forgetScaleLevels() {
+        scaleLevelByFileStore.clear();
+    }
 }
@@ -26,12 +26,15 @@ import org.fim.util.Logger;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class FimIgnoreManager {
@@ -40,7 +43,10 @@ public class FimIgnoreManager {
 
     public static final Set IGNORED_DIRECTORIES = new HashSet<>(Arrays.asList(Context.DOT_FIM_DIR, ".git", ".svn", ".cvs"));
 
+    private static final FimIgnore EMPTY_FIM_IGNORE = new FimIgnore(Collections.emptySet(), Collections.emptySet());
+
     private final Context context;
+    private final Map<Path, FimIgnore> parsedFimIgnores;
 
     private String repositoryRootDirString;
     private Set<String> ignoredFiles;
@@ -49,24 +55,34 @@ public class FimIgnoreManager {
         this.context = context;
         this.repositoryRootDirString = FileUtil.getNormalizedFileName(this.context.getRepositoryRootDir());
         this.ignoredFiles = new HashSet<>();
+        this.parsedFimIgnores = new HashMap<>();
     }
 
     public FimIgnore loadInitialFimIgnore() {
-        FimIgnore initialFimIgnore = loadGlobalFimIgnore();
-        addParentFimIgnore(initialFimIgnore);
-        return initialFimIgnore;
+        Set<FilePattern> filesToIgnoreInAllDirectories = new HashSet<>(loadGlobalFimIgnore().getFilesToIgnoreInAllDirectories());
+        addParentFimIgnore(filesToIgnoreInAllDirectories);
+        return new FimIgnore(Collections.emptySet(), Collections.unmodifiableSet(filesToIgnoreInAllDirectories));
     }
 
+    /**
+     * The filesToIgnoreInAllDirectories are immutable, so they are shared with the parent directory
+     * unless the directory .fimignore contains new patterns for its sub-directories.
+     */
     public FimIgnore loadLocalIgnore(Path directory, FimIgnore parentFimIgnore) {
         FimIgnore fimIgnore = loadFimIgnore(directory);
-        fimIgnore.getFilesToIgnoreInAllDirectories().addAll(parentFimIgnore.getFilesToIgnoreInAllDirectories());
-        return fimIgnore;
+        if (fimIgnore.getFilesToIgnoreInAllDirectories().isEmpty()) {
+            return new FimIgnore(fimIgnore, parentFimIgnore);
+        }
+
+        Set<FilePattern> filesToIgnoreInAllDirectories = new HashSet<>(fimIgnore.getFilesToIgnoreInAllDirectories());
+        filesToIgnoreInAllDirectories.addAll(parentFimIgnore.getFilesToIgnoreInAllDirectories());
+        return new FimIgnore(fimIgnore.getFilesToIgnoreLocally(), Collections.unmodifiableSet(filesToIgnoreInAllDirectories));
     }
 
     /**
      * If Fim is started from a sub-directory, it loads the parent .fimignore files and merge all the filesToIgnoreInAllDirectories.
      */
-    private void addParentFimIgnore(FimIgnore initialFimIgnore) {
+    private void addParentFimIgnore(Set<FilePattern> filesToIgnoreInAllDirectories) {
         Path directory = context.getAbsoluteCurrentDirectory();
         while (false == directory.equals(context.getRepositoryRootDir())) {
             directory = directory.getParent();
@@ -75,37 +91,50 @@ public class FimIgnoreManager {
             }
 
             FimIgnore fimIgnore = loadFimIgnore(directory);
-            initialFimIgnore.getFilesToIgnoreInAllDirectories().addAll(fimIgnore.getFilesToIgnoreInAllDirectories());
+            filesToIgnoreInAllDirectories.addAll(fimIgnore.getFilesToIgnoreInAllDirectories());
         }
     }
 
     private FimIgnore loadGlobalFimIgnore() {
-        Path userDir = Paths.get(System.getProperty("user.dir"));
-        return loadFimIgnore(userDir);
+        return loadFimIgnore(context.getWorkingDirectory());
     }
 
+    /**
+     * The returned FimIgnore can be shared and must not be modified.
+     * Parsed .fimignore files are kept so that a directory loaded twice (the global, parent and scanned directories can be the same)
+     * is read only once.
+     */
     protected FimIgnore loadFimIgnore(Path directory) {
-        FimIgnore fimIgnore = new FimIgnore();
-
         Path dotFimIgnore = directory.resolve(DOT_FIM_IGNORE);
-        if (Files.exists(dotFimIgnore)) {
-            try {
-                List<String> allLines = Files.readAllLines(dotFimIgnore);
-                for (String line : allLines) {
-                    if (line.startsWith(ALL_DIRECTORIES_PATTERN)) {
-                        String fileNamePattern = line.substring(ALL_DIRECTORIES_PATTERN.length());
-                        FilePattern filePattern = new FilePattern(fileNamePattern);
-                        fimIgnore.getFilesToIgnoreInAllDirectories().add(filePattern);
-                    } else {
-                        FilePattern filePattern = new FilePattern(line);
-                        fimIgnore.getFilesToIgnoreLocally().add(filePattern);
-                    }
-                }
-            } catch (IOException e) {
-                Logger.error(String.format("Unable to read file %s: %s", dotFimIgnore, e.getMessage()));
+        FimIgnore fimIgnore = parsedFimIgnores.get(dotFimIgnore.toAbsolutePath().normalize());
+        if (fimIgnore != null) {
+            return fimIgnore;
+        }
+
+        List<String> allLines;
+        try {
+            // Don't check that the file exists before reading it. It's one more filesystem access for each directory
+            allLines = Files.readAllLines(dotFimIgnore);
+        } catch (NoSuchFileException e) {
+            return EMPTY_FIM_IGNORE;
+        } catch (IOException e) {
+            Logger.error(String.format("Unable to read file %s: %s", dotFimIgnore, e.getMessage()));
+            return EMPTY_FIM_IGNORE;
+        }
+
+        fimIgnore = new FimIgnore();
+        for (String line : allLines) {
+            if (line.startsWith(ALL_DIRECTORIES_PATTERN)) {
+                String fileNamePattern = line.substring(ALL_DIRECTORIES_PATTERN.length());
+                FilePattern filePattern = new FilePattern(fileNamePattern);
+                fimIgnore.getFilesToIgnoreInAllDirectories().add(filePattern);
+            } else {
+                FilePattern filePattern = new FilePattern(line);
+                fimIgnore.getFilesToIgnoreLocally().add(filePattern);
             }
         }
 
+        parsedFimIgnores.put(dotFimIgnore.toAbsolutePath().normalize(), fimIgnore);
         return fimIgnore;
     }
 
@@ -116,26 +145,17 @@ public class FimIgnoreManager {
             return true;
         }
 
-        if (isIgnored(fileName, fimIgnore.getFilesToIgnoreInAllDirectories())) {
+        if (fimIgnore.getAllDirectoriesMatcher().match(fileName)) {
             return true;
         }
 
-        if (isIgnored(fileName, fimIgnore.getFilesToIgnoreLocally())) {
+        if (fimIgnore.getLocalMatcher().match(fileName)) {
             return true;
         }
 
         return false;
     }
 
-    private boolean isIgnored(String fileName, Set<FilePattern> filesToIgnore) {
-        for (FilePattern filePattern : filesToIgnore) {
-            if (filePattern.match(fileName)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     public void ignoreThisFiles(Path file, BasicFileAttributes attributes) {
         String normalizedFileName = FileUtil.getNormalizedFileName(file);
         if (attributes.isDirectory()) {
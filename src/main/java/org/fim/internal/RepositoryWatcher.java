@@ -0,0 +1,402 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal;
+
+import org.fim.model.CompareResult;
+import org.fim.model.Context;
+import org.fim.model.Difference;
+import org.fim.model.State;
+import org.fim.util.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Keep a live State of the directory to scan, using a WatchService (inotify on Linux) to know the paths that are touched.
+ * Only the touched paths are scanned and hashed again, so the changes since the last committed State are known without a full scan.
+ * The directories are registered while they are scanned, so the .fimignore rules apply to them like for a full scan.
+ * A directory created while watching is registered as soon as its event is received, before being scanned,
+ * so that the files written into it meanwhile are reported.
+ * When watching the whole repository, the touched paths are also recorded into the change journal.
+ * If a directory cannot be registered, for example when the inotify watches are exhausted, its changes would be missed.
+ * The journal session is then stopped, so that status and commit scan everything until the watch is started again.
+ * <p>
+ * The journal is trusted by status and commit, so it is only recorded when the notifications report all the changes shortly.
+ * It is not the case when the JDK polls the directories, like on macOS where a change is seen up to 10 seconds later,
+ * nor on a network file system, where the changes made by the other clients are not notified.
+ */
+public class RepositoryWatcher implements Closeable {
+    /**
+     * Touched paths are scanned once no event was received for this duration, so that a file being written is hashed only once.
+     */
+    public static final long QUIET_PERIOD_MILLIS = 500;
+
+    private static final String POLLING_WATCH_SERVICE = "sun.nio.fs.PollingWatchService";
+    private static final Set<String> NETWORK_FILE_SYSTEMS = new HashSet<>(Arrays.asList("nfs", "nfs4", "cifs", "smbfs", "smb2", "smb3", "afpfs", "fuse.sshfs"));
+
+    private final Context context;
+    private final WatchService watchService;
+    private final Map<Path, WatchKey> watchedDirectories;
+    private final Set<Path> touchedPaths;
+    private final StateManager stateManager;
+    private final ChangeJournal journal;
+    private final List<Path> pendingJournalPaths;
+
+    private volatile long lastEventTime;
+    private volatile boolean closed;
+    private Thread eventThread;
+
+    private State liveState;
+    private State lastState;
+    private int lastStateNumber;
+    private boolean journalSynchronized;
+    private boolean journalIncomplete;
+
+    public RepositoryWatcher(Context context) throws IOException {
+        this.context = context;
+        this.watchService = context.getRepositoryRootDir().getFileSystem().newWatchService();
+        this.watchedDirectories = new ConcurrentHashMap<>();
+        this.touchedPaths = ConcurrentHashMap.newKeySet();
+        this.stateManager = new StateManager(context);
+        this.lastStateNumber = -1;
+        this.closed = false;
+
+        // The journal must contain the changes of the whole repository
+        this.journal = context.isInvokedFromSubDirectory() || !allChangesNotified() ? null : new ChangeJournal(context);
+        this.pendingJournalPaths = new ArrayList<>();
+        this.journalSynchronized = false;
+        this.journalIncomplete = false;
+    }
+
+    /**
+     * Register the directories and generate the initial live State with a full scan.
+     * The touched paths are recorded into the change journal, so that status and commit can use it while Fim is watching.
+     */
+    public synchronized void start() throws NoSuchAlgorithmException, IOException {
+        if (journal != null) {
+            journal.startSession();
+        }
+
+        eventThread = new Thread(this::processEvents, "fim-watch-events");
+        eventThread.setDaemon(true);
+        eventThread.start();
+
+        liveState = new WatchingStateGenerator(context).generateState("", context.getRepositoryRootDir(), context.getCurrentDirectory());
+
+        if (journal != null) {
+            synchronizeJournal();
+        }
+    }
+
+    /**
+     * @return true if some paths were touched and no event was received since the quiet period
+     */
+    public boolean isSettled() {
+        return !touchedPaths.isEmpty() && System.currentTimeMillis() - lastEventTime >= QUIET_PERIOD_MILLIS;
+    }
+
+    public int getWatchedDirectoryCount() {
+        return watchedDirectories.size();
+    }
+
+    /**
+     * Scan and hash again the touched paths.
+     *
+     * @return true if the live State was updated
+     */
+    public synchronized boolean refresh() throws NoSuchAlgorithmException {
+        if (touchedPaths.isEmpty()) {
+            return false;
+        }
+
+        List<Path> paths = new ArrayList<>();
+        for (Iterator<Path> iterator = touchedPaths.iterator(); iterator.hasNext(); ) {
+            paths.add(iterator.next());
+            iterator.remove();
+        }
+
+        liveState = new WatchingStateGenerator(context).generateState("", context.getRepositoryRootDir(), context.getCurrentDirectory(), liveState, paths);
+        return true;
+    }
+
+    /**
+     * @return the live State, after having scanned the paths touched since the last refresh
+     */
+    public synchronized State getLiveState() throws NoSuchAlgorithmException {
+        refresh();
+        return liveState;
+    }
+
+    /**
+     * Compare the live State with the last committed State. The last committed State is loaded again only when a new State is committed.
+     * StateComparator modifies the States it compares, so it works on copies.
+     */
+    public synchronized CompareResult status() throws NoSuchAlgorithmException, IOException {
+        State currentState = getLiveState().clone();
+
+        int stateNumber = stateManager.getLastStateNumber();
+        if (stateNumber != lastStateNumber) {
+            lastState = stateManager.loadLastState();
+            if (lastState != null && context.isInvokedFromSubDirectory()) {
+                lastState = lastState.filterDirectory(context.getRepositoryRootDir(), context.getCurrentDirectory(), true);
+            }
+            lastStateNumber = stateNumber;
+        }
+
+        return new StateComparator(context, lastState == null ? null : lastState.clone(), currentState).compare();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+        if (eventThread != null) {
+            eventThread.interrupt();
+        }
+        if (journal != null) {
+            synchronized (pendingJournalPaths) {
+                journal.stopSession();
+            }
+        }
+    }
+
+    private boolean allChangesNotified() {
+        if (watchService.getClass().getName().equals(POLLING_WATCH_SERVICE)) {
+            Logger.warning("The file system notifications are polled by Java on this platform. The change journal is not recorded, status and commit scan the whole repository");
+            return false;
+        }
+
+        try {
+            String fileSystemType = Files.getFileStore(context.getRepositoryRootDir()).type().toLowerCase();
+            if (NETWORK_FILE_SYSTEMS.contains(fileSystemType)) {
+                Logger.warning(String.format("The changes made by the other clients of the '%s' file system are not notified. " +
+                    "The change journal is not recorded, status and commit scan the whole repository", fileSystemType));
+                return false;
+            }
+        } catch (IOException ex) {
+            // Notified like a local file system
+        }
+        return true;
+    }
+
+    /**
+     * The changes made before the watch started are the differences between the initial live State and the last committed one.
+     * Recording them makes the journal complete right away. It is only possible if the comparison sees all the changes.
+     * The paths touched during the initial scan are recorded after them.
+     */
+    private void synchronizeJournal() throws NoSuchAlgorithmException, IOException {
+        Set<Path> paths = new LinkedHashSet<>();
+        boolean baseKnown = false;
+        if (stateManager.getLastStateNumber() > 0 && !context.getIgnored().somethingIgnored()) {
+            CompareResult result = status();
+            if (lastState != null && lastState.getHashMode() == context.getHashMode()) {
+                addTouchedPaths(paths, result.getAdded(), result.getCopied(), result.getDuplicated(), result.getDateModified(),
+                    result.getContentModified(), result.getAttributesModified(), result.getRenamed(), result.getDeleted());
+                baseKnown = true;
+            }
+        }
+
+        synchronized (pendingJournalPaths) {
+            if (journalIncomplete) {
+                return;
+            }
+            paths.addAll(pendingJournalPaths);
+            pendingJournalPaths.clear();
+            if (baseKnown) {
+                journal.recordBase(lastStateNumber, paths);
+            } else {
+                journal.recordTouched(paths);
+            }
+            journalSynchronized = true;
+        }
+    }
+
+    @SafeVarargs
+    private final void addTouchedPaths(Set<Path> paths, List<Difference>... differenceLists) {
+        for (List<Difference> differences : differenceLists) {
+            for (Difference difference : differences) {
+                paths.add(context.getRepositoryRootDir().resolve(difference.getFileState().getFileName()));
+                if (difference.getPreviousFileState() != null) {
+                    paths.add(context.getRepositoryRootDir().resolve(difference.getPreviousFileState().getFileName()));
+                }
+            }
+        }
+    }
+
+    private void recordIntoJournal(List<Path> paths) {
+        if (journal == null || paths.isEmpty()) {
+            return;
+        }
+
+        synchronized (pendingJournalPaths) {
+            if (journalIncomplete) {
+                return;
+            }
+            if (journalSynchronized) {
+                journal.recordTouched(paths);
+            } else {
+                pendingJournalPaths.addAll(paths);
+            }
+        }
+    }
+
+    private void processEvents() {
+        while (!closed) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                return;
+            }
+
+            // Updated before the paths are touched, so that they are not seen as settled already
+            lastEventTime = System.currentTimeMillis();
+            Path directory = (Path) key.watchable();
+            List<Path> paths = new ArrayList<>();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    // Some events were lost, so the whole directory is scanned again
+                    paths.add(directory);
+                } else {
+                    Path file = directory.resolve((Path) event.context());
+                    if (event.kind() == ENTRY_CREATE && Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+                        // Its content is scanned once it is recorded as touched below
+                        watchNewDirectory(file);
+                    }
+                    // The content of a watched directory is reported by its own WatchKey
+                    if (event.kind() != ENTRY_MODIFY || !watchedDirectories.containsKey(file) || !Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+                        paths.add(file);
+                    }
+                }
+            }
+            touchedPaths.addAll(paths);
+            recordIntoJournal(paths);
+
+            if (!key.reset()) {
+                // The directory is no longer accessible
+                watchedDirectories.remove(directory, key);
+                touchedPaths.add(directory);
+                recordIntoJournal(Collections.singletonList(directory));
+            }
+        }
+    }
+
+    /**
+     * Registering again a directory that is already watched gives back the same WatchKey. A directory that was deleted and created again gets a new one.
+     */
+    private void watchDirectory(Path directory) {
+        try {
+            WatchKey key = register(directory);
+            watchedDirectories.put(directory, key);
+        } catch (ClosedWatchServiceException ex) {
+            // Closed while scanning
+        } catch (IOException ex) {
+            Logger.error("Unable to watch directory '" + directory + "'", ex, context.isDisplayStackTrace());
+            stopJournal();
+        }
+    }
+
+    /**
+     * Register a created directory and the ones it already contains, without waiting for the refresh that scans them.
+     */
+    private void watchNewDirectory(Path newDirectory) {
+        try {
+            Files.walkFileTree(newDirectory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                    if (directory.equals(context.getRepositoryDotFimDir())) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    watchDirectory(directory);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                    // Deleted meanwhile, its deletion is reported as well
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ex) {
+            // The directory is scanned again anyway
+        }
+    }
+
+    WatchKey register(Path directory) throws IOException {
+        return directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+    }
+
+    /**
+     * The changes of a directory that is not watched are not recorded, so the journal no longer covers them.
+     * The gap and the end of the session keep it incomplete, even after the next commit.
+     */
+    private void stopJournal() {
+        if (journal == null) {
+            return;
+        }
+
+        synchronized (pendingJournalPaths) {
+            if (journalIncomplete) {
+                return;
+            }
+            journalIncomplete = true;
+            pendingJournalPaths.clear();
+            journal.recordGap();
+            journal.stopSession();
+        }
+        Logger.warning("The change journal is no longer recorded. Status and commit scan the whole repository until the watch is started again");
+    }
+
+    private class WatchingStateGenerator extends StateGenerator {
+        WatchingStateGenerator(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void scanningDirectory(Path directory) {
+            watchDirectory(directory);
+        }
+    }
+}
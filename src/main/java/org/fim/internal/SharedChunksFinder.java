@@ -0,0 +1,140 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal;
+
+import org.fim.internal.hash.ChunkIndex;
+import org.fim.model.Context;
+import org.fim.model.SharedChunksResult;
+import org.fim.model.SharedContent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SharedChunksFinder {
+    /**
+     * Chunks present in more files, like blocks of zeros, are counted in the totals but not attributed to pairs of files,
+     * as the number of pairs grows quadratically.
+     */
+    public static final int MAX_FILES_PER_CHUNK_FOR_PAIRS = 32;
+
+    private final Context context;
+
+    public SharedChunksFinder(Context context) {
+        this.context = context;
+    }
+
+    public SharedChunksResult findSharedChunks(ChunkIndex chunkIndex) {
+        chunkIndex.sort();
+
+        List<String> fileNames = chunkIndex.getFileNames();
+        List<String> directoryNames = new ArrayList<>();
+        int[] directoryOfFile = buildDirectories(fileNames, directoryNames);
+
+        Map<Long, Long> sharedFiles = new HashMap<>();
+        Map<Long, Long> sharedDirectories = new HashMap<>();
+        long totalBytes = 0;
+        long uniqueBytes = 0;
+
+        int chunkCount = chunkIndex.getChunkCount();
+        int start = 0;
+        while (start < chunkCount) {
+            int end = start + 1;
+            while (end < chunkCount && chunkIndex.getFingerprint(end) == chunkIndex.getFingerprint(start)) {
+                end++;
+            }
+
+            int chunkSize = chunkIndex.getChunkSize(start);
+            totalBytes += (long) chunkSize * (end - start);
+            uniqueBytes += chunkSize;
+
+            if (end - start > 1) {
+                int[] files = distinct(chunkIndex, start, end, null);
+                if (files.length > 1 && files.length <= MAX_FILES_PER_CHUNK_FOR_PAIRS) {
+                    addPairs(sharedFiles, files, chunkSize);
+                    addPairs(sharedDirectories, distinct(chunkIndex, start, end, directoryOfFile), chunkSize);
+                }
+            }
+            start = end;
+        }
+
+        return new SharedChunksResult(context, totalBytes, uniqueBytes,
+            toSharedContents(sharedFiles, fileNames), toSharedContents(sharedDirectories, directoryNames));
+    }
+
+    private int[] buildDirectories(List<String> fileNames, List<String> directoryNames) {
+        Map<String, Integer> directoryIndexes = new HashMap<>();
+        int[] directoryOfFile = new int[fileNames.size()];
+        for (int index = 0; index < fileNames.size(); index++) {
+            String fileName = fileNames.get(index);
+            int lastSlash = fileName.lastIndexOf('/');
+            String directory = lastSlash < 0 ? "." : fileName.substring(0, lastSlash);
+
+            Integer directoryIndex = directoryIndexes.get(directory);
+            if (directoryIndex == null) {
+                directoryIndex = directoryNames.size();
+                directoryIndexes.put(directory, directoryIndex);
+                directoryNames.add(directory);
+            }
+            directoryOfFile[index] = directoryIndex;
+        }
+        return directoryOfFile;
+    }
+
+    /**
+     * @return the sorted distinct files, or directories if a mapping is given, that contain the chunks from start to end
+     */
+    private int[] distinct(ChunkIndex chunkIndex, int start, int end, int[] mapping) {
+        int[] values = new int[end - start];
+        for (int index = start; index < end; index++) {
+            int fileIndex = chunkIndex.getFileIndex(index);
+            values[index - start] = mapping == null ? fileIndex : mapping[fileIndex];
+        }
+        Arrays.sort(values);
+
+        int count = 0;
+        for (int index = 0; index < values.length; index++) {
+            if (index == 0 || values[index] != values[index - 1]) {
+                values[count++] = values[index];
+            }
+        }
+        return Arrays.copyOf(values, count);
+    }
+
+    private void addPairs(Map<Long, Long> pairs, int[] indexes, int chunkSize) {
+        for (int first = 0; first < indexes.length; first++) {
+            for (int second = first + 1; second < indexes.length; second++) {
+                long pair = ((long) indexes[first] << 32) | indexes[second];
+                pairs.merge(pair, (long) chunkSize, Long::sum);
+            }
+        }
+    }
+
+    private List<SharedContent> toSharedContents(Map<Long, Long> pairs, List<String> names) {
+        List<SharedContent> sharedContents = new ArrayList<>(pairs.size());
+        for (Map.Entry<Long, Long> entry : pairs.entrySet()) {
+            long pair = entry.getKey();
+            sharedContents.add(new SharedContent(names.get((int) (pair >>> 32)), names.get((int) pair), entry.getValue()));
+        }
+        sharedContents.sort(new SharedContent.SharedBytesComparator());
+        return sharedContents;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal;
+
+import org.fim.model.State;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps the last loaded States in memory, so that a process that runs several commands parses each State file only once.
+ * A cached State is used only while its file keeps the same size, modification time and file key.
+ * The States are cloned in and out, as the commands modify the States they load.
+ */
+public class StateCache {
+    private final int maxStateCount;
+    private final Map<String, CachedState> cachedStates;
+
+    public StateCache(int maxStateCount) {
+        this.maxStateCount = maxStateCount;
+        this.cachedStates = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return a copy of the State loaded from stateFile, or null if it is not cached or the file changed since
+     */
+    public State get(Path stateFile, boolean fullState) {
+        BasicFileAttributes attributes = readAttributes(stateFile);
+        if (attributes == null) {
+            return null;
+        }
+
+        CachedState cachedState;
+        synchronized (cachedStates) {
+            cachedState = cachedStates.get(getKey(stateFile, fullState));
+        }
+        if (cachedState == null || !cachedState.matches(attributes)) {
+            return null;
+        }
+        return cachedState.state.clone();
+    }
+
+    public void put(Path stateFile, boolean fullState, State state) {
+        BasicFileAttributes attributes = readAttributes(stateFile);
+        if (attributes == null) {
+            return;
+        }
+
+        CachedState cachedState = new CachedState(attributes, state.clone());
+        synchronized (cachedStates) {
+            cachedStates.put(getKey(stateFile, fullState), cachedState);
+            while (cachedStates.size() > maxStateCount) {
+                cachedStates.remove(cachedStates.keySet().iterator().next());
+            }
+        }
+    }
+
+    private String getKey(Path stateFile, boolean fullState) {
+        return stateFile.toAbsolutePath().normalize() + (fullState ? "" : "#header");
+    }
+
+    private BasicFileAttributes readAttributes(Path stateFile) {
+        try {
+            return Files.readAttributes(stateFile, BasicFileAttributes.class);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private static class CachedState {
+        private final long size;
+        private final long lastModified;
+        private final Object fileKey;
+        private final State state;
+
+        CachedState(BasicFileAttributes attributes, State state) {
+            this.size = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+            this.fileKey = attributes.fileKey();
+            this.state = state;
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            // A State file renamed by a purge keeps its file key
+            return size == attributes.size() && lastModified == attributes.lastModifiedTime().toMillis() && Objects.equals(fileKey, attributes.fileKey());
+        }
+    }
+}
@@ -21,6 +21,8 @@ package org.fim.internal;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
 import org.apache.commons.lang3.SystemUtils;
+import org.fim.internal.jfr.CompareCompletedEvent;
+import org.fim.internal.jfr.FlightRecorderEvents;
 import org.fim.model.CompareResult;
 import org.fim.model.Context;
 import org.fim.model.Difference;
@@ -30,6 +32,7 @@ import org.fim.model.FileTime;
 import org.fim.model.Modification;
 import org.fim.model.State;
 import org.fim.util.Logger;
+import org.fim.util.PerformanceRecorder;
 import org.fim.util.SELinux;
 
 import java.util.ArrayList;
@@ -39,6 +42,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.fim.model.FileAttribute.DosFilePermissions;
@@ -159,6 +163,8 @@ public class StateComparator {
     }
 
     public CompareResult compare() {
+        CompareCompletedEvent event = FlightRecorderEvents.beginCompare();
+        PerformanceRecorder.Phase comparePhase = context.getPerformanceRecorder().startPhase(PerformanceRecorder.COMPARE);
         searchForAddedOrModified();
         searchForSameFileNames();
 
@@ -170,6 +176,11 @@ public class StateComparator {
         }
 
         result.sortResults();
+        comparePhase.end(currentState.getFileStates().size(), 0);
+        if (event != null) {
+            int previousFileCount = lastState == null ? 0 : lastState.getFileStates().size();
+            event.commit(previousFileCount, currentState.getFileStates().size(), result.modifiedCount(), hardwareCorruptionDetection);
+        }
         return result;
     }
 
@@ -315,7 +326,7 @@ public class StateComparator {
     private void searchForDeleted() {
         // Add as 'deleted' all the remaining entries that are not ignored
         notFoundInCurrentFileState.stream()
-            .filter(fileState -> !isFileIgnored(fileState))
+            .filter(fileState -> !isFileIgnored(currentState.getIgnoredFiles(), fileState))
             .forEach(fileState -> {
                 fileState.setModification(deleted);
                 fileState.restoreOriginalHash();
@@ -323,8 +334,8 @@ public class StateComparator {
             });
     }
 
-    private boolean isFileIgnored(FileState fileState) {
-        for (String ignoredFile : currentState.getIgnoredFiles()) {
+    static boolean isFileIgnored(Set<String> ignoredFiles, FileState fileState) {
+        for (String ignoredFile : ignoredFiles) {
             String fileName = fileState.getFileName();
             if (ignoredFile.endsWith("/")) {
                 if (fileName.startsWith(ignoredFile)) {
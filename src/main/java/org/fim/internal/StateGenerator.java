@@ -19,37 +19,54 @@
 package org.fim.internal;
 
 import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.fim.internal.hash.ChunkIndex;
+import org.fim.internal.hash.DirectIoReader;
 import org.fim.internal.hash.FileHasher;
+import org.fim.internal.hash.FileToHash;
 import org.fim.internal.hash.HashProgress;
+import org.fim.internal.hash.Throttler;
+import org.fim.internal.jfr.DirectoryScannedEvent;
+import org.fim.internal.jfr.FlightRecorderEvents;
+import org.fim.model.BlockChecksums;
 import org.fim.model.Context;
-import org.fim.model.FilePattern;
+import org.fim.model.FileHash;
+import org.fim.model.FilePatternMatcher;
 import org.fim.model.FileState;
+import org.fim.model.FileTime;
 import org.fim.model.FimIgnore;
 import org.fim.model.State;
 import org.fim.util.FileUtil;
 import org.fim.util.Logger;
+import org.fim.util.PerformanceRecorder;
 
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.BlockingDeque;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static org.atteo.evo.inflector.English.plural;
 import static org.fim.internal.hash.HashProgress.PROGRESS_DISPLAY_FILE_COUNT;
 import static org.fim.model.HashMode.dontHash;
+import static org.fim.model.Modification.deleted;
 import static org.fim.util.FileUtil.byteCountToDisplaySize;
 import static org.fim.util.HashModeUtil.hashModeToString;
 
@@ -61,37 +78,151 @@ public class StateGenerator {
     protected final Context context;
     final HashProgress hashProgress;
     private final FimIgnoreManager fimIgnoreManager;
+    private final FilePatternMatcher includeMatcher;
+    private final FilePatternMatcher excludeMatcher;
 
     ExecutorService executorService;
 
     protected Path rootDir;
-    private BlockingDeque<Path> filesToHashQueue;
-    private AtomicBoolean scanInProgress;
+    private BlockingQueue<FileToHash> filesToHashQueue;
     List<FileHasher> fileHashers;
     private DynamicScaling dynamicScaling;
+    private Throttler throttler;
+    BlockChecksums blockChecksums;
+    private ChunkIndex chunkIndex;
+    private long scannedFileCount;
+    private long scannedFileLength;
+    private Consumer<FileState> fileStateListener;
 
     public StateGenerator(Context context) {
         this.context = context;
         this.hashProgress = new HashProgress(context);
         this.fimIgnoreManager = new FimIgnoreManager(context);
+        this.includeMatcher = FilePatternMatcher.compile(context.getIncludePatterns());
+        this.excludeMatcher = FilePatternMatcher.compile(context.getExcludePatterns());
         this.dynamicScaling = null;
     }
 
     public State generateState(String comment, Path rootDir, Path dirToScan) throws NoSuchAlgorithmException {
         this.rootDir = rootDir;
 
+        logScanStart("Scanning recursively local files");
+        FimIgnore initialFimIgnore = fimIgnoreManager.loadInitialFimIgnore();
+        State state = hashFiles(comment, Collections.emptyList(), () -> scanFileTree(filesToHashQueue, dirToScan, initialFimIgnore));
+        state.setIgnoredFiles(fimIgnoreManager.getIgnoredFiles());
+        return state;
+    }
+
+    /**
+     * Build a new State from baseState by scanning again only the touched files and directories.
+     * The FileStates of baseState that are outside the touched paths are copied as is, so baseState must have been generated
+     * with the same hash mode and from the same directory.
+     * A touched directory is scanned recursively. A touched path that no longer exists is removed from the State.
+     */
+    public State generateState(String comment, Path rootDir, Path dirToScan, State baseState, Collection<Path> touchedPaths) throws NoSuchAlgorithmException {
+        this.rootDir = rootDir;
+
+        String normalizedDirToScan = FileUtil.getNormalizedFileName(dirToScan);
+        Set<String> pathsToScan = new TreeSet<>();
+        for (Path touchedPath : touchedPaths) {
+            Path absolutePath = touchedPath.toAbsolutePath().normalize();
+            if (absolutePath.getFileName() != null && absolutePath.getFileName().toString().equals(FimIgnoreManager.DOT_FIM_IGNORE)) {
+                // The ignore rules changed for the whole directory
+                absolutePath = absolutePath.getParent();
+            }
+
+            String normalizedPath = FileUtil.getNormalizedFileName(absolutePath);
+
+            if (normalizedPath.equals(normalizedDirToScan) || normalizedDirToScan.startsWith(normalizedPath + "/")) {
+                return generateState(comment, rootDir, dirToScan);
+            }
+            if (normalizedPath.startsWith(normalizedDirToScan + "/")) {
+                pathsToScan.add(FileUtil.getRelativeFileName(normalizedDirToScan, normalizedPath));
+            }
+        }
+        pathsToScan = keepOutermostPaths(pathsToScan);
+
+        String relativeDirToScan = FileUtil.getRelativeFileName(FileUtil.getNormalizedFileName(rootDir), normalizedDirToScan);
+        String fileNamePrefix = relativeDirToScan.isEmpty() ? "" : relativeDirToScan + "/";
+        List<FileState> keptFileStates = new ArrayList<>();
+        for (FileState fileState : baseState.getFileStates()) {
+            // A committed State keeps the deleted files
+            if (fileState.getModification() != deleted && !isUnder(fileState.getFileName(), fileNamePrefix, pathsToScan)) {
+                keptFileStates.add(copyFileState(fileState));
+            }
+        }
+
+        logScanStart(String.format("Scanning %d touched %s", pathsToScan.size(), plural("path", pathsToScan.size())));
+        FimIgnore initialFimIgnore = fimIgnoreManager.loadInitialFimIgnore();
+        Set<String> touchedPathsToScan = pathsToScan;
+        State state = hashFiles(comment, keptFileStates, () -> {
+            for (String relativePath : touchedPathsToScan) {
+                scanTouchedPath(filesToHashQueue, dirToScan, relativePath, initialFimIgnore);
+            }
+        });
+
+        Set<String> ignoredFiles = fimIgnoreManager.getIgnoredFiles();
+        for (String ignoredFile : baseState.getIgnoredFiles()) {
+            if (!isUnder(ignoredFile.endsWith("/") ? ignoredFile.substring(0, ignoredFile.length() - 1) : ignoredFile, fileNamePrefix, pathsToScan)) {
+                ignoredFiles.add(ignoredFile);
+            }
+        }
+        state.setIgnoredFiles(ignoredFiles);
+        return state;
+    }
+
+    /**
+     * Build the State by scanning only the paths recorded into the change journal since lastState was committed.
+     * Everything is scanned if the journal does not cover all the changes, if the FileStates of lastState cannot be reused as is,
+     * or if a full scan is requested because the notifications of the last changes may not be received yet.
+     * The block checksums of the files that are not scanned again are taken from the sidecar of lastState when the State is saved,
+     * so everything is also scanned when they are requested and this sidecar does not exist yet.
+     *
+     * @param lastState the last committed State, filtered like the directory to scan
+     */
+    public State generateStateFromJournal(String comment, Path rootDir, Path dirToScan, State lastState, int lastStateNumber) throws NoSuchAlgorithmException {
+        if (context.isFullScan() || lastState == null || lastState.getHashMode() != context.getHashMode() || !State.CURRENT_MODEL_VERSION.equals(lastState.getModelVersion()) ||
+            includeMatcher != null || excludeMatcher != null ||
+            (context.isBlockChecksums() && !Files.exists(new StateManager(context).getBlockChecksumsFile(lastStateNumber))) ||
+            context.isContentDefinedChunking()) {
+            return generateState(comment, rootDir, dirToScan);
+        }
+
+        ChangeJournal journal = new ChangeJournal(context);
+        if (!journal.exists()) {
+            return generateState(comment, rootDir, dirToScan);
+        }
+
+        Set<Path> touchedPaths = journal.readTouchedPaths(lastStateNumber);
+        if (touchedPaths == null) {
+            Logger.info("The change journal does not contain all the changes since the last State");
+            return generateState(comment, rootDir, dirToScan);
+        }
+
+        Logger.info(String.format("Using the change journal that contains %d touched %s", touchedPaths.size(), plural("path", touchedPaths.size())));
+        return generateState(comment, rootDir, dirToScan, lastState, touchedPaths);
+    }
+
+    private void logScanStart(String scanning) {
         String usingThreads;
         if (context.isDynamicScaling()) {
             usingThreads = "automatic scaling";
         } else {
             usingThreads = String.format("%d %s", context.getThreadCount(), plural("thread", context.getThreadCount()));
         }
-        Logger.info(String.format("Scanning recursively local files, using '%s' mode and %s",
-            hashModeToString(context.getHashMode()), usingThreads));
+        Logger.info(String.format("%s, using '%s' mode and %s", scanning, hashModeToString(context.getHashMode()), usingThreads));
+        if (context.isDirectIo() && !DirectIoReader.isDirectIoSupported()) {
+            Logger.warning("Direct I/O requires Java 10 or above. Files are read without being mapped, but still go through the page cache");
+        }
         if (hashProgress.isProgressDisplayed()) {
             Logger.out.printf("(Hash progress legend for files grouped %d by %d: %s)%n", PROGRESS_DISPLAY_FILE_COUNT, PROGRESS_DISPLAY_FILE_COUNT, hashProgress.hashLegend());
         }
+    }
 
+    /**
+     * Hash the files enqueued by the scan while it runs, and add the kept FileStates to the ones that are hashed.
+     */
+    private State hashFiles(String comment, List<FileState> keptFileStates, Runnable scan) throws NoSuchAlgorithmException {
         State state = new State();
         state.setComment(comment);
         state.setHashMode(context.getHashMode());
@@ -99,34 +230,50 @@ public class StateGenerator {
 
         long start = System.currentTimeMillis();
         hashProgress.outputInit();
+        PerformanceRecorder.Phase hashPhase = context.getPerformanceRecorder().startPhase(PerformanceRecorder.HASH);
 
-        filesToHashQueue = new LinkedBlockingDeque<>(FILES_QUEUE_CAPACITY);
+        if (context.isLargestFilesFirst()) {
+            // Buffer all the discovered files, so that a big file found late does not end up hashed alone by one thread
+            filesToHashQueue = new PriorityBlockingQueue<>(FILES_QUEUE_CAPACITY, new FileToHash.LargestFirstComparator());
+        } else {
+            filesToHashQueue = new LinkedBlockingQueue<>(FILES_QUEUE_CAPACITY);
+        }
+        throttler = Throttler.create(context);
         initializeFileHashers();
 
-        FimIgnore initialFimIgnore = fimIgnoreManager.loadInitialFimIgnore();
+        // The FileHashers are waiting for the files as soon as the scan begins
+        startFileHashers();
+
+        scannedFileCount = 0;
+        scannedFileLength = 0;
+        PerformanceRecorder.Phase scanPhase = context.getPerformanceRecorder().startPhase(PerformanceRecorder.SCAN);
         try {
-            scanInProgress = new AtomicBoolean(true);
-            scanFileTree(filesToHashQueue, dirToScan, initialFimIgnore);
+            scan.run();
         } finally {
-            scanInProgress.set(false);
+            scanPhase.end(scannedFileCount, scannedFileLength);
+            hashProgress.scanFinished();
+            enqueueFile(filesToHashQueue, FileHasher.END_OF_SCAN);
         }
 
-        // In case the FileHashers have not already been started
-        startFileHashers();
-
         waitAllFilesToBeHashed();
 
         System.gc(); // Force to cleanup unused memory
 
         long overallTotalBytesHashed = 0;
+        blockChecksums = new BlockChecksums();
+        chunkIndex = new ChunkIndex();
+        state.getFileStates().addAll(keptFileStates);
         for (FileHasher fileHasher : fileHashers) {
             state.getFileStates().addAll(fileHasher.getFileStates());
+            blockChecksums.putAll(fileHasher.getBlockChecksums());
+            chunkIndex.addAll(fileHasher.getChunkIndex());
             overallTotalBytesHashed += fileHasher.getTotalBytesHashed();
         }
+        hashPhase.end(state.getFileStates().size(), overallTotalBytesHashed);
 
+        PerformanceRecorder.Phase sortPhase = context.getPerformanceRecorder().startPhase(PerformanceRecorder.SORT);
         Collections.sort(state.getFileStates(), fileNameComparator);
-
-        state.setIgnoredFiles(fimIgnoreManager.getIgnoredFiles());
+        sortPhase.end(state.getFileStates().size(), 0);
 
         hashProgress.outputStop();
         long duration = System.currentTimeMillis() - start;
@@ -135,6 +282,51 @@ public class StateGenerator {
         return state;
     }
 
+    /**
+     * Remove the paths that are inside another one of the set, as the outer one is scanned recursively.
+     * A sorted set puts each directory right before its content.
+     */
+    private static Set<String> keepOutermostPaths(Set<String> sortedPaths) {
+        Set<String> outermostPaths = new TreeSet<>();
+        String lastKept = null;
+        for (String path : sortedPaths) {
+            if (lastKept == null || !path.startsWith(lastKept + "/")) {
+                outermostPaths.add(path);
+                lastKept = path;
+            }
+        }
+        return outermostPaths;
+    }
+
+    /**
+     * @param fileName         name relative to the repository root
+     * @param fileNamePrefix   relative path of the scanned directory followed by a '/', or empty
+     * @param relativePaths    paths relative to the scanned directory
+     */
+    private static boolean isUnder(String fileName, String fileNamePrefix, Set<String> relativePaths) {
+        if (!fileName.startsWith(fileNamePrefix)) {
+            return false;
+        }
+
+        String path = fileName.substring(fileNamePrefix.length());
+        int index = -1;
+        while ((index = path.indexOf('/', index + 1)) >= 0) {
+            if (relativePaths.contains(path.substring(0, index))) {
+                return true;
+            }
+        }
+        return relativePaths.contains(path);
+    }
+
+    private static FileState copyFileState(FileState fileState) {
+        FileState copy = new FileState(fileState.getFileName(), fileState.getFileLength(), new FileTime(fileState.getFileTime()),
+            new FileHash(fileState.getFileHash()), null);
+        if (fileState.getFileAttributes() != null) {
+            copy.setFileAttributes(new HashMap<>(fileState.getFileAttributes()));
+        }
+        return copy;
+    }
+
     protected void initializeFileHashers() {
         fileHashers = new ArrayList<>();
 
@@ -150,9 +342,11 @@ public class StateGenerator {
             hashProgress.hashStarted();
             String normalizedRootDir = FileUtil.getNormalizedFileName(rootDir);
             if (context.isDynamicScaling()) {
-                startFileHasher(normalizedRootDir);
+                dynamicScaling = new DynamicScaling(this, rootDir);
+                for (int index = 0; index < dynamicScaling.getScaleLevel(); index++) {
+                    startFileHasher(normalizedRootDir);
+                }
 
-                dynamicScaling = new DynamicScaling(this);
                 Thread thread = new Thread(dynamicScaling, "dynamic-scaling");
                 thread.start();
             } else {
@@ -168,25 +362,88 @@ public class StateGenerator {
         return startFileHasher(normalizedRootDir);
     }
 
-    public FileHasher startFileHasher(String normalizedRootDir) throws NoSuchAlgorithmException {
-        FileHasher hasher = new FileHasher(context, scanInProgress, hashProgress, filesToHashQueue, normalizedRootDir);
+    public synchronized FileHasher startFileHasher(String normalizedRootDir) throws NoSuchAlgorithmException {
+        if (executorService.isShutdown()) {
+            // All the files are already hashed
+            return null;
+        }
+
+        FileHasher hasher = new FileHasher(context, hashProgress, filesToHashQueue, normalizedRootDir, throttler);
+        hasher.setFileStateListener(fileStateListener);
         executorService.submit(hasher);
         fileHashers.add(hasher);
 
         if (context.isDynamicScaling()) {
-            context.setThreadCount(fileHashers.size());
+            context.setThreadCount(getActiveFileHasherCount());
         }
         return hasher;
     }
 
+    /**
+     * Stop the last started FileHasher that is still active. The last active FileHasher is never stopped.
+     *
+     * @return true if a FileHasher was asked to stop
+     */
+    public synchronized boolean stopFileHasher() {
+        if (executorService.isShutdown() || getActiveFileHasherCount() <= 1) {
+            return false;
+        }
+
+        for (int index = fileHashers.size() - 1; index >= 0; index--) {
+            FileHasher hasher = fileHashers.get(index);
+            if (!hasher.isStopRequested()) {
+                hasher.requestStop();
+                break;
+            }
+        }
+
+        context.setThreadCount(getActiveFileHasherCount());
+        return true;
+    }
+
+    private int getActiveFileHasherCount() {
+        int count = 0;
+        for (FileHasher hasher : fileHashers) {
+            if (!hasher.isStopRequested()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     public Context getContext() {
         return context;
     }
 
+    /**
+     * @param fileStateListener called concurrently by the hash threads with each FileState as soon as it is hashed, or null
+     */
+    public void setFileStateListener(Consumer<FileState> fileStateListener) {
+        this.fileStateListener = fileStateListener;
+    }
+
     public List<FileHasher> getFileHashers() {
         return fileHashers;
     }
 
+    /**
+     * @return the block checksums computed by the last generateState(), or null if they are not enabled
+     */
+    public BlockChecksums getBlockChecksums() {
+        return context.isBlockChecksums() ? blockChecksums : null;
+    }
+
+    /**
+     * @return the chunks of the files hashed by the last generateState(), or null if content-defined chunking is not enabled
+     */
+    public ChunkIndex getChunkIndex() {
+        return context.isContentDefinedChunking() ? chunkIndex : null;
+    }
+
+    public Throttler getThrottler() {
+        return throttler;
+    }
+
     protected void waitAllFilesToBeHashed() {
         try {
             hashProgress.waitAllFilesToBeHashed();
@@ -195,7 +452,9 @@ public class StateGenerator {
                 dynamicScaling.requestStop();
             }
 
-            executorService.shutdown();
+            synchronized (this) {
+                executorService.shutdown();
+            }
             executorService.awaitTermination(3, TimeUnit.DAYS);
         } catch (InterruptedException ex) {
             Logger.error("Exception while waiting for files to be hashed", ex, context.isDisplayStackTrace());
@@ -229,41 +488,101 @@ public class StateGenerator {
         }
     }
 
-    private void scanFileTree(BlockingDeque<Path> filesToHashQueue, Path directory, FimIgnore parentFimIgnore) throws NoSuchAlgorithmException {
+    /**
+     * Called before the content of a directory is scanned.
+     */
+    protected void scanningDirectory(Path directory) {
+        // Nothing to do by default
+    }
+
+    private void scanFileTree(BlockingQueue<FileToHash> filesToHashQueue, Path directory, FimIgnore parentFimIgnore) {
+        DirectoryScannedEvent event = FlightRecorderEvents.beginDirectoryScanned();
+        long entryCount = 0;
+        long fileCount = 0;
+        long fileLength = 0;
+        scanningDirectory(directory);
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
             FimIgnore fimIgnore = fimIgnoreManager.loadLocalIgnore(directory, parentFimIgnore);
 
             for (Path file : stream) {
-                if (!hashProgress.isHashStarted() && filesToHashQueue.size() > FILES_QUEUE_CAPACITY / 2) {
-                    startFileHashers();
+                entryCount++;
+                if (throttler != null) {
+                    throttler.acquireFile();
                 }
-
                 BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
-                String fileName = file.getFileName().toString();
-                if (fimIgnoreManager.isIgnored(fileName, attributes, fimIgnore)) {
-                    fimIgnoreManager.ignoreThisFiles(file, attributes);
-                } else {
-                    if (attributes.isRegularFile()) {
-                        if (FilePattern.matchPatterns(fileName, context.getIncludePatterns(), true) &&
-                            !FilePattern.matchPatterns(fileName, context.getExcludePatterns(), false)) {
-                            enqueueFile(filesToHashQueue, file);
-                        }
-                    } else if (attributes.isDirectory()) {
-                        scanFileTree(filesToHashQueue, file, fimIgnore);
-                    }
+                long enqueuedFileLength = scanEntry(filesToHashQueue, file, attributes, fimIgnore);
+                if (enqueuedFileLength >= 0) {
+                    fileCount++;
+                    fileLength += enqueuedFileLength;
                 }
             }
         } catch (IOException ex) {
             Logger.newLine();
             Logger.error("Skipping - Error scanning directory '" + directory + "'", ex, context.isDisplayStackTrace());
         }
+
+        if (event != null) {
+            event.commit(directory, entryCount, fileCount, fileLength);
+        }
+    }
+
+    /**
+     * @return the length of the file if it was enqueued to be hashed, -1 otherwise
+     */
+    private long scanEntry(BlockingQueue<FileToHash> filesToHashQueue, Path file, BasicFileAttributes attributes, FimIgnore fimIgnore) {
+        String fileName = file.getFileName().toString();
+        if (fimIgnoreManager.isIgnored(fileName, attributes, fimIgnore)) {
+            fimIgnoreManager.ignoreThisFiles(file, attributes);
+        } else {
+            if (attributes.isRegularFile()) {
+                if (FilePatternMatcher.matchPatterns(fileName, includeMatcher, true) &&
+                    !FilePatternMatcher.matchPatterns(fileName, excludeMatcher, false)) {
+                    scannedFileCount++;
+                    scannedFileLength += attributes.size();
+                    hashProgress.fileDiscovered(attributes.size());
+                    enqueueFile(filesToHashQueue, new FileToHash(file, attributes.size()));
+                    return attributes.size();
+                }
+            } else if (attributes.isDirectory()) {
+                scanFileTree(filesToHashQueue, file, fimIgnore);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Walk down from dirToScan to the touched path, loading the .fimignore files on the way like the recursive scan does.
+     * Nothing is scanned if one of the parent directories is ignored or if the path no longer exists.
+     */
+    private void scanTouchedPath(BlockingQueue<FileToHash> filesToHashQueue, Path dirToScan, String relativePath, FimIgnore initialFimIgnore) {
+        String[] names = relativePath.split("/");
+        Path directory = dirToScan;
+        FimIgnore fimIgnore = initialFimIgnore;
+        try {
+            for (int index = 0; index < names.length; index++) {
+                fimIgnore = fimIgnoreManager.loadLocalIgnore(directory, fimIgnore);
+                Path file = directory.resolve(names[index]);
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (index == names.length - 1) {
+                    scanEntry(filesToHashQueue, file, attributes, fimIgnore);
+                } else if (!attributes.isDirectory() || fimIgnoreManager.isIgnored(names[index], attributes, fimIgnore)) {
+                    return;
+                }
+                directory = file;
+            }
+        } catch (NoSuchFileException ex) {
+            // Deleted since it was touched
+        } catch (IOException ex) {
+            Logger.newLine();
+            Logger.error("Skipping - Error scanning '" + directory.resolve(relativePath) + "'", ex, context.isDisplayStackTrace());
+        }
     }
 
-    private void enqueueFile(BlockingDeque<Path> filesToHashQueue, Path file) {
+    private void enqueueFile(BlockingQueue<FileToHash> filesToHashQueue, FileToHash fileToHash) {
         try {
-            filesToHashQueue.offer(file, 120, TimeUnit.MINUTES);
+            filesToHashQueue.offer(fileToHash, 120, TimeUnit.MINUTES);
         } catch (InterruptedException ex) {
-            Logger.error("Exception while enqueuing file '" + file + "'", ex, context.isDisplayStackTrace());
+            Logger.error("Exception while enqueuing file '" + fileToHash.getFile() + "'", ex, context.isDisplayStackTrace());
         }
     }
 }
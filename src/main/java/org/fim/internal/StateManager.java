@@ -18,21 +18,40 @@
  */
 package org.fim.internal;
 
+import org.fim.internal.jfr.FlightRecorderEvents;
+import org.fim.internal.jfr.StateLoadedEvent;
+import org.fim.internal.jfr.StateSavedEvent;
+import org.fim.model.BlockChecksums;
 import org.fim.model.Context;
 import org.fim.model.CorruptedStateException;
 import org.fim.model.FileHash;
+import org.fim.model.FileBlockChecksums;
 import org.fim.model.FileState;
+import org.fim.model.HistoryIndex;
 import org.fim.model.State;
+import org.fim.model.StateReader;
+import org.fim.model.StateSummary;
 import org.fim.util.Logger;
+import org.fim.util.PerformanceRecorder;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import static org.fim.model.Constants.NO_HASH;
+import static org.fim.model.Modification.deleted;
 
 public class StateManager {
     public static final String STATE_EXTENSION = ".json.gz";
+    public static final String BLOCK_CHECKSUMS_EXTENSION = ".blocks.gz";
+    public static final String SUMMARY_EXTENSION = ".summary.json.gz";
 
     private final Context context;
 
@@ -41,10 +60,161 @@ public class StateManager {
     }
 
     public void createNewState(State state) throws IOException {
+        createNewState(state, null);
+    }
+
+    /**
+     * @param blockChecksums the block checksums computed while generating the State, or null
+     */
+    public void createNewState(State state, BlockChecksums blockChecksums) throws IOException {
+        StateSavedEvent event = FlightRecorderEvents.beginStateSaved();
+        PerformanceRecorder.Phase savePhase = context.getPerformanceRecorder().startPhase(PerformanceRecorder.SAVE_STATE);
         int lastStateNumber = getLastStateNumber();
         lastStateNumber++;
-        state.saveToGZipFile(getStateFile(lastStateNumber));
+        Path stateFile = getStateFile(lastStateNumber);
+        state.saveToGZipFile(stateFile, context.getPerformanceRecorder());
+        saveBlockChecksums(lastStateNumber, state, blockChecksums);
+        StateSummary summary = saveStateSummary(lastStateNumber, state);
         saveLastStateNumber(lastStateNumber);
+        long stateFileSize = Files.size(stateFile);
+        savePhase.end(state.getFileStates().size(), stateFileSize);
+        if (event != null) {
+            event.commit(lastStateNumber, state.getFileStates().size(), stateFileSize);
+        }
+        addToHistoryIndex(lastStateNumber, summary);
+    }
+
+    /**
+     * Save the block checksums of the State. The files that were not hashed again keep the checksums of the previous State.
+     */
+    public void saveBlockChecksums(int stateNumber, State state, BlockChecksums blockChecksums) throws IOException {
+        BlockChecksums previousBlockChecksums = loadBlockChecksums(stateNumber - 1);
+        if (blockChecksums == null && previousBlockChecksums == null) {
+            return;
+        }
+
+        BlockChecksums stateBlockChecksums = new BlockChecksums();
+        for (FileState fileState : state.getFileStates()) {
+            if (fileState.getModification() == deleted) {
+                continue;
+            }
+
+            FileBlockChecksums checksums = blockChecksums == null ? null : blockChecksums.get(fileState);
+            if (checksums == null && previousBlockChecksums != null) {
+                checksums = previousBlockChecksums.get(fileState);
+            }
+            if (checksums != null) {
+                stateBlockChecksums.put(fileState.getFileName(), checksums);
+            }
+        }
+        stateBlockChecksums.saveToGZipFile(getBlockChecksumsFile(stateNumber));
+    }
+
+    /**
+     * @return the block checksums of the State, or null if they were not stored
+     */
+    public BlockChecksums loadBlockChecksums(int stateNumber) {
+        Path blockChecksumsFile = getBlockChecksumsFile(stateNumber);
+        if (stateNumber <= 0 || !Files.exists(blockChecksumsFile)) {
+            return null;
+        }
+
+        try {
+            return BlockChecksums.loadFromGZipFile(blockChecksumsFile);
+        } catch (IOException ex) {
+            Logger.error(String.format("Unable to load the block checksums of State #%d", stateNumber), ex, context.isDisplayStackTrace());
+            return null;
+        }
+    }
+
+    /**
+     * @return the summary of the State. It is built from the State and saved if it is missing or no longer matches the State
+     */
+    public StateSummary loadStateSummary(int stateNumber) throws IOException {
+        Path stateFile = getStateFile(stateNumber);
+        Path summaryFile = getStateSummaryFile(stateNumber);
+        if (Files.exists(summaryFile) && Files.exists(stateFile)) {
+            try {
+                StateSummary summary = StateSummary.loadFromGZipFile(summaryFile);
+                if (summary.getStateFileLength() == Files.size(stateFile) &&
+                    summary.getStateFileLastModified() == Files.getLastModifiedTime(stateFile).toMillis()) {
+                    return summary;
+                }
+            } catch (IOException ex) {
+                // Built again below
+            }
+        }
+
+        State state = loadState(stateNumber, false);
+        return saveStateSummary(stateNumber, state);
+    }
+
+    private StateSummary saveStateSummary(int stateNumber, State state) throws IOException {
+        Path stateFile = getStateFile(stateNumber);
+        StateSummary summary = new StateSummary(state, Files.size(stateFile), Files.getLastModifiedTime(stateFile).toMillis());
+        try {
+            summary.saveToGZipFile(getStateSummaryFile(stateNumber));
+        } catch (IOException ex) {
+            // The summary is only an index
+            Logger.warning(String.format("Unable to save the summary of State #%d: %s", stateNumber, ex.getMessage()));
+        }
+        return summary;
+    }
+
+    /**
+     * The history index is only read by the history queries, that check it against the States with {@link #loadHistoryIndex()}.
+     * A commit just writes a segment with the new State, without reading the index or the previous States.
+     */
+    private void addToHistoryIndex(int stateNumber, StateSummary summary) {
+        try {
+            new HistoryIndex(getHistoryIndexDir()).addStates(Collections.singletonMap(stateNumber, summary));
+        } catch (IOException ex) {
+            // The missing State is added back by the next history query
+            Logger.warning(String.format("Unable to update the history index: %s", ex.getMessage()));
+        }
+    }
+
+    /**
+     * @return the history index, after having removed the States that no longer exist or changed, and added the missing ones.
+     * The segments are merged when there are too many of them
+     */
+    public HistoryIndex loadHistoryIndex() throws IOException {
+        HistoryIndex historyIndex = HistoryIndex.load(getHistoryIndexDir());
+
+        Set<Integer> indexedStateNumbers = new HashSet<>();
+        List<HistoryIndex.IndexedState> outdatedStates = new ArrayList<>();
+        for (HistoryIndex.IndexedState indexedState : historyIndex.getIndexedStates()) {
+            Path stateFile = getStateFile(indexedState.getStateNumber());
+            if (!Files.exists(stateFile) || indexedState.getStateFileLength() != Files.size(stateFile) ||
+                indexedState.getStateFileLastModified() != Files.getLastModifiedTime(stateFile).toMillis() ||
+                !indexedStateNumbers.add(indexedState.getStateNumber())) {
+                // Also when it was indexed twice
+                outdatedStates.add(indexedState);
+            }
+        }
+
+        try {
+            if (!outdatedStates.isEmpty()) {
+                historyIndex.removeStates(outdatedStates);
+            }
+
+            Map<Integer, StateSummary> missingSummaries = new TreeMap<>();
+            int lastStateNumber = getLastStateNumber();
+            for (int stateNumber = 1; stateNumber <= lastStateNumber; stateNumber++) {
+                if (!indexedStateNumbers.contains(stateNumber) && Files.exists(getStateFile(stateNumber))) {
+                    missingSummaries.put(stateNumber, loadStateSummary(stateNumber));
+                }
+            }
+            if (!missingSummaries.isEmpty()) {
+                historyIndex.addStates(missingSummaries);
+            }
+
+            historyIndex.compact();
+        } catch (IOException ex) {
+            // The outdated States are skipped anyway, and the missing ones are added next time
+            Logger.warning(String.format("Unable to update the history index: %s", ex.getMessage()));
+        }
+        return historyIndex;
     }
 
     public State loadLastState() throws IOException {
@@ -66,11 +236,25 @@ public class StateManager {
         }
 
         try {
-            State state = State.loadFromGZipFile(stateFile, loadFullState);
+            StateLoadedEvent event = FlightRecorderEvents.beginStateLoaded();
+            PerformanceRecorder.Phase loadPhase = context.getPerformanceRecorder().startPhase(PerformanceRecorder.LOAD_STATE);
+            StateCache stateCache = context.getStateCache();
+            State state = stateCache == null ? null : stateCache.get(stateFile, loadFullState);
+            if (state == null) {
+                state = State.loadFromGZipFile(stateFile, loadFullState, context.getPerformanceRecorder());
+                if (stateCache != null) {
+                    stateCache.put(stateFile, loadFullState, state);
+                }
+            }
 
             if (loadFullState) {
                 adjustAccordingToHashMode(state);
             }
+            long stateFileSize = Files.size(stateFile);
+            loadPhase.end(state.getFileStates().size(), stateFileSize);
+            if (event != null) {
+                event.commit(stateNumber, state.getFileStates().size(), stateFileSize, loadFullState);
+            }
 
             return state;
         } catch (CorruptedStateException e) {
@@ -78,6 +262,17 @@ public class StateManager {
         }
     }
 
+    /**
+     * @return a reader that streams the FileStates of the State, without loading them all in memory
+     */
+    public StateReader openStateReader(int stateNumber) throws IOException {
+        Path stateFile = getStateFile(stateNumber);
+        if (!Files.exists(stateFile)) {
+            throw new IllegalStateException(String.format("Unable to load State file %d from directory %s", stateNumber, context.getRepositoryStatesDir()));
+        }
+        return new StateReader(stateFile);
+    }
+
     private void adjustAccordingToHashMode(State state) {
         // Replace by 'no_hash' accurately to be able to compare the FileState entry
         // Keep the original hash before changing by 'no_hash' in order to fill correctly the previousFileState
@@ -118,6 +313,27 @@ public class StateManager {
         return context.getRepositoryStatesDir().resolve("state_" + stateNumber + STATE_EXTENSION);
     }
 
+    /**
+     * @return the block checksums file formatted like this: &lt;statesDir&gt;/state_&lt;stateNumber&gt;.blocks.gz
+     */
+    public Path getBlockChecksumsFile(int stateNumber) {
+        return context.getRepositoryStatesDir().resolve("state_" + stateNumber + BLOCK_CHECKSUMS_EXTENSION);
+    }
+
+    /**
+     * @return the State summary file formatted like this: &lt;statesDir&gt;/state_&lt;stateNumber&gt;.summary.json.gz
+     */
+    public Path getStateSummaryFile(int stateNumber) {
+        return context.getRepositoryStatesDir().resolve("state_" + stateNumber + SUMMARY_EXTENSION);
+    }
+
+    /**
+     * @return the directory of the history index: &lt;statesDir&gt;/history
+     */
+    public Path getHistoryIndexDir() {
+        return context.getRepositoryStatesDir().resolve("history");
+    }
+
     public int getLastStateNumber() {
         int number;
         boolean lastStateFileDesynchronized = false;
@@ -21,9 +21,11 @@ package org.fim.internal;
 import org.fim.command.exception.FimInternalError;
 import org.fim.internal.hash.FileHasher;
 import org.fim.internal.hash.FileReHasher;
+import org.fim.model.BlockChecksums;
 import org.fim.model.Context;
 import org.fim.model.FileState;
 import org.fim.util.Logger;
+import org.fim.util.PerformanceRecorder;
 
 import java.security.NoSuchAlgorithmException;
 import java.util.List;
@@ -54,17 +56,25 @@ public class StateReGenerator extends StateGenerator {
 
         long start = System.currentTimeMillis();
         hashProgress.outputInit();
+        for (FileState fileState : toReHash) {
+            hashProgress.fileDiscovered(fileState.getFileLength());
+        }
+        hashProgress.scanFinished();
+        PerformanceRecorder.Phase rehashPhase = context.getPerformanceRecorder().startPhase(PerformanceRecorder.REHASH);
         long overallTotalBytesHashed = 0;
         try {
             startFileHashers();
             waitAllFilesToBeHashed();
 
+            blockChecksums = new BlockChecksums();
             for (FileHasher fileHasher : fileHashers) {
+                blockChecksums.putAll(fileHasher.getBlockChecksums());
                 overallTotalBytesHashed += fileHasher.getTotalBytesHashed();
             }
         } finally {
             hashProgress.outputStop();
         }
+        rehashPhase.end(toReHash.size(), overallTotalBytesHashed);
 
         long duration = System.currentTimeMillis() - start;
 
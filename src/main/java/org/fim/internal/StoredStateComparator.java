@@ -0,0 +1,235 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import org.fim.model.CompareResult;
+import org.fim.model.Context;
+import org.fim.model.CorruptedStateException;
+import org.fim.model.Difference;
+import org.fim.model.FileHash;
+import org.fim.model.FileState;
+import org.fim.model.HashMode;
+import org.fim.model.Modification;
+import org.fim.model.State;
+import org.fim.model.StateReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.fim.model.Constants.NO_HASH;
+import static org.fim.model.HashMode.dontHash;
+import static org.fim.model.Modification.deleted;
+
+/**
+ * Compare two committed States without reading the files of the repository.
+ * Both State files are streamed at the same time and merged by file name, so only the differences are kept in memory.
+ * A file found only in one State is matched with the others by hash to detect the renames. Copies and duplicates are reported as added files,
+ * as detecting them would require to keep all the hashes of the first State.
+ */
+public class StoredStateComparator {
+    private final Context context;
+    private final StateManager stateManager;
+    private final int fromStateNumber;
+    private final int toStateNumber;
+
+    private State fromState;
+    private State toState;
+    private HashMode hashMode;
+    private CompareResult result;
+    private List<FileState> onlyInFromState;
+    private List<FileState> onlyInToState;
+
+    public StoredStateComparator(Context context, int fromStateNumber, int toStateNumber) {
+        this.context = context;
+        this.stateManager = new StateManager(context);
+        this.fromStateNumber = fromStateNumber;
+        this.toStateNumber = toStateNumber;
+    }
+
+    /**
+     * @return the differences found in the State toStateNumber, compared to the State fromStateNumber
+     * @throws IllegalStateException if a State is missing, uses a different model version or is corrupted
+     */
+    public CompareResult compare() throws IOException {
+        try (StateReader fromReader = stateManager.openStateReader(fromStateNumber);
+             StateReader toReader = stateManager.openStateReader(toStateNumber)) {
+            fromState = fromReader.getHeader();
+            toState = toReader.getHeader();
+            checkModelVersion(fromState, fromStateNumber);
+            checkModelVersion(toState, toStateNumber);
+            hashMode = getCommonHashMode();
+
+            result = new CompareResult(context, null);
+            onlyInFromState = new ArrayList<>();
+            onlyInToState = new ArrayList<>();
+
+            FileState fromFileState = nextFileState(fromReader, fromStateNumber);
+            FileState toFileState = nextFileState(toReader, toStateNumber);
+            while (fromFileState != null || toFileState != null) {
+                int order;
+                if (fromFileState == null) {
+                    order = 1;
+                } else if (toFileState == null) {
+                    order = -1;
+                } else {
+                    order = fromFileState.getFileName().compareTo(toFileState.getFileName());
+                }
+
+                if (order < 0) {
+                    onlyInFromState.add(fromFileState);
+                    fromFileState = nextFileState(fromReader, fromStateNumber);
+                } else if (order > 0) {
+                    onlyInToState.add(toFileState);
+                    toFileState = nextFileState(toReader, toStateNumber);
+                } else {
+                    compareSameFileName(fromFileState, toFileState);
+                    fromFileState = nextFileState(fromReader, fromStateNumber);
+                    toFileState = nextFileState(toReader, toStateNumber);
+                }
+            }
+
+            searchForRenamed();
+            result.sortResults();
+            return result;
+        }
+    }
+
+    public State getFromState() {
+        return fromState;
+    }
+
+    public State getToState() {
+        return toState;
+    }
+
+    private void checkModelVersion(State state, int stateNumber) {
+        if (!State.CURRENT_MODEL_VERSION.equals(state.getModelVersion())) {
+            throw new IllegalStateException(String.format("State #%d uses a different model version and cannot be compared", stateNumber));
+        }
+    }
+
+    /**
+     * The hashes are compared only on the blocks that both States and the requested hash mode contain
+     */
+    private HashMode getCommonHashMode() {
+        HashMode commonHashMode = context.getHashMode();
+        for (HashMode stateHashMode : new HashMode[]{fromState.getHashMode(), toState.getHashMode()}) {
+            if (stateHashMode.ordinal() < commonHashMode.ordinal()) {
+                commonHashMode = stateHashMode;
+            }
+        }
+        return commonHashMode;
+    }
+
+    private FileState nextFileState(StateReader reader, int stateNumber) throws IOException {
+        try {
+            FileState fileState;
+            do {
+                fileState = reader.next();
+            } while (fileState != null && fileState.getModification() == deleted);
+
+            if (fileState != null) {
+                fileState.setModification(null);
+                fileState.setPreviousFileState(null);
+            }
+            return fileState;
+        } catch (CorruptedStateException ex) {
+            throw new IllegalStateException(String.format("The content of the State file #%d have been modified and may be corrupted", stateNumber));
+        }
+    }
+
+    private void compareSameFileName(FileState fromFileState, FileState toFileState) {
+        if (sameContent(fromFileState, toFileState)) {
+            if (!context.getIgnored().isDatesIgnored() && !fromFileState.getFileTime().equals(toFileState.getFileTime())) {
+                addDifference(result.getDateModified(), Modification.dateModified, fromFileState, toFileState);
+            } else if (!context.getIgnored().isAttributesIgnored() &&
+                !Objects.equals(fromFileState.getFileAttributes(), toFileState.getFileAttributes())) {
+                addDifference(result.getAttributesModified(), Modification.attributesModified, fromFileState, toFileState);
+            }
+        } else {
+            addDifference(result.getContentModified(), Modification.contentModified, fromFileState, toFileState);
+        }
+    }
+
+    private void searchForRenamed() {
+        ListMultimap<FileHash, FileState> renameSources = ArrayListMultimap.create();
+        if (hashMode != dontHash) {
+            for (FileState fileState : onlyInFromState) {
+                if (fileState.getFileLength() > 0) {
+                    renameSources.put(getComparableHash(fileState), fileState);
+                }
+            }
+        }
+
+        Set<FileState> renamed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (FileState fileState : onlyInToState) {
+            List<FileState> sameHashes = fileState.getFileLength() > 0 ? renameSources.get(getComparableHash(fileState)) : Collections.emptyList();
+            if (sameHashes.isEmpty()) {
+                addDifference(result.getAdded(), Modification.added, null, fileState);
+            } else {
+                FileState originalFileState = sameHashes.remove(0);
+                renamed.add(originalFileState);
+                if (!context.getIgnored().isRenamedIgnored()) {
+                    addDifference(result.getRenamed(), Modification.renamed, originalFileState, fileState);
+                }
+            }
+        }
+
+        for (FileState fileState : onlyInFromState) {
+            if (!renamed.contains(fileState) && !StateComparator.isFileIgnored(toState.getIgnoredFiles(), fileState)) {
+                fileState.setModification(deleted);
+                result.getDeleted().add(new Difference(null, fileState));
+            }
+        }
+    }
+
+    private void addDifference(List<Difference> differences, Modification modification, FileState fromFileState, FileState toFileState) {
+        differences.add(new Difference(fromFileState, toFileState));
+        toFileState.setModification(modification);
+    }
+
+    // Compare the FileLength and the FileHash
+    private boolean sameContent(FileState fileState1, FileState fileState2) {
+        return fileState1.getFileLength() == fileState2.getFileLength() && getComparableHash(fileState1).equals(getComparableHash(fileState2));
+    }
+
+    private FileHash getComparableHash(FileState fileState) {
+        FileHash fileHash = fileState.getFileHash();
+        switch (hashMode) {
+            case dontHash:
+                return new FileHash(NO_HASH, NO_HASH, NO_HASH);
+
+            case hashSmallBlock:
+                return new FileHash(fileHash.getSmallBlockHash(), NO_HASH, NO_HASH);
+
+            case hashMediumBlock:
+                return new FileHash(fileHash.getSmallBlockHash(), fileHash.getMediumBlockHash(), NO_HASH);
+
+            default:
+                return fileHash;
+        }
+    }
+}
@@ -35,7 +35,8 @@ public abstract class AbstractHasher implements Hasher {
 
     private MessageDigest digest;
     private long bytesHashed;
-    private long totalBytesHashed;
+    // Only the hashing thread writes it, the dynamic scaling reads it while the hash runs
+    private volatile long totalBytesHashed;
 
     private ThroughputKeeper throughputKeeper;
 
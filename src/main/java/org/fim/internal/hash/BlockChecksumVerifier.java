@@ -0,0 +1,90 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.hash;
+
+import org.fim.model.FileBlockChecksums;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import static java.lang.Math.min;
+import static org.fim.model.BlockChecksums.BLOCK_SIZE;
+
+/**
+ * Check the content of a file against the block checksums saved for it.
+ * The file is read block by block and the reading stops at the first block that does not match.
+ */
+public class BlockChecksumVerifier {
+    private final CRC32 crc;
+    private final ByteBuffer buffer;
+    private long bytesRead;
+
+    public BlockChecksumVerifier() {
+        this.crc = new CRC32();
+        this.buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+    }
+
+    /**
+     * @return the total number of bytes read by this verifier
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return the index of the first block that differs from the checksums, or -1 if the whole content matches
+     */
+    public int findFirstMismatchingBlock(Path file, FileBlockChecksums expected) throws IOException {
+        int[] checksums = expected.getChecksums();
+        try (FileChannel channel = FileChannel.open(file)) {
+            long fileLength = channel.size();
+            int blockCount = (int) ((fileLength + BLOCK_SIZE - 1) / BLOCK_SIZE);
+            int commonCount = min(blockCount, checksums.length);
+            for (int index = 0; index < commonCount; index++) {
+                readBlock(channel, (long) index * BLOCK_SIZE);
+                crc.reset();
+                crc.update(buffer);
+                if ((int) crc.getValue() != checksums[index]) {
+                    return index;
+                }
+            }
+
+            if (fileLength != expected.getFileLength()) {
+                // The content was truncated or extended after the last common block
+                return commonCount;
+            }
+        }
+        return -1;
+    }
+
+    private void readBlock(FileChannel channel, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position + buffer.position());
+            if (count < 0) {
+                break;
+            }
+            bytesRead += count;
+        }
+        buffer.flip();
+    }
+}
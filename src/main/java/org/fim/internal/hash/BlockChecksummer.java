@@ -0,0 +1,85 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.hash;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import static java.lang.Math.min;
+import static org.fim.model.BlockChecksums.BLOCK_SIZE;
+
+/**
+ * Compute a CRC32 per block while the full content of the file goes through the FrontHasher.
+ * The content must be given sequentially, otherwise no checksums are produced.
+ */
+public class BlockChecksummer {
+    private final CRC32 crc;
+
+    private long fileSize;
+    private long nextPosition;
+    private boolean sequential;
+    private int[] checksums;
+    private int blockIndex;
+
+    public BlockChecksummer() {
+        this.crc = new CRC32();
+    }
+
+    public void reset(long fileSize) {
+        this.fileSize = fileSize;
+        this.nextPosition = 0;
+        this.sequential = true;
+        this.checksums = new int[(int) ((fileSize + BLOCK_SIZE - 1) / BLOCK_SIZE)];
+        this.blockIndex = 0;
+        crc.reset();
+    }
+
+    public void update(long filePosition, ByteBuffer buffer) {
+        if (!sequential || filePosition != nextPosition) {
+            sequential = false;
+            return;
+        }
+
+        ByteBuffer data = buffer.duplicate();
+        while (data.hasRemaining() && nextPosition < fileSize) {
+            int count = (int) min(data.remaining(), BLOCK_SIZE - (nextPosition % BLOCK_SIZE));
+            ByteBuffer block = data.duplicate();
+            block.limit(block.position() + count);
+            crc.update(block);
+
+            data.position(data.position() + count);
+            nextPosition += count;
+            if (nextPosition % BLOCK_SIZE == 0 || nextPosition == fileSize) {
+                checksums[blockIndex] = (int) crc.getValue();
+                blockIndex++;
+                crc.reset();
+            }
+        }
+    }
+
+    /**
+     * @return the checksum of each block, or null if the full content was not hashed sequentially
+     */
+    public int[] getChecksums() {
+        if (!sequential || nextPosition != fileSize) {
+            return null;
+        }
+        return checksums;
+    }
+}
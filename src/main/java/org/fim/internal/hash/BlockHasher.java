@@ -110,6 +110,13 @@ public abstract class BlockHasher extends AbstractHasher {
         return ranges;
     }
 
+    /**
+     * @return true if the only range to hash is the whole file
+     */
+    public boolean coversWholeFile() {
+        return ranges.length == 1 && ranges[0].getFrom() == 0 && ranges[0].getTo() == fileSize;
+    }
+
     @Override
     public Range getNextRange(long filePosition) {
         for (Range range : ranges) {
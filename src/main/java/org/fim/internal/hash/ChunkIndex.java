@@ -0,0 +1,144 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.hash;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Chunk fingerprints of the hashed files. Kept in primitive arrays, as there can be tens of millions of chunks.
+ * Each entry is a fingerprint and the file index packed with the chunk size.
+ */
+public class ChunkIndex {
+    private final List<String> fileNames;
+    private long[] fingerprints;
+    private long[] fileAndSizes;
+    private int chunkCount;
+
+    public ChunkIndex() {
+        this.fileNames = new ArrayList<>();
+        this.fingerprints = new long[1_024];
+        this.fileAndSizes = new long[1_024];
+        this.chunkCount = 0;
+    }
+
+    public void addFile(String fileName, long[] fileFingerprints, int[] fileSizes) {
+        int fileIndex = fileNames.size();
+        fileNames.add(fileName);
+
+        ensureCapacity(chunkCount + fileFingerprints.length);
+        for (int index = 0; index < fileFingerprints.length; index++) {
+            fingerprints[chunkCount] = fileFingerprints[index];
+            fileAndSizes[chunkCount] = pack(fileIndex, fileSizes[index]);
+            chunkCount++;
+        }
+    }
+
+    public void addAll(ChunkIndex other) {
+        int fileOffset = fileNames.size();
+        fileNames.addAll(other.fileNames);
+
+        ensureCapacity(chunkCount + other.chunkCount);
+        for (int index = 0; index < other.chunkCount; index++) {
+            fingerprints[chunkCount] = other.fingerprints[index];
+            fileAndSizes[chunkCount] = pack(fileOffset + other.getFileIndex(index), other.getChunkSize(index));
+            chunkCount++;
+        }
+    }
+
+    /**
+     * Sort the chunks by fingerprint, so that the occurrences of the same chunk are next to each other.
+     */
+    public void sort() {
+        sort(0, chunkCount - 1);
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public long getFingerprint(int index) {
+        return fingerprints[index];
+    }
+
+    public int getFileIndex(int index) {
+        return (int) (fileAndSizes[index] >>> 32);
+    }
+
+    public int getChunkSize(int index) {
+        return (int) fileAndSizes[index];
+    }
+
+    public List<String> getFileNames() {
+        return fileNames;
+    }
+
+    private static long pack(int fileIndex, int size) {
+        return ((long) fileIndex << 32) | (size & 0xFFFF_FFFFL);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > fingerprints.length) {
+            int newCapacity = Math.max(capacity, fingerprints.length * 2);
+            fingerprints = Arrays.copyOf(fingerprints, newCapacity);
+            fileAndSizes = Arrays.copyOf(fileAndSizes, newCapacity);
+        }
+    }
+
+    private void sort(int low, int high) {
+        while (low < high) {
+            long pivot = fingerprints[(low + high) >>> 1];
+            int left = low;
+            int right = high;
+            while (left <= right) {
+                while (fingerprints[left] < pivot) {
+                    left++;
+                }
+                while (fingerprints[right] > pivot) {
+                    right--;
+                }
+                if (left <= right) {
+                    swap(left, right);
+                    left++;
+                    right--;
+                }
+            }
+
+            // Recurse on the smallest part to bound the stack depth
+            if (right - low < high - left) {
+                sort(low, right);
+                low = left;
+            } else {
+                sort(left, high);
+                high = right;
+            }
+        }
+    }
+
+    private void swap(int first, int second) {
+        long fingerprint = fingerprints[first];
+        fingerprints[first] = fingerprints[second];
+        fingerprints[second] = fingerprint;
+
+        long fileAndSize = fileAndSizes[first];
+        fileAndSizes[first] = fileAndSizes[second];
+        fileAndSizes[second] = fileAndSize;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.hash;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.fim.model.Constants._1_KB;
+
+/**
+ * FastCDC-like content-defined chunking. A gear rolling hash selects the chunk boundaries, so that an insertion
+ * in a file only changes the chunks around it. Normalized chunking uses a harder mask before the average chunk size
+ * and an easier one after, which keeps the chunk sizes close to the average.
+ * <p>
+ * The content must be given sequentially, otherwise no chunks are produced.
+ */
+public class ContentDefinedChunker {
+    public static final int MIN_CHUNK_SIZE = 16 * _1_KB;
+    public static final int AVERAGE_CHUNK_SIZE = 64 * _1_KB;
+    public static final int MAX_CHUNK_SIZE = 256 * _1_KB;
+
+    // The top bits of the gear hash depend on the last 64 bytes
+    private static final long MASK_HARD = -1L << (64 - 18);
+    private static final long MASK_EASY = -1L << (64 - 14);
+
+    private static final long[] GEAR = buildGearTable();
+    private static final HashFunction FINGERPRINT_FUNCTION = Hashing.murmur3_128();
+
+    private long fileSize;
+    private long nextPosition;
+    private boolean sequential;
+
+    private long gearHash;
+    private int chunkLength;
+    private Hasher chunkHasher;
+
+    private int chunkCount;
+    private long[] fingerprints;
+    private int[] sizes;
+
+    public ContentDefinedChunker() {
+        this.fingerprints = new long[16];
+        this.sizes = new int[16];
+    }
+
+    public void reset(long fileSize) {
+        this.fileSize = fileSize;
+        this.nextPosition = 0;
+        this.sequential = true;
+        this.chunkCount = 0;
+        startChunk();
+    }
+
+    public void update(long filePosition, ByteBuffer buffer) {
+        if (!sequential || filePosition != nextPosition) {
+            sequential = false;
+            return;
+        }
+
+        int position = buffer.position();
+        int limit = buffer.limit();
+        int segmentStart = position;
+        for (int index = position; index < limit; index++) {
+            chunkLength++;
+            if (chunkLength <= MIN_CHUNK_SIZE) {
+                // Cut-point skipping. No boundary can be found before the minimum size
+                continue;
+            }
+
+            gearHash = (gearHash << 1) + GEAR[buffer.get(index) & 0xFF];
+            long mask = chunkLength < AVERAGE_CHUNK_SIZE ? MASK_HARD : MASK_EASY;
+            if ((gearHash & mask) == 0 || chunkLength >= MAX_CHUNK_SIZE) {
+                putSegment(buffer, segmentStart, index + 1);
+                endChunk();
+                segmentStart = index + 1;
+            }
+        }
+        putSegment(buffer, segmentStart, limit);
+        nextPosition += limit - position;
+
+        if (nextPosition == fileSize && chunkLength > 0) {
+            endChunk();
+        }
+    }
+
+    /**
+     * @return the number of chunks of the last file, or -1 if its full content was not given sequentially
+     */
+    public int getChunkCount() {
+        if (!sequential || nextPosition != fileSize) {
+            return -1;
+        }
+        return chunkCount;
+    }
+
+    public long[] getFingerprints() {
+        return Arrays.copyOf(fingerprints, chunkCount);
+    }
+
+    public int[] getSizes() {
+        return Arrays.copyOf(sizes, chunkCount);
+    }
+
+    private void putSegment(ByteBuffer buffer, int from, int to) {
+        if (to > from) {
+            ByteBuffer segment = buffer.duplicate();
+            segment.limit(to);
+            segment.position(from);
+            chunkHasher.putBytes(segment);
+        }
+    }
+
+    private void endChunk() {
+        if (chunkCount == fingerprints.length) {
+            fingerprints = Arrays.copyOf(fingerprints, chunkCount * 2);
+            sizes = Arrays.copyOf(sizes, chunkCount * 2);
+        }
+        fingerprints[chunkCount] = chunkHasher.hash().asLong();
+        sizes[chunkCount] = chunkLength;
+        chunkCount++;
+        startChunk();
+    }
+
+    private void startChunk() {
+        gearHash = 0;
+        chunkLength = 0;
+        chunkHasher = FINGERPRINT_FUNCTION.newHasher();
+    }
+
+    private static long[] buildGearTable() {
+        // Fixed seed. The boundaries must be the same from one run to another
+        Random random = new Random(0x5EED_F1A1L);
+        long[] gear = new long[256];
+        for (int index = 0; index < gear.length; index++) {
+            gear[index] = random.nextLong();
+        }
+        return gear;
+    }
+}
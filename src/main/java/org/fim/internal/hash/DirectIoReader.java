@@ -0,0 +1,270 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.hash;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.fim.model.Constants._1_MB;
+import static org.fim.model.Constants._4_KB;
+
+/**
+ * Read the file ranges into one reused buffer instead of mapping them, so that the scan does not fill the page cache.
+ * <p>
+ * When the JVM supports it (Java 10 and above), the files are opened with O_DIRECT and the page cache is bypassed.
+ * Otherwise the files are read with plain positional reads, and they still go through the page cache.
+ * <p>
+ * The reads are aligned on the block size of the file store of each file, as O_DIRECT requires.
+ * The block size is looked up once per directory, as finding the file store of a file parses the mount table.
+ * A file store that accepts O_DIRECT when opening but refuses the reads is read again without it.
+ * <p>
+ * Ranges are read piece by piece. The pieces are aligned on {@link #PIECE_SIZE}, so that a small or medium block never
+ * spans two pieces.
+ */
+public class DirectIoReader {
+    public static final int PIECE_SIZE = _1_MB;
+    static final int MAX_CACHED_DIRECTORIES = 1024;
+
+    private static final OpenOption DIRECT = lookupDirectOption();
+    private static final Method ALIGNED_SLICE = lookupAlignedSlice();
+
+    private final Throttler throttler;
+    private final Map<FileStore, Integer> alignmentByFileStore;
+    private final Map<Path, Integer> alignmentByDirectory;
+    private ByteBuffer buffer;
+    private int bufferAlignment;
+    private int alignment;
+    private boolean direct;
+    private long readNanos;
+
+    /**
+     * @param throttler the budget to respect while reading, or null
+     */
+    public DirectIoReader(Throttler throttler) {
+        this.throttler = throttler;
+        this.alignmentByFileStore = new HashMap<>();
+        this.alignmentByDirectory = new LinkedHashMap<>(16, 0.75f, true);
+        this.alignment = _4_KB;
+        allocateBuffer(_4_KB);
+    }
+
+    /**
+     * @return the total time spent in the reads, without the time spent by the hasher
+     */
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    public static boolean isDirectIoSupported() {
+        return DIRECT != null && ALIGNED_SLICE != null;
+    }
+
+    /**
+     * Open the file with O_DIRECT when possible.
+     * If a read fails on the returned channel while {@link #isDirect()} is true, use {@link #openBuffered(Path)} instead.
+     */
+    public FileChannel open(Path file) throws IOException {
+        if (isDirectIoSupported()) {
+            int fileAlignment = getAlignment(file);
+            try {
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, DIRECT);
+                if (fileAlignment > bufferAlignment) {
+                    allocateBuffer(fileAlignment);
+                }
+                alignment = fileAlignment;
+                direct = true;
+                return channel;
+            } catch (IOException | UnsupportedOperationException ex) {
+                // Some file systems like tmpfs refuse O_DIRECT
+            }
+        }
+        return openBuffered(file);
+    }
+
+    /**
+     * Open the file without O_DIRECT.
+     */
+    public FileChannel openBuffered(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        alignment = _4_KB;
+        direct = false;
+        return channel;
+    }
+
+    /**
+     * @return true if the last opened file is read with O_DIRECT
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Read the range and give it to the hasher.
+     *
+     * @return the number of bytes read, that is lower than size if the file was truncated meanwhile
+     */
+    public long read(FileChannel channel, long from, long size, Hasher hasher) throws IOException {
+        long to = from + size;
+        long position = from;
+        while (position < to) {
+            long pieceEnd = min(to, (position / PIECE_SIZE + 1) * PIECE_SIZE);
+            long readFrom = position - (position % alignment);
+            int readLength = (int) alignUp(pieceEnd - readFrom);
+            if (throttler != null) {
+                throttler.acquireBytes(readLength);
+            }
+
+            buffer.clear();
+            buffer.limit(readLength);
+            long readStart = System.nanoTime();
+            int bytesRead = readFully(channel, readFrom);
+            readNanos += System.nanoTime() - readStart;
+
+            int pieceStart = (int) (position - readFrom);
+            int pieceLimit = (int) min(pieceEnd - readFrom, bytesRead);
+            if (pieceLimit <= pieceStart) {
+                break;
+            }
+
+            buffer.limit(pieceLimit);
+            buffer.position(pieceStart);
+            // The slice capacity must match the piece, the Hashers rely on it to know where the piece ends
+            hasher.update(position, buffer.slice());
+
+            position += pieceLimit - pieceStart;
+            if (position < pieceEnd) {
+                break;
+            }
+        }
+        return position - from;
+    }
+
+    private int readFully(FileChannel channel, long readFrom) throws IOException {
+        int bytesRead = 0;
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, readFrom + bytesRead);
+            if (count < 0) {
+                break;
+            }
+            bytesRead += count;
+            if (bytesRead % alignment != 0) {
+                // Short read at the end of the file. With O_DIRECT, the next read position would not be aligned
+                break;
+            }
+        }
+        return bytesRead;
+    }
+
+    private long alignUp(long length) {
+        return (length + alignment - 1) / alignment * alignment;
+    }
+
+    private static OpenOption lookupDirectOption() {
+        try {
+            Class<?> extendedOpenOption = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+            for (Object option : extendedOpenOption.getEnumConstants()) {
+                if ("DIRECT".equals(((Enum<?>) option).name())) {
+                    return (OpenOption) option;
+                }
+            }
+        } catch (ClassNotFoundException ex) {
+            // Not a JDK that supports extended open options
+        }
+        return null;
+    }
+
+    private static Method lookupAlignedSlice() {
+        try {
+            return ByteBuffer.class.getMethod("alignedSlice", int.class);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    int getAlignment(Path file) {
+        // The files of a directory are on the same file store, except for the mount points that are directories
+        Path directory = file.toAbsolutePath().getParent();
+        Integer directoryAlignment = alignmentByDirectory.get(directory);
+        if (directoryAlignment == null) {
+            directoryAlignment = getFileStoreAlignment(file);
+            alignmentByDirectory.put(directory, directoryAlignment);
+            while (alignmentByDirectory.size() > MAX_CACHED_DIRECTORIES) {
+                alignmentByDirectory.remove(alignmentByDirectory.keySet().iterator().next());
+            }
+        }
+        return directoryAlignment;
+    }
+
+    private int getFileStoreAlignment(Path file) {
+        try {
+            FileStore fileStore = getFileStore(file);
+            Integer fileStoreAlignment = alignmentByFileStore.get(fileStore);
+            if (fileStoreAlignment == null) {
+                fileStoreAlignment = getBlockSize(fileStore);
+                alignmentByFileStore.put(fileStore, fileStoreAlignment);
+            }
+            return fileStoreAlignment;
+        } catch (IOException ex) {
+            return _4_KB;
+        }
+    }
+
+    FileStore getFileStore(Path file) throws IOException {
+        return Files.getFileStore(file);
+    }
+
+    private void allocateBuffer(int newAlignment) {
+        // The block sizes are powers of two, so a buffer aligned for the largest one is aligned for all of them
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(PIECE_SIZE + 2 * newAlignment);
+        if (isDirectIoSupported()) {
+            directBuffer = alignedSlice(directBuffer, newAlignment);
+        }
+        buffer = directBuffer;
+        bufferAlignment = newAlignment;
+    }
+
+    private static int getBlockSize(FileStore fileStore) {
+        try {
+            Method getBlockSize = FileStore.class.getMethod("getBlockSize");
+            return (int) max(_4_KB, (long) getBlockSize.invoke(fileStore));
+        } catch (Exception ex) {
+            return _4_KB;
+        }
+    }
+
+    private static ByteBuffer alignedSlice(ByteBuffer buffer, int alignment) {
+        try {
+            return (ByteBuffer) ALIGNED_SLICE.invoke(buffer, alignment);
+        } catch (ReflectiveOperationException ex) {
+            return buffer;
+        }
+    }
+}
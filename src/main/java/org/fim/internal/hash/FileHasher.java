@@ -20,24 +20,32 @@ package org.fim.internal.hash;
 
 import org.apache.commons.lang3.SystemUtils;
 import org.fim.command.exception.FimInternalError;
+import org.fim.internal.jfr.FileHashedEvent;
+import org.fim.internal.jfr.FlightRecorderEvents;
 import org.fim.model.Attribute;
+import org.fim.model.BlockChecksums;
 import org.fim.model.Context;
 import org.fim.model.FileAttribute;
+import org.fim.model.FileBlockChecksums;
 import org.fim.model.FileHash;
 import org.fim.model.FileState;
 import org.fim.model.HashMode;
+import org.fim.model.HashThreadStatistics;
 import org.fim.model.Range;
 import org.fim.util.DosFilePermissions;
 import org.fim.util.FileUtil;
 import org.fim.util.Logger;
+import org.fim.util.PerformanceRecorder;
 import org.fim.util.SELinux;
 
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.DosFileAttributes;
 import java.nio.file.attribute.PosixFileAttributes;
@@ -45,103 +53,235 @@ import java.nio.file.attribute.PosixFilePermissions;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
+import static java.lang.Math.min;
 import static org.fim.model.Constants.NO_HASH;
 import static org.fim.model.HashMode.dontHash;
 
 public class FileHasher implements Runnable {
+    /**
+     * Enqueued once the scan is finished. Each FileHasher that get it, put it back for the others and stops.
+     * Its negative size keeps it behind all the files when the largest files are hashed first.
+     */
+    public static final FileToHash END_OF_SCAN = new FileToHash(Paths.get(""), -1);
+
+    /**
+     * Maximum number of files taken from the queue at once when the first one is a small file.
+     */
+    static final int BATCH_SIZE = 16;
+
+    /**
+     * Maximum time in milliseconds that a stopped FileHasher keeps waiting for a file.
+     */
+    static final long STOP_CHECK_INTERVAL = 100L;
+
     protected final Context context;
-    private final AtomicBoolean scanInProgress;
     final HashProgress hashProgress;
 
-    private final BlockingDeque<Path> filesToHashQueue;
+    private final BlockingQueue<FileToHash> filesToHashQueue;
     private final String rootDir;
     private final List<FileState> fileStates;
+    // fileStates is not safe to read from another thread, the dynamic scaling reads this count instead
+    private volatile int filesHashed;
+    private Consumer<FileState> fileStateListener;
+    private final BlockChecksums blockChecksums;
+    private final ChunkIndex chunkIndex;
     private final FrontHasher frontHasher;
+    private final Throttler throttler;
+    private final DirectIoReader directIoReader;
+    private final List<FileToHash> batch;
+
+    // Each FileHasher runs in its own thread, so this buffer is reused for all the small files hashed by this thread
+    private ByteBuffer smallFileBuffer = null;
 
     private Method clean = null;
     private boolean cleanInitialized = false;
+    private volatile boolean stopRequested = false;
+
+    // Only used by the thread running this FileHasher
+    private long hashedFileCount = 0;
+    private long hashNanos = 0;
+    private long queueWaitNanos = 0;
+    private long attributesReadNanos = 0;
+    private long fileReadNanos;
+    private String fileReadMode;
+
+    public FileHasher(Context context, HashProgress hashProgress, BlockingQueue<FileToHash> filesToHashQueue, String rootDir) throws NoSuchAlgorithmException {
+        this(context, hashProgress, filesToHashQueue, rootDir, null);
+    }
 
-    public FileHasher(Context context, AtomicBoolean scanInProgress, HashProgress hashProgress, BlockingDeque<Path> filesToHashQueue, String rootDir) throws NoSuchAlgorithmException {
+    public FileHasher(Context context, HashProgress hashProgress, BlockingQueue<FileToHash> filesToHashQueue, String rootDir,
+                      Throttler throttler) throws NoSuchAlgorithmException {
         this.context = context;
-        this.scanInProgress = scanInProgress;
         this.hashProgress = hashProgress;
         this.filesToHashQueue = filesToHashQueue;
         this.rootDir = rootDir;
 
         this.fileStates = new ArrayList<>();
+        this.blockChecksums = new BlockChecksums();
+        this.chunkIndex = new ChunkIndex();
         this.frontHasher = new FrontHasher(context);
+        this.throttler = throttler;
+        this.directIoReader = context.isDirectIo() ? new DirectIoReader(throttler) : null;
+        this.batch = new ArrayList<>(BATCH_SIZE);
     }
 
     public List<FileState> getFileStates() {
         return fileStates;
     }
 
+    /**
+     * @param fileStateListener called by this hash thread with each FileState as soon as it is hashed, or null
+     */
+    public void setFileStateListener(Consumer<FileState> fileStateListener) {
+        this.fileStateListener = fileStateListener;
+    }
+
     public long getTotalBytesHashed() {
         return frontHasher.getTotalBytesHashed();
     }
 
+    public BlockChecksums getBlockChecksums() {
+        return blockChecksums;
+    }
+
+    public ChunkIndex getChunkIndex() {
+        return chunkIndex;
+    }
+
+    public long getFilesHashed() {
+        return filesHashed;
+    }
+
+    /**
+     * Ask this FileHasher to stop once the files it took from the queue are hashed. The remaining files are left to the others.
+     */
+    public void requestStop() {
+        stopRequested = true;
+    }
+
+    public boolean isStopRequested() {
+        return stopRequested;
+    }
+
     FrontHasher getFrontHasher() {
         return frontHasher;
     }
 
     @Override
     public void run() {
+        long startCpuNanos = PerformanceRecorder.getCurrentThreadCpuNanos();
         try {
-            while (isQueueStillFilled()) {
-                hashFilesInQueue();
-                if (isQueueStillFilled()) {
-                    // Wait for the scanFileTree() to fill the queue
-                    Thread.sleep(500);
-                }
-            }
+            hashFilesInQueue();
         } catch (InterruptedException ex) {
             Logger.error("Exception while hashing", ex, context.isDisplayStackTrace());
         } finally {
-            // The queue is empty so all the other FileHasher will do the same
-            hashProgress.noMoreFileToHash();
+            recordStatistics(startCpuNanos);
+            if (!stopRequested) {
+                // The queue is empty so all the other FileHasher will do the same
+                hashProgress.noMoreFileToHash();
+            }
         }
     }
 
     private void hashFilesInQueue() throws InterruptedException {
-        Path file;
-        while ((file = filesToHashQueue.poll(100, TimeUnit.MILLISECONDS)) != null) {
-            try {
-                BasicFileAttributes attributes;
-                List<Attribute> fileAttributes = null;
-
-                if (SystemUtils.IS_OS_WINDOWS) {
-                    DosFileAttributes dosFileAttributes = Files.readAttributes(file, DosFileAttributes.class);
-                    fileAttributes = addAttribute(fileAttributes, FileAttribute.DosFilePermissions, DosFilePermissions.toString(dosFileAttributes));
-                    attributes = dosFileAttributes;
-                } else {
-                    PosixFileAttributes posixFileAttributes = Files.readAttributes(file, PosixFileAttributes.class);
-                    fileAttributes = addAttribute(fileAttributes, FileAttribute.PosixFilePermissions, PosixFilePermissions.toString(posixFileAttributes.permissions()));
-                    if (SELinux.ENABLED) {
-                        fileAttributes = addAttribute(fileAttributes, FileAttribute.SELinuxLabel, SELinux.getLabel(context, file));
-                    }
-                    attributes = posixFileAttributes;
+        while (takeNextBatch()) {
+            for (FileToHash fileToHash : batch) {
+                if (fileToHash == END_OF_SCAN) {
+                    // Nothing is enqueued after END_OF_SCAN, so there is always room to put it back
+                    filesToHashQueue.put(END_OF_SCAN);
+                    return;
                 }
+                hashQueuedFile(fileToHash);
+            }
+        }
+    }
 
-                hashProgress.updateOutput(attributes.size());
-
-                FileHash fileHash = hashFile(file, attributes.size());
-                String normalizedFileName = FileUtil.getNormalizedFileName(file);
-                String relativeFileName = FileUtil.getRelativeFileName(rootDir, normalizedFileName);
-
-                fileStates.add(new FileState(relativeFileName, attributes, fileHash, fileAttributes));
-            } catch (Exception ex) {
-                Logger.newLine();
-                Logger.error("Skipping - Error hashing file '" + file + "'", ex, context.isDisplayStackTrace());
+    /**
+     * Small files are taken from the queue by batch to lower the contention on the queue.
+     * A big file is taken alone, so that it does not keep other files away from the other FileHashers.
+     * <p>
+     * The queue is polled instead of waiting on it indefinitely, so that a stopped FileHasher leaves its thread
+     * to the next started one even while the scan is not feeding the queue.
+     *
+     * @return false if this FileHasher was asked to stop
+     */
+    private boolean takeNextBatch() throws InterruptedException {
+        batch.clear();
+        long start = System.nanoTime();
+        FileToHash fileToHash = null;
+        while (fileToHash == null) {
+            if (stopRequested) {
+                queueWaitNanos += System.nanoTime() - start;
+                return false;
             }
+            fileToHash = filesToHashQueue.poll(STOP_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
         }
+        queueWaitNanos += System.nanoTime() - start;
+        batch.add(fileToHash);
+        if (fileToHash != END_OF_SCAN && fileToHash.getSize() <= context.getSmallFileThreshold()) {
+            filesToHashQueue.drainTo(batch, BATCH_SIZE - 1);
+        }
+        return true;
     }
 
-    private boolean isQueueStillFilled() {
-        return scanInProgress.get() || !filesToHashQueue.isEmpty();
+    /**
+     * Keep the block checksums computed while hashing the last file, if any.
+     */
+    protected void recordBlockChecksums(String relativeFileName, FileHash fileHash, long fileSize) {
+        int[] checksums = frontHasher.getBlockChecksums();
+        if (checksums != null) {
+            blockChecksums.put(relativeFileName, new FileBlockChecksums(fileHash.getFullHash(), fileSize, checksums));
+        }
+    }
+
+    private void hashQueuedFile(FileToHash fileToHash) {
+        Path file = fileToHash.getFile();
+        try {
+            long start = System.nanoTime();
+            BasicFileAttributes attributes;
+            List<Attribute> fileAttributes = null;
+
+            if (SystemUtils.IS_OS_WINDOWS) {
+                DosFileAttributes dosFileAttributes = Files.readAttributes(file, DosFileAttributes.class);
+                fileAttributes = addAttribute(fileAttributes, FileAttribute.DosFilePermissions, DosFilePermissions.toString(dosFileAttributes));
+                attributes = dosFileAttributes;
+            } else {
+                PosixFileAttributes posixFileAttributes = Files.readAttributes(file, PosixFileAttributes.class);
+                fileAttributes = addAttribute(fileAttributes, FileAttribute.PosixFilePermissions, PosixFilePermissions.toString(posixFileAttributes.permissions()));
+                if (SELinux.ENABLED) {
+                    fileAttributes = addAttribute(fileAttributes, FileAttribute.SELinuxLabel, SELinux.getLabel(context, file));
+                }
+                attributes = posixFileAttributes;
+            }
+            attributesReadNanos += System.nanoTime() - start;
+
+            hashProgress.updateOutput(attributes.size());
+
+            FileHash fileHash = hashFile(file, attributes.size());
+            String normalizedFileName = FileUtil.getNormalizedFileName(file);
+            String relativeFileName = FileUtil.getRelativeFileName(rootDir, normalizedFileName);
+
+            FileState fileState = new FileState(relativeFileName, attributes, fileHash, fileAttributes);
+            fileStates.add(fileState);
+            filesHashed++;
+            if (fileStateListener != null) {
+                fileStateListener.accept(fileState);
+            }
+
+            recordBlockChecksums(relativeFileName, fileHash, attributes.size());
+
+            ContentDefinedChunker chunker = frontHasher.getChunker();
+            if (chunker != null && chunker.getChunkCount() >= 0) {
+                chunkIndex.addFile(relativeFileName, chunker.getFingerprints(), chunker.getSizes());
+            }
+        } catch (Exception ex) {
+            Logger.newLine();
+            Logger.error("Skipping - Error hashing file '" + file + "'", ex, context.isDisplayStackTrace());
+        }
     }
 
     private List<Attribute> addAttribute(List<Attribute> attributes, FileAttribute attribute, String value) {
@@ -160,6 +300,24 @@ public class FileHasher implements Runnable {
     }
 
     protected FileHash hashFile(Path file, long fileSize) throws IOException {
+        FileHashedEvent event = FlightRecorderEvents.beginFileHashed();
+        long start = System.nanoTime();
+        fileReadNanos = 0;
+        fileReadMode = null;
+        try {
+            return hashFileContent(file, fileSize);
+        } finally {
+            long fileHashNanos = System.nanoTime() - start;
+            hashedFileCount++;
+            hashNanos += fileHashNanos;
+            if (event != null) {
+                long bytesHashed = fileReadMode == null ? 0 : frontHasher.getBytesHashed();
+                event.commit(file, fileSize, bytesHashed, fileReadMode, fileReadNanos, fileHashNanos);
+            }
+        }
+    }
+
+    private FileHash hashFileContent(Path file, long fileSize) throws IOException {
         HashMode hashMode = context.getHashMode();
 
         if (hashMode == dontHash) {
@@ -168,39 +326,113 @@ public class FileHasher implements Runnable {
 
         frontHasher.reset(fileSize);
 
+        if (directIoReader == null && fileSize > 0 && fileSize <= context.getSmallFileThreshold()) {
+            fileReadMode = "read at once";
+            hashSmallFile(file, (int) fileSize);
+        } else {
+            fileReadMode = directIoReader != null ? "direct I/O" : "mapped";
+            hashRanges(file, fileSize);
+        }
+
+        if (false == frontHasher.hashComplete()) {
+            throw new FimInternalError(String.format("Fim is not working correctly for file '%s' (size=%d). Some Hasher have not completed: small=%s, medium=%s, full=%s",
+                file, fileSize, frontHasher.getSmallBlockHasher().hashComplete(), frontHasher.getMediumBlockHasher().hashComplete(), frontHasher.getFullHasher().hashComplete()));
+        }
+
+        return frontHasher.getFileHash();
+    }
+
+    private void hashRanges(Path file, long fileSize) throws IOException {
+        if (directIoReader == null) {
+            try (final FileChannel channel = FileChannel.open(file)) {
+                hashRanges(channel, fileSize);
+            }
+            return;
+        }
+
+        try (final FileChannel channel = directIoReader.open(file)) {
+            hashRanges(channel, fileSize);
+            return;
+        } catch (IOException ex) {
+            if (!directIoReader.isDirect()) {
+                throw ex;
+            }
+            // Some file systems accept O_DIRECT when opening, but fail the reads with EINVAL
+            Logger.rawDebug(String.format("\n - Direct I/O failed for '%s', reading it through the page cache: %s", file, ex.getMessage()));
+            frontHasher.reset(fileSize);
+        }
+
+        try (final FileChannel channel = directIoReader.openBuffered(file)) {
+            hashRanges(channel, fileSize);
+        }
+    }
+
+    private void hashRanges(FileChannel channel, long fileSize) throws IOException {
         long filePosition = 0;
         long blockSize;
-        int bufferSize;
+        long bufferSize;
 
+        while (filePosition < fileSize) {
+            Range nextRange = frontHasher.getNextRange(filePosition);
+            if (nextRange == null) {
+                break;
+            }
+
+            filePosition = nextRange.getFrom();
+            blockSize = nextRange.getTo() - nextRange.getFrom();
+            bufferSize = hashBuffer(channel, filePosition, blockSize);
+            filePosition += bufferSize;
+        }
+    }
+
+    /**
+     * Read the whole file at once and give it to all the hashers. Mapping and unmapping costs more than hashing a small file.
+     */
+    private void hashSmallFile(Path file, int fileSize) throws IOException {
+        if (smallFileBuffer == null || smallFileBuffer.capacity() < fileSize) {
+            smallFileBuffer = ByteBuffer.allocateDirect(context.getSmallFileThreshold());
+        }
+        ByteBuffer buffer = smallFileBuffer;
+        buffer.clear();
+        buffer.limit(fileSize);
+
+        long readStart = System.nanoTime();
         try (final FileChannel channel = FileChannel.open(file)) {
-            while (filePosition < fileSize) {
-                Range nextRange = frontHasher.getNextRange(filePosition);
-                if (nextRange == null) {
-                    break;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    throw new IOException(String.format("File '%s' is smaller than expected (size=%d, read=%d)", file, fileSize, buffer.position()));
                 }
-
-                filePosition = nextRange.getFrom();
-                blockSize = nextRange.getTo() - nextRange.getFrom();
-                bufferSize = hashBuffer(channel, filePosition, blockSize);
-                filePosition += bufferSize;
             }
         }
+        buffer.flip();
+        fileReadNanos += System.nanoTime() - readStart;
 
-        if (false == frontHasher.hashComplete()) {
-            throw new FimInternalError(String.format("Fim is not working correctly for file '%s' (size=%d). Some Hasher have not completed: small=%s, medium=%s, full=%s",
-                file, fileSize, frontHasher.getSmallBlockHasher().hashComplete(), frontHasher.getMediumBlockHasher().hashComplete(), frontHasher.getFullHasher().hashComplete()));
+        if (throttler != null) {
+            throttler.acquireBytes(fileSize);
         }
-
-        return frontHasher.getFileHash();
+        frontHasher.update(0, buffer);
     }
 
-    private int hashBuffer(FileChannel channel, long filePosition, long size) throws IOException {
+    private long hashBuffer(FileChannel channel, long filePosition, long size) throws IOException {
+        if (directIoReader != null) {
+            long readNanosBefore = directIoReader.getReadNanos();
+            long bytesRead = directIoReader.read(channel, filePosition, size, frontHasher);
+            fileReadNanos += directIoReader.getReadNanos() - readNanosBefore;
+            return bytesRead;
+        }
+
         MappedByteBuffer buffer = null;
         try {
+            long mapStart = System.nanoTime();
             buffer = channel.map(FileChannel.MapMode.READ_ONLY, filePosition, size);
+            fileReadNanos += System.nanoTime() - mapStart;
             int bufferSize = buffer.remaining();
 
-            frontHasher.update(filePosition, buffer);
+            if (throttler == null) {
+                frontHasher.update(filePosition, buffer);
+            } else {
+                hashPieceByPiece(filePosition, buffer);
+            }
 
             return bufferSize;
         } finally {
@@ -208,6 +440,24 @@ public class FileHasher implements Runnable {
         }
     }
 
+    /**
+     * Page faults happen while hashing, so hash the mapped range in pieces to spread the reads according to the budget.
+     */
+    private void hashPieceByPiece(long filePosition, MappedByteBuffer buffer) {
+        int bufferSize = buffer.remaining();
+        int offset = 0;
+        while (offset < bufferSize) {
+            long position = filePosition + offset;
+            int pieceSize = (int) min(bufferSize - offset, (position / DirectIoReader.PIECE_SIZE + 1) * DirectIoReader.PIECE_SIZE - position);
+            throttler.acquireBytes(pieceSize);
+
+            buffer.limit(offset + pieceSize);
+            buffer.position(offset);
+            frontHasher.update(position, buffer.slice());
+            offset += pieceSize;
+        }
+    }
+
     /**
      * Use reflection to avoid problems with non-SUN virtual machines.
      * As mentioned in: https://stackoverflow.com/questions/2972986/how-to-unmap-a-file-from-memory-mapped-using-filechannel-in-java/19447758#19447758
@@ -237,6 +487,24 @@ public class FileHasher implements Runnable {
         }
     }
 
+    /**
+     * Give the statistics of this FileHasher to the PerformanceRecorder. Must be called by the thread that ran it.
+     */
+    protected void recordStatistics(long startCpuNanos) {
+        HashThreadStatistics statistics = new HashThreadStatistics();
+        statistics.setName(Thread.currentThread().getName());
+        statistics.setFiles(hashedFileCount);
+        statistics.setBytes(frontHasher.getTotalBytesHashed());
+        statistics.setSmallBlockBytes(frontHasher.getSmallBlockHasher().getTotalBytesHashed());
+        statistics.setMediumBlockBytes(frontHasher.getMediumBlockHasher().getTotalBytesHashed());
+        statistics.setFullBytes(frontHasher.getFullHasher().getTotalBytesHashed());
+        statistics.setHashTimeMicros(hashNanos / 1_000);
+        statistics.setCpuTimeMicros(startCpuNanos < 0 ? -1 : (PerformanceRecorder.getCurrentThreadCpuNanos() - startCpuNanos) / 1_000);
+        statistics.setQueueWaitMicros(queueWaitNanos / 1_000);
+        statistics.setAttributesReadMicros(attributesReadNanos / 1_000);
+        context.getPerformanceRecorder().addHashThread(statistics);
+    }
+
     public long getInstantThroughput() {
         return frontHasher.getInstantThroughput();
     }
@@ -23,41 +23,43 @@ import org.fim.model.FileHash;
 import org.fim.model.FileState;
 import org.fim.util.FileUtil;
 import org.fim.util.Logger;
+import org.fim.util.PerformanceRecorder;
 
 import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.TimeUnit;
 
 public class FileReHasher extends FileHasher {
     private final BlockingDeque<FileState> toRehashQueue;
     private final Path rootDir;
 
     public FileReHasher(Context context, HashProgress hashProgress, BlockingDeque<FileState> toRehashQueue, Path rootDir) throws NoSuchAlgorithmException {
-        super(context, null, hashProgress, null, FileUtil.getNormalizedFileName(rootDir));
+        super(context, hashProgress, null, FileUtil.getNormalizedFileName(rootDir));
         this.toRehashQueue = toRehashQueue;
         this.rootDir = rootDir;
     }
 
     @Override
     public void run() {
+        long startCpuNanos = PerformanceRecorder.getCurrentThreadCpuNanos();
         try {
+            // The queue is completely filled before the FileReHashers are started
             FileState fileState;
-            while ((fileState = toRehashQueue.poll(100, TimeUnit.MILLISECONDS)) != null) {
+            while ((fileState = toRehashQueue.poll()) != null) {
                 try {
                     long fileLength = fileState.getFileLength();
                     hashProgress.updateOutput(fileLength);
 
                     FileHash fileHash = hashFile(rootDir.resolve(fileState.getFileName()), fileLength);
                     fileState.setFileHash(fileHash);
+                    recordBlockChecksums(fileState.getFileName(), fileHash, fileLength);
                 } catch (Exception ex) {
                     Logger.newLine();
                     Logger.error("Skipping - Error hashing file '" + fileState.getFileName() + "'", ex, context.isDisplayStackTrace());
                 }
             }
-        } catch (InterruptedException ex) {
-            Logger.error("Exception while hashing", ex, context.isDisplayStackTrace());
         } finally {
+            recordStatistics(startCpuNanos);
             hashProgress.noMoreFileToHash();
         }
     }
@@ -0,0 +1,60 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.hash;
+
+import com.google.common.base.MoreObjects;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+
+/**
+ * A file discovered by the scan, with the size known at that time.
+ */
+public class FileToHash {
+    private final Path file;
+    private final long size;
+
+    public FileToHash(Path file, long size) {
+        this.file = file;
+        this.size = size;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("file", file)
+            .add("size", size)
+            .toString();
+    }
+
+    public static class LargestFirstComparator implements Comparator<FileToHash> {
+        @Override
+        public int compare(FileToHash fth1, FileToHash fth2) {
+            return Long.compare(fth2.getSize(), fth1.getSize());
+        }
+    }
+}
@@ -32,11 +32,19 @@ public class FrontHasher implements Hasher {
     private final BlockHasher smallBlockHasher;
     private final BlockHasher mediumBlockHasher;
     private final Hasher fullHasher;
+    private final BlockChecksummer blockChecksummer;
+    private final ContentDefinedChunker chunker;
+
+    // When the ranges of a hasher are the same as the ones of a bigger hasher, the digest is computed once and shared
+    private boolean smallBlockHashShared;
+    private boolean mediumBlockHashShared;
 
     public FrontHasher(Context context) throws NoSuchAlgorithmException {
         this.smallBlockHasher = new SmallBlockHasher(context);
         this.mediumBlockHasher = new MediumBlockHasher(context);
         this.fullHasher = new FullHasher(context);
+        this.blockChecksummer = context.isBlockChecksums() && fullHasher.isActive() ? new BlockChecksummer() : null;
+        this.chunker = context.isContentDefinedChunking() && fullHasher.isActive() ? new ContentDefinedChunker() : null;
     }
 
     @Override
@@ -49,6 +57,16 @@ public class FrontHasher implements Hasher {
         smallBlockHasher.reset(fileSize);
         mediumBlockHasher.reset(fileSize);
         fullHasher.reset(fileSize);
+
+        boolean mediumCoversWholeFile = mediumBlockHasher.isActive() && mediumBlockHasher.coversWholeFile();
+        mediumBlockHashShared = fullHasher.isActive() && mediumCoversWholeFile;
+        smallBlockHashShared = smallBlockHasher.isActive() && smallBlockHasher.coversWholeFile() && (fullHasher.isActive() || mediumCoversWholeFile);
+        if (blockChecksummer != null) {
+            blockChecksummer.reset(fileSize);
+        }
+        if (chunker != null) {
+            chunker.reset(fileSize);
+        }
     }
 
     @Override
@@ -102,9 +120,19 @@ public class FrontHasher implements Hasher {
 
     @Override
     public void update(long filePosition, ByteBuffer buffer) {
-        update(smallBlockHasher, filePosition, buffer);
-        update(mediumBlockHasher, filePosition, buffer);
+        if (!smallBlockHashShared) {
+            update(smallBlockHasher, filePosition, buffer);
+        }
+        if (!mediumBlockHashShared) {
+            update(mediumBlockHasher, filePosition, buffer);
+        }
         update(fullHasher, filePosition, buffer);
+        if (blockChecksummer != null) {
+            blockChecksummer.update(filePosition, buffer);
+        }
+        if (chunker != null) {
+            chunker.update(filePosition, buffer);
+        }
     }
 
     private void update(Hasher hasher, long filePosition, ByteBuffer buffer) {
@@ -151,11 +179,43 @@ public class FrontHasher implements Hasher {
 
     @Override
     public boolean hashComplete() {
-        return smallBlockHasher.hashComplete() && mediumBlockHasher.hashComplete() && fullHasher.hashComplete();
+        return (smallBlockHashShared || smallBlockHasher.hashComplete()) &&
+            (mediumBlockHashShared || mediumBlockHasher.hashComplete()) &&
+            fullHasher.hashComplete();
     }
 
     public FileHash getFileHash() {
-        return new FileHash(smallBlockHasher.getHash(), mediumBlockHasher.getHash(), fullHasher.getHash());
+        String fullHash = fullHasher.getHash();
+        String mediumBlockHash = mediumBlockHashShared ? fullHash : mediumBlockHasher.getHash();
+        String smallBlockHash;
+        if (smallBlockHashShared) {
+            smallBlockHash = fullHasher.isActive() ? fullHash : mediumBlockHash;
+        } else {
+            smallBlockHash = smallBlockHasher.getHash();
+        }
+        return new FileHash(smallBlockHash, mediumBlockHash, fullHash);
+    }
+
+    boolean isSmallBlockHashShared() {
+        return smallBlockHashShared;
+    }
+
+    boolean isMediumBlockHashShared() {
+        return mediumBlockHashShared;
+    }
+
+    /**
+     * @return the checksum of each block of the last hashed file, or null if they are not computed
+     */
+    public int[] getBlockChecksums() {
+        return blockChecksummer == null ? null : blockChecksummer.getChecksums();
+    }
+
+    /**
+     * @return the chunker that split the last hashed file, or null if content-defined chunking is not enabled
+     */
+    public ContentDefinedChunker getChunker() {
+        return chunker;
     }
 
     protected Hasher getSmallBlockHasher() {
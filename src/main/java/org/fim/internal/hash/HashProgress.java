@@ -19,6 +19,7 @@
 package org.fim.internal.hash;
 
 import org.apache.commons.lang3.SystemUtils;
+import org.apache.commons.lang3.time.DurationFormatUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.fim.model.Context;
 import org.fim.util.Logger;
@@ -26,12 +27,19 @@ import org.fim.util.Logger;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import static org.fim.model.HashMode.dontHash;
 import static org.fim.util.FileUtil.byteCountToDisplaySize;
 
+/**
+ * The FileHashers only add to striped counters, so that they never wait for each other.
+ * A render thread samples the counters periodically and draws the progress.
+ */
 public class HashProgress {
     public static final int PROGRESS_DISPLAY_FILE_COUNT = 10;
+    static final long RENDER_PERIOD_MILLIS = 200;
 
     private static final List<Pair<Character, Integer>> progressChars = Arrays.asList(
         Pair.of('.', 0),
@@ -43,13 +51,26 @@ public class HashProgress {
     );
 
     private final Context context;
-    private long summedFileLength;
-    private int fileCount;
+    private final LongAdder fileCount;
+    private final LongAdder summedFileLength;
+    private final LongAdder discoveredFileLength;
+    private volatile boolean scanFinished;
     private int hashProgressWidth;
     private CountDownLatch hashIndicator;
 
+    private long startTime;
+    private Thread renderThread;
+
+    // Only used by the render thread, then by outputStop() once the render thread is stopped
+    private long renderedGroupCount;
+    private long renderedFileLength;
+    private int column;
+
     public HashProgress(Context context) {
         this.context = context;
+        this.fileCount = new LongAdder();
+        this.summedFileLength = new LongAdder();
+        this.discoveredFileLength = new LongAdder();
         this.hashProgressWidth = getHashProgressWidth();
         this.hashIndicator = new CountDownLatch(2);
     }
@@ -75,27 +96,94 @@ public class HashProgress {
     }
 
     public synchronized void outputInit() {
-        summedFileLength = 0;
-        fileCount = 0;
+        fileCount.reset();
+        summedFileLength.reset();
+        discoveredFileLength.reset();
+        scanFinished = false;
+        renderedGroupCount = 0;
+        renderedFileLength = 0;
+        column = 0;
+        startTime = System.currentTimeMillis();
+
+        if (isProgressDisplayed()) {
+            renderThread = new Thread(this::renderPeriodically, "fim-hash-progress");
+            renderThread.setDaemon(true);
+            renderThread.start();
+        }
+    }
+
+    void updateOutput(long fileSize) {
+        fileCount.increment();
+        summedFileLength.add(fileSize);
     }
 
-    synchronized void updateOutput(long fileSize) {
-        fileCount++;
+    /**
+     * Called by the scanner for each file to hash, so that the ETA can be computed once the scan is finished.
+     */
+    public void fileDiscovered(long fileSize) {
+        discoveredFileLength.add(fileSize);
+    }
 
-        if (isProgressDisplayed()) {
-            summedFileLength += fileSize;
+    public void scanFinished() {
+        scanFinished = true;
+    }
 
-            if (fileCount % PROGRESS_DISPLAY_FILE_COUNT == 0) {
-                Logger.out.print(getProgressChar(summedFileLength));
-                summedFileLength = 0;
+    /**
+     * @return the estimated time needed to hash the remaining bytes, or -1 while the total size is not known
+     */
+    long getEstimatedRemainingMillis(long elapsedMillis) {
+        long hashedFileLength = summedFileLength.sum();
+        if (!scanFinished || hashedFileLength <= 0 || elapsedMillis <= 0) {
+            return -1;
+        }
+
+        long remainingFileLength = Math.max(0, discoveredFileLength.sum() - hashedFileLength);
+        return (long) (remainingFileLength * ((double) elapsedMillis / hashedFileLength));
+    }
+
+    private void renderPeriodically() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                TimeUnit.MILLISECONDS.sleep(RENDER_PERIOD_MILLIS);
+                render();
             }
+        } catch (InterruptedException e) {
+            // outputStop() is rendering the last progress chars
         }
+    }
 
-        if (fileCount % (hashProgressWidth * PROGRESS_DISPLAY_FILE_COUNT) == 0) {
-            if (isProgressDisplayed()) {
+    /**
+     * Draw one char for each new group of files. The file length of the groups is the average of the files hashed since the last render.
+     */
+    private void render() {
+        long groupCount = fileCount.sum() / PROGRESS_DISPLAY_FILE_COUNT;
+        long newGroupCount = groupCount - renderedGroupCount;
+        if (newGroupCount <= 0) {
+            return;
+        }
+
+        long fileLength = summedFileLength.sum();
+        long groupFileLength = (fileLength - renderedFileLength) / newGroupCount;
+        char progressChar = getProgressChar(groupFileLength);
+        for (long index = 0; index < newGroupCount; index++) {
+            Logger.out.print(progressChar);
+            column++;
+            if (column == hashProgressWidth) {
+                Logger.out.print(getEstimatedRemainingTime());
                 Logger.newLine();
+                column = 0;
             }
         }
+        renderedGroupCount = groupCount;
+        renderedFileLength = fileLength;
+    }
+
+    private String getEstimatedRemainingTime() {
+        long remainingMillis = getEstimatedRemainingMillis(System.currentTimeMillis() - startTime);
+        if (remainingMillis < 0) {
+            return "";
+        }
+        return " ETA " + DurationFormatUtils.formatDuration(remainingMillis, "HH:mm:ss");
     }
 
     public String hashLegend() {
@@ -131,8 +219,17 @@ public class HashProgress {
     }
 
     public synchronized void outputStop() {
-        if (isProgressDisplayed()) {
-            if (fileCount >= PROGRESS_DISPLAY_FILE_COUNT) {
+        if (renderThread != null) {
+            renderThread.interrupt();
+            try {
+                renderThread.join();
+            } catch (InterruptedException e) {
+                // Ok. Just get out
+            }
+            renderThread = null;
+
+            render();
+            if (column > 0) {
                 Logger.newLine();
             }
         }
@@ -0,0 +1,76 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.hash;
+
+import com.google.common.util.concurrent.RateLimiter;
+import org.fim.model.Context;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes per second and files per second budget shared by the scanner and all the FileHashers.
+ * Each budget is a token bucket that can store up to one second of unused permits.
+ */
+public class Throttler {
+    private final RateLimiter bytesLimiter;
+    private final RateLimiter filesLimiter;
+    private final AtomicLong waitedMicros;
+
+    private Throttler(long bytesPerSecond, int filesPerSecond) {
+        this.bytesLimiter = bytesPerSecond > 0 ? RateLimiter.create(bytesPerSecond) : null;
+        this.filesLimiter = filesPerSecond > 0 ? RateLimiter.create(filesPerSecond) : null;
+        this.waitedMicros = new AtomicLong(0);
+    }
+
+    /**
+     * @return null when no budget is configured
+     */
+    public static Throttler create(Context context) {
+        if (context.getThrottleBytesPerSecond() <= 0 && context.getThrottleFilesPerSecond() <= 0) {
+            return null;
+        }
+        return new Throttler(context.getThrottleBytesPerSecond(), context.getThrottleFilesPerSecond());
+    }
+
+    public void acquireBytes(long byteCount) {
+        if (bytesLimiter != null && byteCount > 0) {
+            acquire(bytesLimiter, (int) Math.min(byteCount, Integer.MAX_VALUE));
+        }
+    }
+
+    public void acquireFile() {
+        if (filesLimiter != null) {
+            acquire(filesLimiter, 1);
+        }
+    }
+
+    private void acquire(RateLimiter limiter, int permits) {
+        double waitedSeconds = limiter.acquire(permits);
+        if (waitedSeconds > 0) {
+            waitedMicros.addAndGet((long) (waitedSeconds * 1_000_000));
+        }
+    }
+
+    /**
+     * @return the total time spent by all the threads waiting for the budget
+     */
+    public long getWaitedMicros() {
+        return waitedMicros.get();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.fim.CompareCompleted")
+@Label("Compare Completed")
+@Category({"Fim", "Compare"})
+@Description("Two States compared by the StateComparator")
+@StackTrace(false)
+public class CompareCompletedEvent extends Event {
+    @Label("Previous File Count")
+    private int previousFileCount;
+
+    @Label("Current File Count")
+    private int currentFileCount;
+
+    @Label("Modified Count")
+    private int modifiedCount;
+
+    @Label("Hardware Corruption Detection")
+    private boolean hardwareCorruptionDetection;
+
+    static CompareCompletedEvent beginIfEnabled() {
+        CompareCompletedEvent event = new CompareCompletedEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    public void commit(int previousFileCount, int currentFileCount, int modifiedCount, boolean hardwareCorruptionDetection) {
+        end();
+        if (shouldCommit()) {
+            this.previousFileCount = previousFileCount;
+            this.currentFileCount = currentFileCount;
+            this.modifiedCount = modifiedCount;
+            this.hardwareCorruptionDetection = hardwareCorruptionDetection;
+            commit();
+        }
+    }
+}
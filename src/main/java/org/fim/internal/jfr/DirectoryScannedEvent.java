@@ -0,0 +1,69 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.nio.file.Path;
+
+@Name("org.fim.DirectoryScanned")
+@Label("Directory Scanned")
+@Category({"Fim", "Scan"})
+@Description("One directory listed by the scanner. The duration includes the scan of its subdirectories")
+@StackTrace(false)
+public class DirectoryScannedEvent extends Event {
+    @Label("Directory")
+    private String directory;
+
+    @Label("Entries")
+    private long entryCount;
+
+    @Label("Files To Hash")
+    private long fileCount;
+
+    @Label("Bytes To Hash")
+    @DataAmount
+    private long fileLength;
+
+    static DirectoryScannedEvent beginIfEnabled() {
+        DirectoryScannedEvent event = new DirectoryScannedEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    public void commit(Path directory, long entryCount, long fileCount, long fileLength) {
+        end();
+        if (shouldCommit()) {
+            this.directory = directory.toString();
+            this.entryCount = entryCount;
+            this.fileCount = fileCount;
+            this.fileLength = fileLength;
+            commit();
+        }
+    }
+}
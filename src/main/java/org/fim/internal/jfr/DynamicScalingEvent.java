@@ -0,0 +1,63 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.fim.DynamicScaling")
+@Label("Dynamic Scaling Decision")
+@Category({"Fim", "Hash"})
+@Description("The number of hash threads changed by the dynamic scaling")
+@StackTrace(false)
+public class DynamicScalingEvent extends Event {
+    @Label("File Store")
+    private String fileStore;
+
+    @Label("Previous Scale Level")
+    private int previousScaleLevel;
+
+    @Label("Scale Level")
+    private int scaleLevel;
+
+    @Label("Throughput")
+    @Description("Throughput measured during the last window")
+    @DataAmount(DataAmount.BYTES)
+    private long throughput;
+
+    @Label("Reason")
+    private String reason;
+
+    static void emit(String fileStore, int previousScaleLevel, int scaleLevel, long throughput, String reason) {
+        DynamicScalingEvent event = new DynamicScalingEvent();
+        if (event.shouldCommit()) {
+            event.fileStore = fileStore;
+            event.previousScaleLevel = previousScaleLevel;
+            event.scaleLevel = scaleLevel;
+            event.throughput = throughput;
+            event.reason = reason;
+            event.commit();
+        }
+    }
+}
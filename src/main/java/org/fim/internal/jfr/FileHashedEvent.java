@@ -0,0 +1,105 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.nio.file.Path;
+
+import static org.fim.model.Constants._1_MB;
+import static org.fim.model.Constants._4_KB;
+import static org.fim.model.Constants._64_KB;
+
+@Name("org.fim.FileHashed")
+@Label("File Hashed")
+@Category({"Fim", "Hash"})
+@Description("One file hashed by a FileHasher")
+@StackTrace(false)
+public class FileHashedEvent extends Event {
+    @Label("File")
+    private String file;
+
+    @Label("Size Class")
+    private String sizeClass;
+
+    @Label("File Size")
+    @DataAmount
+    private long fileSize;
+
+    @Label("Bytes Hashed")
+    @DataAmount
+    private long bytesHashed;
+
+    @Label("Read Mode")
+    private String readMode;
+
+    @Label("Read Duration")
+    @Description("Time spent reading or mapping the file. The page faults of a mapped file are part of the digest duration")
+    @Timespan
+    private long readDuration;
+
+    @Label("Digest Duration")
+    @Timespan
+    private long digestDuration;
+
+    static FileHashedEvent beginIfEnabled() {
+        FileHashedEvent event = new FileHashedEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    public void commit(Path file, long fileSize, long bytesHashed, String readMode, long readNanos, long hashNanos) {
+        end();
+        if (shouldCommit()) {
+            this.file = file.toString();
+            this.sizeClass = getSizeClass(fileSize);
+            this.fileSize = fileSize;
+            this.bytesHashed = bytesHashed;
+            this.readMode = readMode;
+            this.readDuration = readNanos;
+            this.digestDuration = Math.max(0, hashNanos - readNanos);
+            commit();
+        }
+    }
+
+    static String getSizeClass(long fileSize) {
+        if (fileSize == 0) {
+            return "empty";
+        } else if (fileSize <= _4_KB) {
+            return "up to 4 KB";
+        } else if (fileSize <= _64_KB) {
+            return "up to 64 KB";
+        } else if (fileSize <= _1_MB) {
+            return "up to 1 MB";
+        } else if (fileSize <= 30 * _1_MB) {
+            return "up to 30 MB";
+        }
+        return "over 30 MB";
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.jfr;
+
+/**
+ * Entry point to emit the Fim events to Java Flight Recorder.
+ * The jdk.jfr API exists since Java 8u262 and Java 11. With an older JVM, the event classes cannot be loaded,
+ * so they are only touched through these methods once the API is known to be available.
+ * The begin methods return null when the event is not recorded.
+ */
+public final class FlightRecorderEvents {
+    public static final boolean AVAILABLE = isApiAvailable();
+
+    private FlightRecorderEvents() {
+        // Only static methods
+    }
+
+    public static FileHashedEvent beginFileHashed() {
+        return AVAILABLE ? FileHashedEvent.beginIfEnabled() : null;
+    }
+
+    public static DirectoryScannedEvent beginDirectoryScanned() {
+        return AVAILABLE ? DirectoryScannedEvent.beginIfEnabled() : null;
+    }
+
+    public static StateLoadedEvent beginStateLoaded() {
+        return AVAILABLE ? StateLoadedEvent.beginIfEnabled() : null;
+    }
+
+    public static StateSavedEvent beginStateSaved() {
+        return AVAILABLE ? StateSavedEvent.beginIfEnabled() : null;
+    }
+
+    public static CompareCompletedEvent beginCompare() {
+        return AVAILABLE ? CompareCompletedEvent.beginIfEnabled() : null;
+    }
+
+    public static void dynamicScalingDecision(String fileStore, int previousScaleLevel, int scaleLevel, long throughput, String reason) {
+        if (AVAILABLE) {
+            DynamicScalingEvent.emit(fileStore, previousScaleLevel, scaleLevel, throughput, reason);
+        }
+    }
+
+    private static boolean isApiAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.fim.StateLoaded")
+@Label("State Loaded")
+@Category({"Fim", "State"})
+@Description("One State file read, parsed and checked")
+@StackTrace(false)
+public class StateLoadedEvent extends Event {
+    @Label("State Number")
+    private int stateNumber;
+
+    @Label("File Count")
+    private int fileCount;
+
+    @Label("Compressed Size")
+    @DataAmount
+    private long compressedSize;
+
+    @Label("Full Load")
+    @Description("The integrity of the State is only checked when it is fully loaded")
+    private boolean fullLoad;
+
+    static StateLoadedEvent beginIfEnabled() {
+        StateLoadedEvent event = new StateLoadedEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    public void commit(int stateNumber, int fileCount, long compressedSize, boolean fullLoad) {
+        end();
+        if (shouldCommit()) {
+            this.stateNumber = stateNumber;
+            this.fileCount = fileCount;
+            this.compressedSize = compressedSize;
+            this.fullLoad = fullLoad;
+            commit();
+        }
+    }
+}
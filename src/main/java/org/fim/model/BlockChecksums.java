@@ -0,0 +1,122 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.fim.model.Constants._1_MB;
+
+/**
+ * Per-block checksums of the files of a State. Saved in a sidecar file next to the State.
+ * They allow to locate the corrupted byte ranges of a file.
+ */
+public class BlockChecksums {
+    public static final int BLOCK_SIZE = _1_MB;
+    public static final String ALGORITHM = "CRC32";
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final Map<String, FileBlockChecksums> fileChecksums;
+
+    public BlockChecksums() {
+        fileChecksums = new HashMap<>();
+    }
+
+    public void put(String fileName, FileBlockChecksums checksums) {
+        fileChecksums.put(fileName, checksums);
+    }
+
+    public void putAll(BlockChecksums other) {
+        fileChecksums.putAll(other.fileChecksums);
+    }
+
+    public FileBlockChecksums get(String fileName) {
+        return fileChecksums.get(fileName);
+    }
+
+    /**
+     * @return the checksums of the file only if they were computed for the same content
+     */
+    public FileBlockChecksums get(FileState fileState) {
+        FileBlockChecksums checksums = fileChecksums.get(fileState.getFileName());
+        if (checksums != null && checksums.getFullHash().equals(fileState.getFileHash().getFullHash())) {
+            return checksums;
+        }
+        return null;
+    }
+
+    public int size() {
+        return fileChecksums.size();
+    }
+
+    public static BlockChecksums loadFromGZipFile(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file.toFile()))))) {
+            int formatVersion = in.readInt();
+            String algorithm = in.readUTF();
+            int blockSize = in.readInt();
+            if (formatVersion != FORMAT_VERSION || !ALGORITHM.equals(algorithm) || blockSize != BLOCK_SIZE) {
+                throw new IOException(String.format("Unsupported block checksums format in '%s'", file));
+            }
+
+            BlockChecksums blockChecksums = new BlockChecksums();
+            int fileCount = in.readInt();
+            for (int fileIndex = 0; fileIndex < fileCount; fileIndex++) {
+                String fileName = in.readUTF();
+                String fullHash = in.readUTF();
+                long fileLength = in.readLong();
+                int[] checksums = new int[in.readInt()];
+                for (int index = 0; index < checksums.length; index++) {
+                    checksums[index] = in.readInt();
+                }
+                blockChecksums.put(fileName, new FileBlockChecksums(fullHash, fileLength, checksums));
+            }
+            return blockChecksums;
+        }
+    }
+
+    public void saveToGZipFile(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file.toFile()))))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(ALGORITHM);
+            out.writeInt(BLOCK_SIZE);
+            out.writeInt(fileChecksums.size());
+            for (Map.Entry<String, FileBlockChecksums> entry : fileChecksums.entrySet()) {
+                FileBlockChecksums checksums = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeUTF(checksums.getFullHash());
+                out.writeLong(checksums.getFileLength());
+                out.writeInt(checksums.getChecksums().length);
+                for (int checksum : checksums.getChecksums()) {
+                    out.writeInt(checksum);
+                }
+            }
+        }
+    }
+}
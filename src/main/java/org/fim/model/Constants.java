@@ -21,6 +21,7 @@ package org.fim.model;
 public class Constants {
     public static final int _1_KB = 1_024;
     public static final int _4_KB = 4 * _1_KB;
+    public static final int _64_KB = 64 * _1_KB;
 
     public static final int _1_MB = 1_024 * _1_KB;
     public static final int _10_MB = 10 * _1_MB;
@@ -19,11 +19,14 @@
 package org.fim.model;
 
 import com.rits.cloning.Cloner;
+import org.fim.internal.StateCache;
+import org.fim.util.PerformanceRecorder;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 
+import static org.fim.model.Constants._64_KB;
 import static org.fim.model.HashMode.hashAll;
 
 public class Context {
@@ -31,7 +34,14 @@ public class Context {
 
     private static final Cloner CLONER = new Cloner();
 
+    static {
+        // The clones given to the commands record into the same PerformanceRecorder
+        CLONER.dontClone(PerformanceRecorder.class);
+        CLONER.dontClone(StateCache.class);
+    }
+
     private boolean invokedFromSubDirectory;
+    private Path workingDirectory;
     private Path currentDirectory;
     private Path repositoryRootDir;
     private boolean verbose;
@@ -54,9 +64,26 @@ public class Context {
     private ArrayList<FilePattern> includePatterns;
     private ArrayList<FilePattern> excludePatterns;
     private OutputType outputType;
+    private boolean largestFilesFirst;
+    private boolean directIo;
+    private long throttleBytesPerSecond;
+    private int throttleFilesPerSecond;
+    private int smallFileThreshold;
+    private Path statsJsonFile;
+    private PerformanceRecorder performanceRecorder;
+    private boolean blockChecksums;
+    private boolean contentDefinedChunking;
+    private boolean fullScan;
+    private StateCache stateCache;
+    private String historyPath;
+    private String historyHash;
+    private int compareFromState;
+    private int compareToState;
 
     public Context() {
         setInvokedFromSubDirectory(false);
+        // The empty path keeps the relative paths as they are, so that they are resolved against the directory of the process
+        setWorkingDirectory(Paths.get(""));
         setCurrentDirectory(Paths.get("."));
         setRepositoryRootDir(getCurrentDirectory());
         setVerbose(true);
@@ -75,6 +102,21 @@ public class Context {
         setSortAscending(false);
         setSortMethod(SortMethod.wasted);
         setOutputType(OutputType.human);
+        setLargestFilesFirst(false);
+        setDirectIo(false);
+        setThrottleBytesPerSecond(0);
+        setThrottleFilesPerSecond(0);
+        setSmallFileThreshold(_64_KB);
+        setStatsJsonFile(null);
+        setPerformanceRecorder(new PerformanceRecorder());
+        setBlockChecksums(false);
+        setContentDefinedChunking(false);
+        setFullScan(false);
+        setStateCache(null);
+        setHistoryPath(null);
+        setHistoryHash(null);
+        setCompareFromState(-1);
+        setCompareToState(-1);
     }
 
     public boolean isInvokedFromSubDirectory() {
@@ -85,6 +127,17 @@ public class Context {
         this.invokedFromSubDirectory = invokedFromSubDirectory;
     }
 
+    /**
+     * @return the directory from which Fim was invoked. The relative paths given on the command line are resolved against it
+     */
+    public Path getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    public void setWorkingDirectory(Path workingDirectory) {
+        this.workingDirectory = workingDirectory;
+    }
+
     public Path getCurrentDirectory() {
         return currentDirectory;
     }
@@ -273,6 +326,144 @@ public class Context {
         return outputType;
     }
 
+    public boolean isLargestFilesFirst() {
+        return largestFilesFirst;
+    }
+
+    public void setLargestFilesFirst(boolean largestFilesFirst) {
+        this.largestFilesFirst = largestFilesFirst;
+    }
+
+    public boolean isDirectIo() {
+        return directIo;
+    }
+
+    public void setDirectIo(boolean directIo) {
+        this.directIo = directIo;
+    }
+
+    public long getThrottleBytesPerSecond() {
+        return throttleBytesPerSecond;
+    }
+
+    public void setThrottleBytesPerSecond(long throttleBytesPerSecond) {
+        this.throttleBytesPerSecond = throttleBytesPerSecond;
+    }
+
+    public int getThrottleFilesPerSecond() {
+        return throttleFilesPerSecond;
+    }
+
+    public void setThrottleFilesPerSecond(int throttleFilesPerSecond) {
+        this.throttleFilesPerSecond = throttleFilesPerSecond;
+    }
+
+    public int getSmallFileThreshold() {
+        return smallFileThreshold;
+    }
+
+    public void setSmallFileThreshold(int smallFileThreshold) {
+        this.smallFileThreshold = smallFileThreshold;
+    }
+
+    /**
+     * @return the file where the performance report of the command is written, or null
+     */
+    public Path getStatsJsonFile() {
+        return statsJsonFile;
+    }
+
+    public void setStatsJsonFile(Path statsJsonFile) {
+        this.statsJsonFile = statsJsonFile;
+    }
+
+    public PerformanceRecorder getPerformanceRecorder() {
+        return performanceRecorder;
+    }
+
+    public void setPerformanceRecorder(PerformanceRecorder performanceRecorder) {
+        this.performanceRecorder = performanceRecorder;
+    }
+
+    public boolean isBlockChecksums() {
+        return blockChecksums;
+    }
+
+    public void setBlockChecksums(boolean blockChecksums) {
+        this.blockChecksums = blockChecksums;
+    }
+
+    public boolean isContentDefinedChunking() {
+        return contentDefinedChunking;
+    }
+
+    public void setContentDefinedChunking(boolean contentDefinedChunking) {
+        this.contentDefinedChunking = contentDefinedChunking;
+    }
+
+    public boolean isFullScan() {
+        return fullScan;
+    }
+
+    public void setFullScan(boolean fullScan) {
+        this.fullScan = fullScan;
+    }
+
+    /**
+     * @return the cache of the loaded States shared by the commands run by the same process, or null
+     */
+    public StateCache getStateCache() {
+        return stateCache;
+    }
+
+    public void setStateCache(StateCache stateCache) {
+        this.stateCache = stateCache;
+    }
+
+    /**
+     * @return the file whose history is displayed by the 'history' command, or null
+     */
+    public String getHistoryPath() {
+        return historyPath;
+    }
+
+    public void setHistoryPath(String historyPath) {
+        this.historyPath = historyPath;
+    }
+
+    /**
+     * @return the content hash whose history is displayed by the 'history' command, or null
+     */
+    public String getHistoryHash() {
+        return historyHash;
+    }
+
+    public void setHistoryHash(String historyHash) {
+        this.historyHash = historyHash;
+    }
+
+    /**
+     * @return the number of the first State compared by the 'compare-states' command, or -1
+     */
+    public int getCompareFromState() {
+        return compareFromState;
+    }
+
+    public void setCompareFromState(int compareFromState) {
+        this.compareFromState = compareFromState;
+    }
+
+    /**
+     * @return the number of the second State compared by the 'compare-states' command, or -1 for the last one
+     */
+    public int getCompareToState() {
+        return compareToState;
+    }
+
+    public void setCompareToState(int compareToState) {
+        this.compareToState = compareToState;
+    }
+
     @Override
     public Context clone() {
         return CLONER.deepClone(this);
@@ -0,0 +1,79 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.fim.model.BlockChecksums.BLOCK_SIZE;
+
+/**
+ * Checksum of each {@link BlockChecksums#BLOCK_SIZE} block of a file content.
+ * The full hash identifies the content the checksums were computed for.
+ */
+public class FileBlockChecksums {
+    private final String fullHash;
+    private final long fileLength;
+    private final int[] checksums;
+
+    public FileBlockChecksums(String fullHash, long fileLength, int[] checksums) {
+        this.fullHash = fullHash;
+        this.fileLength = fileLength;
+        this.checksums = checksums;
+    }
+
+    public String getFullHash() {
+        return fullHash;
+    }
+
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    public int[] getChecksums() {
+        return checksums;
+    }
+
+    /**
+     * @return the byte ranges where the other content differs from this one. Consecutive blocks are merged
+     */
+    public List<Range> getMismatchingRanges(FileBlockChecksums other) {
+        List<Range> ranges = new ArrayList<>();
+        long maxLength = max(fileLength, other.fileLength);
+        int blockCount = max(checksums.length, other.checksums.length);
+        for (int index = 0; index < blockCount; index++) {
+            boolean same = index < checksums.length && index < other.checksums.length && checksums[index] == other.checksums[index];
+            if (same) {
+                continue;
+            }
+
+            long from = (long) index * BLOCK_SIZE;
+            long to = min(maxLength, from + BLOCK_SIZE);
+            int last = ranges.size() - 1;
+            if (last >= 0 && ranges.get(last).getTo() == from) {
+                ranges.set(last, new Range(ranges.get(last).getFrom(), to));
+            } else {
+                ranges.add(new Range(from, to));
+            }
+        }
+        return ranges;
+    }
+}
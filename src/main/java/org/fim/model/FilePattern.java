@@ -36,7 +36,7 @@ public class FilePattern {
             String pattern = this.fileName;
 
             // Only * is allowed in the fileName. So escape the other regexp special chars
-            pattern = escapeChars(pattern, '\\', '^', '$', '{', '}', '[', ']', '(', ')', '.', '|', '?');
+            pattern = escapeChars(pattern, '\\', '^', '$', '{', '}', '[', ']', '(', ')', '.', '|', '?', '+');
 
             // Many * char are converted to only one
             while (pattern.contains("**")) {
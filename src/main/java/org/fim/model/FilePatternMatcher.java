@@ -0,0 +1,144 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles a set of FilePattern into one matcher.
+ * Literal names, prefixes ('foo*') and suffixes ('*.mp3') are checked using hash tables.
+ * All the other patterns are merged into a single regular expression.
+ * So the matching cost does not grow with the number of patterns.
+ */
+public class FilePatternMatcher {
+    public static final FilePatternMatcher EMPTY = new FilePatternMatcher(Collections.emptyList());
+
+    private boolean matchAll;
+    private Set<String> literals;
+    private Map<Integer, Set<String>> prefixesByLength;
+    private Map<Integer, Set<String>> suffixesByLength;
+    private Pattern combined;
+    private boolean empty;
+
+    public FilePatternMatcher(Collection<FilePattern> filePatterns) {
+        matchAll = false;
+        literals = new HashSet<>();
+        prefixesByLength = new TreeMap<>();
+        suffixesByLength = new TreeMap<>();
+
+        List<String> regexps = new ArrayList<>();
+        for (FilePattern filePattern : filePatterns) {
+            String fileName = collapseStars(filePattern.getFileName());
+            int firstStar = fileName.indexOf('*');
+            int lastStar = fileName.lastIndexOf('*');
+
+            if (filePattern.getCompiled() == null || firstStar == -1) {
+                literals.add(filePattern.getFileName());
+            } else if (fileName.equals("*")) {
+                matchAll = true;
+            } else if (firstStar == 0 && lastStar == 0) {
+                String suffix = fileName.substring(1);
+                suffixesByLength.computeIfAbsent(suffix.length(), length -> new HashSet<>()).add(suffix);
+            } else if (firstStar == fileName.length() - 1) {
+                String prefix = fileName.substring(0, firstStar);
+                prefixesByLength.computeIfAbsent(prefix.length(), length -> new HashSet<>()).add(prefix);
+            } else {
+                String pattern = filePattern.getCompiled().pattern();
+                // Remove the start and end line anchors. They are added once around the whole alternation
+                regexps.add(pattern.substring(1, pattern.length() - 1));
+            }
+        }
+
+        if (!regexps.isEmpty()) {
+            combined = Pattern.compile("^(?:" + String.join("|", regexps) + ")$");
+        }
+
+        empty = !matchAll && literals.isEmpty() && prefixesByLength.isEmpty() && suffixesByLength.isEmpty() && combined == null;
+    }
+
+    private static String collapseStars(String fileName) {
+        String result = fileName;
+        while (result.contains("**")) {
+            result = result.replace("**", "*");
+        }
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    public boolean match(String fileName) {
+        if (empty) {
+            return false;
+        }
+
+        if (matchAll || literals.contains(fileName)) {
+            return true;
+        }
+
+        int fileNameLength = fileName.length();
+        for (Map.Entry<Integer, Set<String>> entry : suffixesByLength.entrySet()) {
+            int length = entry.getKey();
+            if (length > fileNameLength) {
+                break;
+            }
+            if (entry.getValue().contains(fileName.substring(fileNameLength - length))) {
+                return true;
+            }
+        }
+
+        for (Map.Entry<Integer, Set<String>> entry : prefixesByLength.entrySet()) {
+            int length = entry.getKey();
+            if (length > fileNameLength) {
+                break;
+            }
+            if (entry.getValue().contains(fileName.substring(0, length))) {
+                return true;
+            }
+        }
+
+        return combined != null && combined.matcher(fileName).matches();
+    }
+
+    public static FilePatternMatcher compile(Collection<FilePattern> filePatterns) {
+        if (filePatterns == null) {
+            return null;
+        }
+        return new FilePatternMatcher(filePatterns);
+    }
+
+    /**
+     * Same semantic than FilePattern.matchPatterns(). When no patterns are set, the default value is returned.
+     */
+    public static boolean matchPatterns(String fileName, FilePatternMatcher matcher, boolean defaultValue) {
+        if (matcher != null) {
+            return matcher.match(fileName);
+        }
+        return defaultValue;
+    }
+}
@@ -25,9 +25,28 @@ public class FimIgnore {
     private Set<FilePattern> filesToIgnoreLocally;
     private Set<FilePattern> filesToIgnoreInAllDirectories;
 
+    // Compiled lazily, once all the patterns are loaded
+    private FilePatternMatcher localMatcher;
+    private FilePatternMatcher allDirectoriesMatcher;
+
     public FimIgnore() {
-        filesToIgnoreLocally = new HashSet<>();
-        filesToIgnoreInAllDirectories = new HashSet<>();
+        this(new HashSet<>(), new HashSet<>());
+    }
+
+    public FimIgnore(Set<FilePattern> filesToIgnoreLocally, Set<FilePattern> filesToIgnoreInAllDirectories) {
+        this.filesToIgnoreLocally = filesToIgnoreLocally;
+        this.filesToIgnoreInAllDirectories = filesToIgnoreInAllDirectories;
+    }
+
+    /**
+     * Build the FimIgnore of a directory that reuse the local patterns of localFimIgnore and the filesToIgnoreInAllDirectories
+     * of the parent directory. The parent set and its compiled matcher are shared, not copied.
+     */
+    public FimIgnore(FimIgnore localFimIgnore, FimIgnore parentFimIgnore) {
+        this.filesToIgnoreLocally = localFimIgnore.filesToIgnoreLocally;
+        this.localMatcher = localFimIgnore.getLocalMatcher();
+        this.filesToIgnoreInAllDirectories = parentFimIgnore.filesToIgnoreInAllDirectories;
+        this.allDirectoriesMatcher = parentFimIgnore.getAllDirectoriesMatcher();
     }
 
     public Set<FilePattern> getFilesToIgnoreLocally() {
@@ -37,4 +56,25 @@ public class FimIgnore {
     public Set<FilePattern> getFilesToIgnoreInAllDirectories() {
         return filesToIgnoreInAllDirectories;
     }
+
+    public FilePatternMatcher getLocalMatcher() {
+        if (localMatcher == null) {
+            localMatcher = compile(filesToIgnoreLocally);
+        }
+        return localMatcher;
+    }
+
+    public FilePatternMatcher getAllDirectoriesMatcher() {
+        if (allDirectoriesMatcher == null) {
+            allDirectoriesMatcher = compile(filesToIgnoreInAllDirectories);
+        }
+        return allDirectoriesMatcher;
+    }
+
+    private FilePatternMatcher compile(Set<FilePattern> filePatterns) {
+        if (filePatterns.isEmpty()) {
+            return FilePatternMatcher.EMPTY;
+        }
+        return new FilePatternMatcher(filePatterns);
+    }
 }
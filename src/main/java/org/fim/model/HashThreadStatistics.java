@@ -0,0 +1,125 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.model;
+
+public class HashThreadStatistics {
+    private String name;
+    private long files;
+    private long bytes;
+    private long smallBlockBytes;
+    private long mediumBlockBytes;
+    private long fullBytes;
+    private long hashTimeMicros;
+    private long cpuTimeMicros;
+    private long queueWaitMicros;
+    private long attributesReadMicros;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getFiles() {
+        return files;
+    }
+
+    public void setFiles(long files) {
+        this.files = files;
+    }
+
+    /**
+     * @return the bytes read to hash the files. A byte hashed by several hash levels is counted once
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public long getSmallBlockBytes() {
+        return smallBlockBytes;
+    }
+
+    public void setSmallBlockBytes(long smallBlockBytes) {
+        this.smallBlockBytes = smallBlockBytes;
+    }
+
+    public long getMediumBlockBytes() {
+        return mediumBlockBytes;
+    }
+
+    public void setMediumBlockBytes(long mediumBlockBytes) {
+        this.mediumBlockBytes = mediumBlockBytes;
+    }
+
+    public long getFullBytes() {
+        return fullBytes;
+    }
+
+    public void setFullBytes(long fullBytes) {
+        this.fullBytes = fullBytes;
+    }
+
+    public long getHashTimeMicros() {
+        return hashTimeMicros;
+    }
+
+    public void setHashTimeMicros(long hashTimeMicros) {
+        this.hashTimeMicros = hashTimeMicros;
+    }
+
+    /**
+     * @return the CPU time of the thread, or -1 if the JVM does not measure it
+     */
+    public long getCpuTimeMicros() {
+        return cpuTimeMicros;
+    }
+
+    public void setCpuTimeMicros(long cpuTimeMicros) {
+        this.cpuTimeMicros = cpuTimeMicros;
+    }
+
+    public long getQueueWaitMicros() {
+        return queueWaitMicros;
+    }
+
+    public void setQueueWaitMicros(long queueWaitMicros) {
+        this.queueWaitMicros = queueWaitMicros;
+    }
+
+    public long getAttributesReadMicros() {
+        return attributesReadMicros;
+    }
+
+    public void setAttributesReadMicros(long attributesReadMicros) {
+        this.attributesReadMicros = attributesReadMicros;
+    }
+
+    public long getThroughputBytesPerSecond() {
+        if (hashTimeMicros <= 0) {
+            return 0;
+        }
+        return bytes * 1_000_000 / hashTimeMicros;
+    }
+}
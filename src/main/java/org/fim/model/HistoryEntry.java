@@ -0,0 +1,108 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.model;
+
+/**
+ * One modification of a file recorded by a State, as stored in the HistoryIndex.
+ */
+public class HistoryEntry {
+    private int stateNumber;
+    private long timestamp;
+    private String fileName;
+    private String previousFileName;
+    private Modification modification;
+    private long fileLength;
+    private FileHash fileHash;
+
+    public HistoryEntry() {
+    }
+
+    public HistoryEntry(int stateNumber, long timestamp, FileState fileState) {
+        this.stateNumber = stateNumber;
+        this.timestamp = timestamp;
+        this.fileName = fileState.getFileName();
+        this.modification = fileState.getModification();
+        this.fileLength = fileState.getFileLength();
+        this.fileHash = fileState.getFileHash();
+
+        FileState previousFileState = fileState.getPreviousFileState();
+        if (previousFileState != null && !previousFileState.getFileName().equals(fileName)) {
+            this.previousFileName = previousFileState.getFileName();
+        }
+    }
+
+    public int getStateNumber() {
+        return stateNumber;
+    }
+
+    public void setStateNumber(int stateNumber) {
+        this.stateNumber = stateNumber;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName.intern();
+    }
+
+    /**
+     * @return the name of the file before it was renamed, or the file it was copied from. null when there is none
+     */
+    public String getPreviousFileName() {
+        return previousFileName;
+    }
+
+    public void setPreviousFileName(String previousFileName) {
+        this.previousFileName = previousFileName == null ? null : previousFileName.intern();
+    }
+
+    public Modification getModification() {
+        return modification;
+    }
+
+    public void setModification(Modification modification) {
+        this.modification = modification;
+    }
+
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    public void setFileLength(long fileLength) {
+        this.fileLength = fileLength;
+    }
+
+    public FileHash getFileHash() {
+        return fileHash;
+    }
+
+    public void setFileHash(FileHash fileHash) {
+        this.fileHash = fileHash;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.model;
+
+import com.google.common.io.BaseEncoding;
+import org.fim.util.Ascii85Util;
+import org.fim.util.Logger;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The modifications recorded by all the States, to find quickly when a file or a content changed without loading the States.
+ * It is a directory of HistorySegments that are sorted by file name and by hash, so that a lookup reads only a few blocks of each segment.
+ * Each indexed State keeps the length and modification time of its State file, so that a rolled back or purged State is detected.
+ * <p>
+ * A commit writes a segment with only its State, without reading the index. The history queries remove the outdated States,
+ * add the missing ones, and merge the small segments so that a lookup reads at most MAX_SEGMENTS segments.
+ */
+public class HistoryIndex {
+    static final int MAX_SEGMENTS = 8;
+
+    private static final Pattern HEXADECIMAL_HASH = Pattern.compile("[0-9a-fA-F]{128}");
+
+    private final Path indexDir;
+    private final List<HistorySegment> segments;
+    private final Map<HistorySegment, Set<Integer>> removedStateNumbers;
+
+    public HistoryIndex(Path indexDir) {
+        this.indexDir = indexDir;
+        this.segments = new ArrayList<>();
+        this.removedStateNumbers = new HashMap<>();
+    }
+
+    /**
+     * @return the index with all its segments. A segment that cannot be read is removed, so that its States are indexed again
+     */
+    public static HistoryIndex load(Path indexDir) throws IOException {
+        HistoryIndex historyIndex = new HistoryIndex(indexDir);
+        try (DirectoryStream<Path> descriptorFiles = Files.newDirectoryStream(indexDir, HistorySegment.PREFIX + "*" + HistorySegment.DESCRIPTOR_EXTENSION)) {
+            for (Path descriptorFile : descriptorFiles) {
+                try {
+                    historyIndex.segments.add(HistorySegment.load(descriptorFile));
+                } catch (IOException ex) {
+                    Logger.warning(String.format("Removing the unreadable history segment '%s': %s", descriptorFile.getFileName(), ex.getMessage()));
+                    Files.deleteIfExists(descriptorFile);
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            // Nothing indexed yet
+        }
+        return historyIndex;
+    }
+
+    /**
+     * Write a segment with these States. The ones already indexed must have been removed before.
+     */
+    public void addStates(Map<Integer, StateSummary> summaries) throws IOException {
+        List<IndexedState> indexedStates = new ArrayList<>();
+        List<HistoryEntry> entries = new ArrayList<>();
+        for (Map.Entry<Integer, StateSummary> summary : summaries.entrySet()) {
+            indexedStates.add(new IndexedState(summary.getKey(), summary.getValue()));
+            for (FileState fileState : summary.getValue().getModifiedFileStates()) {
+                entries.add(new HistoryEntry(summary.getKey(), summary.getValue().getTimestamp(), fileState));
+            }
+        }
+        segments.add(HistorySegment.write(indexDir, indexedStates, entries));
+    }
+
+    /**
+     * Rewrite the segments that index these States without them. Until they are rewritten, their entries of these States are skipped.
+     */
+    public void removeStates(Collection<IndexedState> removedStates) throws IOException {
+        for (HistorySegment segment : new ArrayList<>(segments)) {
+            List<IndexedState> keptStates = new ArrayList<>();
+            for (IndexedState indexedState : segment.getIndexedStates()) {
+                if (removedStates.contains(indexedState)) {
+                    removedStateNumbers.computeIfAbsent(segment, key -> new HashSet<>()).add(indexedState.getStateNumber());
+                } else {
+                    keptStates.add(indexedState);
+                }
+            }
+            if (removedStateNumbers.containsKey(segment)) {
+                replace(Collections.singletonList(segment), keptStates);
+            }
+        }
+    }
+
+    /**
+     * Merge the segments when there are too many. The biggest one is kept as is, so that the States indexed first are not rewritten each time.
+     */
+    public void compact() throws IOException {
+        if (segments.size() <= MAX_SEGMENTS) {
+            return;
+        }
+
+        List<HistorySegment> mergedSegments = new ArrayList<>(segments);
+        mergedSegments.sort(Comparator.comparingInt(HistorySegment::getEntryCount).reversed());
+        mergedSegments.remove(0);
+        List<IndexedState> keptStates = new ArrayList<>();
+        for (HistorySegment segment : mergedSegments) {
+            keptStates.addAll(segment.getIndexedStates());
+        }
+        replace(mergedSegments, keptStates);
+    }
+
+    private void replace(List<HistorySegment> replacedSegments, List<IndexedState> keptStates) throws IOException {
+        Set<Integer> keptStateNumbers = new HashSet<>();
+        for (IndexedState keptState : keptStates) {
+            keptStateNumbers.add(keptState.getStateNumber());
+        }
+
+        if (!keptStates.isEmpty()) {
+            List<HistoryEntry> entries = new ArrayList<>();
+            for (HistorySegment segment : replacedSegments) {
+                for (HistoryEntry entry : segment.readAllEntries()) {
+                    if (keptStateNumbers.contains(entry.getStateNumber())) {
+                        entries.add(entry);
+                    }
+                }
+            }
+            keptStates.sort(Comparator.comparingInt(IndexedState::getStateNumber));
+            entries.sort(Comparator.comparingInt(HistoryEntry::getStateNumber));
+            segments.add(HistorySegment.write(indexDir, keptStates, entries));
+        }
+
+        for (HistorySegment segment : replacedSegments) {
+            segments.remove(segment);
+            removedStateNumbers.remove(segment);
+            segment.delete();
+        }
+    }
+
+    public List<IndexedState> getIndexedStates() {
+        List<IndexedState> indexedStates = new ArrayList<>();
+        for (HistorySegment segment : segments) {
+            Set<Integer> removed = removedStateNumbers.getOrDefault(segment, Collections.emptySet());
+            for (IndexedState indexedState : segment.getIndexedStates()) {
+                if (!removed.contains(indexedState.getStateNumber())) {
+                    indexedStates.add(indexedState);
+                }
+            }
+        }
+        return indexedStates;
+    }
+
+    public List<HistorySegment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return the modifications of this file, including the ones where it was the source of a rename or of a copy, oldest first
+     */
+    public List<HistoryEntry> findByFileName(String fileName) throws IOException {
+        List<HistoryEntry> entries = new ArrayList<>();
+        for (HistorySegment segment : segments) {
+            addEntries(entries, segment, segment.findByFileName(fileName));
+        }
+        entries.sort(Comparator.comparingInt(HistoryEntry::getStateNumber));
+        return entries;
+    }
+
+    /**
+     * @param hash a small block, medium block or full hash, either as stored in the States or in hexadecimal like 'sha512sum' displays it
+     * @return the modifications that led to a file having this hash, oldest first
+     */
+    public List<HistoryEntry> findByHash(String hash) throws IOException {
+        String storedHash = hash;
+        if (HEXADECIMAL_HASH.matcher(hash).matches()) {
+            storedHash = Ascii85Util.encode(BaseEncoding.base16().decode(hash.toUpperCase()));
+        }
+
+        List<HistoryEntry> entries = new ArrayList<>();
+        for (HistorySegment segment : segments) {
+            addEntries(entries, segment, segment.findByHash(storedHash));
+        }
+        entries.sort(Comparator.comparingInt(HistoryEntry::getStateNumber));
+        return entries;
+    }
+
+    private void addEntries(List<HistoryEntry> entries, HistorySegment segment, List<HistoryEntry> segmentEntries) {
+        Set<Integer> removed = removedStateNumbers.getOrDefault(segment, Collections.emptySet());
+        for (HistoryEntry entry : segmentEntries) {
+            if (!removed.contains(entry.getStateNumber())) {
+                entries.add(entry);
+            }
+        }
+    }
+
+    public static class IndexedState {
+        private int stateNumber;
+        private long stateFileLength;
+        private long stateFileLastModified;
+
+        public IndexedState() {
+        }
+
+        public IndexedState(int stateNumber, StateSummary summary) {
+            this.stateNumber = stateNumber;
+            this.stateFileLength = summary.getStateFileLength();
+            this.stateFileLastModified = summary.getStateFileLastModified();
+        }
+
+        public int getStateNumber() {
+            return stateNumber;
+        }
+
+        public void setStateNumber(int stateNumber) {
+            this.stateNumber = stateNumber;
+        }
+
+        public long getStateFileLength() {
+            return stateFileLength;
+        }
+
+        public void setStateFileLength(long stateFileLength) {
+            this.stateFileLength = stateFileLength;
+        }
+
+        public long getStateFileLastModified() {
+            return stateFileLastModified;
+        }
+
+        public void setStateFileLastModified(long stateFileLastModified) {
+            this.stateFileLastModified = stateFileLastModified;
+        }
+    }
+}
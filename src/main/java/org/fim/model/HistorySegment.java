@@ -0,0 +1,386 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.fim.util.JsonIO;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static org.fim.model.Constants.NO_HASH;
+import static org.fim.util.Ascii85Util.UTF8;
+
+/**
+ * Part of the HistoryIndex that indexes some States. It is made of two files:
+ * <ul>
+ * <li>segment_&lt;id&gt;.data: the entries sorted by file name, then the entries sorted by hash. They are grouped by blocks
+ * of BLOCK_SIZE entries, each block being a separate gzip member</li>
+ * <li>segment_&lt;id&gt;.json.gz: the indexed States, and the first key and the position of each block</li>
+ * </ul>
+ * A lookup decompresses only the blocks that can contain the key. A segment is never modified, it is replaced by a new one.
+ */
+public class HistorySegment {
+    public static final String CURRENT_FORMAT_VERSION = "1";
+    public static final String PREFIX = "segment_";
+    public static final String DESCRIPTOR_EXTENSION = ".json.gz";
+    public static final String DATA_EXTENSION = ".data";
+
+    static final int BLOCK_SIZE = 512;
+
+    private static JsonIO jsonIO = new JsonIO();
+    private static ObjectWriter recordWriter = jsonIO.getObjectMapper().writer().without(SerializationFeature.INDENT_OUTPUT);
+
+    private String formatVersion;
+    private List<HistoryIndex.IndexedState> indexedStates;
+    private int entryCount;
+    private List<Block> pathBlocks;
+    private List<Block> hashBlocks;
+
+    private transient Path descriptorFile;
+
+    public HistorySegment() {
+        formatVersion = CURRENT_FORMAT_VERSION;
+        indexedStates = new ArrayList<>();
+        pathBlocks = new ArrayList<>();
+        hashBlocks = new ArrayList<>();
+    }
+
+    /**
+     * Write a new segment into the index directory. The data file is written first, so that a segment whose descriptor exists is complete.
+     */
+    public static HistorySegment write(Path indexDir, List<HistoryIndex.IndexedState> indexedStates, List<HistoryEntry> entries) throws IOException {
+        List<Record> pathRecords = new ArrayList<>();
+        List<Record> hashRecords = new ArrayList<>();
+        for (HistoryEntry entry : entries) {
+            pathRecords.add(new Record(entry.getFileName(), entry));
+            if (entry.getPreviousFileName() != null) {
+                pathRecords.add(new Record(entry.getPreviousFileName(), entry));
+            }
+
+            FileHash fileHash = entry.getFileHash();
+            if (fileHash != null) {
+                Set<String> hashes = new LinkedHashSet<>(Arrays.asList(fileHash.getSmallBlockHash(), fileHash.getMediumBlockHash(), fileHash.getFullHash()));
+                for (String hash : hashes) {
+                    if (hash != null && !NO_HASH.equals(hash)) {
+                        hashRecords.add(new Record(hash, entry));
+                    }
+                }
+            }
+        }
+        // Stable sorts keep the entries of the same key in State order
+        pathRecords.sort(Comparator.comparing(Record::getKey));
+        hashRecords.sort(Comparator.comparing(Record::getKey));
+
+        Files.createDirectories(indexDir);
+        String name = PREFIX + UUID.randomUUID();
+        HistorySegment segment = new HistorySegment();
+        segment.indexedStates.addAll(indexedStates);
+        segment.entryCount = entries.size();
+        segment.descriptorFile = indexDir.resolve(name + DESCRIPTOR_EXTENSION);
+        try (OutputStream out = new FileOutputStream(segment.getDataFile().toFile())) {
+            long position = writeBlocks(out, pathRecords, segment.pathBlocks, 0);
+            writeBlocks(out, hashRecords, segment.hashBlocks, position);
+        }
+
+        Path newDescriptorFile = indexDir.resolve(name + DESCRIPTOR_EXTENSION + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(newDescriptorFile.toFile())), UTF8)) {
+            jsonIO.getObjectWriter().writeValue(writer, segment);
+        }
+        Files.move(newDescriptorFile, segment.descriptorFile, StandardCopyOption.ATOMIC_MOVE);
+        return segment;
+    }
+
+    private static long writeBlocks(OutputStream out, List<Record> records, List<Block> blocks, long position) throws IOException {
+        for (int start = 0; start < records.size(); start += BLOCK_SIZE) {
+            List<Record> blockRecords = records.subList(start, Math.min(start + BLOCK_SIZE, records.size()));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), UTF8)) {
+                for (Record record : blockRecords) {
+                    writer.write(recordWriter.writeValueAsString(record));
+                    writer.write('\n');
+                }
+            }
+            out.write(bytes.toByteArray());
+            blocks.add(new Block(blockRecords.get(0).getKey(), position, bytes.size()));
+            position += bytes.size();
+        }
+        return position;
+    }
+
+    public static HistorySegment load(Path descriptorFile) throws IOException {
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(descriptorFile.toFile())), UTF8)) {
+            HistorySegment segment = jsonIO.getObjectMapper().readValue(reader, HistorySegment.class);
+            if (segment == null || !CURRENT_FORMAT_VERSION.equals(segment.getFormatVersion())) {
+                throw new IOException(String.format("Unsupported history segment format in '%s'", descriptorFile));
+            }
+            segment.descriptorFile = descriptorFile;
+            return segment;
+        }
+    }
+
+    /**
+     * Remove the descriptor first, so that the segment is no longer used even if the data file cannot be removed.
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(descriptorFile);
+        Files.deleteIfExists(getDataFile());
+    }
+
+    /**
+     * @return the entries whose file name or previous file name is fileName
+     */
+    public List<HistoryEntry> findByFileName(String fileName) throws IOException {
+        return find(pathBlocks, fileName);
+    }
+
+    /**
+     * @param hash a small block, medium block or full hash, as stored in the States
+     */
+    public List<HistoryEntry> findByHash(String hash) throws IOException {
+        return find(hashBlocks, hash);
+    }
+
+    /**
+     * @return all the entries of this segment, each one once
+     */
+    public List<HistoryEntry> readAllEntries() throws IOException {
+        List<HistoryEntry> entries = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(getDataFile(), READ)) {
+            for (Block block : pathBlocks) {
+                for (Record record : readBlock(channel, block)) {
+                    // An entry is also indexed by its previous file name
+                    if (record.getKey().equals(record.getEntry().getFileName())) {
+                        entries.add(record.getEntry());
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    private List<HistoryEntry> find(List<Block> blocks, String key) throws IOException {
+        List<HistoryEntry> entries = new ArrayList<>();
+        int index = firstBlockNotBefore(blocks, key);
+        // The previous block may end with the key
+        int start = Math.max(0, index - 1);
+        if (start >= blocks.size() || blocks.get(start).getFirstKey().compareTo(key) > 0) {
+            return entries;
+        }
+
+        try (FileChannel channel = FileChannel.open(getDataFile(), READ)) {
+            for (int blockIndex = start; blockIndex < blocks.size() && blocks.get(blockIndex).getFirstKey().compareTo(key) <= 0; blockIndex++) {
+                for (Record record : readBlock(channel, blocks.get(blockIndex))) {
+                    if (record.getKey().equals(key)) {
+                        entries.add(record.getEntry());
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static int firstBlockNotBefore(List<Block> blocks, String key) {
+        int low = 0;
+        int high = blocks.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (blocks.get(middle).getFirstKey().compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static List<Record> readBlock(FileChannel channel, Block block) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(block.getLength());
+        long position = block.getPosition();
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new IOException("Truncated history segment");
+            }
+            position += count;
+        }
+
+        ObjectMapper objectMapper = jsonIO.getObjectMapper();
+        List<Record> records = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(buffer.array())), UTF8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                records.add(objectMapper.readValue(line, Record.class));
+            }
+        }
+        return records;
+    }
+
+    @JsonIgnore
+    public Path getDescriptorFile() {
+        return descriptorFile;
+    }
+
+    @JsonIgnore
+    public Path getDataFile() {
+        String descriptorName = descriptorFile.getFileName().toString();
+        return descriptorFile.resolveSibling(descriptorName.substring(0, descriptorName.length() - DESCRIPTOR_EXTENSION.length()) + DATA_EXTENSION);
+    }
+
+    public String getFormatVersion() {
+        return formatVersion;
+    }
+
+    public void setFormatVersion(String formatVersion) {
+        this.formatVersion = formatVersion;
+    }
+
+    public List<HistoryIndex.IndexedState> getIndexedStates() {
+        return indexedStates;
+    }
+
+    public void setIndexedStates(List<HistoryIndex.IndexedState> indexedStates) {
+        this.indexedStates = indexedStates;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public void setEntryCount(int entryCount) {
+        this.entryCount = entryCount;
+    }
+
+    public List<Block> getPathBlocks() {
+        return pathBlocks;
+    }
+
+    public void setPathBlocks(List<Block> pathBlocks) {
+        this.pathBlocks = pathBlocks;
+    }
+
+    public List<Block> getHashBlocks() {
+        return hashBlocks;
+    }
+
+    public void setHashBlocks(List<Block> hashBlocks) {
+        this.hashBlocks = hashBlocks;
+    }
+
+    /**
+     * A gzip member of the data file, that contains the records from firstKey up to the first key of the next block.
+     */
+    public static class Block {
+        private String firstKey;
+        private long position;
+        private int length;
+
+        public Block() {
+        }
+
+        public Block(String firstKey, long position, int length) {
+            this.firstKey = firstKey;
+            this.position = position;
+            this.length = length;
+        }
+
+        public String getFirstKey() {
+            return firstKey;
+        }
+
+        public void setFirstKey(String firstKey) {
+            this.firstKey = firstKey;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        public void setPosition(long position) {
+            this.position = position;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public void setLength(int length) {
+            this.length = length;
+        }
+    }
+
+    /**
+     * One line of a block: an entry and the file name or hash it is indexed by.
+     */
+    public static class Record {
+        private String key;
+        private HistoryEntry entry;
+
+        public Record() {
+        }
+
+        public Record(String key, HistoryEntry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+
+        public HistoryEntry getEntry() {
+            return entry;
+        }
+
+        public void setEntry(HistoryEntry entry) {
+            this.entry = entry;
+        }
+    }
+}
@@ -42,10 +42,21 @@ public class LogEntry {
         setFileCount(state.getFileCount());
         setFilesContentLength(state.getFilesContentLength());
         setModificationCounts(state.getModificationCounts());
-        setCommitDetails(getStateCommitDetails(state));
+        setCommitDetails(getStateCommitDetails(state.getCommitDetails()));
         setCompareResult(new CompareResult(context, null, state));
     }
 
+    public LogEntry(Context context, StateSummary summary, int stateNumber) {
+        setStateNumber(stateNumber);
+        setComment(summary.getComment());
+        setTimestamp(summary.getTimestamp());
+        setFileCount(summary.getFileCount());
+        setFilesContentLength(summary.getFilesContentLength());
+        setModificationCounts(summary.getModificationCounts());
+        setCommitDetails(getStateCommitDetails(summary.getCommitDetails()));
+        setCompareResult(new CompareResult(context, null, summary.toPartialState()));
+    }
+
     public int getStateNumber() {
         return stateNumber;
     }
@@ -120,9 +131,9 @@ public class LogEntry {
         }
     }
 
-    private CommitDetails getStateCommitDetails(State state) {
-        if (state.getCommitDetails() != null) {
-            return state.getCommitDetails();
+    private CommitDetails getStateCommitDetails(CommitDetails commitDetails) {
+        if (commitDetails != null) {
+            return commitDetails;
         }
         // For backward compatibility
         return new CommitDetails(hashAll, null);
@@ -0,0 +1,100 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Where the time goes during one command. Written by the '--stats-json' option.
+ */
+public class PerformanceReport {
+    private String command;
+    private long timestamp;
+    private int availableProcessors;
+    private long wallTimeMicros;
+    private long cpuTimeMicros;
+    private long peakHeapBytes;
+    private List<PhaseStatistics> phases;
+    private List<HashThreadStatistics> hashThreads;
+
+    public PerformanceReport() {
+        timestamp = System.currentTimeMillis();
+        phases = new ArrayList<>();
+        hashThreads = new ArrayList<>();
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public void setCommand(String command) {
+        this.command = command;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getAvailableProcessors() {
+        return availableProcessors;
+    }
+
+    public void setAvailableProcessors(int availableProcessors) {
+        this.availableProcessors = availableProcessors;
+    }
+
+    public long getWallTimeMicros() {
+        return wallTimeMicros;
+    }
+
+    public void setWallTimeMicros(long wallTimeMicros) {
+        this.wallTimeMicros = wallTimeMicros;
+    }
+
+    /**
+     * @return the CPU time of the whole process, or -1 if the JVM does not measure it
+     */
+    public long getCpuTimeMicros() {
+        return cpuTimeMicros;
+    }
+
+    public void setCpuTimeMicros(long cpuTimeMicros) {
+        this.cpuTimeMicros = cpuTimeMicros;
+    }
+
+    /**
+     * @return the sum of the peak usage of each heap memory pool since the JVM started
+     */
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    public void setPeakHeapBytes(long peakHeapBytes) {
+        this.peakHeapBytes = peakHeapBytes;
+    }
+
+    public List<PhaseStatistics> getPhases() {
+        return phases;
+    }
+
+    public List<HashThreadStatistics> getHashThreads() {
+        return hashThreads;
+    }
+}
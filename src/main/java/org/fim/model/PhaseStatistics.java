@@ -0,0 +1,67 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.model;
+
+public class PhaseStatistics {
+    private final String name;
+    private int count;
+    private long wallTimeMicros;
+    private long cpuTimeMicros;
+    private long files;
+    private long bytes;
+
+    public PhaseStatistics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Add one more execution of this phase. The CPU time is the one of the whole process, so it includes all the threads.
+     */
+    public void add(long wallTimeNanos, long cpuTimeNanos, long files, long bytes) {
+        this.count++;
+        this.wallTimeMicros += wallTimeNanos / 1_000;
+        this.cpuTimeMicros += cpuTimeNanos / 1_000;
+        this.files += files;
+        this.bytes += bytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getWallTimeMicros() {
+        return wallTimeMicros;
+    }
+
+    public long getCpuTimeMicros() {
+        return cpuTimeMicros;
+    }
+
+    public long getFiles() {
+        return files;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+}
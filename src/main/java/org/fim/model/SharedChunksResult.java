@@ -0,0 +1,100 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.model;
+
+import org.fim.util.Logger;
+
+import java.util.List;
+
+import static org.fim.util.FileUtil.byteCountToDisplaySize;
+
+public class SharedChunksResult {
+    private final Context context;
+    private final long totalBytes;
+    private final long uniqueBytes;
+    private final List<SharedContent> sharedFiles;
+    private final List<SharedContent> sharedDirectories;
+
+    public SharedChunksResult(Context context, long totalBytes, long uniqueBytes, List<SharedContent> sharedFiles, List<SharedContent> sharedDirectories) {
+        this.context = context;
+        this.totalBytes = totalBytes;
+        this.uniqueBytes = uniqueBytes;
+        this.sharedFiles = sharedFiles;
+        this.sharedDirectories = sharedDirectories;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getUniqueBytes() {
+        return uniqueBytes;
+    }
+
+    public long getSharedBytes() {
+        return totalBytes - uniqueBytes;
+    }
+
+    public List<SharedContent> getSharedFiles() {
+        return sharedFiles;
+    }
+
+    public List<SharedContent> getSharedDirectories() {
+        return sharedDirectories;
+    }
+
+    public SharedChunksResult displaySharedChunks() {
+        if (getSharedBytes() == 0) {
+            Logger.out.println("No shared chunk found");
+            return this;
+        }
+
+        if (context.isVerbose()) {
+            displaySharedContents("Files sharing the most content:", sharedFiles);
+            displaySharedContents("Directories sharing the most content:", sharedDirectories);
+        }
+
+        long percent = totalBytes == 0 ? 0 : getSharedBytes() * 100 / totalBytes;
+        Logger.out.printf("%s of content, %s of unique chunks. Deduplication would save %s (%d%%)%n",
+            byteCountToDisplaySize(totalBytes), byteCountToDisplaySize(uniqueBytes), byteCountToDisplaySize(getSharedBytes()), percent);
+        return this;
+    }
+
+    private void displaySharedContents(String title, List<SharedContent> sharedContents) {
+        int truncateOutput = context.getTruncateOutput();
+        if (sharedContents.isEmpty() || truncateOutput < 1) {
+            return;
+        }
+
+        Logger.out.println(title);
+        int size = sharedContents.size();
+        for (int index = 0; index < size; index++) {
+            if (index >= truncateOutput) {
+                Logger.out.println("  [Too many lines. Truncating the output] ...");
+                Logger.out.printf("  %d more%n", size - index);
+                break;
+            }
+
+            SharedContent sharedContent = sharedContents.get(index);
+            Logger.out.printf("  %s shared between %s and %s%n",
+                byteCountToDisplaySize(sharedContent.getSharedBytes()), sharedContent.getFirst(), sharedContent.getSecond());
+        }
+        Logger.newLine();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.model;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.Comparator;
+
+/**
+ * Content shared by two files or two directories, as the sum of the sizes of their common chunks.
+ */
+public class SharedContent {
+    private final String first;
+    private final String second;
+    private final long sharedBytes;
+
+    public SharedContent(String first, String second, long sharedBytes) {
+        this.first = first;
+        this.second = second;
+        this.sharedBytes = sharedBytes;
+    }
+
+    public String getFirst() {
+        return first;
+    }
+
+    public String getSecond() {
+        return second;
+    }
+
+    public long getSharedBytes() {
+        return sharedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("first", first)
+            .add("second", second)
+            .add("sharedBytes", sharedBytes)
+            .toString();
+    }
+
+    public static class SharedBytesComparator implements Comparator<SharedContent> {
+        @Override
+        public int compare(SharedContent sc1, SharedContent sc2) {
+            int value = Long.compare(sc2.getSharedBytes(), sc1.getSharedBytes());
+            if (value == 0) {
+                value = sc1.getFirst().compareTo(sc2.getFirst());
+            }
+            if (value == 0) {
+                value = sc1.getSecond().compareTo(sc2.getSecond());
+            }
+            return value;
+        }
+    }
+}
@@ -29,6 +29,7 @@ import org.fim.util.Ascii85Util;
 import org.fim.util.FileUtil;
 import org.fim.util.JsonIO;
 import org.fim.util.Logger;
+import org.fim.util.PerformanceRecorder;
 
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -86,9 +87,20 @@ public class State implements Hashable {
     }
 
     public static State loadFromGZipFile(Path stateFile, boolean loadFullState) throws IOException, CorruptedStateException {
+        return loadFromGZipFile(stateFile, loadFullState, null);
+    }
+
+    /**
+     * @param recorder records the time spent to parse the State and check its integrity, or null
+     */
+    public static State loadFromGZipFile(Path stateFile, boolean loadFullState, PerformanceRecorder recorder) throws IOException, CorruptedStateException {
         try (Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(stateFile.toFile())), UTF8)) {
+            PerformanceRecorder.Phase parsePhase = recorder == null ? null : recorder.startPhase(PerformanceRecorder.LOAD_STATE_PARSE);
             State state = jsonIO.getObjectMapper().readValue(reader, State.class);
             System.gc(); // Force to cleanup unused memory
+            if (parsePhase != null) {
+                parsePhase.end(state == null ? 0 : state.getFileStates().size(), 0);
+            }
 
             if (state == null) {
                 throw new CorruptedStateException();
@@ -98,7 +110,11 @@ public class State implements Hashable {
                 if (!CURRENT_MODEL_VERSION.equals(state.getModelVersion())) {
                     Logger.warning(String.format("State %s use a different model version. Some features will not work completely.", stateFile.getFileName().toString()));
                 } else {
+                    PerformanceRecorder.Phase checkIntegrityPhase = recorder == null ? null : recorder.startPhase(PerformanceRecorder.LOAD_STATE_CHECK_INTEGRITY);
                     checkIntegrity(state);
+                    if (checkIntegrityPhase != null) {
+                        checkIntegrityPhase.end(state.getFileStates().size(), 0);
+                    }
                 }
             }
             return state;
@@ -113,11 +129,22 @@ public class State implements Hashable {
     }
 
     public void saveToGZipFile(Path stateFile) throws IOException {
+        saveToGZipFile(stateFile, null);
+    }
+
+    /**
+     * @param recorder records the time spent to compute the integrity hash of the State, or null
+     */
+    public void saveToGZipFile(Path stateFile, PerformanceRecorder recorder) throws IOException {
         Collections.sort(fileStates, fileNameComparator);
 
         updateFileCount();
         updateFilesContentLength();
+        PerformanceRecorder.Phase hashPhase = recorder == null ? null : recorder.startPhase(PerformanceRecorder.SAVE_STATE_HASH);
         stateHash = hashState();
+        if (hashPhase != null) {
+            hashPhase.end(fileStates.size(), 0);
+        }
 
         try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(stateFile.toFile())), UTF8)) {
             jsonIO.getObjectWriter().writeValue(writer, this);
@@ -277,6 +304,16 @@ public class State implements Hashable {
 
     @Override
     public void hashObject(Hasher hasher) {
+        hashHeader(hasher);
+        for (FileState fileState : fileStates) {
+            hashFileState(hasher, fileState);
+        }
+    }
+
+    /**
+     * Hash all but the FileStates, that are hashed after, one by one with hashFileState(). Allows StateReader to check the integrity while it streams them.
+     */
+    void hashHeader(Hasher hasher) {
         hasher
             .putString("State", Charsets.UTF_8)
             .putChar(HASH_FIELD_SEPARATOR)
@@ -300,10 +337,11 @@ public class State implements Hashable {
         }
 
         hasher.putChar(HASH_OBJECT_SEPARATOR);
-        for (FileState fileState : fileStates) {
-            fileState.hashObject(hasher);
-            hasher.putChar(HASH_OBJECT_SEPARATOR);
-        }
+    }
+
+    static void hashFileState(Hasher hasher, FileState fileState) {
+        fileState.hashObject(hasher);
+        hasher.putChar(HASH_OBJECT_SEPARATOR);
     }
 
     @Override
@@ -0,0 +1,127 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.fim.util.Ascii85Util;
+import org.fim.util.JsonIO;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.fim.util.Ascii85Util.UTF8;
+
+/**
+ * Read the FileStates of a State file one by one, in the file name order they were saved, without keeping them in memory.
+ * The integrity of the State is checked once the last FileState is read.
+ */
+public class StateReader implements Closeable {
+    private static JsonIO jsonIO = new JsonIO();
+
+    private final JsonParser parser;
+    private final State header;
+    private final Hasher hasher;
+    private boolean fileStatesRemaining;
+    private String lastFileName;
+
+    public StateReader(Path stateFile) throws IOException {
+        ObjectMapper objectMapper = jsonIO.getObjectMapper();
+        parser = objectMapper.getFactory().createParser(new InputStreamReader(new GZIPInputStream(new FileInputStream(stateFile.toFile())), UTF8));
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException(String.format("Invalid State file '%s'", stateFile));
+            }
+
+            // The FileStates are saved after all the other fields
+            ObjectNode headerNode = objectMapper.createObjectNode();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                parser.nextToken();
+                if ("fileStates".equals(fieldName)) {
+                    if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+                        throw new IOException(String.format("Invalid State file '%s'", stateFile));
+                    }
+                    fileStatesRemaining = true;
+                    break;
+                }
+                headerNode.set(fieldName, objectMapper.readTree(parser));
+            }
+            header = objectMapper.treeToValue(headerNode, State.class);
+        } catch (IOException ex) {
+            parser.close();
+            throw ex;
+        }
+
+        hasher = Hashing.sha512().newHasher();
+        header.hashHeader(hasher);
+    }
+
+    /**
+     * @return the State without its FileStates
+     */
+    public State getHeader() {
+        return header;
+    }
+
+    /**
+     * @return the next FileState, or null when they have all been read
+     * @throws CorruptedStateException if the State content was modified
+     */
+    public FileState next() throws IOException, CorruptedStateException {
+        if (!fileStatesRemaining) {
+            return null;
+        }
+
+        if (parser.nextToken() == JsonToken.END_ARRAY) {
+            fileStatesRemaining = false;
+            checkIntegrity();
+            return null;
+        }
+
+        FileState fileState = jsonIO.getObjectMapper().readValue(parser, FileState.class);
+        if (lastFileName != null && lastFileName.compareTo(fileState.getFileName()) > 0) {
+            // saveToGZipFile() sorts them, so it was modified
+            throw new CorruptedStateException();
+        }
+        lastFileName = fileState.getFileName();
+        State.hashFileState(hasher, fileState);
+        return fileState;
+    }
+
+    private void checkIntegrity() throws CorruptedStateException {
+        if (State.CURRENT_MODEL_VERSION.equals(header.getModelVersion()) &&
+            !Ascii85Util.encode(hasher.hash().asBytes()).equals(header.getStateHash())) {
+            throw new CorruptedStateException();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.model;
+
+import org.fim.util.JsonIO;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.fim.util.Ascii85Util.UTF8;
+
+/**
+ * What 'fim log' displays of a State: its header and only the FileStates that were modified by the commit.
+ * Saved in a sidecar file next to the State, so that the history is displayed without loading all the FileStates.
+ * The length and modification time of the State file are kept to detect a summary that no longer matches its State.
+ */
+public class StateSummary {
+    public static final String CURRENT_FORMAT_VERSION = "1";
+
+    private static JsonIO jsonIO = new JsonIO();
+
+    private String formatVersion;
+    private long stateFileLength;
+    private long stateFileLastModified;
+    private long timestamp;
+    private String comment;
+    private int fileCount;
+    private long filesContentLength;
+    private HashMode hashMode;
+    private CommitDetails commitDetails;
+    private ModificationCounts modificationCounts;
+    private List<FileState> modifiedFileStates;
+
+    public StateSummary() {
+        formatVersion = CURRENT_FORMAT_VERSION;
+        comment = "";
+        modificationCounts = new ModificationCounts();
+        modifiedFileStates = new ArrayList<>();
+    }
+
+    public StateSummary(State state, long stateFileLength, long stateFileLastModified) {
+        this();
+        this.stateFileLength = stateFileLength;
+        this.stateFileLastModified = stateFileLastModified;
+        this.timestamp = state.getTimestamp();
+        this.comment = state.getComment();
+        this.fileCount = state.getFileCount();
+        this.filesContentLength = state.getFilesContentLength();
+        this.hashMode = state.getHashMode();
+        this.commitDetails = state.getCommitDetails();
+        this.modificationCounts = state.getModificationCounts();
+        for (FileState fileState : state.getFileStates()) {
+            if (fileState.getModification() != null) {
+                modifiedFileStates.add(fileState);
+            }
+        }
+    }
+
+    public static StateSummary loadFromGZipFile(Path file) throws IOException {
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(file.toFile())), UTF8)) {
+            StateSummary summary = jsonIO.getObjectMapper().readValue(reader, StateSummary.class);
+            if (summary == null || !CURRENT_FORMAT_VERSION.equals(summary.getFormatVersion())) {
+                throw new IOException(String.format("Unsupported State summary format in '%s'", file));
+            }
+            return summary;
+        }
+    }
+
+    public void saveToGZipFile(Path file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file.toFile())), UTF8)) {
+            jsonIO.getObjectWriter().writeValue(writer, this);
+        }
+    }
+
+    /**
+     * @return a State that contains the header and only the modified FileStates
+     */
+    public State toPartialState() {
+        State state = new State();
+        state.setTimestamp(timestamp);
+        state.setComment(comment);
+        state.setHashMode(hashMode);
+        state.setCommitDetails(commitDetails);
+        state.setModificationCounts(modificationCounts);
+        state.getFileStates().addAll(modifiedFileStates);
+        return state;
+    }
+
+    public String getFormatVersion() {
+        return formatVersion;
+    }
+
+    public void setFormatVersion(String formatVersion) {
+        this.formatVersion = formatVersion;
+    }
+
+    public long getStateFileLength() {
+        return stateFileLength;
+    }
+
+    public void setStateFileLength(long stateFileLength) {
+        this.stateFileLength = stateFileLength;
+    }
+
+    public long getStateFileLastModified() {
+        return stateFileLastModified;
+    }
+
+    public void setStateFileLastModified(long stateFileLastModified) {
+        this.stateFileLastModified = stateFileLastModified;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getComment() {
+        return comment;
+    }
+
+    public void setComment(String comment) {
+        this.comment = comment;
+    }
+
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    public void setFileCount(int fileCount) {
+        this.fileCount = fileCount;
+    }
+
+    public long getFilesContentLength() {
+        return filesContentLength;
+    }
+
+    public void setFilesContentLength(long filesContentLength) {
+        this.filesContentLength = filesContentLength;
+    }
+
+    public HashMode getHashMode() {
+        return hashMode;
+    }
+
+    public void setHashMode(HashMode hashMode) {
+        this.hashMode = hashMode;
+    }
+
+    public CommitDetails getCommitDetails() {
+        return commitDetails;
+    }
+
+    public void setCommitDetails(CommitDetails commitDetails) {
+        this.commitDetails = commitDetails;
+    }
+
+    public ModificationCounts getModificationCounts() {
+        return modificationCounts;
+    }
+
+    public void setModificationCounts(ModificationCounts modificationCounts) {
+        this.modificationCounts = modificationCounts;
+    }
+
+    public List<FileState> getModifiedFileStates() {
+        return modifiedFileStates;
+    }
+
+    public void setModifiedFileStates(List<FileState> modifiedFileStates) {
+        this.modifiedFileStates = modifiedFileStates;
+    }
+}
@@ -79,6 +79,25 @@ public class FileUtil {
         return displaySize;
     }
 
+    /**
+     * Parse a byte count that can have a K, M or G suffix, with the same units than byteCountToDisplaySize().
+     * For example "50M" is 50000000 bytes.
+     */
+    public static long parseByteCount(String value) {
+        String count = value.trim().toUpperCase();
+        if (count.endsWith("B")) {
+            count = count.substring(0, count.length() - 1);
+        }
+
+        long multiplier = 1;
+        int unitIndex = count.isEmpty() ? -1 : "KMG".indexOf(count.charAt(count.length() - 1));
+        if (unitIndex >= 0) {
+            multiplier = (long) Math.pow(1000, unitIndex + 1);
+            count = count.substring(0, count.length() - 1);
+        }
+        return Long.parseLong(count.trim()) * multiplier;
+    }
+
     /**
      * Original code comes from:
      * http://programming.guide/java/formatting-byte-size-to-human-readable-format.html
@@ -0,0 +1,150 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.util;
+
+import org.fim.model.HashThreadStatistics;
+import org.fim.model.PerformanceReport;
+import org.fim.model.PhaseStatistics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measure the wall and CPU time of each phase of a command, and collect the statistics of the hash threads.
+ * The same phase can be recorded several times, its statistics are then summed.
+ */
+public class PerformanceRecorder {
+    public static final String SCAN = "scan";
+    public static final String HASH = "hash";
+    public static final String REHASH = "rehash";
+    public static final String SORT = "sort";
+    public static final String LOAD_STATE = "loadState";
+    public static final String LOAD_STATE_PARSE = "loadState.parse";
+    public static final String LOAD_STATE_CHECK_INTEGRITY = "loadState.checkIntegrity";
+    public static final String SAVE_STATE = "saveState";
+    public static final String SAVE_STATE_HASH = "saveState.hash";
+    public static final String COMPARE = "compare";
+
+    private final long startNanos;
+    private final long startCpuNanos;
+    private final Map<String, PhaseStatistics> phases;
+    private final List<HashThreadStatistics> hashThreads;
+
+    public PerformanceRecorder() {
+        this.startNanos = System.nanoTime();
+        this.startCpuNanos = getProcessCpuNanos();
+        this.phases = new LinkedHashMap<>();
+        this.hashThreads = new ArrayList<>();
+    }
+
+    public Phase startPhase(String name) {
+        synchronized (this) {
+            // The phases are reported in the order they started, so a phase comes before the ones it contains
+            phases.computeIfAbsent(name, PhaseStatistics::new);
+        }
+        return new Phase(name);
+    }
+
+    public synchronized void addHashThread(HashThreadStatistics statistics) {
+        hashThreads.add(statistics);
+    }
+
+    private synchronized void addPhase(String name, long wallTimeNanos, long cpuTimeNanos, long files, long bytes) {
+        phases.get(name).add(wallTimeNanos, cpuTimeNanos, files, bytes);
+    }
+
+    public synchronized PerformanceReport buildReport(String command) {
+        PerformanceReport report = new PerformanceReport();
+        report.setCommand(command);
+        report.setAvailableProcessors(Runtime.getRuntime().availableProcessors());
+        report.setWallTimeMicros((System.nanoTime() - startNanos) / 1_000);
+        report.setCpuTimeMicros(startCpuNanos < 0 ? -1 : (getProcessCpuNanos() - startCpuNanos) / 1_000);
+        report.setPeakHeapBytes(getPeakHeapBytes());
+        report.getPhases().addAll(phases.values());
+        report.getHashThreads().addAll(hashThreads);
+        return report;
+    }
+
+    public void writeReport(Path reportFile, String command) throws IOException {
+        PerformanceReport report = buildReport(command);
+        new JsonIO().getObjectWriter().writeValue(reportFile.toFile(), report);
+    }
+
+    /**
+     * @return the CPU time used by all the threads of the process, or -1 if the JVM does not measure it
+     */
+    static long getProcessCpuNanos() {
+        OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+        if (operatingSystem instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) operatingSystem).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    /**
+     * @return the CPU time used by the current thread, or -1 if the JVM does not measure it
+     */
+    public static long getCurrentThreadCpuNanos() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean.isCurrentThreadCpuTimeSupported()) {
+            return threadMXBean.getCurrentThreadCpuTime();
+        }
+        return -1;
+    }
+
+    private static long getPeakHeapBytes() {
+        long peakHeapBytes = 0;
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() == MemoryType.HEAP && memoryPool.getPeakUsage() != null) {
+                peakHeapBytes += memoryPool.getPeakUsage().getUsed();
+            }
+        }
+        return peakHeapBytes;
+    }
+
+    public class Phase {
+        private final String name;
+        private final long phaseStartNanos;
+        private final long phaseStartCpuNanos;
+
+        private Phase(String name) {
+            this.name = name;
+            this.phaseStartNanos = System.nanoTime();
+            this.phaseStartCpuNanos = getProcessCpuNanos();
+        }
+
+        public void end() {
+            end(0, 0);
+        }
+
+        public void end(long files, long bytes) {
+            long cpuTimeNanos = phaseStartCpuNanos < 0 ? 0 : getProcessCpuNanos() - phaseStartCpuNanos;
+            addPhase(name, System.nanoTime() - phaseStartNanos, cpuTimeNanos, files, bytes);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim;
+
+import org.fim.tooling.RepositoryTool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FimServerTest {
+    private RepositoryTool tool;
+    private Path rootDir;
+    private Path serverFile;
+    private FimServer server;
+    private PrintStream previousOut;
+    private ByteArrayOutputStream output;
+
+    @Before
+    public void setUp() throws Exception {
+        tool = new RepositoryTool(this.getClass());
+        rootDir = tool.getRootDir().toAbsolutePath();
+        serverFile = rootDir.resolveSibling(FimServer.SERVER_FILE + "-" + getClass().getSimpleName());
+        Files.deleteIfExists(serverFile);
+
+        server = new FimServer(new Fim(), serverFile, false);
+        server.start();
+        Thread serverThread = new Thread(server::run, "fim-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        previousOut = System.out;
+        output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        System.setOut(previousOut);
+        server.close();
+    }
+
+    @Test
+    public void commandsAreRunByTheServer() throws Exception {
+        tool.createASetOfFiles(3);
+
+        assertThat(FimServer.isRunning(serverFile)).isTrue();
+        assertThat(FimClient.forward(serverFile, new String[]{"init", "-y", "-d", rootDir.toString()})).isEqualTo(0);
+        assertThat(output.toString()).contains("3 added", "Repository initialized");
+
+        tool.setFileContent("file01", "modified");
+        output.reset();
+        assertThat(FimClient.forward(serverFile, new String[]{"", "st", "-d", rootDir.toString()})).isEqualTo(0);
+        assertThat(output.toString()).contains("1 content modified");
+
+        // The State is taken from the cache
+        output.reset();
+        assertThat(FimClient.forward(serverFile, new String[]{"st", "-d", rootDir.toString()})).isEqualTo(0);
+        assertThat(output.toString()).contains("1 content modified");
+    }
+
+    @Test
+    public void theRepositoryIsWatchedInTheBackground() throws Exception {
+        server.close();
+        server = new FimServer(new Fim(), serverFile, true);
+        server.start();
+        Thread serverThread = new Thread(server::run, "fim-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        tool.createASetOfFiles(3);
+        assertThat(FimClient.forward(serverFile, new String[]{"init", "-y", "-d", rootDir.toString()})).isEqualTo(0);
+        assertThat(output.toString()).doesNotContain("Watching the repository");
+
+        // The session of the watcher is recorded into the change journal once it is started
+        Path journalFile = rootDir.resolve(".fim/journal");
+        long start = System.currentTimeMillis();
+        while (!Files.exists(journalFile) && System.currentTimeMillis() - start < 10_000) {
+            Thread.sleep(50);
+        }
+        assertThat(journalFile).exists();
+
+        tool.setFileContent("file01", "modified");
+        output.reset();
+        assertThat(FimClient.forward(serverFile, new String[]{"st", "-d", rootDir.toString()})).isEqualTo(0);
+        assertThat(output.toString()).contains("1 content modified").doesNotContain("Watching the repository");
+    }
+
+    @Test
+    public void theExitCodeIsTheOneOfFim() {
+        assertThat(FimClient.forward(serverFile, new String[]{"unknown"})).isEqualTo(-1);
+        assertThat(output.toString()).contains("'unknown' is not a fim command");
+
+        assertThat(FimClient.forward(serverFile, new String[]{"st", "-d", rootDir.toString()})).isEqualTo(-1);
+        assertThat(output.toString()).contains("Fim repository does not exist");
+    }
+
+    @Test
+    public void aClientWithAnotherTokenIsRejectedAndRunsTheCommandLocally() throws Exception {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(serverFile)) {
+            properties.load(in);
+        }
+        properties.setProperty(FimServer.TOKEN_PROPERTY, "wrong");
+        Path otherServerFile = serverFile.resolveSibling(serverFile.getFileName() + "-other");
+        try (OutputStream out = Files.newOutputStream(otherServerFile)) {
+            properties.store(out, "Fim server");
+        }
+
+        PrintStream previousErr = System.err;
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(errors, true));
+        try {
+            assertThat(FimClient.forward(otherServerFile, new String[]{"st"})).isNull();
+        } finally {
+            System.setErr(previousErr);
+            Files.delete(otherServerFile);
+        }
+        assertThat(errors.toString()).contains("rejected");
+    }
+
+    // Shorter than the handshake timeout, so the command is not served after the silent client is dropped
+    @Test(timeout = FimServer.HANDSHAKE_TIMEOUT_MILLIS - 1000)
+    public void aSilentClientDoesNotBlockTheOthers() throws Exception {
+        try (Socket silentClient = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            assertThat(FimClient.forward(serverFile, new String[]{"unknown"})).isEqualTo(-1);
+            assertThat(silentClient.isConnected()).isTrue();
+        }
+    }
+
+    @Test
+    public void someCommandsAreRunLocally() throws Exception {
+        assertThat(FimClient.forward(serverFile, new String[]{"watch"})).isNull();
+        assertThat(FimClient.forward(serverFile, new String[]{"server"})).isNull();
+
+        server.close();
+        assertThat(Files.exists(serverFile)).isFalse();
+        assertThat(FimClient.forward(serverFile, new String[]{"st"})).isNull();
+    }
+}
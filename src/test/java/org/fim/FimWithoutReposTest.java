@@ -94,6 +94,26 @@ public class FimWithoutReposTest {
         cut.run(new String[]{"ci", "-y", "-t", "dummy"}, context);
     }
 
+    @Test(expected = BadFimUsageException.class)
+    public void zeroThrottleFilesIsDetected() throws Exception {
+        cut.run(new String[]{"ci", "-y", "--throttle-files", "0"}, context);
+    }
+
+    @Test(expected = BadFimUsageException.class)
+    public void negativeThrottleFilesIsDetected() throws Exception {
+        cut.run(new String[]{"ci", "-y", "--throttle-files", "-5"}, context);
+    }
+
+    @Test(expected = BadFimUsageException.class)
+    public void zeroThrottleBytesIsDetected() throws Exception {
+        cut.run(new String[]{"ci", "-y", "--throttle-bytes", "0M"}, context);
+    }
+
+    @Test(expected = BadFimUsageException.class)
+    public void negativeThrottleBytesIsDetected() throws Exception {
+        cut.run(new String[]{"ci", "-y", "--throttle-bytes", "-50M"}, context);
+    }
+
     @Test(expected = BadFimUsageException.class)
     public void masterFimRepositoryDirectoryMustExist() throws Exception {
         cut.run(new String[]{"rdup", "-M", "dummy_directory"}, context);
@@ -0,0 +1,216 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim;
+
+import org.fim.command.AbstractCommand;
+import org.fim.command.CommitCommand;
+import org.fim.command.DetectCorruptionCommand;
+import org.fim.command.FindDuplicatesCommand;
+import org.fim.command.InitCommand;
+import org.fim.command.LogCommand;
+import org.fim.command.StatusCommand;
+import org.fim.model.Context;
+import org.fim.model.HashMode;
+import org.fim.tooling.MacroBenchmarkReport;
+import org.fim.tooling.MacroBenchmarkResult;
+import org.fim.tooling.RepositoryTool;
+import org.fim.tooling.SyntheticRepository;
+import org.fim.util.JsonIO;
+import org.fim.util.TimeElapsed;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.fim.model.HashMode.hashAll;
+
+/**
+ * End-to-end benchmark of the main commands on generated trees.
+ * It only runs when asked:
+ * mvn test -Dtest=MacroBenchmarkPerformanceTest -Dfim.benchmark.macro=true [-Dfim.benchmark.scale=10] [-Dfim.benchmark.baseline=baseline.json]
+ */
+@RunWith(Parameterized.class)
+public class MacroBenchmarkPerformanceTest {
+    private static final long SEED = 0x46494D;
+    private static final int KB = 1_024;
+    private static final long MB = 1_024 * 1_024;
+    private static final long MIN_COMPARED_DURATION = 200;
+
+    private static final boolean enabled = Boolean.getBoolean("fim.benchmark.macro");
+    private static final double scale = Double.parseDouble(System.getProperty("fim.benchmark.scale", "1"));
+    private static final double churnRatio = Double.parseDouble(System.getProperty("fim.benchmark.churn", "0.05"));
+    private static final HashMode hashMode = HashMode.valueOf(System.getProperty("fim.benchmark.hashMode", hashAll.name()));
+    private static final Path outputFile = Paths.get(System.getProperty("fim.benchmark.output", "target/macro-benchmark.json"));
+    private static final String baselineFile = System.getProperty("fim.benchmark.baseline");
+    private static final double tolerance = Double.parseDouble(System.getProperty("fim.benchmark.tolerance", "1.5"));
+
+    private static MacroBenchmarkReport report;
+
+    private Shape shape;
+    private RepositoryTool tool;
+    private Context context;
+
+    public MacroBenchmarkPerformanceTest(Shape shape) {
+        this.shape = shape;
+    }
+
+    @Parameterized.Parameters(name = "Shape: {0}")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (Shape shape : Shape.values()) {
+            parameters.add(new Object[]{shape});
+        }
+        return parameters;
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        report = new MacroBenchmarkReport();
+        report.setJavaVersion(System.getProperty("java.version"));
+        report.setAvailableProcessors(Runtime.getRuntime().availableProcessors());
+        report.setHashMode(hashMode.name());
+        report.setScale(scale);
+        report.setChurnRatio(churnRatio);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        Assume.assumeTrue("Macro benchmark is enabled with -Dfim.benchmark.macro=true", enabled);
+
+        tool = new RepositoryTool(this.getClass(), hashMode);
+        context = tool.createContext(hashMode, false);
+        context.setTruncateOutput(10);
+    }
+
+    @Test
+    public void runTheMainCommands() throws Exception {
+        SyntheticRepository repository = new SyntheticRepository(tool.getRootDir(), SEED);
+        System.out.printf("Generating the '%s' tree%n", shape.getName());
+        shape.generate(repository);
+
+        MacroBenchmarkResult result = new MacroBenchmarkResult(shape.getName(), repository.getFiles().size(), repository.getTotalLength());
+        Map<String, Long> durations = result.getDurations();
+
+        durations.put("init", timeCommand(new InitCommand()));
+        repository.applyChurn(churnRatio, 8 * KB);
+        durations.put("status", timeCommand(new StatusCommand()));
+        durations.put("commit", timeCommand(new CommitCommand()));
+        durations.put("fdup", timeCommand(new FindDuplicatesCommand()));
+        durations.put("log", timeCommand(new LogCommand()));
+        if (hashMode == hashAll) {
+            durations.put("detect-corruption", timeCommand(new DetectCorruptionCommand()));
+        }
+
+        System.out.printf("%s: %d files, %d bytes, durations in ms %s%n", shape.getName(), result.getFileCount(), result.getTotalLength(), durations);
+        report.getResults().add(result);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        JsonIO jsonIO = new JsonIO();
+        Files.createDirectories(outputFile.toAbsolutePath().getParent());
+        jsonIO.getObjectWriter().writeValue(outputFile.toFile(), report);
+        System.out.printf("Macro benchmark results written into %s%n", outputFile);
+
+        if (baselineFile != null) {
+            MacroBenchmarkReport baseline = jsonIO.getObjectMapper().readValue(Paths.get(baselineFile).toFile(), MacroBenchmarkReport.class);
+            assertThat(findRegressions(baseline, report)).isEmpty();
+        }
+    }
+
+    /**
+     * Durations that are too short are not compared, they are mostly noise.
+     */
+    private static List<String> findRegressions(MacroBenchmarkReport baseline, MacroBenchmarkReport current) {
+        List<String> regressions = new ArrayList<>();
+        for (MacroBenchmarkResult result : current.getResults()) {
+            MacroBenchmarkResult baselineResult = baseline.findResult(result.getShape());
+            if (baselineResult == null) {
+                continue;
+            }
+
+            for (Map.Entry<String, Long> entry : result.getDurations().entrySet()) {
+                Long baselineDuration = baselineResult.getDurations().get(entry.getKey());
+                if (baselineDuration == null || Math.max(baselineDuration, entry.getValue()) < MIN_COMPARED_DURATION) {
+                    continue;
+                }
+
+                if (entry.getValue() > baselineDuration * tolerance) {
+                    regressions.add(String.format("%s %s: %d ms instead of %d ms", result.getShape(), entry.getKey(), entry.getValue(), baselineDuration));
+                }
+            }
+        }
+        return regressions;
+    }
+
+    private long timeCommand(AbstractCommand command) throws Exception {
+        TimeElapsed timeElapsed = new TimeElapsed();
+        command.execute(context.clone());
+        return timeElapsed.getDuration();
+    }
+
+    private static int scaled(int count) {
+        return Math.max(1, (int) (count * scale));
+    }
+
+    private interface TreeGenerator {
+        void generate(SyntheticRepository repository) throws IOException;
+    }
+
+    public enum Shape {
+        TINY_FILES("tinyFiles", repository -> repository.createTinyFiles(scaled(100_000), 512)),
+        DEEP_HIERARCHY("deepHierarchy", repository -> repository.createDeepHierarchy(scaled(100), 30, 3, 8 * KB)),
+        HUGE_FILES("hugeFiles", repository -> repository.createHugeFiles(scaled(3), 256 * MB)),
+        SPARSE_FILES("sparseFiles", repository -> repository.createSparseFiles(scaled(4), 1_024 * MB, 16)),
+        DUPLICATES("duplicates", repository -> repository.createDuplicates(scaled(2_000), 10, 64 * KB));
+
+        private final String name;
+        private final TreeGenerator generator;
+
+        Shape(String name, TreeGenerator generator) {
+            this.name = name;
+            this.generator = generator;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void generate(SyntheticRepository repository) throws IOException {
+            generator.generate(repository);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.api;
+
+import org.fim.command.CommitCommand;
+import org.fim.command.InitCommand;
+import org.fim.model.CompareResult;
+import org.fim.model.Difference;
+import org.fim.model.FileState;
+import org.fim.model.HistoryEntry;
+import org.fim.model.Modification;
+import org.fim.tooling.RepositoryTool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class FimRepositoryTest {
+    private RepositoryTool tool;
+    private Path rootDir;
+    private ExecutorService executor;
+    private ExecutorService listenerExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        tool = new RepositoryTool(this.getClass());
+        rootDir = tool.getRootDir();
+        tool.createASetOfFiles(5);
+        new InitCommand().execute(tool.getContext());
+
+        executor = Executors.newSingleThreadExecutor();
+        listenerExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        listenerExecutor.shutdownNow();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aDirectoryWithoutRepositoryCannotBeOpened() {
+        FimRepository.open(rootDir.resolve("unknown"));
+    }
+
+    @Test
+    public void theDifferencesAreStreamedBeforeTheStatusCompletes() throws Exception {
+        tool.setFileContent("file02", "modified");
+        tool.createFile("file06");
+
+        List<String> hashedFiles = new ArrayList<>();
+        List<String> events = new ArrayList<>();
+        StatusOptions options = new StatusOptions();
+        options.setExecutor(executor);
+        options.setListenerExecutor(listenerExecutor);
+        CompareResult result = FimRepository.open(rootDir).status(options, new StatusListener() {
+            @Override
+            public void fileHashed(FileState fileState, FileState lastFileState) {
+                if (lastFileState != null && !lastFileState.getFileHash().equals(fileState.getFileHash())) {
+                    events.add("hashed " + fileState.getFileName());
+                }
+                hashedFiles.add(fileState.getFileName());
+            }
+
+            @Override
+            public void differenceFound(Difference difference) {
+                events.add(difference.getFileState().getModification() + " " + difference.getFileState().getFileName());
+            }
+        }).get(10, TimeUnit.SECONDS);
+
+        assertThat(hashedFiles).containsOnly("file01", "file02", "file03", "file04", "file05", "file06");
+        assertThat(events).containsExactly("hashed file02", Modification.added + " file06", Modification.contentModified + " file02");
+        assertThat(result.getModificationCounts().getContentModified()).isEqualTo(1);
+        assertThat(result.getModificationCounts().getAdded()).isEqualTo(1);
+    }
+
+    @Test
+    public void aSubDirectoryCanBeChecked() throws Exception {
+        Files.createDirectories(rootDir.resolve("dir01"));
+        tool.createFile(rootDir.resolve("dir01/file07"));
+        tool.setFileContent("file01", "modified");
+
+        StatusOptions options = new StatusOptions();
+        options.setSubDirectory(Paths.get("dir01"));
+        CompareResult result = FimRepository.open(rootDir).status(options).get(10, TimeUnit.SECONDS);
+
+        assertThat(result.modifiedCount()).isEqualTo(1);
+        assertThat(result.getAdded().get(0).getFileState().getFileName()).isEqualTo("dir01/file07");
+    }
+
+    @Test
+    public void aFailingListenerFailsTheStatus() throws Exception {
+        try {
+            FimRepository.open(rootDir).status(new StatusOptions(), new StatusListener() {
+                @Override
+                public void fileHashed(FileState fileState, FileState lastFileState) {
+                    throw new IllegalStateException("listener failure");
+                }
+            }).get(10, TimeUnit.SECONDS);
+            fail("The status must fail");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause()).hasMessage("listener failure");
+        }
+    }
+
+    @Test
+    public void theHistoryOfAFileIsReadFromTheIndex() throws Exception {
+        tool.setFileContent("file02", "modified");
+        new CommitCommand().execute(tool.getContext());
+
+        List<HistoryEntry> history = FimRepository.open(rootDir).history("file02");
+
+        assertThat(history).extracting(HistoryEntry::getStateNumber, HistoryEntry::getModification)
+            .containsExactly(tuple(1, Modification.added), tuple(2, Modification.contentModified));
+        assertThat(FimRepository.open(rootDir).historyOfHash(history.get(1).getFileHash().getFullHash()))
+            .extracting(HistoryEntry::getFileName).containsExactly("file02");
+    }
+
+    @Test
+    public void twoStatesCanBeComparedWithoutScanningTheFiles() throws Exception {
+        tool.setFileContent("file02", "modified");
+        new CommitCommand().execute(tool.getContext());
+        tool.setFileContent("file03", "modified");
+
+        CompareResult result = FimRepository.open(rootDir).compareStates(1, 2).get(10, TimeUnit.SECONDS);
+
+        assertThat(result.modifiedCount()).isEqualTo(1);
+        assertThat(result.getContentModified().get(0).getFileState().getFileName()).isEqualTo("file02");
+    }
+}
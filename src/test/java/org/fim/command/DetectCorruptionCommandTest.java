@@ -97,6 +97,28 @@ public class DetectCorruptionCommandTest {
         assertThat(fileState.getFileName()).isEqualTo("file03");
     }
 
+    @Test
+    public void canDetectHardwareCorruptionUsingTheBlockChecksums() throws Exception {
+        Context context = tool.createContext(hashAll, true);
+        context.setBlockChecksums(true);
+
+        tool.createASetOfFiles(5);
+
+        State state = (State) initCommand.execute(context);
+        assertThat(state.getModificationCounts().getAdded()).isEqualTo(5);
+        context.setBlockChecksums(false);
+
+        CompareResult compareResult = (CompareResult) detectCorruptionCommand.execute(context);
+        assertThat(compareResult.getCorrupted().size()).isEqualTo(0);
+
+        doSomeModifications();
+
+        compareResult = (CompareResult) detectCorruptionCommand.execute(context);
+        assertThat(compareResult.getCorrupted().size()).isEqualTo(1);
+        FileState fileState = compareResult.getCorrupted().get(0).getFileState();
+        assertThat(fileState.getFileName()).isEqualTo("file03");
+    }
+
     private void doSomeModifications() throws IOException {
         tool.sleepSafely(1_000); // Ensure to increase lastModified at least of 1 second
 
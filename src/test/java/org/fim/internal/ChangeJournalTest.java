@@ -0,0 +1,221 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal;
+
+import org.fim.command.CommitCommand;
+import org.fim.command.InitCommand;
+import org.fim.command.StatusCommand;
+import org.fim.model.BlockChecksums;
+import org.fim.model.CompareResult;
+import org.fim.model.Context;
+import org.fim.model.FileState;
+import org.fim.model.ModificationCounts;
+import org.fim.model.State;
+import org.fim.tooling.RepositoryTool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.fim.model.Modification.deleted;
+
+public class ChangeJournalTest {
+    private RepositoryTool tool;
+    private Path rootDir;
+    private Context context;
+    private ChangeJournal cut;
+
+    @Before
+    public void setUp() throws Exception {
+        tool = new RepositoryTool(this.getClass());
+        rootDir = tool.getRootDir();
+        context = tool.getContext();
+
+        Files.createDirectories(rootDir.resolve("dir01"));
+        tool.setFileContent(rootDir.resolve("dir01/file01"), "file01", 100);
+        tool.setFileContent(rootDir.resolve("dir01/file02"), "file02", 100);
+        tool.setFileContent(rootDir.resolve("file03"), "file03", 100);
+        new InitCommand().execute(context);
+
+        cut = new ChangeJournal(context);
+        cut.startSession();
+        cut.recordBase(1, Collections.emptyList());
+    }
+
+    @After
+    public void tearDown() {
+        cut.stopSession();
+    }
+
+    @Test
+    public void onlyTheTouchedPathsAreScanned() throws Exception {
+        tool.setFileContent(rootDir.resolve("dir01/file01"), "file01 modified", 200);
+        cut.recordTouched(asList(rootDir.resolve("dir01/file01"), rootDir.resolve(".fim/settings.json")));
+
+        // Not recorded, so not seen
+        tool.setFileContent(rootDir.resolve("file03"), "file03 modified", 200);
+
+        assertThat(cut.readTouchedPaths(1)).containsExactly(rootDir.resolve("dir01/file01").toAbsolutePath());
+        CompareResult result = (CompareResult) new StatusCommand().execute(context);
+        assertThat(result.getModificationCounts().getContentModified()).isEqualTo(1);
+        assertThat(result.getContentModified().get(0).getFileState().getFileName()).isEqualTo("dir01/file01");
+    }
+
+    @Test
+    public void aFullScanSeesTheChangesThatAreNotRecordedYet() throws Exception {
+        tool.setFileContent(rootDir.resolve("file03"), "file03 modified", 200);
+
+        context.setFullScan(true);
+        CompareResult result = (CompareResult) new StatusCommand().execute(context);
+        assertThat(result.getModificationCounts().getContentModified()).isEqualTo(1);
+        assertThat(result.getContentModified().get(0).getFileState().getFileName()).isEqualTo("file03");
+    }
+
+    @Test
+    public void theJournalRestartsFromTheCommittedState() throws Exception {
+        tool.setFileContent(rootDir.resolve("dir01/file01"), "file01 modified", 200);
+        Files.delete(rootDir.resolve("dir01/file02"));
+        tool.setFileContent(rootDir.resolve("file04"), "file04", 100);
+        cut.recordTouched(asList(rootDir.resolve("dir01/file01"), rootDir.resolve("dir01/file02"), rootDir.resolve("file04")));
+
+        CompareResult result = (CompareResult) new CommitCommand().execute(context);
+        ModificationCounts modificationCounts = result.getModificationCounts();
+        assertThat(modificationCounts.getContentModified()).isEqualTo(1);
+        assertThat(modificationCounts.getDeleted()).isEqualTo(1);
+        assertThat(modificationCounts.getAdded()).isEqualTo(1);
+
+        assertThat(cut.readTouchedPaths(1)).isNull();
+        assertThat(cut.readTouchedPaths(2)).isEmpty();
+
+        // The committed State is the one a full scan gives, plus the deleted file
+        State lastState = new StateManager(context).loadLastState();
+        State scannedState = new StateGenerator(context).generateState("", rootDir, rootDir);
+        assertThat(lastState.getFileStates()).filteredOn(fileState -> fileState.getModification() != deleted)
+            .isEqualTo(scannedState.getFileStates());
+
+        assertThat(((CompareResult) new StatusCommand().execute(context)).somethingModified()).isFalse();
+    }
+
+    @Test
+    public void theJournalIsUsedWhenTheBlockChecksumsAreKeptUpToDate() throws Exception {
+        // The first commit with block checksums scans everything to compute them
+        context.setBlockChecksums(true);
+        new CommitCommand().execute(context);
+        StateManager stateManager = new StateManager(context);
+        assertThat(stateManager.loadBlockChecksums(1).size()).isEqualTo(3);
+
+        context.setBlockChecksums(false);
+        tool.setFileContent(rootDir.resolve("dir01/file01"), "file01 modified", 200);
+        cut.recordTouched(Collections.singletonList(rootDir.resolve("dir01/file01")));
+
+        // Not recorded, so not seen
+        tool.setFileContent(rootDir.resolve("file03"), "file03 modified", 200);
+
+        CompareResult result = (CompareResult) new CommitCommand().execute(context);
+        assertThat(result.getModificationCounts().getContentModified()).isEqualTo(1);
+        assertThat(result.getContentModified().get(0).getFileState().getFileName()).isEqualTo("dir01/file01");
+
+        // The checksums of the file scanned again are computed, the other ones come from the previous sidecar
+        State lastState = stateManager.loadLastState();
+        BlockChecksums blockChecksums = stateManager.loadBlockChecksums(2);
+        assertThat(blockChecksums.size()).isEqualTo(3);
+        for (FileState fileState : lastState.getFileStates()) {
+            assertThat(blockChecksums.get(fileState)).isNotNull();
+        }
+    }
+
+    @Test
+    public void theLinesWrittenDuringACommitAreKept() {
+        long position = cut.getPosition();
+        cut.recordTouched(Collections.singletonList(rootDir.resolve("file03")));
+        cut.recordCommit(2, position);
+
+        assertThat(cut.readTouchedPaths(2)).containsExactly(rootDir.resolve("file03").toAbsolutePath());
+    }
+
+    @Test
+    public void aGapMakesTheJournalIncomplete() {
+        cut.recordTouched(Collections.singletonList(rootDir.resolve("file03")));
+        cut.recordGap();
+        cut.recordTouched(Collections.singletonList(rootDir.resolve("dir01/file01")));
+
+        assertThat(cut.readTouchedPaths(1)).isNull();
+    }
+
+    @Test
+    public void aPathThatCannotBeStoredIsAGap() {
+        cut.recordTouched(Collections.singletonList(rootDir.resolve("file\n05")));
+
+        assertThat(cut.readTouchedPaths(1)).isNull();
+    }
+
+    @Test
+    public void theJournalIsIncompleteWhenNoSessionIsRecording() throws Exception {
+        cut.stopSession();
+        assertThat(cut.readTouchedPaths(1)).isNull();
+
+        // Everything is scanned again
+        tool.setFileContent(rootDir.resolve("file03"), "file03 modified", 200);
+        CompareResult result = (CompareResult) new StatusCommand().execute(context);
+        assertThat(result.getModificationCounts().getContentModified()).isEqualTo(1);
+    }
+
+    @Test
+    public void aSessionStartedAfterTheBaseDoesNotCoverIt() {
+        cut.stopSession();
+        cut.startSession();
+
+        assertThat(cut.readTouchedPaths(1)).isNull();
+    }
+
+    @Test
+    public void theJournalIsIncompleteForAnotherState() {
+        assertThat(cut.readTouchedPaths(1)).isEmpty();
+        assertThat(cut.readTouchedPaths(2)).isNull();
+    }
+
+    @Test
+    public void theSessionsOfThisJvmAreNotProbed() throws Exception {
+        // Probing would open and close a channel on the session file, which releases the lock this JVM holds on it
+        try (DirectoryStream<Path> sessionFiles = Files.newDirectoryStream(context.getRepositoryDotFimDir(), ChangeJournal.JOURNAL_FILE + "-*.lock")) {
+            for (Path sessionFile : sessionFiles) {
+                Files.delete(sessionFile);
+            }
+        }
+
+        assertThat(cut.readTouchedPaths(1)).isEmpty();
+    }
+
+    @Test
+    public void aSessionThatWasKilledIsNotAlive() throws Exception {
+        // A session file that nobody locks
+        Path journalFile = context.getRepositoryDotFimDir().resolve(ChangeJournal.JOURNAL_FILE);
+        Files.write(journalFile, asList("start killed", "base 1"), StandardCharsets.UTF_8);
+        Files.write(context.getRepositoryDotFimDir().resolve(ChangeJournal.JOURNAL_FILE + "-killed.lock"), new byte[0]);
+
+        assertThat(cut.readTouchedPaths(1)).isNull();
+    }
+}
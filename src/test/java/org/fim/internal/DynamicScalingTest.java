@@ -0,0 +1,197 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal;
+
+import org.fim.internal.hash.FileHasher;
+import org.fim.internal.hash.Throttler;
+import org.fim.model.Context;
+import org.fim.tooling.RepositoryTool;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DynamicScalingTest {
+    private static final long MB = 1024 * 1024;
+    private static final int MAX_SCALE_LEVEL = 8;
+
+    private Context context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = new RepositoryTool(this.getClass()).getContext();
+    }
+
+    @Test
+    public void threadsAreAddedWhileTheThroughputImproves() throws Exception {
+        // The device is saturated with 4 threads
+        SimulatedDevice device = new SimulatedDevice(context, 100, 200, 300, 400, 400, 400, 400, 400);
+        DynamicScaling dynamicScaling = device.startDynamicScaling(null);
+
+        device.runWindows(dynamicScaling, 12);
+
+        // The fifth thread brings nothing, so it was removed
+        assertThat(dynamicScaling.getScaleLevel()).isEqualTo(4);
+        assertThat(device.activeHashers).isEqualTo(4);
+    }
+
+    @Test
+    public void aSeekingDeviceKeepsASingleThread() throws Exception {
+        SimulatedDevice device = new SimulatedDevice(context, 100, 60, 50, 40, 30, 30, 30, 30);
+        DynamicScaling dynamicScaling = device.startDynamicScaling(null);
+
+        device.runWindows(dynamicScaling, 4);
+
+        assertThat(dynamicScaling.getScaleLevel()).isEqualTo(1);
+        assertThat(device.activeHashers).isEqualTo(1);
+    }
+
+    @Test
+    public void theBestLevelIsKeptAfterProbingAgain() throws Exception {
+        SimulatedDevice device = new SimulatedDevice(context, 100, 200, 300, 400, 400, 400, 400, 400);
+        DynamicScaling dynamicScaling = device.startDynamicScaling(null);
+
+        // Long enough for the hold to expire and for the level to be probed in the other direction
+        device.runWindows(dynamicScaling, 12 + DynamicScaling.HOLD_WINDOW_COUNT + 4);
+
+        assertThat(dynamicScaling.getScaleLevel()).isEqualTo(4);
+        assertThat(device.activeHashers).isEqualTo(4);
+    }
+
+    @Test
+    public void theScaleLevelNeverGoesAboveTheMaximum() throws Exception {
+        // Each thread brings more throughput
+        SimulatedDevice device = new SimulatedDevice(context, 100, 200, 300, 400, 500, 600, 700, 800);
+        DynamicScaling dynamicScaling = device.startDynamicScaling(null);
+
+        for (int index = 0; index < 40; index++) {
+            device.runWindows(dynamicScaling, 1);
+            assertThat(dynamicScaling.getScaleLevel()).isBetween(1, MAX_SCALE_LEVEL);
+        }
+        assertThat(device.activeHashers).isEqualTo(dynamicScaling.getScaleLevel());
+        assertThat(device.maxActiveHashers).isEqualTo(MAX_SCALE_LEVEL);
+    }
+
+    @Test
+    public void threadsAreRemovedWhileTheThrottlerMakesThemWait() throws Exception {
+        SimulatedDevice device = new SimulatedDevice(context, 100, 200, 300, 400, 400, 400, 400, 400);
+        DynamicScaling dynamicScaling = device.startDynamicScaling(null);
+        device.runWindows(dynamicScaling, 12);
+        assertThat(dynamicScaling.getScaleLevel()).isEqualTo(4);
+
+        device.throttled = true;
+        device.runWindows(dynamicScaling, 8);
+
+        assertThat(dynamicScaling.getScaleLevel()).isEqualTo(1);
+        assertThat(device.activeHashers).isEqualTo(1);
+    }
+
+    @Test
+    public void theLevelReachedIsTheStartingLevelOfTheNextScan() throws Exception {
+        String fileStoreKey = "fileStore-" + System.nanoTime();
+        SimulatedDevice device = new SimulatedDevice(context, 100, 200, 300, 400, 400, 400, 400, 400);
+        DynamicScaling dynamicScaling = device.startDynamicScaling(fileStoreKey);
+        device.runWindows(dynamicScaling, 12);
+
+        dynamicScaling.requestStop();
+        dynamicScaling.run();
+
+        SimulatedDevice nextDevice = new SimulatedDevice(context, 100, 200, 300, 400, 400, 400, 400, 400);
+        assertThat(nextDevice.startDynamicScaling(fileStoreKey).getScaleLevel()).isEqualTo(4);
+    }
+
+    /**
+     * Replaces the FileHashers by a device whose throughput only depends on the number of active threads.
+     */
+    private static class SimulatedDevice extends StateGenerator {
+        private final long[] throughputByLevel;
+        private final FileHasher fileHasher;
+        private final Throttler throttler;
+
+        private int activeHashers;
+        private int maxActiveHashers;
+        private long totalBytesHashed;
+        private long filesHashed;
+        private long waitedMicros;
+        private boolean throttled;
+
+        SimulatedDevice(Context context, long... throughputInMB) {
+            super(context);
+            throughputByLevel = throughputInMB;
+
+            fileHasher = mock(FileHasher.class);
+            when(fileHasher.getTotalBytesHashed()).thenAnswer(invocation -> totalBytesHashed);
+            when(fileHasher.getFilesHashed()).thenAnswer(invocation -> filesHashed);
+
+            throttler = mock(Throttler.class);
+            when(throttler.getWaitedMicros()).thenAnswer(invocation -> waitedMicros);
+        }
+
+        DynamicScaling startDynamicScaling(String fileStoreKey) {
+            DynamicScaling dynamicScaling = new DynamicScaling(this, fileStoreKey, MAX_SCALE_LEVEL);
+            activeHashers = dynamicScaling.getScaleLevel();
+            maxActiveHashers = activeHashers;
+            return dynamicScaling;
+        }
+
+        void runWindows(DynamicScaling dynamicScaling, int windowCount) throws Exception {
+            for (int index = 0; index < windowCount; index++) {
+                long bytesHashed = throughputByLevel[activeHashers - 1] * MB;
+                totalBytesHashed += bytesHashed;
+                // Files of 1 MB, so that no phase change is detected
+                filesHashed += bytesHashed / MB;
+                if (throttled) {
+                    waitedMicros += 100_000;
+                }
+                dynamicScaling.measureWindow(DynamicScaling.WINDOW_DURATION);
+            }
+        }
+
+        @Override
+        public FileHasher startFileHasher() {
+            activeHashers++;
+            maxActiveHashers = Math.max(maxActiveHashers, activeHashers);
+            return fileHasher;
+        }
+
+        @Override
+        public synchronized boolean stopFileHasher() {
+            if (activeHashers <= 1) {
+                return false;
+            }
+            activeHashers--;
+            return true;
+        }
+
+        @Override
+        public List<FileHasher> getFileHashers() {
+            return Collections.singletonList(fileHasher);
+        }
+
+        @Override
+        public Throttler getThrottler() {
+            return throttler;
+        }
+    }
+}
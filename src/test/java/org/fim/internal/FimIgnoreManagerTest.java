@@ -111,6 +111,33 @@ public class FimIgnoreManagerTest extends StateAssert {
                 " FilePattern{fileName=*.mp3, compiled=^.*\\.mp3$}]");
     }
 
+    @Test
+    public void inheritedPatternsAreSharedBetweenDirectories() throws IOException {
+        Path dir1 = rootDir.resolve("dir1");
+        Path dir2 = dir1.resolve("dir2");
+        Files.createDirectories(dir2);
+        Files.write(rootDir.resolve(".fimignore"), "**/*.mp3\n".getBytes(), CREATE);
+        Files.write(dir1.resolve(".fimignore"), "*.mp4\n".getBytes(), CREATE);
+
+        FimIgnore rootFimIgnore = cut.loadLocalIgnore(rootDir, new FimIgnore());
+        FimIgnore dir1FimIgnore = cut.loadLocalIgnore(dir1, rootFimIgnore);
+        FimIgnore dir2FimIgnore = cut.loadLocalIgnore(dir2, dir1FimIgnore);
+
+        assertThat(dir1FimIgnore.getFilesToIgnoreInAllDirectories()).isSameAs(rootFimIgnore.getFilesToIgnoreInAllDirectories());
+        assertThat(dir2FimIgnore.getFilesToIgnoreInAllDirectories()).isSameAs(rootFimIgnore.getFilesToIgnoreInAllDirectories());
+        assertThat(dir2FimIgnore.getAllDirectoriesMatcher()).isSameAs(rootFimIgnore.getAllDirectoriesMatcher());
+        assertThat(dir1FimIgnore.getFilesToIgnoreLocally().toString()).isEqualTo("[FilePattern{fileName=*.mp4, compiled=^.*\\.mp4$}]");
+        assertThat(dir2FimIgnore.getFilesToIgnoreLocally()).isEmpty();
+    }
+
+    @Test
+    public void aFimIgnoreIsParsedOnlyOnce() throws IOException {
+        Files.write(rootDir.resolve(".fimignore"), "foo\n".getBytes(), CREATE);
+
+        FimIgnore fimIgnore = cut.loadFimIgnore(rootDir);
+        assertThat(cut.loadFimIgnore(rootDir)).isSameAs(fimIgnore);
+    }
+
     private void assertFileIgnored(String fileName, FimIgnore fimIgnore) {
         assertThat(cut.isIgnored(fileName, fileAttributes, fimIgnore)).isTrue();
     }
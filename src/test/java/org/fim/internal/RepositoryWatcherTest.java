@@ -0,0 +1,191 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal;
+
+import org.apache.commons.io.FileUtils;
+import org.fim.command.InitCommand;
+import org.fim.model.CompareResult;
+import org.fim.model.Context;
+import org.fim.model.ModificationCounts;
+import org.fim.model.State;
+import org.fim.tooling.RepositoryTool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RepositoryWatcherTest {
+    private static final long MAX_WAIT_MILLIS = 10_000;
+
+    private RepositoryTool tool;
+    private Path rootDir;
+    private Context context;
+    private RepositoryWatcher cut;
+
+    @Before
+    public void setUp() throws Exception {
+        tool = new RepositoryTool(this.getClass());
+        rootDir = tool.getRootDir();
+        context = tool.getContext();
+
+        Files.createDirectories(rootDir.resolve("dir01"));
+        Files.createDirectories(rootDir.resolve("dir02"));
+        tool.setFileContent(rootDir.resolve("dir01/file01"), "file01", 100);
+        tool.setFileContent(rootDir.resolve("dir01/file02"), "file02", 100);
+        tool.setFileContent(rootDir.resolve("dir02/file03"), "file03", 100);
+        tool.setFileContent(rootDir.resolve("file04"), "file04", 100);
+        new InitCommand().execute(context);
+
+        cut = new RepositoryWatcher(context);
+        cut.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        cut.close();
+    }
+
+    @Test
+    public void nothingIsModifiedRightAfterTheStart() throws Exception {
+        assertThat(cut.getWatchedDirectoryCount()).isEqualTo(3);
+        assertThat(cut.status().somethingModified()).isFalse();
+    }
+
+    @Test
+    public void onlyTheTouchedPathsAreScannedAgain() throws Exception {
+        tool.setFileContent(rootDir.resolve("dir01/file01"), "file01 modified", 100);
+        Files.createDirectories(rootDir.resolve("dir03"));
+        tool.setFileContent(rootDir.resolve("dir03/file05"), "file05", 100);
+        FileUtils.deleteDirectory(rootDir.resolve("dir02").toFile());
+        tool.createFimIgnore(rootDir.resolve("dir01"), "file02");
+        waitUntilSettled();
+
+        CompareResult result = cut.status();
+        ModificationCounts modificationCounts = result.getModificationCounts();
+        assertThat(modificationCounts.getContentModified()).isEqualTo(1);
+        // The .fimignore and file05
+        assertThat(modificationCounts.getAdded()).isEqualTo(2);
+        assertThat(modificationCounts.getDeleted()).isEqualTo(1);
+        assertThat(result.modifiedCount()).isEqualTo(4);
+
+        // The new directory is watched as well
+        tool.setFileContent(rootDir.resolve("dir03/file06"), "file06", 100);
+        waitUntilSettled();
+        assertThat(cut.status().getModificationCounts().getAdded()).isEqualTo(3);
+
+        State liveState = cut.getLiveState();
+        State scannedState = new StateGenerator(context).generateState("", rootDir, rootDir);
+        assertThat(liveState.getFileStates()).isEqualTo(scannedState.getFileStates());
+        assertThat(liveState.getIgnoredFiles()).isEqualTo(scannedState.getIgnoredFiles());
+        assertThat(liveState.getIgnoredFiles()).containsOnly(".fim/", "dir01/file02");
+    }
+
+    @Test
+    public void theTouchedPathsAreRecordedIntoTheChangeJournal() throws Exception {
+        ChangeJournal journal = new ChangeJournal(context);
+        assertThat(journal.readTouchedPaths(1)).isEmpty();
+
+        tool.setFileContent(rootDir.resolve("file04"), "file04 modified", 100);
+        // The event may not be delivered yet
+        long start = System.currentTimeMillis();
+        while (journal.readTouchedPaths(1).isEmpty() && System.currentTimeMillis() - start < MAX_WAIT_MILLIS) {
+            Thread.sleep(50);
+        }
+        assertThat(journal.readTouchedPaths(1)).containsOnly(rootDir.resolve("file04").toAbsolutePath());
+
+        cut.close();
+        assertThat(journal.readTouchedPaths(1)).isNull();
+    }
+
+    @Test
+    public void aNewDirectoryIsWatchedBeforeBeingScanned() throws Exception {
+        Files.createDirectories(rootDir.resolve("dir03/dir04"));
+        long start = System.currentTimeMillis();
+        while (cut.getWatchedDirectoryCount() < 5 && System.currentTimeMillis() - start < MAX_WAIT_MILLIS) {
+            Thread.sleep(50);
+        }
+        assertThat(cut.getWatchedDirectoryCount()).isEqualTo(5);
+
+        ChangeJournal journal = new ChangeJournal(context);
+        Path file05 = rootDir.resolve("dir03/dir04/file05").toAbsolutePath();
+        tool.setFileContent(file05, "file05", 100);
+        start = System.currentTimeMillis();
+        while (!journal.readTouchedPaths(1).contains(file05) && System.currentTimeMillis() - start < MAX_WAIT_MILLIS) {
+            Thread.sleep(50);
+        }
+        assertThat(journal.readTouchedPaths(1)).contains(rootDir.resolve("dir03").toAbsolutePath(), file05);
+    }
+
+    @Test
+    public void theJournalIsIncompleteWhenADirectoryCannotBeWatched() throws Exception {
+        cut.close();
+        cut = new RepositoryWatcher(context) {
+            @Override
+            WatchKey register(Path directory) throws IOException {
+                if (directory.endsWith("dir02")) {
+                    // Like when the inotify watches are exhausted
+                    throw new IOException("No space left on device");
+                }
+                return super.register(directory);
+            }
+        };
+        cut.start();
+
+        ChangeJournal journal = new ChangeJournal(context);
+        assertThat(cut.getWatchedDirectoryCount()).isEqualTo(2);
+        assertThat(journal.readTouchedPaths(1)).isNull();
+
+        // Still incomplete once the State is committed again
+        journal.recordCommit(1, journal.getPosition());
+        assertThat(journal.readTouchedPaths(1)).isNull();
+    }
+
+    @Test
+    public void aStateCanBeBuiltByScanningOnlySomePaths() throws Exception {
+        State baseState = new StateGenerator(context).generateState("", rootDir, rootDir);
+
+        tool.setFileContent(rootDir.resolve("dir01/file02"), "file02 modified", 200);
+        Files.delete(rootDir.resolve("dir02/file03"));
+        tool.setFileContent(rootDir.resolve("dir02/file07"), "file07", 100);
+        tool.setFileContent(rootDir.resolve("file04"), "file04 modified", 200);
+
+        // file04 is not given so it keeps the hash of the base State
+        State state = new StateGenerator(context).generateState("", rootDir, rootDir, baseState,
+            Arrays.asList(rootDir.resolve("dir01/file02"), rootDir.resolve("dir02"), rootDir.resolve("dir02/file03")));
+
+        assertThat(state.getFileStates()).extracting("fileName").containsExactly("dir01/file01", "dir01/file02", "dir02/file07", "file04");
+        assertThat(state.getFileStates().get(1).getFileLength()).isGreaterThanOrEqualTo(200);
+        assertThat(state.getFileStates().get(3).getFileLength()).isLessThan(200);
+    }
+
+    private void waitUntilSettled() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (!cut.isSettled() && System.currentTimeMillis() - start < MAX_WAIT_MILLIS) {
+            Thread.sleep(50);
+        }
+        assertThat(cut.isSettled()).isTrue();
+    }
+}
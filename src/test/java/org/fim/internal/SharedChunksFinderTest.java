@@ -0,0 +1,72 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal;
+
+import org.fim.internal.hash.ChunkIndex;
+import org.fim.model.Context;
+import org.fim.model.SharedChunksResult;
+import org.fim.model.SharedContent;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SharedChunksFinderTest {
+    private SharedChunksFinder cut;
+    private ChunkIndex chunkIndex;
+
+    @Before
+    public void setUp() {
+        cut = new SharedChunksFinder(new Context());
+        chunkIndex = new ChunkIndex();
+    }
+
+    @Test
+    public void noSharedChunk() {
+        chunkIndex.addFile("dir1/file1", new long[]{1, 2}, new int[]{100, 200});
+        chunkIndex.addFile("dir2/file2", new long[]{3}, new int[]{300});
+
+        SharedChunksResult result = cut.findSharedChunks(chunkIndex);
+
+        assertThat(result.getTotalBytes()).isEqualTo(600);
+        assertThat(result.getSharedBytes()).isEqualTo(0);
+        assertThat(result.getSharedFiles()).isEmpty();
+    }
+
+    @Test
+    public void sharedChunksAreCountedByFileAndDirectory() {
+        chunkIndex.addFile("dir1/file1", new long[]{1, 2, 3}, new int[]{100, 200, 300});
+        chunkIndex.addFile("dir1/file2", new long[]{1, 2, 4}, new int[]{100, 200, 400});
+
+        ChunkIndex otherHasherIndex = new ChunkIndex();
+        otherHasherIndex.addFile("dir2/file3", new long[]{3, 5, 5}, new int[]{300, 500, 500});
+        chunkIndex.addAll(otherHasherIndex);
+
+        SharedChunksResult result = cut.findSharedChunks(chunkIndex);
+
+        assertThat(result.getTotalBytes()).isEqualTo(2_600);
+        assertThat(result.getUniqueBytes()).isEqualTo(1_500);
+        assertThat(result.getSharedFiles()).extracting(SharedContent::getSharedBytes).containsExactly(300L, 300L);
+        assertThat(result.getSharedFiles().get(0).getFirst()).isEqualTo("dir1/file1");
+        assertThat(result.getSharedFiles().get(0).getSecond()).isEqualTo("dir1/file2");
+
+        assertThat(result.getSharedDirectories()).hasSize(1);
+        assertThat(result.getSharedDirectories().get(0).getSharedBytes()).isEqualTo(300);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal;
+
+import org.fim.model.State;
+import org.fim.tooling.BuildableState;
+import org.fim.tooling.RepositoryTool;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StateCacheTest {
+    private Path stateFile;
+    private State state;
+    private StateCache cut;
+
+    @Before
+    public void setUp() throws Exception {
+        RepositoryTool tool = new RepositoryTool(this.getClass());
+        stateFile = tool.getRootDir().resolve("state_1.json.gz");
+        state = new BuildableState(tool.getContext()).addFiles("file_01", "file_02");
+        state.saveToGZipFile(stateFile);
+
+        cut = new StateCache(2);
+    }
+
+    @Test
+    public void aCopyOfTheStateIsReturned() {
+        assertThat(cut.get(stateFile, true)).isNull();
+
+        cut.put(stateFile, true, state);
+        State cachedState = cut.get(stateFile, true);
+        assertThat(cachedState).isNotSameAs(state);
+        assertThat(cachedState.getFileStates()).isEqualTo(state.getFileStates());
+
+        // The commands modify the States they load
+        cachedState.getFileStates().clear();
+        assertThat(cut.get(stateFile, true).getFileStates()).hasSize(2);
+
+        assertThat(cut.get(stateFile, false)).isNull();
+    }
+
+    @Test
+    public void theStateIsNotUsedOnceItsFileChanged() throws Exception {
+        cut.put(stateFile, true, state);
+
+        Files.setLastModifiedTime(stateFile, FileTime.fromMillis(Files.getLastModifiedTime(stateFile).toMillis() - 10_000));
+        assertThat(cut.get(stateFile, true)).isNull();
+    }
+}
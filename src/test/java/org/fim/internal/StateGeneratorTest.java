@@ -0,0 +1,66 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal;
+
+import org.fim.model.Context;
+import org.fim.model.State;
+import org.fim.tooling.RepositoryTool;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StateGeneratorTest {
+    private RepositoryTool tool;
+    private Path rootDir;
+    private Context context;
+
+    @Before
+    public void setUp() throws Exception {
+        tool = new RepositoryTool(this.getClass());
+        rootDir = tool.getRootDir();
+        context = tool.getContext();
+    }
+
+    @Test(timeout = 30_000)
+    public void theHashThreadsStopOnceAllTheScannedFilesAreHashed() throws Exception {
+        // Small files, so that they are taken from the queue by batch
+        for (int index = 0; index < 60; index++) {
+            tool.createFile(rootDir.resolve(String.format("file%02d", index)), 2_000);
+        }
+        context.setThreadCount(4);
+        context.setDynamicScaling(false);
+
+        State state = new StateGenerator(context).generateState("", rootDir, rootDir);
+
+        assertThat(state.getFileCount()).isEqualTo(60);
+    }
+
+    @Test(timeout = 30_000)
+    public void anEmptyDirectoryDoesNotBlockTheHashThreads() throws Exception {
+        context.setThreadCount(4);
+        context.setDynamicScaling(false);
+
+        State state = new StateGenerator(context).generateState("", rootDir, rootDir);
+
+        assertThat(state.getFileCount()).isEqualTo(0);
+    }
+}
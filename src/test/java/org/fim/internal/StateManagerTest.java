@@ -19,12 +19,18 @@
 package org.fim.internal;
 
 import org.apache.commons.io.FileUtils;
+import org.fim.model.BlockChecksums;
 import org.fim.model.Constants;
 import org.fim.model.Context;
+import org.fim.model.FileBlockChecksums;
 import org.fim.model.FileHash;
 import org.fim.model.FileState;
 import org.fim.model.HashMode;
+import org.fim.model.HistoryEntry;
+import org.fim.model.HistoryIndex;
+import org.fim.model.Modification;
 import org.fim.model.State;
+import org.fim.model.StateSummary;
 import org.fim.tooling.BuildableState;
 import org.fim.tooling.RepositoryTool;
 import org.fim.tooling.StateAssert;
@@ -38,12 +44,15 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.fim.model.HashMode.dontHash;
 import static org.fim.model.HashMode.hashAll;
 import static org.fim.model.HashMode.hashMediumBlock;
 import static org.fim.model.HashMode.hashSmallBlock;
+import static org.fim.model.Modification.added;
+import static org.fim.model.Modification.contentModified;
 
 @RunWith(Parameterized.class)
 public class StateManagerTest extends StateAssert {
@@ -116,6 +125,36 @@ public class StateManagerTest extends StateAssert {
         }
     }
 
+    @Test
+    public void blockChecksumsOfUnchangedFilesAreKept() throws IOException {
+        s = s.addFiles("file_1", "file_2");
+        BlockChecksums blockChecksums = new BlockChecksums();
+        for (FileState fileState : s.getFileStates()) {
+            blockChecksums.put(fileState.getFileName(), new FileBlockChecksums(fileState.getFileHash().getFullHash(), fileState.getFileLength(), new int[]{1, 2}));
+        }
+        cut.createNewState(s, blockChecksums);
+
+        assertThat(cut.loadBlockChecksums(1).size()).isEqualTo(2);
+
+        s = s.setContent("file_2", "new content");
+        cut.createNewState(s, null);
+
+        BlockChecksums result = cut.loadBlockChecksums(2);
+        assertThat(result.get("file_1").getChecksums()).containsExactly(1, 2);
+        if (hashMode == hashAll) {
+            assertThat(result.get("file_2")).isNull();
+        }
+    }
+
+    @Test
+    public void noBlockChecksumsAreStoredIfNotRequested() throws IOException {
+        s = s.addFiles("file_1");
+        cut.createNewState(s);
+
+        assertThat(cut.loadBlockChecksums(1)).isNull();
+        assertThat(cut.getBlockChecksumsFile(1)).doesNotExist();
+    }
+
     @Test
     public void canRetrieveLastStateNumberWhenAStateFileIsMissing() throws IOException {
         s = s.addFiles("file_1", "file_2");
@@ -146,6 +185,93 @@ public class StateManagerTest extends StateAssert {
         assertThat(cut.getLastStateNumber()).isEqualTo(2);
     }
 
+    @Test
+    public void aSummaryIsSavedWithEachState() throws IOException {
+        s = s.addFiles("file_1", "file_2");
+        s.setComment("First");
+        cut.createNewState(s);
+
+        assertThat(cut.getStateSummaryFile(1)).exists();
+
+        StateSummary summary = cut.loadStateSummary(1);
+        assertThat(summary.getComment()).isEqualTo("First");
+        assertThat(summary.getFileCount()).isEqualTo(2);
+        assertThat(summary.getHashMode()).isEqualTo(cut.loadState(1).getHashMode());
+        assertThat(summary.getStateFileLength()).isEqualTo(Files.size(cut.getStateFile(1)));
+    }
+
+    @Test
+    public void aMissingOrStaleSummaryIsBuiltAgain() throws IOException {
+        s = s.addFiles("file_1", "file_2");
+        cut.createNewState(s);
+
+        Files.delete(cut.getStateSummaryFile(1));
+        assertThat(cut.loadStateSummary(1).getFileCount()).isEqualTo(2);
+        assertThat(cut.getStateSummaryFile(1)).exists();
+
+        s = s.addFiles("file_3");
+        s.saveToGZipFile(cut.getStateFile(1));
+
+        StateSummary summary = cut.loadStateSummary(1);
+        assertThat(summary.getFileCount()).isEqualTo(3);
+        assertThat(summary.getStateFileLength()).isEqualTo(Files.size(cut.getStateFile(1)));
+    }
+
+    @Test
+    public void theHistoryIndexFollowsTheStates() throws IOException {
+        s = s.addFiles("file_1", "file_2");
+        setModification(added, "file_1", "file_2");
+        cut.createNewState(s);
+
+        s = s.setContent("file_2", "new content");
+        setModification(contentModified, "file_2");
+        cut.createNewState(s);
+
+        assertThat(cut.getHistoryIndexDir()).exists();
+        assertThat(cut.loadHistoryIndex().findByFileName("file_2")).extracting(HistoryEntry::getStateNumber).containsExactly(1, 2);
+
+        // Like a rollback followed by a new commit
+        Files.delete(cut.getStateFile(2));
+        cut.saveLastStateNumber(1);
+        s = s.addFiles("file_3");
+        setModification(added, "file_3");
+        cut.createNewState(s);
+
+        HistoryIndex historyIndex = cut.loadHistoryIndex();
+        assertThat(historyIndex.findByFileName("file_2")).extracting(HistoryEntry::getStateNumber).containsExactly(1);
+        assertThat(historyIndex.findByFileName("file_3")).extracting(HistoryEntry::getStateNumber).containsExactly(2);
+        // The State that was rolled back is no longer stored
+        assertThat(HistoryIndex.load(cut.getHistoryIndexDir()).getIndexedStates()).extracting(HistoryIndex.IndexedState::getStateNumber)
+            .containsExactlyInAnyOrder(1, 2);
+    }
+
+    @Test
+    public void aCommitOnlyAddsTheNewStateToTheHistoryIndex() throws IOException {
+        s = s.addFiles("file_1");
+        setModification(added, "file_1");
+        cut.createNewState(s);
+        FileUtils.deleteDirectory(cut.getHistoryIndexDir().toFile());
+
+        s = s.setContent("file_1", "new content");
+        setModification(contentModified, "file_1");
+        cut.createNewState(s);
+
+        HistoryIndex historyIndex = HistoryIndex.load(cut.getHistoryIndexDir());
+        assertThat(historyIndex.getIndexedStates()).extracting(HistoryIndex.IndexedState::getStateNumber).containsExactly(2);
+
+        // The history queries add back the missing States
+        historyIndex = cut.loadHistoryIndex();
+        assertThat(historyIndex.findByFileName("file_1")).extracting(HistoryEntry::getStateNumber).containsExactly(1, 2);
+        assertThat(HistoryIndex.load(cut.getHistoryIndexDir()).getIndexedStates()).hasSize(2);
+    }
+
+    private void setModification(Modification modification, String... fileNames) {
+        List<String> modifiedFileNames = Arrays.asList(fileNames);
+        for (FileState fileState : s.getFileStates()) {
+            fileState.setModification(modifiedFileNames.contains(fileState.getFileName()) ? modification : null);
+        }
+    }
+
     private void assertAllFileStatesHaveNoHash(State result, int fileCount) {
         FileHash noHash = new FileHash(Constants.NO_HASH, Constants.NO_HASH, Constants.NO_HASH);
 
@@ -0,0 +1,138 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal;
+
+import org.apache.commons.io.FileUtils;
+import org.fim.model.CompareResult;
+import org.fim.model.Context;
+import org.fim.model.Difference;
+import org.fim.model.FileState;
+import org.fim.model.State;
+import org.fim.tooling.BuildableState;
+import org.fim.tooling.RepositoryTool;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.fim.model.Modification.deleted;
+import static org.fim.util.Ascii85Util.UTF8;
+
+public class StoredStateComparatorTest {
+    private Context context;
+    private BuildableState s1;
+    private StateManager stateManager;
+
+    @Before
+    public void setUp() throws IOException {
+        RepositoryTool tool = new RepositoryTool(this.getClass());
+        context = tool.getContext();
+
+        Path statesDir = context.getRepositoryStatesDir();
+        FileUtils.deleteDirectory(statesDir.toFile());
+        Files.createDirectories(statesDir);
+
+        stateManager = new StateManager(context);
+        s1 = new BuildableState(context).addFiles("file_01", "file_02", "file_03", "file_04", "file_05", "file_06");
+    }
+
+    @Test
+    public void findsTheSameDifferencesAsTheStateComparator() throws IOException {
+        BuildableState s2 = s1.setContent("file_01", "new content")
+            .touch("file_02")
+            .rename("file_03", "file_10")
+            .delete("file_04")
+            .addFiles("file_11");
+        stateManager.createNewState(s1.clone());
+        stateManager.createNewState(s2.clone());
+
+        CompareResult result = new StoredStateComparator(context, 1, 2).compare();
+        CompareResult expected = new StateComparator(context, s1.clone(), s2.clone()).compare();
+
+        assertThat(fileNames(result.getContentModified())).containsExactly("file_01").isEqualTo(fileNames(expected.getContentModified()));
+        assertThat(fileNames(result.getDateModified())).containsExactly("file_02").isEqualTo(fileNames(expected.getDateModified()));
+        assertThat(fileNames(result.getRenamed())).containsExactly("file_10").isEqualTo(fileNames(expected.getRenamed()));
+        assertThat(result.getRenamed().get(0).getPreviousFileState().getFileName()).isEqualTo("file_03");
+        assertThat(fileNames(result.getDeleted())).containsExactly("file_04").isEqualTo(fileNames(expected.getDeleted()));
+        assertThat(fileNames(result.getAdded())).containsExactly("file_11").isEqualTo(fileNames(expected.getAdded()));
+        assertThat(result.modifiedCount()).isEqualTo(expected.modifiedCount());
+    }
+
+    @Test
+    public void theStatesCanBeComparedInBothDirections() throws IOException {
+        stateManager.createNewState(s1.clone());
+        stateManager.createNewState(s1.addFiles("file_11").delete("file_01"));
+
+        CompareResult result = new StoredStateComparator(context, 2, 1).compare();
+
+        assertThat(fileNames(result.getAdded())).containsExactly("file_01");
+        assertThat(fileNames(result.getDeleted())).containsExactly("file_11");
+    }
+
+    @Test
+    public void theDeletedEntriesRecordedByACommitAreNotCompared() throws IOException {
+        State s2 = s1.delete("file_01");
+        FileState deletedFileState = s1.getFileStates().get(0).clone();
+        deletedFileState.setModification(deleted);
+        s2.getFileStates().add(deletedFileState);
+        stateManager.createNewState(s1.clone());
+        stateManager.createNewState(s2);
+
+        assertThat(new StoredStateComparator(context, 2, 2).compare().somethingModified()).isFalse();
+        assertThat(fileNames(new StoredStateComparator(context, 1, 2).compare().getDeleted())).containsExactly("file_01");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void aModifiedStateIsDetected() throws IOException {
+        s1.setComment("First");
+        stateManager.createNewState(s1.clone());
+        stateManager.createNewState(s1.clone());
+
+        Path stateFile = stateManager.getStateFile(2);
+        String content;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(stateFile))) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+            content = new String(bytes.toByteArray(), UTF8);
+        }
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(stateFile))) {
+            out.write(content.replace("First", "Other").getBytes(UTF8));
+        }
+
+        new StoredStateComparator(context, 1, 2).compare();
+    }
+
+    private List<String> fileNames(List<Difference> differences) {
+        return differences.stream().map(difference -> difference.getFileState().getFileName()).collect(Collectors.toList());
+    }
+}
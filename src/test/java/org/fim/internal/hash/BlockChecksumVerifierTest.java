@@ -0,0 +1,80 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.hash;
+
+import org.fim.model.Context;
+import org.fim.model.FileBlockChecksums;
+import org.fim.tooling.RepositoryTool;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.fim.model.BlockChecksums.BLOCK_SIZE;
+import static org.fim.model.Constants._1_MB;
+
+public class BlockChecksumVerifierTest {
+    private Path file;
+    private byte[] content;
+    private FileBlockChecksums expected;
+    private BlockChecksumVerifier cut;
+
+    @Before
+    public void setUp() throws Exception {
+        RepositoryTool tool = new RepositoryTool(this.getClass());
+        file = tool.getRootDir().resolve("file");
+        tool.createFile(file, 3 * _1_MB + 123);
+        content = Files.readAllBytes(file);
+        assertThat(content.length).isGreaterThan(3 * BLOCK_SIZE);
+
+        Context context = tool.getContext();
+        context.setBlockChecksums(true);
+        FileHasher fileHasher = new FileHasher(context, null, null, tool.getRootDir().toString());
+        String fullHash = fileHasher.hashFile(file, content.length).getFullHash();
+        expected = new FileBlockChecksums(fullHash, content.length, fileHasher.getFrontHasher().getBlockChecksums());
+
+        cut = new BlockChecksumVerifier();
+    }
+
+    @Test
+    public void anIntactFileMatchesAllItsBlocks() throws Exception {
+        assertThat(cut.findFirstMismatchingBlock(file, expected)).isEqualTo(-1);
+        assertThat(cut.getBytesRead()).isEqualTo(content.length);
+    }
+
+    @Test
+    public void theReadingStopsAtTheFirstCorruptedBlock() throws Exception {
+        content[BLOCK_SIZE + 10]++;
+        Files.write(file, content);
+
+        assertThat(cut.findFirstMismatchingBlock(file, expected)).isEqualTo(1);
+        assertThat(cut.getBytesRead()).isEqualTo(2 * BLOCK_SIZE);
+    }
+
+    @Test
+    public void aTruncatedFileMismatchesAfterItsLastBlock() throws Exception {
+        byte[] truncated = new byte[2 * BLOCK_SIZE];
+        System.arraycopy(content, 0, truncated, 0, truncated.length);
+        Files.write(file, truncated);
+
+        assertThat(cut.findFirstMismatchingBlock(file, expected)).isEqualTo(2);
+    }
+}
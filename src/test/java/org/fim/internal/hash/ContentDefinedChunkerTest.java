@@ -0,0 +1,116 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.hash;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.fim.internal.hash.ContentDefinedChunker.MAX_CHUNK_SIZE;
+import static org.fim.internal.hash.ContentDefinedChunker.MIN_CHUNK_SIZE;
+import static org.fim.model.Constants._1_MB;
+
+public class ContentDefinedChunkerTest {
+    private ContentDefinedChunker cut = new ContentDefinedChunker();
+
+    @Test
+    public void chunksCoverTheWholeContent() {
+        byte[] content = randomContent(4 * _1_MB, 1);
+        chunk(content, 100_000);
+
+        int[] sizes = cut.getSizes();
+        long total = 0;
+        for (int index = 0; index < sizes.length; index++) {
+            total += sizes[index];
+            assertThat(sizes[index]).isLessThanOrEqualTo(MAX_CHUNK_SIZE);
+            if (index < sizes.length - 1) {
+                assertThat(sizes[index]).isGreaterThan(MIN_CHUNK_SIZE);
+            }
+        }
+        assertThat(total).isEqualTo(content.length);
+    }
+
+    @Test
+    public void chunksDoNotDependOnTheBufferSize() {
+        byte[] content = randomContent(2 * _1_MB, 2);
+
+        chunk(content, content.length);
+        long[] fingerprints = cut.getFingerprints();
+
+        chunk(content, 4_096);
+        assertThat(cut.getFingerprints()).containsExactly(fingerprints);
+    }
+
+    @Test
+    public void anInsertionOnlyChangesTheChunksAroundIt() {
+        byte[] content = randomContent(4 * _1_MB, 3);
+        chunk(content, content.length);
+        Set<Long> originalFingerprints = toSet(cut.getFingerprints());
+
+        byte[] modified = new byte[content.length + 10];
+        int insertPosition = 2 * _1_MB;
+        System.arraycopy(content, 0, modified, 0, insertPosition);
+        System.arraycopy(content, insertPosition, modified, insertPosition + 10, content.length - insertPosition);
+        chunk(modified, modified.length);
+
+        long[] modifiedFingerprints = cut.getFingerprints();
+        int changed = 0;
+        for (long fingerprint : modifiedFingerprints) {
+            if (!originalFingerprints.contains(fingerprint)) {
+                changed++;
+            }
+        }
+        assertThat(changed).isBetween(1, 2);
+    }
+
+    @Test
+    public void noChunksIfTheContentIsNotSequential() {
+        byte[] content = randomContent(_1_MB, 4);
+        cut.reset(content.length);
+        cut.update(_1_MB / 2, ByteBuffer.wrap(content, 0, _1_MB / 2).slice());
+
+        assertThat(cut.getChunkCount()).isEqualTo(-1);
+    }
+
+    private void chunk(byte[] content, int bufferSize) {
+        cut.reset(content.length);
+        for (int position = 0; position < content.length; position += bufferSize) {
+            int length = Math.min(bufferSize, content.length - position);
+            cut.update(position, ByteBuffer.wrap(content, position, length).slice());
+        }
+    }
+
+    private byte[] randomContent(int size, long seed) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    private Set<Long> toSet(long[] values) {
+        Set<Long> set = new HashSet<>();
+        for (long value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.hash;
+
+import org.fim.tooling.RepositoryTool;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DirectIoReaderTest {
+    private Path rootDir;
+    private List<Path> lookedUpFiles;
+    private DirectIoReader cut;
+
+    @Before
+    public void setUp() throws IOException {
+        rootDir = new RepositoryTool(this.getClass()).getRootDir();
+        lookedUpFiles = new ArrayList<>();
+        cut = new DirectIoReader(null) {
+            @Override
+            FileStore getFileStore(Path file) throws IOException {
+                lookedUpFiles.add(file);
+                return super.getFileStore(file);
+            }
+        };
+    }
+
+    @Test
+    public void theFileStoreIsLookedUpOncePerDirectory() throws IOException {
+        Path dir = Files.createDirectories(rootDir.resolve("dir"));
+        Path file1 = Files.write(rootDir.resolve("file1"), new byte[1]);
+        Path file2 = Files.write(rootDir.resolve("file2"), new byte[1]);
+        Path file3 = Files.write(dir.resolve("file3"), new byte[1]);
+
+        int alignment = cut.getAlignment(file1);
+        assertThat(alignment).isGreaterThanOrEqualTo(4096);
+        assertThat(cut.getAlignment(file2)).isEqualTo(alignment);
+        assertThat(cut.getAlignment(file3)).isEqualTo(alignment);
+        assertThat(cut.getAlignment(file1)).isEqualTo(alignment);
+
+        assertThat(lookedUpFiles).containsExactly(file1, file3);
+    }
+
+    @Test
+    public void theLeastRecentlyUsedDirectoriesAreForgotten() throws IOException {
+        Path file = Files.write(rootDir.resolve("file"), new byte[1]);
+        cut.getAlignment(file);
+        for (int index = 0; index < DirectIoReader.MAX_CACHED_DIRECTORIES; index++) {
+            Path dir = Files.createDirectories(rootDir.resolve("dir" + index));
+            cut.getAlignment(Files.write(dir.resolve("file"), new byte[1]));
+        }
+        assertThat(lookedUpFiles).hasSize(DirectIoReader.MAX_CACHED_DIRECTORIES + 1);
+
+        cut.getAlignment(file);
+        assertThat(lookedUpFiles).hasSize(DirectIoReader.MAX_CACHED_DIRECTORIES + 2);
+    }
+}
@@ -40,8 +40,13 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
 
 import static java.lang.Math.min;
 import static java.nio.file.StandardOpenOption.APPEND;
@@ -69,7 +74,13 @@ import static org.fim.tooling.TestConstants._60_MB;
 import static org.fim.tooling.TestConstants._6_KB;
 import static org.fim.tooling.TestConstants._8_KB;
 import static org.fim.util.FileUtil.byteCountToDisplaySize;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @RunWith(Parameterized.class)
 public class FileHasherTest extends StateAssert {
@@ -114,7 +125,7 @@ public class FileHasherTest extends StateAssert {
 
         hashProgress = mock(HashProgress.class);
 
-        cut = new FileHasher(context, null, hashProgress, null, rootDir.toString());
+        cut = new FileHasher(context, hashProgress, null, rootDir.toString());
     }
 
     @Test
@@ -201,6 +212,157 @@ public class FileHasherTest extends StateAssert {
             new Range[]{new Range(_1_MB, _2_MB), new Range(_30_MB, _30_MB + _1_MB), new Range(_60_MB - _1_MB, _60_MB)});
     }
 
+    @Test
+    public void directIoGivesTheSameHashAsMappedFiles() throws IOException, NoSuchAlgorithmException {
+        Context directIoContext = context.clone();
+        directIoContext.setDirectIo(true);
+        FileHasher directIoHasher = new FileHasher(directIoContext, hashProgress, null, rootDir.toString());
+
+        for (int fileSize : new int[]{0, _2_KB + 157, _4_KB + 201, _1_MB + _12_KB + 33, _3_MB + 1, _30_MB + _1_MB, _60_MB + 291}) {
+            Path file = createFileWithSize(fileSize);
+            assertThat(directIoHasher.hashFile(file, fileSize)).isEqualTo(cut.hashFile(file, fileSize));
+        }
+    }
+
+    @Test
+    public void smallFilesReadAtOnceGiveTheSameHashAsMappedFiles() throws IOException, NoSuchAlgorithmException {
+        Context mappedContext = context.clone();
+        mappedContext.setSmallFileThreshold(0);
+        FileHasher mappedHasher = new FileHasher(mappedContext, hashProgress, null, rootDir.toString());
+
+        for (int fileSize : new int[]{1, _2_KB + 157, _4_KB, _4_KB + 201, _8_KB + 723, _30_KB + 257, 2 * _30_KB}) {
+            Path file = createFileWithSize(fileSize);
+            assertThat(cut.hashFile(file, fileSize)).isEqualTo(mappedHasher.hashFile(file, fileSize));
+        }
+    }
+
+    @Test
+    public void blockChecksumsAreComputedWhenHashingAllTheContent() throws IOException, NoSuchAlgorithmException {
+        Context blockChecksumsContext = context.clone();
+        blockChecksumsContext.setBlockChecksums(true);
+        FileHasher blockChecksumsHasher = new FileHasher(blockChecksumsContext, hashProgress, null, rootDir.toString());
+
+        int fileSize = _2_MB + _12_KB + 33;
+        Path file = createFileWithSize(fileSize);
+        blockChecksumsHasher.hashFile(file, fileSize);
+        int[] checksums = blockChecksumsHasher.getFrontHasher().getBlockChecksums();
+
+        if (hashMode != hashAll) {
+            assertThat(checksums).isNull();
+            return;
+        }
+
+        byte[] content = Files.readAllBytes(file);
+        int[] expectedChecksums = new int[3];
+        for (int index = 0; index < expectedChecksums.length; index++) {
+            CRC32 crc = new CRC32();
+            int from = index * _1_MB;
+            crc.update(content, from, min(_1_MB, fileSize - from));
+            expectedChecksums[index] = (int) crc.getValue();
+        }
+        assertThat(checksums).containsExactly(expectedChecksums);
+    }
+
+    @Test
+    public void hashAllTheFilesOfTheQueue() throws Exception {
+        BlockingQueue<FileToHash> queue = new LinkedBlockingQueue<>();
+        queue.put(new FileToHash(createFileWithSize(_1_KB), _1_KB));
+        queue.put(FileHasher.END_OF_SCAN);
+
+        FileHasher fileHasher = new FileHasher(context, hashProgress, queue, rootDir.toString());
+        fileHasher.run();
+
+        assertThat(fileHasher.getFilesHashed()).isEqualTo(1);
+        assertThat(queue).containsExactly(FileHasher.END_OF_SCAN);
+        verify(hashProgress).noMoreFileToHash();
+    }
+
+    @Test
+    public void aStoppedFileHasherLeavesTheRemainingFilesToTheOthers() throws Exception {
+        BlockingQueue<FileToHash> queue = new LinkedBlockingQueue<>();
+        queue.put(new FileToHash(createFileWithSize(_1_KB), _1_KB));
+        queue.put(FileHasher.END_OF_SCAN);
+
+        FileHasher fileHasher = new FileHasher(context, hashProgress, queue, rootDir.toString());
+        fileHasher.requestStop();
+        fileHasher.run();
+
+        assertThat(fileHasher.getFilesHashed()).isEqualTo(0);
+        assertThat(queue).hasSize(2);
+        verify(hashProgress, never()).noMoreFileToHash();
+    }
+
+    @Test
+    public void smallFilesAreTakenFromTheQueueByBatch() throws Exception {
+        BlockingQueue<FileToHash> queue = spy(new LinkedBlockingQueue<FileToHash>());
+        int fileCount = FileHasher.BATCH_SIZE + 4;
+        for (int index = 0; index < fileCount; index++) {
+            queue.put(new FileToHash(createFileWithSize(_1_KB + index), _1_KB + index));
+        }
+        queue.put(FileHasher.END_OF_SCAN);
+
+        FileHasher fileHasher = new FileHasher(context, hashProgress, queue, rootDir.toString());
+        fileHasher.run();
+
+        assertThat(fileHasher.getFilesHashed()).isEqualTo(fileCount);
+        // Two batches: one full, and one with the last files followed by END_OF_SCAN
+        verify(queue, times(2)).drainTo(any(), anyInt());
+        assertThat(queue).containsExactly(FileHasher.END_OF_SCAN);
+    }
+
+    @Test
+    public void allTheFileHashersStopOnTheEndOfScanMarker() throws Exception {
+        BlockingQueue<FileToHash> queue = new LinkedBlockingQueue<>();
+        int fileCount = 10;
+        for (int index = 0; index < fileCount; index++) {
+            queue.put(new FileToHash(createFileWithSize(_1_KB + index), _1_KB + index));
+        }
+
+        List<FileHasher> fileHashers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int index = 0; index < 3; index++) {
+            FileHasher fileHasher = new FileHasher(context, hashProgress, queue, rootDir.toString());
+            fileHashers.add(fileHasher);
+            Thread thread = new Thread(fileHasher);
+            thread.start();
+            threads.add(thread);
+        }
+
+        // The FileHashers wait for the end of the scan even when the queue is empty
+        Thread.sleep(200);
+        assertThat(threads).allMatch(Thread::isAlive);
+
+        queue.put(FileHasher.END_OF_SCAN);
+        long filesHashed = 0;
+        for (int index = 0; index < threads.size(); index++) {
+            threads.get(index).join(10_000);
+            assertThat(threads.get(index).isAlive()).isFalse();
+            filesHashed += fileHashers.get(index).getFilesHashed();
+        }
+
+        assertThat(filesHashed).isEqualTo(fileCount);
+        assertThat(queue).containsExactly(FileHasher.END_OF_SCAN);
+    }
+
+    @Test(timeout = 10_000)
+    public void aStoppedFileHasherDoesNotKeepWaitingForFiles() throws Exception {
+        BlockingQueue<FileToHash> queue = new LinkedBlockingQueue<>();
+        FileHasher fileHasher = new FileHasher(context, hashProgress, queue, rootDir.toString());
+        Thread thread = new Thread(fileHasher);
+        thread.start();
+
+        Thread.sleep(200);
+        assertThat(thread.isAlive()).isTrue();
+
+        // The scan is not finished, but the thread is released for another FileHasher
+        fileHasher.requestStop();
+        thread.join(10 * FileHasher.STOP_CHECK_INTERVAL);
+
+        assertThat(thread.isAlive()).isFalse();
+        assertThat(queue).isEmpty();
+        verify(hashProgress, never()).noMoreFileToHash();
+    }
+
     // This is an heavy test that takes several hours to run and cannot be run every time.
     @Test
     @Ignore
@@ -317,11 +479,24 @@ public class FileHasherTest extends StateAssert {
     }
 
     private void assertSmallBlockBytesHashedEqualsTo(long expectedSizeToHash) {
-        assertBlockBytesHashedEqualsTo(expectedSizeToHash, (BlockHasher) cut.getFrontHasher().getSmallBlockHasher());
+        if (cut.getFrontHasher().isSmallBlockHashShared()) {
+            assertSharedDigestBytesHashed(cut.getFrontHasher().getSmallBlockHasher());
+        } else {
+            assertBlockBytesHashedEqualsTo(expectedSizeToHash, (BlockHasher) cut.getFrontHasher().getSmallBlockHasher());
+        }
     }
 
     private void assertMediumBlockBytesHashedEqualsTo(long expectedSizeToHash) {
-        assertBlockBytesHashedEqualsTo(expectedSizeToHash, (BlockHasher) cut.getFrontHasher().getMediumBlockHasher());
+        if (cut.getFrontHasher().isMediumBlockHashShared()) {
+            assertSharedDigestBytesHashed(cut.getFrontHasher().getMediumBlockHasher());
+        } else {
+            assertBlockBytesHashedEqualsTo(expectedSizeToHash, (BlockHasher) cut.getFrontHasher().getMediumBlockHasher());
+        }
+    }
+
+    private void assertSharedDigestBytesHashed(Hasher blockHasher) {
+        // The digest was computed by a bigger hasher that had the same range
+        assertThat(blockHasher.getBytesHashed()).isEqualTo(0);
     }
 
     private void assertBlockBytesHashedEqualsTo(long expectedSizeToHash, BlockHasher blockHasher) {
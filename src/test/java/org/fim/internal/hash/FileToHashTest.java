@@ -0,0 +1,44 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.hash;
+
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.concurrent.PriorityBlockingQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileToHashTest {
+    @Test
+    public void largestFilesAreTakenFirstAndEndOfScanLast() throws InterruptedException {
+        PriorityBlockingQueue<FileToHash> queue = new PriorityBlockingQueue<>(10, new FileToHash.LargestFirstComparator());
+        queue.put(new FileToHash(Paths.get("small"), 10));
+        queue.put(FileHasher.END_OF_SCAN);
+        queue.put(new FileToHash(Paths.get("empty"), 0));
+        queue.put(new FileToHash(Paths.get("huge"), 10_000_000));
+        queue.put(new FileToHash(Paths.get("medium"), 1_000));
+
+        assertThat(queue.take().getFile().toString()).isEqualTo("huge");
+        assertThat(queue.take().getFile().toString()).isEqualTo("medium");
+        assertThat(queue.take().getFile().toString()).isEqualTo("small");
+        assertThat(queue.take().getFile().toString()).isEqualTo("empty");
+        assertThat(queue.take()).isSameAs(FileHasher.END_OF_SCAN);
+    }
+}
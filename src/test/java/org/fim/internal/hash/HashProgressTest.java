@@ -38,4 +38,20 @@ public class HashProgressTest extends StateAssert {
 
         assertThat(cut.getProgressChar(30 * 1024 * 1024)).isEqualTo('o');
     }
+
+    @Test
+    public void theRemainingTimeIsEstimatedOnceTheScanIsFinished() {
+        cut.outputInit();
+        cut.fileDiscovered(300);
+        cut.fileDiscovered(100);
+        cut.updateOutput(100);
+        assertThat(cut.getEstimatedRemainingMillis(1_000)).isEqualTo(-1);
+
+        cut.scanFinished();
+        assertThat(cut.getEstimatedRemainingMillis(1_000)).isEqualTo(3_000);
+
+        cut.updateOutput(300);
+        assertThat(cut.getEstimatedRemainingMillis(4_000)).isEqualTo(0);
+        cut.outputStop();
+    }
 }
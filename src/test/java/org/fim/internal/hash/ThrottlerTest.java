@@ -0,0 +1,62 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.hash;
+
+import org.fim.model.Context;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ThrottlerTest {
+    @Test
+    public void noThrottlerWithoutBudget() {
+        assertThat(Throttler.create(new Context())).isNull();
+    }
+
+    @Test
+    public void theFilesBudgetIsRespected() {
+        Context context = new Context();
+        context.setThrottleFilesPerSecond(20);
+        Throttler throttler = Throttler.create(context);
+
+        long start = System.currentTimeMillis();
+        for (int index = 0; index < 11; index++) {
+            throttler.acquireFile();
+        }
+        long duration = System.currentTimeMillis() - start;
+
+        assertThat(duration).isGreaterThanOrEqualTo(400);
+        assertThat(throttler.getWaitedMicros()).isGreaterThanOrEqualTo(400_000);
+    }
+
+    @Test
+    public void theBytesBudgetIsRespected() {
+        Context context = new Context();
+        context.setThrottleBytesPerSecond(1_000_000);
+        Throttler throttler = Throttler.create(context);
+
+        long start = System.currentTimeMillis();
+        for (int index = 0; index < 3; index++) {
+            throttler.acquireBytes(250_000);
+        }
+        long duration = System.currentTimeMillis() - start;
+
+        assertThat(duration).isGreaterThanOrEqualTo(400);
+    }
+}
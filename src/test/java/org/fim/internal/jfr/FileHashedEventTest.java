@@ -0,0 +1,46 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.internal.jfr;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class FileHashedEventTest {
+    @Before
+    public void setUp() {
+        assumeTrue(FlightRecorderEvents.AVAILABLE);
+    }
+
+    @Test
+    public void noEventIsCreatedWhileNotRecording() {
+        assertThat(FlightRecorderEvents.beginFileHashed()).isNull();
+    }
+
+    @Test
+    public void filesAreGroupedBySizeClass() {
+        assertThat(FileHashedEvent.getSizeClass(0)).isEqualTo("empty");
+        assertThat(FileHashedEvent.getSizeClass(4_096)).isEqualTo("up to 4 KB");
+        assertThat(FileHashedEvent.getSizeClass(4_097)).isEqualTo("up to 64 KB");
+        assertThat(FileHashedEvent.getSizeClass(1_048_576)).isEqualTo("up to 1 MB");
+        assertThat(FileHashedEvent.getSizeClass(31_457_281)).isEqualTo("over 30 MB");
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.model;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.fim.model.Constants._1_MB;
+
+public class FileBlockChecksumsTest {
+    private static final long FILE_LENGTH = 5 * _1_MB + 123;
+
+    private FileBlockChecksums original = new FileBlockChecksums("hash", FILE_LENGTH, new int[]{1, 2, 3, 4, 5, 6});
+
+    @Test
+    public void sameContentHasNoMismatchingRange() {
+        FileBlockChecksums same = new FileBlockChecksums("hash", FILE_LENGTH, new int[]{1, 2, 3, 4, 5, 6});
+
+        assertThat(original.getMismatchingRanges(same)).isEmpty();
+    }
+
+    @Test
+    public void consecutiveMismatchingBlocksAreMerged() {
+        FileBlockChecksums corrupted = new FileBlockChecksums("other", FILE_LENGTH, new int[]{1, 20, 30, 4, 5, 60});
+
+        assertThat(original.getMismatchingRanges(corrupted)).containsExactly(
+            new Range(_1_MB, 3 * _1_MB),
+            new Range(5 * _1_MB, FILE_LENGTH));
+    }
+
+    @Test
+    public void aTruncatedFileMismatchesFromItsLastBlock() {
+        FileBlockChecksums truncated = new FileBlockChecksums("other", 2 * _1_MB, new int[]{1, 2});
+
+        assertThat(original.getMismatchingRanges(truncated)).containsExactly(new Range(2 * _1_MB, FILE_LENGTH));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FilePatternMatcherTest {
+    private static final List<String> PATTERNS = Arrays.asList(
+        "foo", "bar*", "*baz*", "*.mp3", "$Data[1]|2(3)*", "****qux****", "a*b*c", "*.tar.gz", "x.y",
+        "c++", "*.c++", "lib+*", "a*b+c");
+
+    private static final List<String> FILE_NAMES = Arrays.asList(
+        "foo", "a_foo", "foo_a", "bar", "bar_yes", "yes_bar", "no_baz_yes", "baz", "track12.mp3", "track12_mp3", ".mp3", "mp3",
+        "$Data[1]|2(3)_file", "$Data[1]|2(3", "****qux****", "qux", "abc", "a_b_c", "ab", "archive.tar.gz", "archive.gz", "x.y", "xzy", "",
+        "c++", "cc", "c", "main.c++", "main.cc", "lib+foo", "libfoo", "libbfoo", "a_b+c", "a_bbc", "a_bc");
+
+    @Test
+    public void matchTheSameFilesThanEachFilePattern() {
+        List<FilePattern> filePatterns = new ArrayList<>();
+        for (String pattern : PATTERNS) {
+            filePatterns.add(new FilePattern(pattern));
+        }
+        FilePatternMatcher matcher = new FilePatternMatcher(filePatterns);
+
+        for (String fileName : FILE_NAMES) {
+            boolean expected = FilePattern.matchPatterns(fileName, new ArrayList<>(filePatterns), false);
+            assertThat(matcher.match(fileName)).as("Matching '%s'", fileName).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void plusIsNotAWildcard() {
+        FilePatternMatcher matcher = new FilePatternMatcher(Arrays.asList(new FilePattern("c++"), new FilePattern("a*b+c")));
+
+        assertThat(new FilePattern("c++").match("c++")).isTrue();
+        assertThat(new FilePattern("c++").match("cc")).isFalse();
+        assertThat(matcher.match("c++")).isTrue();
+        assertThat(matcher.match("cc")).isFalse();
+        assertThat(matcher.match("a_b+c")).isTrue();
+        assertThat(matcher.match("a_bbc")).isFalse();
+    }
+
+    @Test
+    public void starMatchEverything() {
+        FilePatternMatcher matcher = new FilePatternMatcher(Arrays.asList(new FilePattern("**")));
+
+        assertThat(matcher.match("foo")).isTrue();
+        assertThat(matcher.match("")).isTrue();
+    }
+
+    @Test
+    public void emptyMatcherMatchNothing() {
+        assertThat(FilePatternMatcher.EMPTY.isEmpty()).isTrue();
+        assertThat(FilePatternMatcher.EMPTY.match("foo")).isFalse();
+    }
+
+    @Test
+    public void defaultValueIsUsedWhenNoPatternIsSet() {
+        assertThat(FilePatternMatcher.compile(null)).isNull();
+        assertThat(FilePatternMatcher.matchPatterns("foo", null, true)).isTrue();
+        assertThat(FilePatternMatcher.matchPatterns("foo", null, false)).isFalse();
+    }
+}
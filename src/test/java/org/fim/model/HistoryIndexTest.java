@@ -0,0 +1,158 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.model;
+
+import com.google.common.io.BaseEncoding;
+import org.fim.tooling.RepositoryTool;
+import org.fim.util.Ascii85Util;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.fim.model.Constants.NO_HASH;
+import static org.fim.model.Modification.added;
+import static org.fim.model.Modification.contentModified;
+import static org.fim.model.Modification.renamed;
+
+public class HistoryIndexTest {
+    private static final byte[] CONTENT_HASH = new byte[64];
+
+    private Path indexDir;
+    private HistoryIndex cut;
+
+    @Before
+    public void setUp() throws IOException {
+        indexDir = new RepositoryTool(this.getClass()).getRootDir().resolve("history");
+        cut = new HistoryIndex(indexDir);
+    }
+
+    @Test
+    public void canFindTheModificationsOfAFile() throws IOException {
+        addState(1, summary(1000, fileState("file_1", added, "hash_1"), fileState("file_2", added, "hash_2")));
+        addState(2, summary(2000, fileState("file_1", contentModified, "hash_3")));
+        FileState renamedFileState = fileState("file_3", renamed, "hash_2");
+        renamedFileState.setPreviousFileState(fileState("file_2", null, "hash_2"));
+        addState(3, summary(3000, renamedFileState));
+
+        assertThat(cut.findByFileName("file_1")).extracting(HistoryEntry::getStateNumber, HistoryEntry::getModification)
+            .containsExactly(tuple(1, added), tuple(2, contentModified));
+        assertThat(cut.findByFileName("file_2")).extracting(HistoryEntry::getStateNumber, HistoryEntry::getModification)
+            .containsExactly(tuple(1, added), tuple(3, renamed));
+        assertThat(cut.findByFileName("file_3").get(0).getPreviousFileName()).isEqualTo("file_2");
+        assertThat(cut.findByFileName("file_3").get(0).getTimestamp()).isEqualTo(3000);
+        assertThat(cut.findByFileName("unknown")).isEmpty();
+
+        // Read back from the files
+        assertThat(HistoryIndex.load(indexDir).findByFileName("file_2")).extracting(HistoryEntry::getStateNumber).containsExactly(1, 3);
+    }
+
+    @Test
+    public void canFindWhenAContentAppeared() throws IOException {
+        String hash = Ascii85Util.encode(CONTENT_HASH);
+        addState(1, summary(1000, fileState("file_1", added, "hash_1")));
+        addState(2, summary(2000, fileState("file_2", added, hash)));
+
+        assertThat(cut.findByHash(hash)).extracting(HistoryEntry::getFileName).containsExactly("file_2");
+        assertThat(cut.findByHash(BaseEncoding.base16().lowerCase().encode(CONTENT_HASH))).extracting(HistoryEntry::getFileName).containsExactly("file_2");
+        assertThat(cut.findByHash(NO_HASH)).isEmpty();
+    }
+
+    @Test
+    public void theKeysAreFoundAcrossTheBlocks() throws IOException {
+        Map<Integer, StateSummary> summaries = new TreeMap<>();
+        FileState[] fileStates = new FileState[HistorySegment.BLOCK_SIZE * 3];
+        for (int index = 0; index < fileStates.length; index++) {
+            fileStates[index] = fileState(String.format("file_%04d", index), added, "hash_" + index);
+        }
+        summaries.put(1, summary(1000, fileStates));
+        // More entries of the same file than a block holds
+        for (int stateNumber = 2; stateNumber <= HistorySegment.BLOCK_SIZE + 2; stateNumber++) {
+            summaries.put(stateNumber, summary(stateNumber * 1000, fileState("file_0512", contentModified, "hash_" + stateNumber)));
+        }
+        cut.addStates(summaries);
+
+        HistorySegment segment = cut.getSegments().get(0);
+        assertThat(segment.getPathBlocks().size()).isGreaterThan(3);
+        for (int index : new int[]{0, HistorySegment.BLOCK_SIZE - 1, HistorySegment.BLOCK_SIZE, fileStates.length - 1}) {
+            assertThat(cut.findByFileName(String.format("file_%04d", index))).isNotEmpty();
+        }
+        assertThat(cut.findByFileName("file_0512")).hasSize(HistorySegment.BLOCK_SIZE + 2)
+            .extracting(HistoryEntry::getStateNumber).isSorted();
+        assertThat(cut.findByHash("hash_" + (fileStates.length - 1))).extracting(HistoryEntry::getFileName).containsExactly("file_1535");
+        assertThat(cut.findByFileName("file_")).isEmpty();
+        assertThat(cut.findByFileName("file_9999")).isEmpty();
+    }
+
+    @Test
+    public void theOutdatedStatesAreRemoved() throws IOException {
+        addState(1, summary(1000, fileState("file_1", added, "hash_1")));
+        addState(2, summary(2000, fileState("file_1", contentModified, "hash_2")));
+
+        HistoryIndex.IndexedState indexedState = cut.getIndexedStates().get(0).getStateNumber() == 1 ? cut.getIndexedStates().get(0) : cut.getIndexedStates().get(1);
+        cut.removeStates(Collections.singletonList(indexedState));
+        assertThat(cut.getIndexedStates()).extracting(HistoryIndex.IndexedState::getStateNumber).containsExactly(2);
+        assertThat(cut.findByFileName("file_1")).extracting(HistoryEntry::getStateNumber).containsExactly(2);
+        assertThat(HistoryIndex.load(indexDir).getSegments()).hasSize(1);
+
+        addState(1, summary(1000, fileState("file_1", added, "hash_1")));
+        assertThat(cut.findByFileName("file_1")).extracting(HistoryEntry::getStateNumber).containsExactly(1, 2);
+    }
+
+    @Test
+    public void theSmallSegmentsAreMerged() throws IOException {
+        addState(1, summary(1000, fileState("file_1", added, "hash_1"), fileState("file_2", added, "hash_2")));
+        for (int stateNumber = 2; stateNumber <= HistoryIndex.MAX_SEGMENTS; stateNumber++) {
+            addState(stateNumber, summary(stateNumber * 1000, fileState("file_1", contentModified, "hash_" + stateNumber)));
+        }
+        cut.compact();
+        assertThat(cut.getSegments()).hasSize(HistoryIndex.MAX_SEGMENTS);
+
+        addState(HistoryIndex.MAX_SEGMENTS + 1, summary(20000, fileState("file_2", contentModified, "hash_0")));
+        HistorySegment firstSegment = cut.getSegments().get(0);
+        cut.compact();
+        assertThat(cut.getSegments()).hasSize(2).contains(firstSegment);
+        assertThat(HistoryIndex.load(indexDir).getSegments()).hasSize(2);
+        assertThat(cut.findByFileName("file_1")).hasSize(HistoryIndex.MAX_SEGMENTS).extracting(HistoryEntry::getStateNumber).isSorted();
+        assertThat(cut.findByFileName("file_2")).extracting(HistoryEntry::getStateNumber).containsExactly(1, HistoryIndex.MAX_SEGMENTS + 1);
+    }
+
+    private void addState(int stateNumber, StateSummary summary) throws IOException {
+        cut.addStates(Collections.singletonMap(stateNumber, summary));
+    }
+
+    private StateSummary summary(long timestamp, FileState... fileStates) {
+        StateSummary summary = new StateSummary();
+        summary.setTimestamp(timestamp);
+        Collections.addAll(summary.getModifiedFileStates(), fileStates);
+        return summary;
+    }
+
+    private FileState fileState(String fileName, Modification modification, String hash) {
+        FileState fileState = new FileState(fileName, 10, new FileTime(0, 0), new FileHash(NO_HASH, NO_HASH, hash), null);
+        fileState.setModification(modification);
+        return fileState;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.tooling;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MacroBenchmarkReport {
+    private String javaVersion;
+    private int availableProcessors;
+    private String hashMode;
+    private double scale;
+    private double churnRatio;
+    private List<MacroBenchmarkResult> results;
+
+    public MacroBenchmarkReport() {
+        this.results = new ArrayList<>();
+    }
+
+    public String getJavaVersion() {
+        return javaVersion;
+    }
+
+    public void setJavaVersion(String javaVersion) {
+        this.javaVersion = javaVersion;
+    }
+
+    public int getAvailableProcessors() {
+        return availableProcessors;
+    }
+
+    public void setAvailableProcessors(int availableProcessors) {
+        this.availableProcessors = availableProcessors;
+    }
+
+    public String getHashMode() {
+        return hashMode;
+    }
+
+    public void setHashMode(String hashMode) {
+        this.hashMode = hashMode;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    public void setScale(double scale) {
+        this.scale = scale;
+    }
+
+    public double getChurnRatio() {
+        return churnRatio;
+    }
+
+    public void setChurnRatio(double churnRatio) {
+        this.churnRatio = churnRatio;
+    }
+
+    public List<MacroBenchmarkResult> getResults() {
+        return results;
+    }
+
+    public void setResults(List<MacroBenchmarkResult> results) {
+        this.results = results;
+    }
+
+    public MacroBenchmarkResult findResult(String shape) {
+        for (MacroBenchmarkResult result : results) {
+            if (result.getShape().equals(shape)) {
+                return result;
+            }
+        }
+        return null;
+    }
+}
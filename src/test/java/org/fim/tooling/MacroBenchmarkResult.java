@@ -0,0 +1,75 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.tooling;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class MacroBenchmarkResult {
+    private String shape;
+    private int fileCount;
+    private long totalLength;
+    private Map<String, Long> durations;
+
+    public MacroBenchmarkResult() {
+        this.durations = new LinkedHashMap<>();
+    }
+
+    public MacroBenchmarkResult(String shape, int fileCount, long totalLength) {
+        this();
+        this.shape = shape;
+        this.fileCount = fileCount;
+        this.totalLength = totalLength;
+    }
+
+    public String getShape() {
+        return shape;
+    }
+
+    public void setShape(String shape) {
+        this.shape = shape;
+    }
+
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    public void setFileCount(int fileCount) {
+        this.fileCount = fileCount;
+    }
+
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    public void setTotalLength(long totalLength) {
+        this.totalLength = totalLength;
+    }
+
+    /**
+     * Duration in milliseconds of each command, in the order they were run.
+     */
+    public Map<String, Long> getDurations() {
+        return durations;
+    }
+
+    public void setDurations(Map<String, Long> durations) {
+        this.durations = durations;
+    }
+}
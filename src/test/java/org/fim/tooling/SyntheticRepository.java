@@ -0,0 +1,201 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.tooling;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+
+/**
+ * Generates reproducible file trees with the shapes that stress Fim the most.
+ * The content only depends on the seed, so two runs with the same parameters produce the same tree.
+ */
+public class SyntheticRepository {
+    private static final int FILES_PER_DIRECTORY = 1_000;
+    private static final int WRITE_BUFFER_SIZE = 1_024 * 1_024;
+    private static final int SPARSE_BLOCK_SIZE = 4_096;
+
+    private final Path rootDir;
+    private final Random random;
+    private final List<Path> files;
+    private int fileIndex;
+
+    public SyntheticRepository(Path rootDir, long seed) {
+        this.rootDir = rootDir;
+        this.random = new Random(seed);
+        this.files = new ArrayList<>();
+        this.fileIndex = 0;
+    }
+
+    public List<Path> getFiles() {
+        return files;
+    }
+
+    public long getTotalLength() throws IOException {
+        long totalLength = 0;
+        for (Path file : files) {
+            totalLength += Files.size(file);
+        }
+        return totalLength;
+    }
+
+    /**
+     * Creates a lot of files from 1 byte to maxFileSize, grouped by FILES_PER_DIRECTORY.
+     */
+    public void createTinyFiles(int count, int maxFileSize) throws IOException {
+        Path dir = null;
+        for (int index = 0; index < count; index++) {
+            if (index % FILES_PER_DIRECTORY == 0) {
+                dir = Files.createDirectories(rootDir.resolve(String.format("tiny/dir%05d", index / FILES_PER_DIRECTORY)));
+            }
+            createRandomFile(dir, 1 + random.nextInt(maxFileSize));
+        }
+    }
+
+    /**
+     * Creates branchCount chains of directories that are depth levels deep, with filesPerLevel files at each level.
+     */
+    public void createDeepHierarchy(int branchCount, int depth, int filesPerLevel, int maxFileSize) throws IOException {
+        for (int branch = 0; branch < branchCount; branch++) {
+            Path dir = rootDir.resolve(String.format("deep/branch%04d", branch));
+            for (int level = 0; level < depth; level++) {
+                dir = Files.createDirectories(dir.resolve(String.format("level%02d", level)));
+                for (int index = 0; index < filesPerLevel; index++) {
+                    createRandomFile(dir, 1 + random.nextInt(maxFileSize));
+                }
+            }
+        }
+    }
+
+    public void createHugeFiles(int count, long fileSize) throws IOException {
+        Path dir = Files.createDirectories(rootDir.resolve("huge"));
+        for (int index = 0; index < count; index++) {
+            createRandomFile(dir, fileSize);
+        }
+    }
+
+    /**
+     * Creates files of fileSize bytes where only dataBlockCount blocks of 4 KB are written, the rest being holes.
+     */
+    public void createSparseFiles(int count, long fileSize, int dataBlockCount) throws IOException {
+        Path dir = Files.createDirectories(rootDir.resolve("sparse"));
+        byte[] block = new byte[SPARSE_BLOCK_SIZE];
+        long blockCount = fileSize / SPARSE_BLOCK_SIZE;
+        for (int index = 0; index < count; index++) {
+            Path file = nextFile(dir);
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+                randomAccessFile.setLength(fileSize);
+                for (int blockIndex = 0; blockIndex < dataBlockCount; blockIndex++) {
+                    random.nextBytes(block);
+                    randomAccessFile.seek((long) (random.nextDouble() * blockCount) * SPARSE_BLOCK_SIZE);
+                    randomAccessFile.write(block);
+                }
+            }
+            files.add(file);
+        }
+    }
+
+    /**
+     * Creates distinctCount files that are each present copyCount times, spread into several directories.
+     */
+    public void createDuplicates(int distinctCount, int copyCount, int maxFileSize) throws IOException {
+        for (int index = 0; index < distinctCount; index++) {
+            byte[] content = new byte[1 + random.nextInt(maxFileSize)];
+            random.nextBytes(content);
+            for (int copy = 0; copy < copyCount; copy++) {
+                Path dir = Files.createDirectories(rootDir.resolve(String.format("duplicates/copy%03d", copy)));
+                Path file = nextFile(dir);
+                Files.write(file, content);
+                files.add(file);
+            }
+        }
+    }
+
+    /**
+     * Changes a ratio of the generated files the way it happens between two commits.
+     * A quarter of them are modified, a quarter renamed, a quarter deleted and the same number of new files is added.
+     */
+    public void applyChurn(double ratio, int maxFileSize) throws IOException {
+        int changeCount = (int) (files.size() * ratio);
+        int[] counts = new int[4];
+        for (int index = 0; index < changeCount; index++) {
+            counts[index % 4]++;
+        }
+
+        for (int index = 0; index < counts[0]; index++) {
+            Path file = files.get(pickIndex());
+            byte[] content = new byte[1 + random.nextInt(256)];
+            random.nextBytes(content);
+            Files.write(file, content, APPEND);
+        }
+
+        for (int index = 0; index < counts[1]; index++) {
+            int picked = pickIndex();
+            Path file = files.get(picked);
+            Path renamed = file.resolveSibling("renamed_" + file.getFileName());
+            Files.move(file, renamed);
+            files.set(picked, renamed);
+        }
+
+        for (int index = 0; index < counts[2]; index++) {
+            // Move the last file in place of the deleted one to avoid shifting the whole list
+            int picked = pickIndex();
+            Files.delete(files.get(picked));
+            files.set(picked, files.get(files.size() - 1));
+            files.remove(files.size() - 1);
+        }
+
+        Path dir = Files.createDirectories(rootDir.resolve("churn"));
+        for (int index = 0; index < counts[3]; index++) {
+            createRandomFile(dir, 1 + random.nextInt(maxFileSize));
+        }
+    }
+
+    private int pickIndex() {
+        return random.nextInt(files.size());
+    }
+
+    private Path createRandomFile(Path dir, long fileSize) throws IOException {
+        Path file = nextFile(dir);
+        byte[] buffer = new byte[(int) Math.min(fileSize, WRITE_BUFFER_SIZE)];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            long remaining = fileSize;
+            while (remaining > 0) {
+                random.nextBytes(buffer);
+                int length = (int) Math.min(remaining, buffer.length);
+                out.write(buffer, 0, length);
+                remaining -= length;
+            }
+        }
+        files.add(file);
+        return file;
+    }
+
+    private Path nextFile(Path dir) {
+        fileIndex++;
+        return dir.resolve(String.format("file%08d", fileIndex));
+    }
+}
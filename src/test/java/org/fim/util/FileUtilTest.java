@@ -50,4 +50,17 @@ public class FileUtilTest {
         relativeFileName = FileUtil.getRelativeFileName("/dir1/dir2/dir3", "dir4/file1");
         assertThat(relativeFileName).isEqualTo("dir4/file1");
     }
+
+    @Test
+    public void canParseAByteCount() {
+        assertThat(FileUtil.parseByteCount("1234")).isEqualTo(1_234L);
+        assertThat(FileUtil.parseByteCount("50M")).isEqualTo(50_000_000L);
+        assertThat(FileUtil.parseByteCount("2 kb")).isEqualTo(2_000L);
+        assertThat(FileUtil.parseByteCount("3G")).isEqualTo(3_000_000_000L);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void anInvalidByteCountIsRejected() {
+        FileUtil.parseByteCount("12X");
+    }
 }
@@ -0,0 +1,70 @@
+/*
+ * This file is part of Fim - File Integrity Manager
+ *
+ * Copyright (C) 2017  Etienne Vrignaud
+ *
+ * Fim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Fim.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.fim.util;
+
+import org.fim.model.HashThreadStatistics;
+import org.fim.model.PerformanceReport;
+import org.fim.model.PhaseStatistics;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PerformanceRecorderTest {
+    private PerformanceRecorder cut = new PerformanceRecorder();
+
+    @Test
+    public void theSamePhaseRecordedTwiceIsSummed() {
+        cut.startPhase(PerformanceRecorder.LOAD_STATE).end(10, 1_000);
+        cut.startPhase(PerformanceRecorder.LOAD_STATE).end(20, 2_000);
+
+        PerformanceReport report = cut.buildReport("status");
+        assertThat(report.getCommand()).isEqualTo("status");
+        assertThat(report.getPhases()).hasSize(1);
+
+        PhaseStatistics phase = report.getPhases().get(0);
+        assertThat(phase.getName()).isEqualTo(PerformanceRecorder.LOAD_STATE);
+        assertThat(phase.getCount()).isEqualTo(2);
+        assertThat(phase.getFiles()).isEqualTo(30);
+        assertThat(phase.getBytes()).isEqualTo(3_000);
+    }
+
+    @Test
+    public void phasesAreReportedInTheOrderTheyStarted() {
+        PerformanceRecorder.Phase loadPhase = cut.startPhase(PerformanceRecorder.LOAD_STATE);
+        cut.startPhase(PerformanceRecorder.LOAD_STATE_PARSE).end();
+        loadPhase.end();
+        cut.startPhase(PerformanceRecorder.COMPARE).end();
+
+        PerformanceReport report = cut.buildReport("status");
+        assertThat(report.getPhases()).extracting("name").containsExactly(
+            PerformanceRecorder.LOAD_STATE, PerformanceRecorder.LOAD_STATE_PARSE, PerformanceRecorder.COMPARE);
+    }
+
+    @Test
+    public void theHashThreadThroughputIsComputedFromTheHashTime() {
+        HashThreadStatistics statistics = new HashThreadStatistics();
+        statistics.setBytes(50_000_000);
+        statistics.setHashTimeMicros(500_000);
+        cut.addHashThread(statistics);
+
+        PerformanceReport report = cut.buildReport("init");
+        assertThat(report.getHashThreads()).hasSize(1);
+        assertThat(report.getHashThreads().get(0).getThroughputBytesPerSecond()).isEqualTo(100_000_000);
+    }
+}